@@ -1,6 +1,7 @@
 package sg.edu.nus.iss.edgp.workflow.management.aws.service;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,8 +22,13 @@ public class SQSDataQualityResponseListenerService {
 	private final WorkflowService workflowService;
 	private static final Logger logger = LoggerFactory.getLogger(SQSRuleResponseListenerService.class);
 
-	@SqsListener(value = "${aws.sqs.queue.workflow.dataquality.response.url}", factory = "workflowSqsFactory")
-	public void handleRuleServiceSqsMessage(String message) {
+	/**
+	 * The message is acknowledged when the returned future completes, i.e. after
+	 * the clean row it produced has been committed by the batch writer. A failed
+	 * insert leaves the message on the queue for redelivery.
+	 */
+	@SqsListener(value = "${aws.sqs.queue.workflow.dataquality.response.url}", factory = "dataQualitySqsFactory")
+	public CompletableFuture<Void> handleRuleServiceSqsMessage(String message) {
 		try {
 			logger.info("Received Data Quality Response Message from SQS");
 
@@ -31,14 +37,15 @@ public class SQSDataQualityResponseListenerService {
 						new TypeReference<Map<String, Object>>() {
 						});
 				logger.info("Message parsed successfully in receive data quality response SqsListener.");
-				workflowService.updateDataQualityWorkflowStatus(dynamicJson);
+				return workflowService.updateDataQualityWorkflowStatus(dynamicJson);
 			} catch (Exception e) {
 				logger.error("Error parsing message from data quality response SQS: Invalid format or structure", e);
-				return;
+				return CompletableFuture.completedFuture(null);
 			}
 
 		} catch (Exception e) {
 			logger.error("Error processing message from rule response SQS", e);
+			return CompletableFuture.completedFuture(null);
 		}
 	}
 }
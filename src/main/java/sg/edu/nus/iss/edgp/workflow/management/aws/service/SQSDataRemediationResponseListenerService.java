@@ -1,6 +1,7 @@
 package sg.edu.nus.iss.edgp.workflow.management.aws.service;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,8 +22,13 @@ public class SQSDataRemediationResponseListenerService {
 	private final DataRemediationService dataRemediationService;
 	private static final Logger logger = LoggerFactory.getLogger(SQSRuleResponseListenerService.class);
 
-	@SqsListener(value = "${aws.sqs.queue.workflow.dataremediation.response.url}", factory = "workflowSqsFactory")
-	public void handleRuleServiceSqsMessage(String message) {
+	/**
+	 * The message is acknowledged when the returned future completes, i.e. after
+	 * the remediation batch holding its action has committed. A failed action
+	 * leaves the message on the queue for redelivery.
+	 */
+	@SqsListener(value = "${aws.sqs.queue.workflow.dataremediation.response.url}", factory = "dataRemediationSqsFactory")
+	public CompletableFuture<?> handleRuleServiceSqsMessage(String message) {
 		try {
 			logger.info("Received Rule Response Message from SQS");
 
@@ -31,15 +37,16 @@ public class SQSDataRemediationResponseListenerService {
 						new TypeReference<Map<String, Object>>() {
 						});
 				logger.info("Message parsed successfully in receive data remediation response SqsListener.");
-				dataRemediationService.updateDataRemediationResponse(dynamicJson);
+				return dataRemediationService.updateDataRemediationResponse(dynamicJson);
 			} catch (Exception e) {
 				logger.error("Error parsing message from data remediation response SQS: Invalid format or structure",
 						e);
-				return;
+				return CompletableFuture.completedFuture(null);
 			}
 
 		} catch (Exception e) {
 			logger.error("Error processing message from data remediation response SQS", e);
+			return CompletableFuture.completedFuture(null);
 		}
 	}
 }
@@ -10,6 +10,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
 import io.awspring.cloud.sqs.annotation.SqsListener;
 import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.ProcessStatusObserverService;
 
 @RequiredArgsConstructor
 @Service
@@ -19,6 +21,8 @@ public class SQSRawDataListenerService {
 	
 	private final SQSRuleRequestListenerService requestListenerService;
     private final ObjectMapper objectMapper;
+    private final FileProgressService fileProgressService;
+    private final ProcessStatusObserverService processStatusObserverService;
 
   
     @SqsListener(value = "${aws.sqs.queue.workflow.ingestion.url}", factory = "workflowSqsFactory")
@@ -30,10 +34,37 @@ public class SQSRawDataListenerService {
                     message, new TypeReference<Map<String, Object>>() {}
             );
 
+            // Counted before forwarding so the file is never seen complete while this record is in flight
+            String fileId = extractFileId(payload);
+            fileProgressService.recordReceived(fileId, extractTrackerId(payload));
             requestListenerService.forwardToRulesRequestQueue(payload);
+            // The finalization sweep only looks at files in the stage index
+            processStatusObserverService.markFileActive(fileId);
 
         } catch (Exception e) {
         	logger.error("Failed to process Raw Data Message", e);
         }
     }
+
+    @SuppressWarnings("unchecked")
+    private String extractFileId(Map<String, Object> payload) {
+        Object entry = payload.get("data_entry");
+        if (!(entry instanceof Map)) {
+            // Not forwarded to the rules queue, so it does not count towards the file
+            return null;
+        }
+        if (((Map<String, Object>) entry).get("file_id") instanceof String fileId) {
+            return fileId;
+        }
+        return payload.get("file_id") instanceof String fileId ? fileId : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String extractTrackerId(Map<String, Object> payload) {
+        // The tracker item carries the marker that keeps a redelivered record from being counted twice
+        if (payload.get("data_entry") instanceof Map<?, ?> entry && entry.get("id") != null) {
+            return String.valueOf(((Map<String, Object>) entry).get("id"));
+        }
+        return null;
+    }
 }
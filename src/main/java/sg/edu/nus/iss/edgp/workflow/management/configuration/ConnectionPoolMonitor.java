@@ -0,0 +1,46 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Logs the connection counts of every pool on a fixed interval, and warns
+ * when callers are queued for a connection, which is the first sign that a
+ * pool is too small for its traffic or held by slow statements.
+ */
+@Component
+public class ConnectionPoolMonitor {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionPoolMonitor.class);
+
+	@Autowired
+	private List<HikariDataSource> pools;
+
+	@Scheduled(fixedDelayString = "${domain.data.pool.metrics.interval:PT1M}",
+			initialDelayString = "${domain.data.pool.metrics.interval:PT1M}")
+	public void logPoolStatistics() {
+		for (HikariDataSource pool : pools) {
+			HikariPoolMXBean stats = pool.getHikariPoolMXBean();
+			if (stats == null) {
+				continue; // not started: no connection has been asked for yet
+			}
+			int waiting = stats.getThreadsAwaitingConnection();
+			String line = "Pool {}: active={} idle={} total={}/{} waiting={}";
+			Object[] args = { pool.getPoolName(), stats.getActiveConnections(), stats.getIdleConnections(),
+					stats.getTotalConnections(), pool.getMaximumPoolSize(), waiting };
+			if (waiting > 0) {
+				logger.warn(line, args);
+			} else {
+				logger.info(line, args);
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * One connection pool per kind of database traffic, so a burst of one kind
+ * cannot take the connections another needs:
+ * <ul>
+ * <li>ingestion: clean-data inserts and remediation updates; also the primary
+ * DataSource</li>
+ * <li>ddl: schema changes, schema metadata and background table
+ * maintenance</li>
+ * <li>read: the domain data API, plus one pool per
+ * {@code domain.data.replica.urls} entry for reads routed through
+ * {@link ReplicaRoutingDataSource#onReplica}</li>
+ * </ul>
+ * Every pool uses the {@code spring.datasource} driver, URL and credentials,
+ * with its own size and connection timeout; {@code spring.datasource.hikari}
+ * settings apply to the ingestion pool. Each pool's JdbcTemplate has its own
+ * query timeout. Pools publish their statistics over JMX under their pool name
+ * and are logged by {@link ConnectionPoolMonitor}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+	public static final String INGESTION_JDBC_TEMPLATE = "ingestionJdbcTemplate";
+	public static final String DDL_JDBC_TEMPLATE = "ddlJdbcTemplate";
+	public static final String READ_JDBC_TEMPLATE = "readJdbcTemplate";
+	public static final String DDL_TRANSACTION_MANAGER = "ddlTransactionManager";
+
+	@Value("${domain.data.replica.urls:}")
+	private List<String> replicaUrls;
+
+	@Value("${domain.data.replica.max.lag:PT5S}")
+	private Duration maxLag;
+
+	@Value("${domain.data.replica.pool.size:10}")
+	private int replicaPoolSize;
+
+	@Value("${domain.data.pool.ingestion.size:20}")
+	private int ingestionPoolSize;
+
+	@Value("${domain.data.pool.ingestion.connection.timeout:PT30S}")
+	private Duration ingestionConnectionTimeout;
+
+	@Value("${domain.data.pool.ingestion.query.timeout:PT0S}")
+	private Duration ingestionQueryTimeout;
+
+	@Value("${domain.data.pool.ddl.size:4}")
+	private int ddlPoolSize;
+
+	@Value("${domain.data.pool.ddl.connection.timeout:PT30S}")
+	private Duration ddlConnectionTimeout;
+
+	@Value("${domain.data.pool.ddl.query.timeout:PT0S}")
+	private Duration ddlQueryTimeout;
+
+	@Value("${domain.data.pool.read.size:20}")
+	private int readPoolSize;
+
+	@Value("${domain.data.pool.read.connection.timeout:PT5S}")
+	private Duration readConnectionTimeout;
+
+	@Value("${domain.data.pool.read.query.timeout:PT0S}")
+	private Duration readQueryTimeout;
+
+	@Bean
+	@Primary
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource ingestionDataSource(DataSourceProperties properties) {
+		return pool(properties, "ingestion", ingestionPoolSize, ingestionConnectionTimeout);
+	}
+
+	@Bean
+	public HikariDataSource ddlDataSource(DataSourceProperties properties) {
+		return pool(properties, "ddl", ddlPoolSize, ddlConnectionTimeout);
+	}
+
+	/** The read pool on the writer, used when no replica is in rotation and outside {@code onReplica}. */
+	@Bean
+	public HikariDataSource readPoolDataSource(DataSourceProperties properties) {
+		return pool(properties, "read", readPoolSize, readConnectionTimeout);
+	}
+
+	@Bean
+	public ReplicaRoutingDataSource readDataSource(DataSourceProperties properties,
+			@Qualifier("readPoolDataSource") DataSource readPool) {
+		Map<String, DataSource> replicas = new LinkedHashMap<>();
+		for (String url : replicaUrls) {
+			if (url == null || url.isBlank()) {
+				continue;
+			}
+			String name = "replica-" + (replicas.size() + 1);
+			HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+					.url(url.trim()).build();
+			replica.setPoolName(name);
+			replica.setMaximumPoolSize(replicaPoolSize);
+			replica.setConnectionTimeout(readConnectionTimeout.toMillis());
+			replica.setReadOnly(true);
+			replica.setRegisterMbeans(true);
+			replicas.put(name, replica);
+		}
+		return new ReplicaRoutingDataSource(readPool, replicas, maxLag);
+	}
+
+	@Bean(INGESTION_JDBC_TEMPLATE)
+	@Primary
+	public JdbcTemplate ingestionJdbcTemplate(@Qualifier("ingestionDataSource") DataSource dataSource) {
+		return jdbcTemplate(dataSource, ingestionQueryTimeout);
+	}
+
+	@Bean(DDL_JDBC_TEMPLATE)
+	public JdbcTemplate ddlJdbcTemplate(@Qualifier("ddlDataSource") DataSource dataSource) {
+		return jdbcTemplate(dataSource, ddlQueryTimeout);
+	}
+
+	@Bean(READ_JDBC_TEMPLATE)
+	public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource dataSource) {
+		return jdbcTemplate(dataSource, readQueryTimeout);
+	}
+
+	/** Declared here because a second transaction manager turns off the auto-configured one. */
+	@Bean
+	@Primary
+	public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+		return new JpaTransactionManager(entityManagerFactory);
+	}
+
+	@Bean(DDL_TRANSACTION_MANAGER)
+	public PlatformTransactionManager ddlTransactionManager(@Qualifier("ddlDataSource") DataSource dataSource) {
+		return new DataSourceTransactionManager(dataSource);
+	}
+
+	private static HikariDataSource pool(DataSourceProperties properties, String name, int size,
+			Duration connectionTimeout) {
+		HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		pool.setPoolName(name);
+		pool.setMaximumPoolSize(size);
+		pool.setConnectionTimeout(connectionTimeout.toMillis());
+		pool.setRegisterMbeans(true);
+		return pool;
+	}
+
+	private static JdbcTemplate jdbcTemplate(DataSource dataSource, Duration queryTimeout) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		// Whole seconds; 0 leaves statements to the driver's default of no timeout
+		jdbcTemplate.setQueryTimeout((int) queryTimeout.toSeconds());
+		return jdbcTemplate;
+	}
+}
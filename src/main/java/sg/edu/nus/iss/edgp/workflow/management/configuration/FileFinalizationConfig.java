@@ -0,0 +1,28 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class FileFinalizationConfig {
+
+	@Value("${workflow.finalization.worker.pool.size:4}")
+	private int poolSize;
+
+	@Value("${workflow.finalization.queue.capacity:100}")
+	private int queueCapacity;
+
+	@Bean
+	public TaskExecutor fileFinalizationExecutor() {
+		ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+		exec.setCorePoolSize(poolSize);
+		exec.setMaxPoolSize(poolSize);
+		exec.setQueueCapacity(queueCapacity);
+		exec.setThreadNamePrefix("file-finalization-");
+		exec.initialize();
+		return exec;
+	}
+}
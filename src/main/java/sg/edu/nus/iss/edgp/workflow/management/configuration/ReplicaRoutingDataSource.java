@@ -0,0 +1,171 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Hands out writer connections, except inside {@link #onReplica} where a
+ * healthy read replica is picked round-robin. A replica is healthy when its
+ * last lag check succeeded and was within {@code maxLag}; replicas start out
+ * unhealthy until their first check, and one that refuses a connection is
+ * taken out until the next check passes. With no healthy replica, reads go to
+ * the writer, so callers never see the failover.
+ * <p>
+ * Routing happens when a connection is taken, so a read that joins a
+ * transaction already holding a writer connection stays on the writer.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+	private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+	private final DataSource writer;
+	private final List<Replica> replicas;
+	private final Duration maxLag;
+	private final AtomicInteger next = new AtomicInteger();
+
+	static final class Replica {
+		final String name;
+		final DataSource dataSource;
+		volatile boolean healthy;
+
+		Replica(String name, DataSource dataSource) {
+			this.name = name;
+			this.dataSource = dataSource;
+		}
+	}
+
+	public ReplicaRoutingDataSource(DataSource writer, Map<String, DataSource> replicas, Duration maxLag) {
+		this.writer = writer;
+		this.replicas = replicas.entrySet().stream().map(e -> new Replica(e.getKey(), e.getValue())).toList();
+		this.maxLag = maxLag;
+	}
+
+	/**
+	 * Runs {@code read} with its connections taken from a replica. Only for
+	 * reads that can tolerate up to {@code maxLag} of staleness.
+	 */
+	public static <T> T onReplica(Supplier<T> read) {
+		Boolean previous = READ_ONLY.get();
+		READ_ONLY.set(Boolean.TRUE);
+		try {
+			return read.get();
+		} finally {
+			if (previous == null) {
+				READ_ONLY.remove();
+			} else {
+				READ_ONLY.set(previous);
+			}
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Replica replica = pickReplica();
+		if (replica != null) {
+			try {
+				return replica.dataSource.getConnection();
+			} catch (SQLException e) {
+				replica.healthy = false;
+				logger.warn("Read replica {} refused a connection, reading from the writer: {}", replica.name,
+						e.getMessage());
+			}
+		}
+		return writer.getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		Replica replica = pickReplica();
+		if (replica != null) {
+			try {
+				return replica.dataSource.getConnection(username, password);
+			} catch (SQLException e) {
+				replica.healthy = false;
+				logger.warn("Read replica {} refused a connection, reading from the writer: {}", replica.name,
+						e.getMessage());
+			}
+		}
+		return writer.getConnection(username, password);
+	}
+
+	private Replica pickReplica() {
+		if (!Boolean.TRUE.equals(READ_ONLY.get()) || replicas.isEmpty()) {
+			return null;
+		}
+		int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get((start + i) % replicas.size());
+			if (replica.healthy) {
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	@Scheduled(fixedDelayString = "${domain.data.replica.check.interval:PT10S}")
+	public void checkReplicaLag() {
+		for (Replica replica : replicas) {
+			boolean wasHealthy = replica.healthy;
+			Duration lag = null;
+			try {
+				lag = replicaLag(replica.dataSource);
+			} catch (SQLException | RuntimeException e) {
+				logger.warn("Could not check lag on read replica {}: {}", replica.name, e.getMessage());
+			}
+			replica.healthy = lag != null && lag.compareTo(maxLag) <= 0;
+			if (wasHealthy && !replica.healthy) {
+				logger.warn("Read replica {} is out of rotation (lag {})", replica.name, lag == null ? "unknown" : lag);
+			} else if (!wasHealthy && replica.healthy) {
+				logger.info("Read replica {} is in rotation (lag {})", replica.name, lag);
+			}
+		}
+	}
+
+	/**
+	 * Seconds_Behind_Source from {@code SHOW REPLICA STATUS}; null when
+	 * replication is stopped. Aurora readers share the writer's storage and
+	 * report no replication status, which counts as no lag.
+	 */
+	static Duration replicaLag(DataSource dataSource) throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("SHOW REPLICA STATUS")) {
+			if (!rs.next()) {
+				return Duration.ZERO;
+			}
+			long seconds = rs.getLong("Seconds_Behind_Source");
+			return rs.wasNull() ? null : Duration.ofSeconds(seconds);
+		}
+	}
+
+	boolean isHealthy(String replicaName) {
+		return replicas.stream().anyMatch(r -> r.name.equals(replicaName) && r.healthy);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Replica replica : replicas) {
+			if (replica.dataSource instanceof Closeable closeable) {
+				closeable.close();
+			}
+		}
+	}
+}
@@ -18,6 +18,12 @@ public class SQSExecutorConfig {
 	@Value("${aws.sqs.listener.thread.max.pool.size:5}")
 	private int poolSize;
 
+	@Value("${aws.sqs.listener.dataquality.max.concurrent.messages:50}")
+	private int dataQualityMaxConcurrentMessages;
+
+	@Value("${aws.sqs.listener.dataremediation.max.concurrent.messages:50}")
+	private int dataRemediationMaxConcurrentMessages;
+
 	@Bean
 	public SqsAsyncClient sqsAsyncClient() {
 		return SqsAsyncClient.builder().region(Region.AP_SOUTHEAST_1).build();
@@ -44,4 +50,32 @@ public class SQSExecutorConfig {
 						.maxMessagesPerPoll(1).maxConcurrentMessages(1).componentsTaskExecutor(sqsTaskExecutor))
 				.build();
 	}
+
+	/**
+	 * Data quality responses end in a clean-data insert that is batched and
+	 * acknowledged on commit, so many messages must be in flight at once for a
+	 * batch to fill. Listener threads only hand rows to the batch writer.
+	 */
+	@Bean(name = "dataQualitySqsFactory")
+	public SqsMessageListenerContainerFactory<Object> dataQualitySqsFactory(SqsAsyncClient sqsAsyncClient,
+			TaskExecutor sqsTaskExecutor) {
+
+		return SqsMessageListenerContainerFactory.builder().sqsAsyncClient(sqsAsyncClient)
+				.configure((SqsContainerOptionsBuilder opts) -> opts.maxMessagesPerPoll(10)
+						.maxConcurrentMessages(dataQualityMaxConcurrentMessages)
+						.componentsTaskExecutor(sqsTaskExecutor))
+				.build();
+	}
+
+	/** Remediation actions are batched and acknowledged on commit, like data quality responses. */
+	@Bean(name = "dataRemediationSqsFactory")
+	public SqsMessageListenerContainerFactory<Object> dataRemediationSqsFactory(SqsAsyncClient sqsAsyncClient,
+			TaskExecutor sqsTaskExecutor) {
+
+		return SqsMessageListenerContainerFactory.builder().sqsAsyncClient(sqsAsyncClient)
+				.configure((SqsContainerOptionsBuilder opts) -> opts.maxMessagesPerPoll(10)
+						.maxConcurrentMessages(dataRemediationMaxConcurrentMessages)
+						.componentsTaskExecutor(sqsTaskExecutor))
+				.build();
+	}
 }
@@ -0,0 +1,53 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Separate schedulers so a long {@code @Scheduled} job (archiving, partition
+ * maintenance, index advice, replica lag checks) cannot delay the timed flush
+ * of a clean-data or remediation batch, nor the watchdog and lease heartbeat
+ * of a file being finalized.
+ */
+@Configuration
+public class SchedulingConfig {
+
+	public static final String BATCH_FLUSH_SCHEDULER = "batchFlushScheduler";
+	public static final String FILE_FINALIZATION_SCHEDULER = "fileFinalizationScheduler";
+
+	@Value("${workflow.scheduling.pool.size:4}")
+	private int scheduledPoolSize;
+
+	@Value("${workflow.batch.flush.scheduler.pool.size:2}")
+	private int batchFlushPoolSize;
+
+	@Value("${workflow.finalization.scheduler.pool.size:2}")
+	private int finalizationPoolSize;
+
+	/** Runs the {@code @Scheduled} jobs; found by its name, as there is more than one scheduler. */
+	@Bean
+	public ThreadPoolTaskScheduler taskScheduler() {
+		return scheduler(scheduledPoolSize, "scheduled-");
+	}
+
+	@Bean(BATCH_FLUSH_SCHEDULER)
+	public ThreadPoolTaskScheduler batchFlushScheduler() {
+		return scheduler(batchFlushPoolSize, "batch-flush-");
+	}
+
+	@Bean(FILE_FINALIZATION_SCHEDULER)
+	public ThreadPoolTaskScheduler fileFinalizationScheduler() {
+		return scheduler(finalizationPoolSize, "file-finalization-timer-");
+	}
+
+	private static ThreadPoolTaskScheduler scheduler(int poolSize, String threadNamePrefix) {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setPoolSize(poolSize);
+		scheduler.setThreadNamePrefix(threadNamePrefix);
+		// Timed flushes and timers of work that is done or abandoned need not outlive shutdown
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+}
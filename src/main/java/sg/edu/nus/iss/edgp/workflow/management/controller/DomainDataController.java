@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +14,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,11 +22,20 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import sg.edu.nus.iss.edgp.workflow.management.dto.APIResponse;
 import sg.edu.nus.iss.edgp.workflow.management.dto.AuditDTO;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataSlice;
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 import sg.edu.nus.iss.edgp.workflow.management.dto.ValidationResult;
 import sg.edu.nus.iss.edgp.workflow.management.enums.HTTPVerb;
@@ -44,7 +56,11 @@ public class DomainDataController {
 	private final JWTService jwtService;
 	private final ValidationStrategy validationStrategy;
 	private final DomainDataService domainDataService;
+	private final ObjectMapper objectMapper;
 	private String genericErrorMessage = "An error occurred while processing your request. Please try again later.";
+	private static final int DEFAULT_SEEK_PAGE_SIZE = 50;
+	private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+	private static final String STREAM_SLOT_INTERCEPTOR = DomainDataController.class.getName() + ".streamSlot";
 
 	@Value("${audit.activity.type.prefix}")
 	String activityTypePrefix;
@@ -59,10 +75,10 @@ public class DomainDataController {
 				searchRequest.getSize());
 		String activityType = "Retrieve Data List";
 		String endpoint = "/api/wfm/domainData";
-		activityTypePrefix = activityTypePrefix.trim() + activityType;
+		String activity = activityTypePrefix.trim() + activityType;
 		String jwtToken = authorizationHeader.substring(7);
 		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
-		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activityTypePrefix, endpoint,
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
 				HTTPVerb.GET);
 		String message = "";
 
@@ -81,13 +97,22 @@ public class DomainDataController {
 				return ResponseEntity.status(validationResult.getStatus()).body(APIResponse.error(message));
 			}
 
+			if (searchRequest.getPage() == null && searchRequest.getCursor() != null) {
+				return retrieveDomainDataListAfter(searchRequest, domainName, userOrgId, fileId, auditDTO,
+						authorizationHeader);
+			}
+
 			if (searchRequest.getPage() == null) {
-				resultMap = domainDataService.retrieveAllDomainDataList(domainName, userOrgId, fileId, searchRequest.getIncludeArchived());
+				resultMap = domainDataService.retrieveAllDomainDataList(domainName, userOrgId, fileId,
+						searchRequest.getIncludeArchived(), searchRequest.getColumns(), searchRequest.getFilters());
 				logger.info("all domain data list size {}", resultMap.size());
 			} else {
 				Pageable pageable = PageRequest.of(searchRequest.getPage() - 1, searchRequest.getSize(),
 						Sort.by("updated_date").ascending());
-				resultMap = domainDataService.retrievePaginatedDomainDataList(domainName, userOrgId, fileId, pageable, searchRequest.getIncludeArchived());
+				boolean exactTotal = !Boolean.FALSE.equals(searchRequest.getExactTotal());
+				resultMap = domainDataService.retrievePaginatedDomainDataList(domainName, userOrgId, fileId, pageable,
+						searchRequest.getIncludeArchived(), exactTotal, searchRequest.getColumns(),
+						searchRequest.getFilters());
 				logger.info("paginated domain data list size {}", resultMap.size());
 			}
 
@@ -110,6 +135,10 @@ public class DomainDataController {
 						.body(APIResponse.successWithEmptyData(domainDataDTOList, message));
 			}
 
+		} catch (IllegalArgumentException ex) {
+			message = ex.getMessage();
+			auditService.logAudit(auditDTO, 400, message, authorizationHeader);
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(APIResponse.error(message));
 		} catch (Exception ex) {
 			message = ex instanceof DomainDataServiceException ? ex.getMessage() : genericErrorMessage;
 			auditService.logAudit(auditDTO, 500, message, authorizationHeader);
@@ -117,6 +146,156 @@ public class DomainDataController {
 		}
 	}
 
+	/**
+	 * Seek paging over (updated_date, id): each page costs the same however deep
+	 * it is, and no total is counted, so totalRecord is the size of this page.
+	 */
+	private ResponseEntity<APIResponse<List<Map<String, Object>>>> retrieveDomainDataListAfter(
+			SearchRequest searchRequest, String domainName, String userOrgId, String fileId, AuditDTO auditDTO,
+			String authorizationHeader) {
+		DomainDataCursor cursor = null;
+		if (!searchRequest.getCursor().isBlank()) {
+			try {
+				cursor = DomainDataCursor.decode(searchRequest.getCursor());
+			} catch (IllegalArgumentException ex) {
+				String message = "Invalid cursor.";
+				auditService.logAudit(auditDTO, 400, message, authorizationHeader);
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(APIResponse.error(message));
+			}
+		}
+		int size = searchRequest.getSize() != null ? searchRequest.getSize() : DEFAULT_SEEK_PAGE_SIZE;
+		DomainDataSlice slice = domainDataService.retrieveDomainDataListAfter(domainName, userOrgId, fileId, cursor,
+				size, searchRequest.getIncludeArchived(), searchRequest.getColumns(), searchRequest.getFilters());
+		logger.info("seek domain data list size {}", slice.getRows().size());
+
+		String message;
+		if (!slice.getRows().isEmpty()) {
+			message = "Successfully retrieved all domain data list.";
+		} else {
+			message = "No Domain Data  List.";
+		}
+		auditService.logAudit(auditDTO, 200, message, authorizationHeader);
+		return ResponseEntity.status(HttpStatus.OK)
+				.body(APIResponse.success(slice.getRows(), message, slice.getRows().size(), slice.getNextCursor()));
+	}
+
+	/**
+	 * Unpaged list of a domain as NDJSON, written while it is read from the
+	 * database, for exports that would not fit in memory as one response.
+	 * Errors before the first row are returned as JSON; once streaming has
+	 * started the response can only be cut short.
+	 */
+	@GetMapping(value = "/stream")
+	@PreAuthorize(("hasAuthority('SCOPE_manage:mdm') or hasAuthority('SCOPE_view:mdm')"))
+	public ResponseEntity<StreamingResponseBody> streamDomainDataList(@RequestHeader("Authorization") String authorizationHeader,
+			@RequestHeader("X-FileId") String fileId, @Valid @ModelAttribute SearchRequest searchRequest,
+			HttpServletRequest request) {
+
+		logger.info("Call domain data stream API");
+		String activityType = "Stream Data List";
+		String endpoint = "/api/wfm/domainData/stream";
+		String activity = activityTypePrefix.trim() + activityType;
+		String jwtToken = authorizationHeader.substring(7);
+		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
+				HTTPVerb.GET);
+		String message = "";
+
+		try {
+
+			String userOrgId = jwtService.extractOrgIdFromToken(jwtToken);
+			String domainName = searchRequest.getDomainName();
+			ValidationResult validationResult = validationStrategy.validateDomainAndOrgAccess(domainName, userOrgId,
+					authorizationHeader);
+
+			if (!validationResult.isValid()) {
+				message = validationResult.getMessage();
+				auditService.logAudit(auditDTO, 400, message, authorizationHeader);
+				return ResponseEntity.status(validationResult.getStatus()).contentType(MediaType.APPLICATION_JSON)
+						.body(jsonBody(APIResponse.error(message)));
+			}
+
+			domainDataService.validateQuery(domainName, searchRequest.getColumns(), searchRequest.getFilters());
+			if (!domainDataService.tryStartStream()) {
+				message = "Too many domain data streams in progress. Please try again later.";
+				logger.warn(message);
+				auditService.logAudit(auditDTO, 429, message, authorizationHeader);
+				return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).contentType(MediaType.APPLICATION_JSON)
+						.body(jsonBody(APIResponse.error(message)));
+			}
+			Runnable releaseSlot = releaseOnce(domainDataService::endStream);
+			releaseWhenAsyncEnds(request, releaseSlot);
+			StreamingResponseBody body = out -> {
+				try {
+					domainDataService.streamAllDomainDataList(domainName, userOrgId, fileId,
+							searchRequest.getIncludeArchived(), searchRequest.getColumns(), searchRequest.getFilters(),
+							out);
+					auditService.logAudit(auditDTO, 200, "Successfully streamed all domain data list.",
+							authorizationHeader);
+				} catch (RuntimeException ex) {
+					logger.error("Domain data stream ended early", ex);
+					auditService.logAudit(auditDTO, 500, "Domain data stream ended early.", authorizationHeader);
+					throw ex;
+				} finally {
+					releaseSlot.run();
+				}
+			};
+			return ResponseEntity.status(HttpStatus.OK).contentType(NDJSON).body(body);
+
+		} catch (IllegalArgumentException ex) {
+			message = ex.getMessage();
+			auditService.logAudit(auditDTO, 400, message, authorizationHeader);
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON)
+					.body(jsonBody(APIResponse.error(message)));
+		} catch (Exception ex) {
+			message = ex instanceof DomainDataServiceException ? ex.getMessage() : genericErrorMessage;
+			auditService.logAudit(auditDTO, 500, message, authorizationHeader);
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+					.body(jsonBody(APIResponse.error(message)));
+		}
+	}
+
+	private StreamingResponseBody jsonBody(APIResponse<?> response) {
+		return out -> objectMapper.writeValue(out, response);
+	}
+
+	private static Runnable releaseOnce(Runnable release) {
+		AtomicBoolean released = new AtomicBoolean();
+		return () -> {
+			if (released.compareAndSet(false, true)) {
+				release.run();
+			}
+		};
+	}
+
+	/**
+	 * The streaming body may never run: the request can time out or the
+	 * client disconnect while it is queued, or the executor can reject it.
+	 * The async request still ends, so {@code release} also runs from its
+	 * timeout, error and completion callbacks.
+	 */
+	private static void releaseWhenAsyncEnds(HttpServletRequest request, Runnable release) {
+		WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(STREAM_SLOT_INTERCEPTOR,
+				new CallableProcessingInterceptor() {
+					@Override
+					public <T> Object handleTimeout(NativeWebRequest webRequest, Callable<T> task) {
+						release.run();
+						return RESULT_NONE;
+					}
+
+					@Override
+					public <T> Object handleError(NativeWebRequest webRequest, Callable<T> task, Throwable t) {
+						release.run();
+						return RESULT_NONE;
+					}
+
+					@Override
+					public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+						release.run();
+					}
+				});
+	}
+
 	@GetMapping(value = "/my-domain-data", produces = "application/json")
 	@PreAuthorize("hasAuthority('SCOPE_manage:policy') or hasAuthority('SCOPE_view:policy')")
 	public ResponseEntity<APIResponse<Map<String, Object>>> getDomainDataById(
@@ -126,10 +305,10 @@ public class DomainDataController {
 
 		String activityType = "Retrieve Detail Domain Data Record.";
 		String endpoint = "/api/wfm/domainData/my-domain-data";
-		activityTypePrefix = activityTypePrefix.trim() + activityType;
+		String activity = activityTypePrefix.trim() + activityType;
 		String jwtToken = authorizationHeader.substring(7);
 		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
-		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activityTypePrefix, endpoint,
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
 				HTTPVerb.GET);
 		String message = "";
 
@@ -1,5 +1,6 @@
 package sg.edu.nus.iss.edgp.workflow.management.controller;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,12 +23,14 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import sg.edu.nus.iss.edgp.workflow.management.dto.APIResponse;
 import sg.edu.nus.iss.edgp.workflow.management.dto.AuditDTO;
+import sg.edu.nus.iss.edgp.workflow.management.dto.FileProgress;
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 import sg.edu.nus.iss.edgp.workflow.management.dto.ValidationResult;
 import sg.edu.nus.iss.edgp.workflow.management.enums.HTTPVerb;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
 import sg.edu.nus.iss.edgp.workflow.management.jwt.JWTService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.AuditService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.WorkflowService;
 import sg.edu.nus.iss.edgp.workflow.management.strategy.impl.ValidationStrategy;
 
@@ -39,10 +42,12 @@ public class WorkflowController {
 
 	private static final Logger logger = LoggerFactory.getLogger(WorkflowController.class);
 	private final WorkflowService workflowService;
+	private final FileProgressService fileProgressService;
 	private final AuditService auditService;
 	private final JWTService jwtService;
 	private final ValidationStrategy validationStrategy;
 	private String genericErrorMessage = "An error occurred while processing your request. Please try again later.";
+	private static final int MAX_PROGRESS_FILE_IDS = 25;
 
 	@Value("${audit.activity.type.prefix}")
 	String activityTypePrefix;
@@ -57,10 +62,10 @@ public class WorkflowController {
 		String message = "";
 		String activityType = "Retrieve Data List";
 		String endpoint = "/api/wfm";
-		activityTypePrefix = activityTypePrefix.trim() + activityType;
+		String activity = activityTypePrefix.trim() + activityType;
 		String jwtToken = authorizationHeader.substring(7);
 		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
-		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activityTypePrefix, endpoint,
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
 				HTTPVerb.GET);
 
 		try {
@@ -121,10 +126,10 @@ public class WorkflowController {
 		String message = "";
 		String activityType = "Retrieve workf flow by id";
 		String endpoint = "/api/wfm/my-data";
-		activityTypePrefix = activityTypePrefix.trim() + activityType;
+		String activity = activityTypePrefix.trim() + activityType;
 		String jwtToken = authorizationHeader.substring(7);
 		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
-		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activityTypePrefix, endpoint,
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
 				HTTPVerb.GET);
 
 		try {
@@ -163,4 +168,56 @@ public class WorkflowController {
 		}
 	}
 
+	@GetMapping(value = "/progress", produces = "application/json")
+	@PreAuthorize("hasAuthority('SCOPE_manage:mdm') or hasAuthority('SCOPE_view:mdm')")
+	public ResponseEntity<APIResponse<List<FileProgress>>> retrieveFileProgress(
+			@RequestHeader("Authorization") String authorizationHeader, @RequestHeader("X-FileId") String fileIds) {
+		logger.info("Call file progress API...");
+
+		String message = "";
+		String activityType = "Retrieve File Progress";
+		String endpoint = "/api/wfm/progress";
+		String activity = activityTypePrefix.trim() + activityType;
+		String jwtToken = authorizationHeader.substring(7);
+		String userId = Optional.ofNullable(jwtService.extractUserIdFromToken(jwtToken)).orElse("Invalid UserId");
+		AuditDTO auditDTO = auditService.createAuditDTO(userId, activityType, activity, endpoint,
+				HTTPVerb.GET);
+
+		try {
+			List<String> ids = Arrays.stream(fileIds.split(",")).map(String::trim).filter(id -> !id.isEmpty())
+					.distinct().toList();
+
+			if (ids.isEmpty() || ids.size() > MAX_PROGRESS_FILE_IDS) {
+				message = "Bad Request: Provide between 1 and " + MAX_PROGRESS_FILE_IDS + " file ids.";
+				logger.error(message);
+				auditService.logAudit(auditDTO, 400, message, authorizationHeader);
+				return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(APIResponse.error(message));
+			}
+
+			String userOrgId = jwtService.extractOrgIdFromToken(jwtToken);
+			ValidationResult validationResult = validationStrategy.isUserOrganizationActive(userOrgId,
+					authorizationHeader);
+
+			if (!validationResult.isValid()) {
+				message = validationResult.getMessage();
+				auditService.logAudit(auditDTO, validationResult.getStatus().value(), message, authorizationHeader);
+				return ResponseEntity.status(validationResult.getStatus()).body(APIResponse.error(message));
+			}
+
+			List<FileProgress> progress = fileProgressService.retrieveFileProgress(ids, userOrgId);
+
+			message = progress.isEmpty() ? "No file progress found." : "Successfully retrieved file progress.";
+			logger.info(message);
+			auditService.logAudit(auditDTO, 200, message, authorizationHeader);
+			return ResponseEntity.status(HttpStatus.OK)
+					.body(APIResponse.success(progress, message, progress.size()));
+
+		} catch (Exception ex) {
+			message = ex instanceof WorkflowServiceException ? ex.getMessage() : genericErrorMessage;
+			logger.error(message);
+			auditService.logAudit(auditDTO, 500, message, authorizationHeader);
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(APIResponse.error(message));
+		}
+	}
+
 }
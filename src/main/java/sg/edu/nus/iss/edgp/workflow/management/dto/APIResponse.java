@@ -1,5 +1,7 @@
 package sg.edu.nus.iss.edgp.workflow.management.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +15,8 @@ public class APIResponse<T> {
 	private String message;
 	private long totalRecord;
 	private T data;
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private String nextCursor;
 
 	public static <T> APIResponse<T> error(String message) {
 		return APIResponse.<T>builder().success(false).message(message).totalRecord(0).build();
@@ -22,6 +26,11 @@ public class APIResponse<T> {
 		return APIResponse.<T>builder().success(true).message(message).totalRecord(totalRecord).data(data).build();
 	}
 	
+	public static <T> APIResponse<T> success(T data, String message, long totalRecord, String nextCursor) {
+		return APIResponse.<T>builder().success(true).message(message).totalRecord(totalRecord).data(data)
+				.nextCursor(nextCursor).build();
+	}
+
 	public static <T> APIResponse<T> successWithEmptyData(T data, String message) {
 		return APIResponse.<T>builder().success(true).message(message).data(data).totalRecord(0).build();
 	}
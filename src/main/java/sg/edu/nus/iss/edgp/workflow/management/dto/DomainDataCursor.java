@@ -0,0 +1,56 @@
+package sg.edu.nus.iss.edgp.workflow.management.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position after the last row of a seek page: its {@code updated_date} and
+ * {@code id}. Clients receive it as an opaque URL-safe token and send it back
+ * unchanged to fetch the next page.
+ */
+@Getter
+@AllArgsConstructor
+public class DomainDataCursor {
+
+	private static final String SEPARATOR = "|";
+
+	private final LocalDateTime updatedDate;
+	private final String id;
+
+	/** Cursor pointing after {@code row}, which must carry updated_date and id. */
+	public static DomainDataCursor after(Map<String, Object> row) {
+		Object updated = row.get("updated_date");
+		LocalDateTime updatedDate = updated instanceof Timestamp ts ? ts.toLocalDateTime()
+				: updated instanceof LocalDateTime ldt ? ldt : null;
+		Object id = row.get("id");
+		if (updatedDate == null || id == null) {
+			throw new IllegalArgumentException("Row has no updated_date and id to page from");
+		}
+		return new DomainDataCursor(updatedDate, String.valueOf(id));
+	}
+
+	public String encode() {
+		String raw = updatedDate + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static DomainDataCursor decode(String token) {
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+			int split = raw.indexOf(SEPARATOR);
+			if (split <= 0 || split == raw.length() - 1) {
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+			return new DomainDataCursor(LocalDateTime.parse(raw.substring(0, split)), raw.substring(split + 1));
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid cursor", e);
+		}
+	}
+}
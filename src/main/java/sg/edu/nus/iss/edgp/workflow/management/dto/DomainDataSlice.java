@@ -0,0 +1,16 @@
+package sg.edu.nus.iss.edgp.workflow.management.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class DomainDataSlice {
+
+	private List<Map<String, Object>> rows;
+	// Null on the last page
+	private String nextCursor;
+}
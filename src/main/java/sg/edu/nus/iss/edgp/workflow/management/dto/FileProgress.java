@@ -0,0 +1,19 @@
+package sg.edu.nus.iss.edgp.workflow.management.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class FileProgress {
+
+	private String fileId;
+	private String fileName;
+	private String processStage;
+	private long totalRecords;
+	private long processedRecords;
+	private long successRecords;
+	private long failedRecords;
+	private double recordsPerSecond;
+	private Long etaSeconds;
+}
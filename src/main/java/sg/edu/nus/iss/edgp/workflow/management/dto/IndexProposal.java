@@ -0,0 +1,19 @@
+package sg.edu.nus.iss.edgp.workflow.management.dto;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class IndexProposal {
+
+	private String tableName;
+	private String indexName;
+	private List<String> columns;
+	private long executions;
+	private double rowsExaminedPerRowSent;
+	private String sampleQuery;
+	private boolean created;
+}
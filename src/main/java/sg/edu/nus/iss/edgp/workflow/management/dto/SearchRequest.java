@@ -1,5 +1,7 @@
 package sg.edu.nus.iss.edgp.workflow.management.dto;
 
+import java.util.List;
+
 import lombok.Getter;
 import lombok.Setter;
 import jakarta.validation.constraints.Min;
@@ -18,6 +20,20 @@ public class SearchRequest {
 	
 	private String domainName;
 	
+	// Archived rows, including those already moved to the archive table, are only read when true
 	private Boolean includeArchived;
 
+	// Offset paging: false accepts a cached totalRecord instead of an exact count, or -1 when a large
+	// table has none; page such a list by cursor
+	private Boolean exactTotal;
+
+	// Only these columns (id and updated_date are always included); all when empty
+	private List<String> columns;
+
+	// column:op:value with op eq, gt, gte, lt, lte, in (values separated by |) or prefix; one per filter parameter
+	private List<String> filters;
+
+	// Seek paging: empty for the first page, then the nextCursor of the previous one
+	private String cursor;
+
 }
@@ -15,4 +15,6 @@ public class WorkflowStatus {
 	private String dataQualityStatus;
 	private String finalStatus = "";
 	private List<Map<String, Object>> failedValidations;
+	// Version read before the update; null skips the optimistic check
+	private Long expectedVersion;
 }
@@ -0,0 +1,9 @@
+package sg.edu.nus.iss.edgp.workflow.management.enums;
+
+/** What became of one remediation action once its batch committed. */
+public enum RemediationOutcome {
+	/** The row was changed. */
+	APPLIED,
+	/** No row matched: the id is unknown, the cell no longer holds the old value, or the row is already archived. */
+	NOT_MATCHED
+}
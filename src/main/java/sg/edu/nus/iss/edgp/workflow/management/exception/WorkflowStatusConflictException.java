@@ -0,0 +1,19 @@
+package sg.edu.nus.iss.edgp.workflow.management.exception;
+
+/**
+ * Raised when a tracker item was changed by another writer after it was read,
+ * so the conditional version check on the update failed.
+ */
+public class WorkflowStatusConflictException extends DynamicDynamoServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public WorkflowStatusConflictException(String message) {
+		super(message);
+	}
+
+	public WorkflowStatusConflictException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
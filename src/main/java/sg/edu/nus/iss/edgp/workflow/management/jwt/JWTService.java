@@ -1,15 +1,24 @@
 package sg.edu.nus.iss.edgp.workflow.management.jwt;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.json.simple.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
-
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import lombok.RequiredArgsConstructor;
 import sg.edu.nus.iss.edgp.workflow.management.configuration.JWTConfig;
@@ -19,10 +28,20 @@ import sg.edu.nus.iss.edgp.workflow.management.utility.JSONReader;
 
 import java.util.Date;
 
+/**
+ * Reads the claims of the bearer token. A token is verified once per request:
+ * its claims are kept as a request attribute for the filter and the controller
+ * to share, and in a bounded cache of verified tokens, keyed by the token's
+ * SHA-256 hash, until the token expires. Expired and invalid tokens are never
+ * cached, so they fail the same way on every call. A cache hit is checked
+ * against {@code exp} and {@code nbf} with the parser's clock skew, so a cached
+ * token is accepted exactly when parsing it again would accept it.
+ */
 @Service
 @RequiredArgsConstructor
 public class JWTService {
 	
+	private static final String REQUEST_CLAIMS = JWTService.class.getName() + ".claims";
 	
 	private final JWTConfig jwtConfig;
 	private final JSONReader jsonReader; 
@@ -32,6 +51,21 @@ public class JWTService {
 	public static final String USER_EMAIL = "userEmail";
 	public static final String CLAIM_USERNAME = "userName";
 
+	@Value("${jwt.verified.cache.size:10000}")
+	private int verifiedCacheSize = 10000;
+
+	@Value("${jwt.clock.skew.seconds:0}")
+	private long clockSkewSeconds = 0;
+
+	private volatile JwtParser parser;
+
+	/** Least recently used first; guarded by itself. */
+	private final Map<String, Claims> verified = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Claims verified earlier in the current request, for the token with this hash. */
+	private record RequestClaims(String tokenHash, Claims claims) {
+	}
+
 	public UserDetails getUserDetail(String authorizationHeader, String token)
 			throws JwtException, IllegalArgumentException, Exception {
 		String userID = extractSubject(token);
@@ -64,7 +98,83 @@ public class JWTService {
 	
 	
 	public Claims extractAllClaims(String token) throws JwtException, IllegalArgumentException, Exception {
-		return Jwts.parser().verifyWith(jwtConfig.loadPublicKey()).build().parseSignedClaims(token).getPayload();
+		if (token == null || token.isEmpty()) {
+			return parser().parseSignedClaims(token).getPayload();
+		}
+		String tokenHash = hash(token);
+		RequestAttributes request = RequestContextHolder.getRequestAttributes();
+		if (request != null && request.getAttribute(REQUEST_CLAIMS, RequestAttributes.SCOPE_REQUEST) instanceof RequestClaims current
+				&& current.tokenHash().equals(tokenHash)) {
+			return current.claims();
+		}
+
+		Claims claims = cachedClaims(tokenHash);
+		if (claims == null) {
+			claims = parser().parseSignedClaims(token).getPayload();
+			cacheClaims(tokenHash, claims);
+		}
+		if (request != null) {
+			request.setAttribute(REQUEST_CLAIMS, new RequestClaims(tokenHash, claims), RequestAttributes.SCOPE_REQUEST);
+		}
+		return claims;
+	}
+
+	/** Built on first use, as the public key bean only exists outside the test profile. */
+	private JwtParser parser() throws Exception {
+		JwtParser current = parser;
+		if (current == null) {
+			synchronized (this) {
+				current = parser;
+				if (current == null) {
+					current = Jwts.parser().verifyWith(jwtConfig.loadPublicKey())
+							.clockSkewSeconds(clockSkewSeconds).build();
+					parser = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private Claims cachedClaims(String tokenHash) {
+		synchronized (verified) {
+			Claims claims = verified.get(tokenHash);
+			if (claims != null && !isCurrent(claims)) {
+				// Parse again so the token fails as it would uncached
+				verified.remove(tokenHash);
+				return null;
+			}
+			return claims;
+		}
+	}
+
+	/** The parser's own {@code exp} and {@code nbf} checks, with the same skew. */
+	private boolean isCurrent(Claims claims) {
+		long now = System.currentTimeMillis();
+		long skew = clockSkewSeconds * 1000;
+		Date notBefore = claims.getNotBefore();
+		return !new Date(now - skew).after(claims.getExpiration())
+				&& (notBefore == null || !new Date(now + skew).before(notBefore));
+	}
+
+	private void cacheClaims(String tokenHash, Claims claims) {
+		if (verifiedCacheSize <= 0 || claims.getExpiration() == null) {
+			return;
+		}
+		synchronized (verified) {
+			verified.put(tokenHash, claims);
+			while (verified.size() > verifiedCacheSize) {
+				verified.remove(verified.keySet().iterator().next());
+			}
+		}
+	}
+
+	private static String hash(String token) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
 	}
 	
 	
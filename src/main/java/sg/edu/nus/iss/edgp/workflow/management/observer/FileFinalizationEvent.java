@@ -0,0 +1,15 @@
+package sg.edu.nus.iss.edgp.workflow.management.observer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Published when a tracker record reaches a final status, so the owning file
+ * can be checked for completion straight away instead of on the next sweep.
+ */
+@Getter
+@RequiredArgsConstructor
+public class FileFinalizationEvent {
+
+	private final String fileId;
+}
@@ -0,0 +1,19 @@
+package sg.edu.nus.iss.edgp.workflow.management.observer;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileFinalizationService;
+
+@RequiredArgsConstructor
+@Component
+public class FileFinalizationListener {
+
+	private final FileFinalizationService fileFinalizationService;
+
+	@EventListener
+	public void onRecordFinalized(FileFinalizationEvent event) {
+		fileFinalizationService.requestFinalization(event.getFileId());
+	}
+}
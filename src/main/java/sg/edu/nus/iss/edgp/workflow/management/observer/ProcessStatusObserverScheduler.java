@@ -1,11 +1,16 @@
 package sg.edu.nus.iss.edgp.workflow.management.observer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -13,16 +18,22 @@ import lombok.RequiredArgsConstructor;
 import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.*;
 
+/**
+ * Safety-net sweep for files whose completion event was lost (for example a
+ * crash between the last record update and finalization), or whose result
+ * notification was not sent after they were completed. Files are normally
+ * finalized by {@link FileFinalizationListener} as soon as their last record
+ * reaches a final status.
+ */
 @RequiredArgsConstructor
 @Service
 public class ProcessStatusObserverScheduler {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProcessStatusObserverScheduler.class);
 
-	private final WorkflowService workflowService;
 	private final ProcessStatusObserverService processStatusObserverService;
 	private final DynamicDynamoService dynamoService;
-	private final DataIngestionNotifierService workflowNotificationService;
+	private final FileFinalizationService fileFinalizationService;
 	
 	@Value("${aws.dynamodb.table.master.data.header}")
 	private String masterDataHeaderTableName;
@@ -31,7 +42,10 @@ public class ProcessStatusObserverScheduler {
 	@Value("${aws.dynamodb.table.master.data.task}")
 	private String masterDataTaskTrackerTableName;
 
-	@Scheduled(fixedDelayString = "PT1M")
+	@Value("${workflow.finalization.active.stage.backfill:false}")
+	private boolean activeStageBackfill;
+
+	@Scheduled(fixedDelayString = "${workflow.finalization.sweep.interval:PT15M}")
 	public void checkWorkflowStatus() {
 		logger.info("Checking workflow status...");
 
@@ -39,30 +53,24 @@ public class ProcessStatusObserverScheduler {
 			if (dynamoService.tableExists(masterDataHeaderTableName.trim())
 					&& dynamoService.tableExists(masterDataTaskTrackerTableName.trim())) {
 
-				// 1) Get the current PROCESSING file
-                HashMap<String,String> fileInfo = processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+				// 1) Get every PROCESSING file, and every COMPLETE file whose notification was not sent
+                Map<String, HashMap<String,String>> filesById = new LinkedHashMap<>();
+                for (FileProcessStage stage : List.of(FileProcessStage.PROCESSING, FileProcessStage.COMPLETE)) {
+                	addFiles(filesById, processStatusObserverService.fetchAllIdsByProcessStage(stage));
+                }
+                List<HashMap<String,String>> files = new ArrayList<>(filesById.values());
                  
                 
-				if (fileInfo == null || fileInfo.isEmpty()) {
-					logger.info("No processing files found.");
+				if (files.isEmpty()) {
+					logger.info("No processing or unnotified files found.");
 					return;
 
 				} else {
-					String fileId=fileInfo.get("id").trim();
-	                
-					boolean isProcessed = workflowService.isAllDataProcessed(fileId);
-					if (isProcessed) {
-						String fileStatus = processStatusObserverService.getAllStatusForFile(fileId);
-
-						// (2) update file status and file stage as complete
-						processStatusObserverService.updateFileStageAndStatus(fileId, FileProcessStage.COMPLETE,
-								fileStatus);
-						
-						//(3) Send notification email
-						 
-						workflowNotificationService.sendDataIngestionResult(fileInfo);
-
+					// (2) queue each file; the worker pool completes them in parallel
+					for (HashMap<String, String> fileInfo : files) {
+						fileFinalizationService.requestFinalization(fileInfo.get("id"));
 					}
+					logger.info("Queued {} processing or unnotified files for finalization", files.size());
 				}
                 
 			}else {
@@ -77,4 +85,30 @@ public class ProcessStatusObserverScheduler {
 		}
 	}
 
+	private static void addFiles(Map<String, HashMap<String, String>> filesById, List<HashMap<String, String>> files) {
+		if (files != null) {
+			files.forEach(fileInfo -> filesById.putIfAbsent(fileInfo.get("id"), fileInfo));
+		}
+	}
+
+	/**
+	 * One-time backfill of the stage index for PROCESSING headers written before
+	 * their records tagged them. Enable it for a single deployment once the
+	 * index is provisioned; it scans the whole header table.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfillActiveStageIndex() {
+		if (!activeStageBackfill) {
+			return;
+		}
+		try {
+			if (dynamoService.tableExists(masterDataHeaderTableName.trim())) {
+				int tagged = processStatusObserverService.tagUntrackedFilesByProcessStage(FileProcessStage.PROCESSING);
+				logger.info("Tagged {} processing files for the stage index", tagged);
+			}
+		} catch (Exception e) {
+			logger.error("Unexpected error while tagging processing files.", e);
+		}
+	}
+
 }
@@ -0,0 +1,127 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.SchedulingConfig;
+
+/**
+ * Groups clean-data inserts that share the same statement (table and ordered
+ * column list) and writes them with one {@code batchUpdate} per group, so
+ * MySQL sees one commit per batch instead of one per record. With
+ * {@code rewriteBatchedStatements=true} on the connection URL the driver sends
+ * each batch as a multi-row INSERT.
+ * <p>
+ * A group is flushed when it reaches {@code batchSize} rows or when its oldest
+ * row has waited {@code maxDelay}. The future returned for a row completes
+ * only after the batch holding it has committed, so callers can acknowledge
+ * the source message at that point. It carries the row's update count, or
+ * {@link Statement#SUCCESS_NO_INFO} when the driver reports none, as it does
+ * for the rows of a rewritten batch.
+ */
+@Component
+public class CleanDataBatchWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(CleanDataBatchWriter.class);
+
+	@Autowired
+	@Qualifier(DataSourceConfig.INGESTION_JDBC_TEMPLATE)
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	@Qualifier(SchedulingConfig.BATCH_FLUSH_SCHEDULER)
+	private TaskScheduler taskScheduler;
+
+	@Value("${dynamic.sql.batch.size:100}")
+	private int batchSize = 100;
+
+	@Value("${dynamic.sql.batch.max.delay:PT0.2S}")
+	private Duration maxDelay = Duration.ofMillis(200);
+
+	private final Map<String, Batch> pending = new ConcurrentHashMap<>();
+
+	private static final class Batch {
+		final List<Object[]> rows = new ArrayList<>();
+		final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+	}
+
+	public CompletableFuture<Integer> submit(String sql, Object[] args) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		boolean[] first = { false };
+		boolean[] full = { false };
+		pending.compute(sql, (k, batch) -> {
+			if (batch == null) {
+				batch = new Batch();
+				first[0] = true;
+			}
+			batch.rows.add(args);
+			batch.futures.add(future);
+			full[0] = batch.rows.size() >= batchSize;
+			return batch;
+		});
+
+		if (full[0]) {
+			flush(sql);
+		} else if (first[0]) {
+			taskScheduler.schedule(() -> flush(sql), Instant.now().plus(maxDelay));
+		}
+		return future;
+	}
+
+	/** Writes whatever is pending for {@code sql}; a no-op when another caller already took the batch. */
+	public void flush(String sql) {
+		Batch batch = pending.remove(sql);
+		if (batch == null || batch.rows.isEmpty()) {
+			return;
+		}
+		try {
+			int[] counts = new TransactionTemplate(transactionManager)
+					.execute(status -> jdbcTemplate.batchUpdate(sql, batch.rows));
+			for (int i = 0; i < batch.futures.size(); i++) {
+				batch.futures.get(i).complete(
+						counts != null && i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+			}
+			logger.info("Inserted a batch of {} rows", batch.rows.size());
+		} catch (Exception e) {
+			// One bad row must not fail its neighbours: retry the batch row by row
+			logger.warn("Batch insert of {} rows failed ({}); retrying rows individually", batch.rows.size(),
+					e.getMessage());
+			for (int i = 0; i < batch.rows.size(); i++) {
+				try {
+					batch.futures.get(i).complete(jdbcTemplate.update(sql, batch.rows.get(i)));
+				} catch (Exception rowError) {
+					batch.futures.get(i).completeExceptionally(rowError);
+				}
+			}
+		}
+	}
+
+	@PreDestroy
+	public void flushAll() {
+		for (String sql : List.copyOf(pending.keySet())) {
+			flush(sql);
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * The type of a dynamic column: the narrowest MySQL type found to hold its
+ * values so far, and how to widen it when a value does not fit. Rows mostly
+ * carry strings (Dynamo numbers included), so a string is typed by its
+ * content: whole numbers without leading zeros as INT or BIGINT, plain
+ * decimals as DECIMAL(p,s), ISO dates and date-times as DATE and DATETIME,
+ * true/false as BOOLEAN, anything else as VARCHAR rounded up to a length
+ * bucket, or TEXT past the largest one. Types only ever widen.
+ */
+@Getter
+@EqualsAndHashCode
+public final class ColumnType {
+
+	public enum Kind {
+		BOOLEAN, INT, BIGINT, DECIMAL, DATE, DATETIME, VARCHAR, TEXT
+	}
+
+	static final int MAX_DECIMAL_PRECISION = 65;
+	static final int MAX_DECIMAL_SCALE = 30;
+
+	/** Rounding lengths up keeps a column from being altered for every slightly longer value. */
+	private static final int[] VARCHAR_LENGTHS = { 16, 32, 64, 128, 255, 512, 1024 };
+
+	private static final Pattern WHOLE_NUMBER = Pattern.compile("-?(?:0|[1-9]\\d*)");
+	private static final Pattern PLAIN_DECIMAL = Pattern.compile("-?(0|[1-9]\\d*)\\.(\\d+)");
+	private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+	private static final Pattern ISO_DATETIME = Pattern.compile("\\d{4}-\\d{2}-\\d{2}[ T]\\d{2}:\\d{2}:\\d{2}(\\.\\d{1,6})?");
+	private static final Pattern DEFINITION = Pattern.compile("\\s*(\\w+)\\s*(?:\\(\\s*(\\d+)\\s*(?:,\\s*(\\d+)\\s*)?\\))?.*");
+
+	public static final ColumnType BOOLEAN = new ColumnType(Kind.BOOLEAN, 0, 0);
+	public static final ColumnType INT = new ColumnType(Kind.INT, 0, 0);
+	public static final ColumnType BIGINT = new ColumnType(Kind.BIGINT, 0, 0);
+	public static final ColumnType DATE = new ColumnType(Kind.DATE, 0, 0);
+	public static final ColumnType TEXT = new ColumnType(Kind.TEXT, 0, 0);
+
+	private final Kind kind;
+	/** VARCHAR length, DECIMAL precision or DATETIME fractional digits. */
+	private final int size;
+	/** DECIMAL scale. */
+	private final int scale;
+
+	private ColumnType(Kind kind, int size, int scale) {
+		this.kind = kind;
+		this.size = size;
+		this.scale = scale;
+	}
+
+	public static ColumnType datetime(int fractionalDigits) {
+		return new ColumnType(Kind.DATETIME, fractionalDigits, 0);
+	}
+
+	/** DECIMAL with the given digits either side of the point, or VARCHAR when MySQL cannot hold it. */
+	public static ColumnType decimal(int integerDigits, int scale) {
+		int precision = Math.max(1, integerDigits) + scale;
+		if (precision > MAX_DECIMAL_PRECISION || scale > MAX_DECIMAL_SCALE) {
+			return varchar(precision + 2);
+		}
+		return new ColumnType(Kind.DECIMAL, precision, scale);
+	}
+
+	/** VARCHAR of at least {@code length} characters, or TEXT past the largest bucket. */
+	public static ColumnType varchar(int length) {
+		for (int bucket : VARCHAR_LENGTHS) {
+			if (length <= bucket) {
+				return new ColumnType(Kind.VARCHAR, bucket, 0);
+			}
+		}
+		return TEXT;
+	}
+
+	public String sql() {
+		return switch (kind) {
+		case DECIMAL -> "DECIMAL(" + size + "," + scale + ")";
+		case VARCHAR -> "VARCHAR(" + size + ")";
+		case DATETIME -> size > 0 ? "DATETIME(" + size + ")" : "DATETIME";
+		default -> kind.name();
+		};
+	}
+
+	/** Narrowest type for one value; null for null and blank values, which say nothing about the type. */
+	public static ColumnType infer(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Boolean) {
+			return BOOLEAN;
+		}
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return INT;
+		}
+		if (value instanceof Long l) {
+			return l == l.intValue() ? INT : BIGINT;
+		}
+		if (value instanceof BigDecimal || value instanceof Double || value instanceof Float) {
+			try {
+				BigDecimal d = new BigDecimal(value.toString());
+				int scale = Math.max(0, d.scale());
+				return decimal(d.precision() - d.scale(), scale);
+			} catch (NumberFormatException e) {
+				return varchar(value.toString().length()); // NaN, Infinity
+			}
+		}
+		if (value instanceof LocalDate || value instanceof java.sql.Date) {
+			return DATE;
+		}
+		if (value instanceof Timestamp ts) {
+			return datetime(ts.getNanos() == 0 ? 0 : 6);
+		}
+		if (value instanceof LocalDateTime ldt) {
+			return datetime(ldt.getNano() == 0 ? 0 : 6);
+		}
+
+		String text = value.toString().trim();
+		if (text.isEmpty()) {
+			return null;
+		}
+		if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+			return BOOLEAN;
+		}
+		if (WHOLE_NUMBER.matcher(text).matches()) {
+			int bits = new BigInteger(text).bitLength();
+			return bits < 32 ? INT : bits < 64 ? BIGINT : decimal(text.replace("-", "").length(), 0);
+		}
+		Matcher decimal = PLAIN_DECIMAL.matcher(text);
+		if (decimal.matches()) {
+			return decimal(decimal.group(1).length(), decimal.group(2).length());
+		}
+		if (ISO_DATE.matcher(text).matches() && parses(() -> LocalDate.parse(text))) {
+			return DATE;
+		}
+		Matcher datetime = ISO_DATETIME.matcher(text);
+		if (datetime.matches() && parses(() -> LocalDateTime.parse(text.replace(' ', 'T')))) {
+			return datetime(datetime.group(1) == null ? 0 : 6);
+		}
+		return varchar(text.codePointCount(0, text.length()));
+	}
+
+	/**
+	 * Type of an existing column from its definition, e.g. {@code VARCHAR(255)}
+	 * or {@code DECIMAL(10,2)}; null for types this class does not widen, which
+	 * are left alone.
+	 */
+	public static ColumnType parse(String definition) {
+		if (definition == null) {
+			return null;
+		}
+		Matcher m = DEFINITION.matcher(definition);
+		if (!m.matches()) {
+			return null;
+		}
+		int size = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+		int scale = m.group(3) == null ? 0 : Integer.parseInt(m.group(3));
+		return switch (m.group(1).toUpperCase(Locale.ROOT)) {
+		case "BOOLEAN", "BOOL" -> BOOLEAN;
+		case "BIT", "TINYINT" -> size == 1 ? BOOLEAN : null;
+		case "INT", "INTEGER" -> INT;
+		case "BIGINT" -> BIGINT;
+		case "DECIMAL", "NUMERIC" -> m.group(2) == null ? new ColumnType(Kind.DECIMAL, 10, 0)
+				: new ColumnType(Kind.DECIMAL, size, scale);
+		case "DATE" -> DATE;
+		case "DATETIME" -> datetime(size);
+		case "VARCHAR" -> size > 0 ? new ColumnType(Kind.VARCHAR, size, 0) : null;
+		case "TEXT", "MEDIUMTEXT", "LONGTEXT" -> TEXT;
+		default -> null;
+		};
+	}
+
+	/** True when {@code value} can be stored without widening this type. */
+	public boolean holds(Object value) {
+		ColumnType needed = infer(value);
+		return needed == null || widen(needed).equals(this);
+	}
+
+	/** Narrowest type that holds the values of both this type and {@code other}. */
+	public ColumnType widen(ColumnType other) {
+		if (other == null || other.equals(this)) {
+			return this;
+		}
+		if (kind == other.kind) {
+			return switch (kind) {
+			case DECIMAL -> decimal(Math.max(integerDigits(), other.integerDigits()), Math.max(scale, other.scale));
+			case VARCHAR -> size >= other.size ? this : other;
+			case DATETIME -> size >= other.size ? this : other;
+			default -> this;
+			};
+		}
+		if (isNumber() && other.isNumber()) {
+			if (kind == Kind.DECIMAL || other.kind == Kind.DECIMAL) {
+				return decimal(Math.max(integerDigits(), other.integerDigits()),
+						Math.max(kind == Kind.DECIMAL ? scale : 0, other.kind == Kind.DECIMAL ? other.scale : 0));
+			}
+			return BIGINT;
+		}
+		if (isTemporal() && other.isTemporal()) {
+			return datetime(Math.max(kind == Kind.DATETIME ? size : 0, other.kind == Kind.DATETIME ? other.size : 0));
+		}
+		if (kind == Kind.TEXT || other.kind == Kind.TEXT) {
+			return TEXT;
+		}
+		int length = Math.max(textLength(), other.textLength());
+		return kind == Kind.VARCHAR && size >= length ? this : varchar(length);
+	}
+
+	private boolean isNumber() {
+		return kind == Kind.INT || kind == Kind.BIGINT || kind == Kind.DECIMAL;
+	}
+
+	private boolean isTemporal() {
+		return kind == Kind.DATE || kind == Kind.DATETIME;
+	}
+
+	private int integerDigits() {
+		return switch (kind) {
+		case INT -> 10;
+		case BIGINT -> 19;
+		case DECIMAL -> size - scale;
+		default -> 0;
+		};
+	}
+
+	/** Longest text form of a value of this type, for when it has to become VARCHAR. */
+	private int textLength() {
+		return switch (kind) {
+		case BOOLEAN -> 5;
+		case INT -> 11;
+		case BIGINT -> 20;
+		case DECIMAL -> size + 2;
+		case DATE -> 10;
+		case DATETIME -> size > 0 ? 20 + size : 19;
+		case VARCHAR -> size;
+		case TEXT -> Integer.MAX_VALUE;
+		};
+	}
+
+	private static boolean parses(Runnable parse) {
+		try {
+			parse.run();
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return sql();
+	}
+}
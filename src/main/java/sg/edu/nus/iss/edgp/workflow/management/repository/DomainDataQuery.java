@@ -0,0 +1,136 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+/**
+ * Column projection and extra predicates for a domain data list, checked
+ * against the cached schema of the table and compiled into SQL fragments with
+ * bind parameters. Filters are written {@code column:op:value} with op one of
+ * eq, gt, gte, lt, lte, in (values separated by {@code |}) or prefix. Values
+ * are converted to the column's type before binding, so a comparison never
+ * forces an implicit cast that would stop MySQL using an index on the column,
+ * and prefix matches compile to {@code LIKE 'value%'}, which can use one.
+ */
+@Getter
+public final class DomainDataQuery {
+
+	/** Every column, no extra predicates. */
+	public static final DomainDataQuery ALL = new DomainDataQuery("*", "", List.of(), false);
+
+	/** Always selected with a projection: rows are opened by id and paged by (updated_date, id). */
+	static final List<String> REQUIRED_COLUMNS = List.of("id", "updated_date");
+
+	private static final int MAX_IN_VALUES = 1000;
+
+	private final String selectList;
+	/** Empty, or {@code " AND ..."} to append to the WHERE clause. */
+	private final String predicateSql;
+	private final List<Object> predicateArgs;
+	private final boolean filtered;
+
+	private DomainDataQuery(String selectList, String predicateSql, List<Object> predicateArgs, boolean filtered) {
+		this.selectList = selectList;
+		this.predicateSql = predicateSql;
+		this.predicateArgs = List.copyOf(predicateArgs);
+		this.filtered = filtered;
+	}
+
+	public static DomainDataQuery compile(String tableName, TableSchema schema, List<String> columns,
+			List<String> filters) {
+		boolean noColumns = columns == null || columns.stream().allMatch(c -> c == null || c.isBlank());
+		boolean noFilters = filters == null || filters.stream().allMatch(f -> f == null || f.isBlank());
+		if (noColumns && noFilters) {
+			return ALL;
+		}
+		if (!schema.isExists()) {
+			throw new IllegalArgumentException("Unknown domain: " + tableName);
+		}
+
+		String selectList = "*";
+		if (!noColumns) {
+			Set<String> selected = new LinkedHashSet<>(REQUIRED_COLUMNS);
+			for (String column : columns) {
+				if (column != null && !column.isBlank()) {
+					selected.add(column(schema, column));
+				}
+			}
+			selectList = selected.stream().map(DomainDataQuery::backtick).collect(Collectors.joining(", "));
+		}
+
+		StringBuilder predicates = new StringBuilder();
+		List<Object> args = new ArrayList<>();
+		if (!noFilters) {
+			for (String filter : filters) {
+				if (filter != null && !filter.isBlank()) {
+					appendPredicate(schema, filter, predicates, args);
+				}
+			}
+		}
+		return new DomainDataQuery(selectList, predicates.toString(), args, !noFilters);
+	}
+
+	private static void appendPredicate(TableSchema schema, String filter, StringBuilder sql, List<Object> args) {
+		String[] parts = filter.split(":", 3);
+		if (parts.length < 3) {
+			throw new IllegalArgumentException("Invalid filter '" + filter + "': expected column:op:value");
+		}
+		String column = column(schema, parts[0]);
+		Function<Object, Object> converter = InsertPlan.converterFor(schema.getColumnTypes().get(column));
+		String value = parts[2];
+		String op = parts[1].trim().toLowerCase();
+
+		sql.append(" AND ").append(backtick(column));
+		switch (op) {
+		case "eq" -> sql.append(" = ?");
+		case "gt" -> sql.append(" > ?");
+		case "gte" -> sql.append(" >= ?");
+		case "lt" -> sql.append(" < ?");
+		case "lte" -> sql.append(" <= ?");
+		case "in" -> {
+			List<String> values = Arrays.asList(value.split("\\|"));
+			if (values.size() > MAX_IN_VALUES) {
+				throw new IllegalArgumentException("Filter on " + column + " has more than " + MAX_IN_VALUES + " values");
+			}
+			sql.append(" IN (").append(values.stream().map(v -> "?").collect(Collectors.joining(", "))).append(")");
+			values.forEach(v -> args.add(bindable(converter, v, filter)));
+			return;
+		}
+		case "prefix" -> {
+			sql.append(" LIKE ? ESCAPE '!'");
+			args.add(value.trim().replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+			return;
+		}
+		default -> throw new IllegalArgumentException("Invalid filter '" + filter + "': unknown operator " + op);
+		}
+		args.add(bindable(converter, value, filter));
+	}
+
+	private static Object bindable(Function<Object, Object> converter, String value, String filter) {
+		Object converted = converter.apply(value);
+		if (converted == null) {
+			throw new IllegalArgumentException("Invalid filter '" + filter + "': missing value");
+		}
+		return converted;
+	}
+
+	private static String column(TableSchema schema, String name) {
+		String column = name.trim().toLowerCase();
+		if (!schema.getColumns().contains(column)) {
+			throw new IllegalArgumentException("Unknown column: " + name.trim());
+		}
+		return column;
+	}
+
+	private static String backtick(String ident) {
+		return "`" + ident.replace("`", "``") + "`";
+	}
+}
@@ -1,78 +1,134 @@
 package sg.edu.nus.iss.edgp.workflow.management.repository;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.ReplicaRoutingDataSource;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
 import sg.edu.nus.iss.edgp.workflow.management.utility.GeneralUtility;
 
+/**
+ * Read side of the domain tables. Every query here runs on a read replica
+ * when one is in rotation (see {@link ReplicaRoutingDataSource}), so results
+ * may trail the latest ingestion by up to the configured replica lag.
+ * <p>
+ * Archived rows are moved out to {@code <domain>_archive} in the background.
+ * Unless archived rows are asked for, queries read the domain table only and
+ * skip rows flagged but not yet moved; with them, the domain table and its
+ * archive are read as one.
+ */
 @Repository
 public class DomainDataRepository {
 
 	@Autowired
+	@Qualifier(DataSourceConfig.READ_JDBC_TEMPLATE)
 	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TableSchemaCache tableSchemaCache;
+
 	private static final Logger logger = LoggerFactory.getLogger(DomainDataRepository.class);
 
+	/** Tells MySQL Connector/J to stream a forward-only result set row by row. */
+	static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	public static final String ARCHIVE_SUFFIX = "_archive";
+
 	public List<Map<String, Object>> findAllDomainDataList(String tableName, String userOrgId, String fileId, Boolean includeArchive) {
+		return findAllDomainDataList(tableName, userOrgId, fileId, includeArchive, DomainDataQuery.ALL);
+	}
+
+	public List<Map<String, Object>> findAllDomainDataList(String tableName, String userOrgId, String fileId,
+			Boolean includeArchive, DomainDataQuery query) {
 		if (tableName == null || tableName.isBlank()) {
 			throw new IllegalArgumentException("Table name is required");
 		}
 
 		tableName = tableName.toLowerCase();
-		StringBuilder sql = new StringBuilder();
-		if (includeArchive == null || includeArchive) {
-			 sql = new StringBuilder("SELECT * FROM ").append(backtick(tableName)).append(" WHERE ")
-					.append(backtick("organization_id")).append(" = ?");
-		} else {
-			 sql = new StringBuilder("SELECT * FROM ")
-					    .append(backtick(tableName))
-					    .append(" WHERE ")
-					    .append(backtick("organization_id")).append(" = ?")
-					    .append(" AND ")
-					    .append(backtick("is_archived")).append(" = false");
-		}
-		
-
 		List<Object> args = new ArrayList<>();
-		args.add(userOrgId);
+		String sql = select(query) + from(tableName, userOrgId, fileId, includeArchive, query, args);
 
-		if (GeneralUtility.hasText(fileId)) {
-			sql.append(" AND ").append(backtick("file_id")).append(" = ?");
-			args.add(fileId);
+		logger.info("retrieving all domain data list.");
+		return ReplicaRoutingDataSource.onReplica(() -> jdbcTemplate.queryForList(sql, args.toArray()));
+	}
+
+	/**
+	 * Same rows as {@link #findAllDomainDataList}, handed to {@code rowConsumer}
+	 * one at a time from a forward-only streaming result set instead of being
+	 * collected into a list. The connection stays busy until the consumer has
+	 * seen the last row, so a consumer that blocks on a slow client slows the
+	 * read down with it. Returns the number of rows streamed.
+	 */
+	public long streamDomainDataList(String tableName, String userOrgId, String fileId, Boolean includeArchive,
+			DomainDataQuery query, Consumer<Map<String, Object>> rowConsumer) {
+		if (tableName == null || tableName.isBlank()) {
+			throw new IllegalArgumentException("Table name is required");
 		}
 
-		logger.info("retrieving all domain data list.");
-		return jdbcTemplate.queryForList(sql.toString(), args.toArray());
+		List<Object> args = new ArrayList<>();
+		String sql = select(query) + from(tableName.toLowerCase(), userOrgId, fileId, includeArchive, query, args);
+		ColumnMapRowMapper rowMapper = new ColumnMapRowMapper();
+		long[] streamed = { 0 };
+
+		logger.info("streaming all domain data list.");
+		return ReplicaRoutingDataSource.onReplica(() -> {
+			jdbcTemplate.query(con -> {
+				PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+				for (int i = 0; i < args.size(); i++) {
+					ps.setObject(i + 1, args.get(i));
+				}
+				return ps;
+			}, (RowCallbackHandler) rs -> rowConsumer.accept(rowMapper.mapRow(rs, (int) streamed[0]++)));
+			return streamed[0];
+		});
 	}
 
 	public Page<Map<String, Object>> findPaginatedDomainDataList(String tableName, String userOrgId, String fileId,
 			Pageable pageable) {
 
+		List<Map<String, Object>> rows = findDomainDataPage(tableName, userOrgId, fileId, null, DomainDataQuery.ALL,
+				pageable);
+		long total = countDomainData(tableName, userOrgId, fileId, null);
+
+		logger.info("retrieving paginated domain data list.");
+		return new PageImpl<>(rows, pageable, total);
+	}
+
+	/** One offset page of rows; the total is left to the caller. */
+	public List<Map<String, Object>> findDomainDataPage(String tableName, String userOrgId, String fileId,
+			Boolean includeArchive, DomainDataQuery query, Pageable pageable) {
+
 		if (tableName == null || tableName.isBlank()) {
 			throw new IllegalArgumentException("Table name is required");
 		}
 
 		tableName = tableName.toLowerCase();
-		StringBuilder where = new StringBuilder().append(" WHERE ").append(backtick("organization_id")).append(" = ?");
 		List<Object> filterArgs = new ArrayList<>();
-		filterArgs.add(userOrgId);
-
-		if (GeneralUtility.hasText(fileId)) {
-			where.append(" AND ").append(backtick("file_id")).append(" = ?");
-			filterArgs.add(fileId);
-		}
-
-		StringBuilder dataSql = new StringBuilder("SELECT * FROM ").append(backtick(tableName)).append(where);
+		StringBuilder dataSql = new StringBuilder(select(query))
+				.append(from(tableName, userOrgId, fileId, includeArchive, query, filterArgs));
 		logger.info("created sql query while retrieving paginated domain data list.");
 
 		Set<String> ALLOWED_SORT_COLUMNS = Set.of("id", "created_date", "updated_date");
@@ -91,23 +147,165 @@ public class DomainDataRepository {
 		dataArgs.add(pageable.getPageSize());
 		dataArgs.add(pageable.getOffset());
 
-		List<Map<String, Object>> rows = jdbcTemplate.queryForList(dataSql.toString(), dataArgs.toArray());
+		return ReplicaRoutingDataSource
+				.onReplica(() -> jdbcTemplate.queryForList(dataSql.toString(), dataArgs.toArray()));
+	}
 
-		String countSql = "SELECT COUNT(*) FROM " + backtick(tableName) + where.toString();
-		long total = jdbcTemplate.queryForObject(countSql, Long.class, filterArgs.toArray());
+	/** Exact number of rows a list request with the same filters would page through. */
+	public long countDomainData(String tableName, String userOrgId, String fileId, Boolean includeArchive) {
+		return countDomainData(tableName, userOrgId, fileId, includeArchive, DomainDataQuery.ALL);
+	}
 
-		logger.info("retrieving paginated domain data list.");
-		return new PageImpl<>(rows, pageable, total);
+	public long countDomainData(String tableName, String userOrgId, String fileId, Boolean includeArchive,
+			DomainDataQuery query) {
+		if (tableName == null || tableName.isBlank()) {
+			throw new IllegalArgumentException("Table name is required");
+		}
+
+		List<Object> filterArgs = new ArrayList<>();
+		String countSql = "SELECT COUNT(*) FROM "
+				+ from(tableName.toLowerCase(), userOrgId, fileId, includeArchive, query, filterArgs);
+		Long total = ReplicaRoutingDataSource
+				.onReplica(() -> jdbcTemplate.queryForObject(countSql, Long.class, filterArgs.toArray()));
+		return total == null ? 0L : total;
 	}
 
-	public Map<String, Object> retrieveDetailDomainDataRecordById(String tableName, String id) {
+	/**
+	 * InnoDB's estimate of the rows in the whole table, from the statistics it
+	 * keeps for the optimizer; null when the table is unknown. It can be off by
+	 * a wide margin and ignores every filter.
+	 */
+	public Long estimateTableRows(String tableName) {
+		List<Long> rows = ReplicaRoutingDataSource.onReplica(() -> jdbcTemplate.queryForList(
+				"SELECT TABLE_ROWS FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?",
+				Long.class, tableName.toLowerCase()));
+		return rows.isEmpty() ? null : rows.get(0);
+	}
+
+	private static String select(DomainDataQuery query) {
+		return "SELECT " + (query == null ? "*" : query.getSelectList()) + " FROM ";
+	}
+
+	private String from(String table, String userOrgId, String fileId, Boolean includeArchive, DomainDataQuery query,
+			List<Object> args) {
+		List<Object> whereArgs = new ArrayList<>();
+		String where = where(userOrgId, fileId, includeArchive, query, whereArgs);
+		return from(table, includeArchive, where, whereArgs, args);
+	}
+
+	/**
+	 * The domain table filtered by {@code where}; with archived rows, the
+	 * domain table and its archive each filtered by {@code where} and combined
+	 * into one derived table, so sorting and paging apply across both. A row
+	 * is moved in one transaction, so a single statement sees it on one side
+	 * only. Columns the archive does not have yet read as NULL.
+	 */
+	private String from(String table, Boolean includeArchive, String where, List<Object> whereArgs,
+			List<Object> args) {
+		TableSchema archive = archiveOf(table, includeArchive);
+		if (archive == null) {
+			args.addAll(whereArgs);
+			return backtick(table) + where;
+		}
+
+		List<String> columns = List.copyOf(tableSchemaCache.get(table).getColumns());
+		String hotColumns = columns.stream().map(this::backtick).collect(Collectors.joining(", "));
+		String archiveColumns = columns.stream()
+				.map(c -> archive.getColumns().contains(c) ? backtick(c) : "NULL AS " + backtick(c))
+				.collect(Collectors.joining(", "));
+		args.addAll(whereArgs);
+		args.addAll(whereArgs);
+		return "(SELECT " + hotColumns + " FROM " + backtick(table) + where + " UNION ALL SELECT " + archiveColumns
+				+ " FROM " + backtick(table + ARCHIVE_SUFFIX) + where + ") AS " + backtick("d");
+	}
+
+	/** Schema of the table's archive when archived rows are asked for and it holds any; null otherwise. */
+	private TableSchema archiveOf(String table, Boolean includeArchive) {
+		if (!Boolean.TRUE.equals(includeArchive)) {
+			return null;
+		}
+		TableSchema archive = tableSchemaCache.get(table + ARCHIVE_SUFFIX);
+		// An archive table of the old standalone layout never received domain rows
+		return archive.isExists() && archive.getColumns().contains("is_archived") ? archive : null;
+	}
+
+	/**
+	 * Organization, file and archive filters first, in the column order of the
+	 * domain table indexes, then any compiled predicates.
+	 */
+	private String where(String userOrgId, String fileId, Boolean includeArchive, DomainDataQuery query,
+			List<Object> args) {
+		StringBuilder where = new StringBuilder().append(" WHERE ").append(backtick("organization_id")).append(" = ?");
+		args.add(userOrgId);
+
+		if (GeneralUtility.hasText(fileId)) {
+			where.append(" AND ").append(backtick("file_id")).append(" = ?");
+			args.add(fileId);
+		}
+		if (!Boolean.TRUE.equals(includeArchive)) {
+			where.append(" AND ").append(backtick("is_archived")).append(" = false");
+		}
+		if (query != null) {
+			where.append(query.getPredicateSql());
+			args.addAll(query.getPredicateArgs());
+		}
+		return where.toString();
+	}
+
+	/**
+	 * Seek page: up to {@code limit} rows ordered by (updated_date, id) that come
+	 * after {@code after}, or from the start when it is null. The position is a
+	 * predicate on the (organization_id, [file_id,] is_archived, updated_date)
+	 * indexes, so a deep page reads the same rows as the first one, and no
+	 * COUNT(*) is run.
+	 */
+	public List<Map<String, Object>> findDomainDataListAfter(String tableName, String userOrgId, String fileId,
+			Boolean includeArchive, DomainDataQuery query, DomainDataCursor after, int limit) {
+
+		if (tableName == null || tableName.isBlank()) {
+			throw new IllegalArgumentException("Table name is required");
+		}
 
 		tableName = tableName.toLowerCase();
+		List<Object> whereArgs = new ArrayList<>();
+		StringBuilder where = new StringBuilder(where(userOrgId, fileId, includeArchive, query, whereArgs));
+		if (after != null) {
+			Timestamp updatedDate = Timestamp.valueOf(after.getUpdatedDate());
+			where.append(" AND (").append(backtick("updated_date")).append(" > ? OR (").append(backtick("updated_date"))
+					.append(" = ? AND ").append(backtick("id")).append(" > ?))");
+			whereArgs.add(updatedDate);
+			whereArgs.add(updatedDate);
+			whereArgs.add(after.getId());
+		}
+		List<Object> args = new ArrayList<>();
+		StringBuilder sql = new StringBuilder(select(query))
+				.append(from(tableName, includeArchive, where.toString(), whereArgs, args));
+		sql.append(" ORDER BY ").append(backtick("updated_date")).append(" ASC, ").append(backtick("id"))
+				.append(" ASC LIMIT ?");
+		args.add(limit);
 
-		String sql = "SELECT * FROM " + backtick(tableName) + " WHERE " + backtick("id") + " = ? LIMIT 1";
+		logger.info("retrieving domain data list after cursor.");
+		return ReplicaRoutingDataSource.onReplica(() -> jdbcTemplate.queryForList(sql.toString(), args.toArray()));
+	}
 
-		logger.info("Retrieving detail domain data by id. table='{}', id='{}'", tableName, id);
-		return jdbcTemplate.queryForMap(sql, id); // <-- pass the parameter
+	/** One row by id, from the domain table or, once it has been moved, from its archive. */
+	public Map<String, Object> retrieveDetailDomainDataRecordById(String tableName, String id) {
+
+		String table = tableName.toLowerCase();
+
+		String sql = "SELECT * FROM " + backtick(table) + " WHERE " + backtick("id") + " = ? LIMIT 1";
+
+		logger.info("Retrieving detail domain data by id. table='{}', id='{}'", table, id);
+		try {
+			return ReplicaRoutingDataSource.onReplica(() -> jdbcTemplate.queryForMap(sql, id)); // <-- pass the parameter
+		} catch (EmptyResultDataAccessException e) {
+			if (archiveOf(table, Boolean.TRUE) == null) {
+				throw e;
+			}
+			String archiveSql = "SELECT * FROM " + backtick(table + ARCHIVE_SUFFIX) + " WHERE " + backtick("id")
+					+ " = ? LIMIT 1";
+			return ReplicaRoutingDataSource.onReplica(() -> jdbcTemplate.queryForMap(archiveSql, id));
+		}
 	}
 
 	private String backtick(String ident) {
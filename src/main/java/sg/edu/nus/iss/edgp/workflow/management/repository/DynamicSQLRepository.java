@@ -1,37 +1,46 @@
 package sg.edu.nus.iss.edgp.workflow.management.repository;
 
-import java.sql.Connection;
-import java.math.BigDecimal;
-import java.sql.Date;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.sql.Types;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
-import java.util.stream.Collector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
 
 @Repository
 public class DynamicSQLRepository {
 
 	@Autowired
+	@Qualifier(DataSourceConfig.INGESTION_JDBC_TEMPLATE)
 	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private TableSchemaCache tableSchemaCache;
+	@Autowired
+	private CleanDataBatchWriter cleanDataBatchWriter;
+
+	/** Bounds the plan cache if rows arrive with many distinct key orders. */
+	private static final int MAX_INSERT_PLANS = 1024;
+
+	private final Map<PlanKey, InsertPlan> insertPlans = new ConcurrentHashMap<>();
+
+	private record PlanKey(String tableName, List<String> rowKeys, String upsertKey) {
+	}
 	private static final Logger logger = LoggerFactory.getLogger(DynamicSQLRepository.class);
 
 	public boolean tableExists(String schema, String tableName) {
@@ -41,43 +50,67 @@ public class DynamicSQLRepository {
 	}
 
 	public void insertRow(String tableName, Map<String, Object> rowData) throws SQLException {
+		InsertPlan plan = insertPlan(tableName, rowData);
+		logger.debug("Inserting into `{}` with {}", tableName, plan.getSql());
+		jdbcTemplate.update(plan.getSql(), plan.bind(rowData));
+	}
 
-		if (rowData == null || rowData.isEmpty()) {
-			throw new IllegalArgumentException("No dynamic data provided for insert.");
-		}
-
-		Set<String> insertColumns = rowData.keySet();
-		validateInsertColumns(tableName, insertColumns, jdbcTemplate);
-
-		// Normalize and convert data types
-		Map<String, Object> insertData = normalizeInsertData(tableName, rowData, insertColumns);
-
-		String columns = insertData.keySet().stream().map(col -> "`" + col + "`").collect(Collectors.joining(", "));
+	/**
+	 * Binds a row through its compiled plan, then hands it to the batch writer.
+	 * The returned future completes with the row's update count once its batch
+	 * has committed.
+	 */
+	public CompletableFuture<Integer> queueInsertRow(String tableName, Map<String, Object> rowData) throws SQLException {
+		InsertPlan plan = insertPlan(tableName, rowData);
+		// Rows with the same table and column order share one statement, and so one batch
+		return cleanDataBatchWriter.submit(plan.getSql(), plan.bind(rowData));
+	}
 
-		String placeholders = insertData.keySet().stream().map(col -> "?").collect(Collectors.joining(", "));
+	/**
+	 * Like {@link #queueInsertRow}, but a row whose {@code keyColumn} value is
+	 * already present updates that row instead of adding a duplicate, so replays
+	 * of the same record are harmless. {@code keyColumn} must be uniquely indexed.
+	 * The update count is 1 for a new row, 2 for an updated one and 0 for a
+	 * replay that changed nothing.
+	 */
+	public CompletableFuture<Integer> queueUpsertRow(String tableName, Map<String, Object> rowData, String keyColumn)
+			throws SQLException {
+		InsertPlan plan = insertPlan(tableName, rowData, keyColumn);
+		return cleanDataBatchWriter.submit(plan.getSql(), plan.bind(rowData));
+	}
 
-		String sql = "INSERT INTO `" + tableName + "` (" + columns + ") VALUES (" + placeholders + ")";
-		System.out.println("SQL: " + sql);
-		System.out.println("Values: " + Arrays.toString(insertData.values().toArray()));
-		System.out.println("Column count: " + insertData.keySet().size());
+	InsertPlan insertPlan(String tableName, Map<String, Object> rowData) {
+		return insertPlan(tableName, rowData, null);
+	}
 
-		jdbcTemplate.update(sql, insertData.values().toArray());
+	/**
+	 * Returns the compiled plan for this table and the row's key order, compiling
+	 * it when missing or when the table's cached schema has since been replaced.
+	 */
+	InsertPlan insertPlan(String tableName, Map<String, Object> rowData, String upsertKey) {
+		if (rowData == null || rowData.isEmpty()) {
+			throw new IllegalArgumentException("No dynamic data provided for insert.");
+		}
+		TableSchema schema = tableSchemaCache.get(tableName);
+		PlanKey key = new PlanKey(tableName, new ArrayList<>(rowData.keySet()), upsertKey);
+		InsertPlan plan = insertPlans.get(key);
+		if (plan != null && plan.getSchema() == schema) {
+			return plan;
+		}
+		if (insertPlans.size() >= MAX_INSERT_PLANS) {
+			insertPlans.clear();
+		}
+		plan = InsertPlan.compile(tableName, key.rowKeys(), schema, upsertKey);
+		insertPlans.put(key, plan);
+		return plan;
 	}
 
-	public void validateInsertColumns(String tableName, Set<String> insertColumns, JdbcTemplate jdbcTemplate) {
-		// 1. Get actual columns from the database table
-		Set<String> dbColumns = jdbcTemplate.query("SELECT * FROM `" + tableName + "` LIMIT 1", rs -> {
-			ResultSetMetaData meta = rs.getMetaData();
-			Set<String> columns = new HashSet<>();
-			for (int i = 1; i <= meta.getColumnCount(); i++) {
-				columns.add(meta.getColumnName(i).toLowerCase());
-			}
-			return columns;
-		});
+	public void validateInsertColumns(String tableName, Set<String> insertColumns) {
+		// 1. Get actual columns from the cached table schema
+		Set<String> dbColumns = new HashSet<>(tableSchemaCache.get(tableName).getColumns());
 
 		// 2. Filter out system-managed or backend-only columns
-		Set<String> excluded = Set.of("created_date", "updated_date");
-		dbColumns.removeAll(excluded);
+		dbColumns.removeAll(InsertPlan.EXCLUDED_COLUMNS);
 
 		// 3. Normalize insert columns
 		Set<String> cleanedColumns = insertColumns.stream().map(col -> col == null ? "" : col.trim().toLowerCase())
@@ -97,82 +130,31 @@ public class DynamicSQLRepository {
 			Set<String> numericColumns) throws SQLException {
 
 		Map<String, Integer> columnTypeMap = getColumnTypes(tableName);
-		return rawData.entrySet().stream().filter(e -> e.getKey() != null && !e.getKey().trim().isEmpty())
-				.collect(Collector.of(LinkedHashMap::new, (map, e) -> {
-					String col = e.getKey().trim();
-					Object val = e.getValue();
-					Integer sqlType = columnTypeMap.get(col.toLowerCase());
-
-					Object finalValue;
-					String valStr = (val != null) ? val.toString().trim() : null;
-
-					if (sqlType == null) {
-						finalValue = (valStr == null) ? "" : valStr;
-					} else if (valStr == null || valStr.isEmpty()) {
-						finalValue = (sqlType == Types.INTEGER || sqlType == Types.DECIMAL || sqlType == Types.NUMERIC
-								|| sqlType == Types.DOUBLE || sqlType == Types.FLOAT || sqlType == Types.DATE
-								|| sqlType == Types.TIMESTAMP) ? null : "";
-					} else {
-						try {
-							if (val instanceof Boolean && (sqlType == Types.INTEGER || sqlType == Types.TINYINT
-									|| sqlType == Types.SMALLINT || sqlType == Types.BIT)) {
-								finalValue = (Boolean) val ? 1 : 0;
-							} else {
-								finalValue = switch (sqlType) {
-								case Types.INTEGER -> Integer.parseInt(valStr);
-								case Types.DECIMAL, Types.NUMERIC -> new BigDecimal(valStr);
-								case Types.DOUBLE, Types.FLOAT -> Double.parseDouble(valStr);
-								case Types.DATE -> Date.valueOf(valStr);
-								case Types.TIMESTAMP -> Timestamp.valueOf(valStr);
-								default -> valStr;
-								};
-							}
-						} catch (Exception ex) {
-							finalValue = valStr; // fallback
-						}
-					}
-
-					map.put(col, finalValue);
-				}, (map1, map2) -> {
-					map1.putAll(map2);
-					return map1;
-				}));
-
+		Map<String, Object> normalized = new LinkedHashMap<>();
+		rawData.forEach((key, val) -> {
+			if (key != null && !key.trim().isEmpty()) {
+				String col = key.trim();
+				normalized.put(col, InsertPlan.converterFor(columnTypeMap.get(col.toLowerCase())).apply(val));
+			}
+		});
+		return normalized;
 	}
 
 	public Map<String, Integer> getColumnTypes(String tableName) throws SQLException {
-		Map<String, Integer> columnTypes = new HashMap<>();
-
-		try (Connection connection = jdbcTemplate.getDataSource().getConnection();
-				PreparedStatement stmt = connection.prepareStatement("SELECT * FROM `" + tableName + "` LIMIT 1");
-				ResultSet rs = stmt.executeQuery()) {
-			ResultSetMetaData metaData = rs.getMetaData();
-			for (int i = 1; i <= metaData.getColumnCount(); i++) {
-				String columnName = metaData.getColumnName(i).toLowerCase(); // normalize
-				int columnType = metaData.getColumnType(i); // java.sql.Types
-				columnTypes.put(columnName, columnType);
-			}
-		}
-
-		return columnTypes;
+		return tableSchemaCache.get(tableName).getColumnTypes();
 	}
 	
+	/**
+	 * Creates the archive table of a domain table with the same definition,
+	 * indexes included, so the archiver can move rows across column for column.
+	 */
 	public void createArchiveTable(String domainName, String tableName) throws SQLException {
 	   
 	    if (domainName.isEmpty()) {
 	        throw new IllegalArgumentException("Domain name cannot be empty after sanitization.");
 	    }
 
-	    String idRefCol  = domainName + "_id"; // as requested
-	    logger.info("Archive Domain id column", idRefCol);
-
-	    String sql =
-	        "CREATE TABLE IF NOT EXISTS `" + tableName + "` ("
-	      +   " `id` VARCHAR(36) PRIMARY KEY,"   
-	      + "  `" + idRefCol + "` VARCHAR(191) NOT NULL,"
-	      + "  `message` TEXT NULL,"
-	      + "  `archived_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"
-	      + ")";
+	    String sql = "CREATE TABLE IF NOT EXISTS `" + tableName + "` LIKE `" + domainName + "`";
 
 	    // Optional: log for visibility
 	    logger.info("Archived SQL: {}", sql);
@@ -180,7 +162,7 @@ public class DynamicSQLRepository {
 	    jdbcTemplate.execute(sql);
 	}
 
-	private static String sanitizeIdentifier(String raw) {
+	static String sanitizeIdentifier(String raw) {
 	    if (raw == null) return "";
 	    String s = raw.trim().toLowerCase();
 	    s = s.replaceAll("[^a-z0-9_]", "_");
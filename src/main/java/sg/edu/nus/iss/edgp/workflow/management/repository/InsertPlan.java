@@ -0,0 +1,153 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+/**
+ * A compiled INSERT for one table and one ordered set of row keys: the SQL
+ * text, which row key feeds each placeholder, and the value converter for each
+ * column resolved once from its JDBC type. Binding a row is then a single pass
+ * over the keys. A plan belongs to the {@link TableSchema} it was compiled
+ * against and is recompiled when the cached schema is replaced.
+ */
+@Getter
+public final class InsertPlan {
+
+	/** Backend-managed columns that incoming rows may not set. */
+	static final Set<String> EXCLUDED_COLUMNS = Set.of("created_date", "updated_date");
+
+	private final TableSchema schema;
+	private final String sql;
+	private final List<String> columns;
+	private final String[] sourceKeys;
+	private final Function<Object, Object>[] converters;
+
+	@SuppressWarnings("unchecked")
+	private InsertPlan(TableSchema schema, String sql, List<String> columns, List<String> sourceKeys,
+			List<Function<Object, Object>> converters) {
+		this.schema = schema;
+		this.sql = sql;
+		this.columns = List.copyOf(columns);
+		this.sourceKeys = sourceKeys.toArray(String[]::new);
+		this.converters = converters.toArray(Function[]::new);
+	}
+
+	public static InsertPlan compile(String tableName, List<String> rowKeys, TableSchema schema) {
+		return compile(tableName, rowKeys, schema, null);
+	}
+
+	/**
+	 * Compiles a plan for rows whose keys are {@code rowKeys}, in that order.
+	 * Keys are trimmed and blank keys dropped, as they always were for inserts.
+	 * With an {@code upsertKey} (a uniquely indexed column present in the row)
+	 * the statement updates the existing row instead of failing on a duplicate;
+	 * the existing row keeps its {@code id}.
+	 */
+	public static InsertPlan compile(String tableName, List<String> rowKeys, TableSchema schema, String upsertKey) {
+		// Trimmed column -> row key it is read from; a later duplicate key supplies the value
+		Map<String, String> sourceByColumn = new LinkedHashMap<>();
+		for (String key : rowKeys) {
+			if (key != null && !key.trim().isEmpty()) {
+				sourceByColumn.put(key.trim(), key);
+			}
+		}
+
+		Set<String> allowed = new HashSet<>(schema.getColumns());
+		allowed.removeAll(EXCLUDED_COLUMNS);
+		Set<String> invalid = sourceByColumn.keySet().stream().map(String::toLowerCase)
+				.filter(col -> !allowed.contains(col)).collect(Collectors.toSet());
+		if (!invalid.isEmpty()) {
+			throw new IllegalArgumentException("Upload failed: Invalid column names found in your file: " + invalid);
+		}
+
+		List<String> columns = new ArrayList<>(sourceByColumn.keySet());
+		List<Function<Object, Object>> converters = new ArrayList<>();
+		for (String column : columns) {
+			converters.add(converterFor(schema.getColumnTypes().get(column.toLowerCase())));
+		}
+
+		String sql = "INSERT INTO `" + tableName + "` ("
+				+ columns.stream().map(col -> "`" + col + "`").collect(Collectors.joining(", ")) + ") VALUES ("
+				+ columns.stream().map(col -> "?").collect(Collectors.joining(", ")) + ")";
+		if (upsertKey != null && columns.stream().anyMatch(upsertKey::equalsIgnoreCase)) {
+			String updates = columns.stream()
+					.filter(col -> !col.equalsIgnoreCase(upsertKey) && !col.equalsIgnoreCase("id"))
+					.map(col -> "`" + col + "` = VALUES(`" + col + "`)").collect(Collectors.joining(", "));
+			sql += " ON DUPLICATE KEY UPDATE "
+					+ (updates.isEmpty() ? "`" + upsertKey + "` = `" + upsertKey + "`" : updates);
+		}
+		return new InsertPlan(schema, sql, columns, new ArrayList<>(sourceByColumn.values()), converters);
+	}
+
+	/** Converted parameter values for one row, in placeholder order. */
+	public Object[] bind(Map<String, Object> row) {
+		Object[] args = new Object[sourceKeys.length];
+		for (int i = 0; i < sourceKeys.length; i++) {
+			args[i] = converters[i].apply(row.get(sourceKeys[i]));
+		}
+		return args;
+	}
+
+	/**
+	 * Value conversion for a column of the given {@link Types} code. Blank
+	 * numeric, boolean and date values become NULL; "true" and "false" become 1
+	 * and 0 for integer, bit and boolean columns; values that fail to parse are passed through as
+	 * trimmed text.
+	 */
+	public static Function<Object, Object> converterFor(Integer sqlType) {
+		if (sqlType == null) {
+			return val -> val == null ? "" : val.toString().trim();
+		}
+		int type = sqlType;
+		// Strict mode rejects '' for any non-text column, including those created by type inference
+		boolean nullWhenBlank = type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT
+				|| type == Types.TINYINT || type == Types.BIT || type == Types.BOOLEAN || type == Types.DECIMAL
+				|| type == Types.NUMERIC || type == Types.DOUBLE || type == Types.FLOAT || type == Types.DATE
+				|| type == Types.TIMESTAMP;
+		boolean booleanAsInt = type == Types.INTEGER || type == Types.BIGINT || type == Types.TINYINT
+				|| type == Types.SMALLINT || type == Types.BIT || type == Types.BOOLEAN;
+		Function<String, Object> parser = switch (type) {
+		case Types.INTEGER -> Integer::parseInt;
+		case Types.BIGINT -> Long::parseLong;
+		case Types.DECIMAL, Types.NUMERIC -> BigDecimal::new;
+		case Types.DOUBLE, Types.FLOAT -> Double::parseDouble;
+		case Types.DATE -> Date::valueOf;
+		case Types.TIMESTAMP -> Timestamp::valueOf;
+		default -> null;
+		};
+
+		return val -> {
+			String valStr = val != null ? val.toString().trim() : null;
+			if (valStr == null || valStr.isEmpty()) {
+				return nullWhenBlank ? null : "";
+			}
+			if (booleanAsInt && val instanceof Boolean b) {
+				return b ? 1 : 0;
+			}
+			if (booleanAsInt && (valStr.equalsIgnoreCase("true") || valStr.equalsIgnoreCase("false"))) {
+				return valStr.equalsIgnoreCase("true") ? 1 : 0;
+			}
+			if (parser == null) {
+				return valStr;
+			}
+			try {
+				return parser.apply(valStr);
+			} catch (Exception ex) {
+				return valStr; // fallback
+			}
+		};
+	}
+}
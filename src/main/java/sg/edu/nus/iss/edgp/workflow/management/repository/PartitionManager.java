@@ -0,0 +1,212 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+
+/**
+ * Partitioning of the domain tables that are declared partitioned; all others
+ * stay plain InnoDB tables. A domain is partitioned either by
+ * {@code organization_id}, into a fixed number of KEY (hash) partitions that
+ * every organization-filtered read prunes to one, or by {@code created_date},
+ * into monthly RANGE partitions that reads filtering on {@code created_date}
+ * prune to the months they cover.
+ * <p>
+ * Monthly partitions are created a few months ahead, with a catch-all
+ * {@code p_future} partition behind them, and past the retention period a month
+ * is either dropped or, when exporting, swapped out into a standalone
+ * {@code <table>_p<yyyyMM>} table with {@code EXCHANGE PARTITION} for an
+ * operator to dump and drop. Both are metadata changes that take the same time
+ * however many rows the month holds.
+ * <p>
+ * Partitioning only applies when a table is created: an existing plain table
+ * is left as it is. A table whose first row comes from a tracker item is never
+ * partitioned by {@code created_date}, as it needs a tracker unique key.
+ */
+@Component
+public class PartitionManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(PartitionManager.class);
+
+	public static final String ORGANIZATION_ID = "organization_id";
+	public static final String CREATED_DATE = "created_date";
+
+	static final String FUTURE_PARTITION = "p_future";
+
+	/** Tables swapped out of a partitioned table by {@link #expire}; not domain tables. */
+	public static final String EXPORT_TABLE_PATTERN = "_p[0-9]{6}$";
+
+	private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+	private static final Pattern MONTHLY_PARTITION = Pattern.compile("p(\\d{6})");
+	private static final int DEFAULT_KEY_PARTITIONS = 16;
+
+	private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME FROM information_schema.partitions"
+			+ " WHERE table_schema = DATABASE() AND table_name = ? AND PARTITION_NAME IS NOT NULL"
+			+ " ORDER BY PARTITION_ORDINAL_POSITION";
+
+	@Autowired
+	@Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
+	private JdbcTemplate jdbcTemplate;
+
+	/** {@code <domain>[:<partitions>]} entries. */
+	@Value("${domain.data.partition.by.organization:}")
+	private List<String> byOrganization = List.of();
+
+	/** {@code <domain>[:<months kept>]} entries; without a month count nothing expires. */
+	@Value("${domain.data.partition.by.created.date:}")
+	private List<String> byCreatedDate = List.of();
+
+	@Value("${domain.data.partition.months.ahead:3}")
+	private int monthsAhead = 3;
+
+	@Value("${domain.data.partition.export.expired:true}")
+	private boolean exportExpired = true;
+
+	/**
+	 * How one domain is partitioned: the partitioning column, the number of KEY
+	 * partitions, and for monthly partitions the months kept (0 keeps all).
+	 */
+	public record Spec(String column, int partitions, int retentionMonths) {
+
+		public boolean isMonthly() {
+			return CREATED_DATE.equals(column);
+		}
+	}
+
+	/** Partitioning declared for the domain table, or null for a plain table. */
+	public Spec specFor(String tableName) {
+		return specs().get(tableName.toLowerCase());
+	}
+
+	Map<String, Spec> specs() {
+		Map<String, Spec> specs = new LinkedHashMap<>();
+		for (String entry : byOrganization) {
+			String[] parts = entry.trim().split(":");
+			if (!parts[0].isBlank()) {
+				int partitions = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : DEFAULT_KEY_PARTITIONS;
+				specs.put(parts[0].trim().toLowerCase(), new Spec(ORGANIZATION_ID, partitions, 0));
+			}
+		}
+		for (String entry : byCreatedDate) {
+			String[] parts = entry.trim().split(":");
+			if (!parts[0].isBlank()) {
+				int retention = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+				specs.put(parts[0].trim().toLowerCase(), new Spec(CREATED_DATE, 0, retention));
+			}
+		}
+		return specs;
+	}
+
+	/** Whether the table exists and is partitioned, whatever is declared for it now. */
+	public boolean isPartitioned(String table) {
+		return !jdbcTemplate.queryForList(PARTITIONS_SQL, String.class, table.toLowerCase()).isEmpty();
+	}
+
+	/** The PARTITION BY clause of a new table, with monthly partitions from {@code current} on. */
+	public String partitionClause(Spec spec, YearMonth current) {
+		if (!spec.isMonthly()) {
+			return "PARTITION BY KEY (`" + ORGANIZATION_ID + "`) PARTITIONS " + spec.partitions();
+		}
+		List<String> partitions = new ArrayList<>();
+		for (int i = 0; i <= monthsAhead; i++) {
+			partitions.add(monthPartition(current.plusMonths(i)));
+		}
+		partitions.add(futurePartition());
+		return "PARTITION BY RANGE (UNIX_TIMESTAMP(`" + CREATED_DATE + "`)) (" + String.join(", ", partitions) + ")";
+	}
+
+	@Scheduled(fixedDelayString = "${domain.data.partition.maintenance.interval:PT6H}")
+	public void maintainAll() {
+		YearMonth current = YearMonth.now();
+		specs().forEach((domain, spec) -> {
+			if (spec.isMonthly()) {
+				for (String table : List.of(domain, domain + DomainDataRepository.ARCHIVE_SUFFIX)) {
+					try {
+						maintain(table, spec, current);
+					} catch (RuntimeException e) {
+						logger.warn("Could not maintain partitions of `{}`: {}", table, e.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds the monthly partitions up to {@code monthsAhead} past {@code current}
+	 * and expires those older than the retention period. Tables that do not
+	 * exist or are not partitioned are skipped.
+	 */
+	void maintain(String table, Spec spec, YearMonth current) {
+		List<String> partitions = jdbcTemplate.queryForList(PARTITIONS_SQL, String.class, table);
+		if (partitions.isEmpty()) {
+			return;
+		}
+		List<YearMonth> months = partitions.stream().map(PartitionManager::monthOf).filter(m -> m != null).toList();
+
+		YearMonth last = months.isEmpty() ? current.minusMonths(1) : months.get(months.size() - 1);
+		List<String> added = new ArrayList<>();
+		for (YearMonth month = last.plusMonths(1); !month.isAfter(current.plusMonths(monthsAhead)); month = month
+				.plusMonths(1)) {
+			added.add(monthPartition(month));
+		}
+		if (!added.isEmpty() && partitions.contains(FUTURE_PARTITION)) {
+			// p_future only holds rows dated past the last month, so splitting it moves few or none
+			added.add(futurePartition());
+			jdbcTemplate.execute("ALTER TABLE `" + table + "` REORGANIZE PARTITION `" + FUTURE_PARTITION + "` INTO ("
+					+ String.join(", ", added) + ")");
+			logger.info("Added {} monthly partition(s) to `{}`", added.size() - 1, table);
+		}
+
+		if (spec.retentionMonths() > 0) {
+			YearMonth oldestKept = current.minusMonths(spec.retentionMonths());
+			for (YearMonth month : months) {
+				if (month.isBefore(oldestKept)) {
+					expire(table, "p" + PARTITION_MONTH.format(month));
+				}
+			}
+		}
+	}
+
+	private void expire(String table, String partition) {
+		if (exportExpired) {
+			String export = table + "_" + partition;
+			jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS `" + export + "` LIKE `" + table + "`");
+			jdbcTemplate.execute("ALTER TABLE `" + export + "` REMOVE PARTITIONING");
+			jdbcTemplate.execute("ALTER TABLE `" + table + "` EXCHANGE PARTITION `" + partition + "` WITH TABLE `"
+					+ export + "`");
+			logger.info("Exchanged partition {} of `{}` into `{}` for export", partition, table, export);
+		}
+		jdbcTemplate.execute("ALTER TABLE `" + table + "` DROP PARTITION `" + partition + "`");
+		logger.info("Dropped expired partition {} of `{}`", partition, table);
+	}
+
+	private static YearMonth monthOf(String partition) {
+		Matcher m = MONTHLY_PARTITION.matcher(partition);
+		return m.matches() ? YearMonth.parse(m.group(1), PARTITION_MONTH) : null;
+	}
+
+	/** Partition for the rows created in {@code month}. */
+	private static String monthPartition(YearMonth month) {
+		return "PARTITION `p" + PARTITION_MONTH.format(month) + "` VALUES LESS THAN (UNIX_TIMESTAMP('"
+				+ month.plusMonths(1).atDay(1) + " 00:00:00'))";
+	}
+
+	private static String futurePartition() {
+		return "PARTITION `" + FUTURE_PARTITION + "` VALUES LESS THAN MAXVALUE";
+	}
+}
@@ -0,0 +1,207 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.SchedulingConfig;
+import sg.edu.nus.iss.edgp.workflow.management.enums.RemediationOutcome;
+
+/**
+ * Groups remediation actions by table (and column, for updates) and applies
+ * each group in one transaction instead of one round trip and commit per cell.
+ * Updates of one column run as a batched {@code UPDATE ... WHERE id = ? AND
+ * col = ?}, which keeps a per-row update count; archives run as one
+ * {@code UPDATE ... WHERE id IN (...)} over the ids that are still active.
+ * <p>
+ * A group is flushed when it reaches {@code batchSize} actions or when its
+ * oldest action has waited {@code maxDelay}, as for clean-data inserts. The
+ * future returned for an action completes with its {@link RemediationOutcome}
+ * after the batch commits, or exceptionally when the action itself failed; a
+ * failed batch is retried action by action so one bad row does not fail its
+ * neighbours.
+ */
+@Component
+public class RemediationBatchWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(RemediationBatchWriter.class);
+
+	@Autowired
+	@Qualifier(DataSourceConfig.INGESTION_JDBC_TEMPLATE)
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	@Qualifier(SchedulingConfig.BATCH_FLUSH_SCHEDULER)
+	private TaskScheduler taskScheduler;
+
+	@Autowired
+	private TableSchemaCache tableSchemaCache;
+
+	@Autowired
+	private DynamicSQLRepository dynamicSQLRepository;
+
+	@Value("${remediation.batch.size:100}")
+	private int batchSize = 100;
+
+	@Value("${remediation.batch.max.delay:PT0.2S}")
+	private Duration maxDelay = Duration.ofMillis(200);
+
+	private final Map<GroupKey, Batch> pending = new ConcurrentHashMap<>();
+	private final Set<String> archiveTables = ConcurrentHashMap.newKeySet();
+
+	/** Actions that can share one statement: archives of a table, or updates of one column. */
+	private record GroupKey(String table, String column) {
+		boolean isArchive() {
+			return column == null;
+		}
+	}
+
+	private record Item(String id, Object fromValue, Object toValue, CompletableFuture<RemediationOutcome> future) {
+	}
+
+	private static final class Batch {
+		final List<Item> items = new ArrayList<>();
+	}
+
+	/** Queues {@code column = toValue} for row {@code id}, applied only while the cell still holds {@code fromValue}. */
+	public CompletableFuture<RemediationOutcome> submitUpdate(String domainName, String column, String id,
+			Object fromValue, Object toValue) {
+		String table = DynamicSQLRepository.sanitizeIdentifier(domainName);
+		String col = column == null ? "" : column.trim().toLowerCase();
+		Map<String, Integer> columnTypes = tableSchemaCache.get(table).getColumnTypes();
+		if (!columnTypes.containsKey(col)) {
+			return CompletableFuture.failedFuture(
+					new IllegalArgumentException("Unknown column `" + column + "` in domain " + domainName));
+		}
+		// Bind as the column's type so the comparison on the old value stays exact
+		Function<Object, Object> converter = InsertPlan.converterFor(columnTypes.get(col));
+		return submit(new GroupKey(table, col), id, converter.apply(fromValue), converter.apply(toValue));
+	}
+
+	/** Queues archiving of row {@code id}; NOT_MATCHED when it is unknown or already archived. */
+	public CompletableFuture<RemediationOutcome> submitArchive(String domainName, String id) {
+		return submit(new GroupKey(DynamicSQLRepository.sanitizeIdentifier(domainName), null), id, null, null);
+	}
+
+	private CompletableFuture<RemediationOutcome> submit(GroupKey key, String id, Object fromValue, Object toValue) {
+		CompletableFuture<RemediationOutcome> future = new CompletableFuture<>();
+		boolean[] first = { false };
+		boolean[] full = { false };
+		pending.compute(key, (k, batch) -> {
+			if (batch == null) {
+				batch = new Batch();
+				first[0] = true;
+			}
+			batch.items.add(new Item(id, fromValue, toValue, future));
+			full[0] = batch.items.size() >= batchSize;
+			return batch;
+		});
+
+		if (full[0]) {
+			flush(key);
+		} else if (first[0]) {
+			taskScheduler.schedule(() -> flush(key), Instant.now().plus(maxDelay));
+		}
+		return future;
+	}
+
+	private void flush(GroupKey key) {
+		Batch batch = pending.remove(key);
+		if (batch == null || batch.items.isEmpty()) {
+			return;
+		}
+		try {
+			List<RemediationOutcome> outcomes = new TransactionTemplate(transactionManager)
+					.execute(status -> apply(key, batch.items));
+			for (int i = 0; i < batch.items.size(); i++) {
+				batch.items.get(i).future().complete(outcomes.get(i));
+			}
+			logger.info("Applied a remediation batch of {} {} action(s) on `{}`", batch.items.size(),
+					key.isArchive() ? "archive" : "update", key.table());
+		} catch (Exception e) {
+			logger.warn("Remediation batch of {} action(s) on `{}` failed ({}); retrying actions individually",
+					batch.items.size(), key.table(), e.getMessage());
+			for (Item item : batch.items) {
+				try {
+					item.future().complete(apply(key, List.of(item)).get(0));
+				} catch (Exception itemError) {
+					item.future().completeExceptionally(itemError);
+				}
+			}
+		}
+	}
+
+	private List<RemediationOutcome> apply(GroupKey key, List<Item> items) {
+		return key.isArchive() ? archive(key.table(), items) : update(key.table(), key.column(), items);
+	}
+
+	private List<RemediationOutcome> update(String table, String column, List<Item> items) {
+		String sql = "UPDATE `" + table + "` SET `" + column + "` = ? WHERE `id` = ? AND `" + column + "` = ?";
+		List<Object[]> args = items.stream().map(i -> new Object[] { i.toValue(), i.id(), i.fromValue() }).toList();
+		int[] counts = jdbcTemplate.batchUpdate(sql, args);
+		List<RemediationOutcome> outcomes = new ArrayList<>(items.size());
+		for (int count : counts) {
+			// Rewritten batches may only report that a statement ran
+			outcomes.add(count > 0 || count == Statement.SUCCESS_NO_INFO ? RemediationOutcome.APPLIED
+					: RemediationOutcome.NOT_MATCHED);
+		}
+		return outcomes;
+	}
+
+	private List<RemediationOutcome> archive(String table, List<Item> items) {
+		if (archiveTables.add(table)) {
+			try {
+				dynamicSQLRepository.createArchiveTable(table, table + "_archive");
+			} catch (Exception e) {
+				archiveTables.remove(table);
+				throw new IllegalStateException("Could not create the archive table of `" + table + "`", e);
+			}
+		}
+
+		List<String> ids = items.stream().map(Item::id).distinct().toList();
+		String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+		// Lock the rows that are still active so the outcome reported for each id is the one committed
+		Set<String> active = new HashSet<>(jdbcTemplate.queryForList("SELECT `id` FROM `" + table
+				+ "` WHERE `id` IN (" + placeholders + ") AND `is_archived` = false FOR UPDATE", String.class,
+				ids.toArray()));
+		if (!active.isEmpty()) {
+			List<String> archived = List.copyOf(active);
+			jdbcTemplate.update("UPDATE `" + table + "` SET `is_archived` = true WHERE `id` IN ("
+					+ archived.stream().map(id -> "?").collect(Collectors.joining(", ")) + ")", archived.toArray());
+		}
+		return items.stream().map(i -> active.contains(i.id()) ? RemediationOutcome.APPLIED
+				: RemediationOutcome.NOT_MATCHED).toList();
+	}
+
+	@PreDestroy
+	public void flushAll() {
+		for (GroupKey key : List.copyOf(pending.keySet())) {
+			flush(key);
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+/**
+ * Adds new dynamic columns to a domain table. Writers that need columns on the
+ * same table while an ALTER is pending join that ALTER instead of issuing their
+ * own: their columns are merged into one multi-column
+ * {@code ALTER TABLE ... ADD COLUMN a, ADD COLUMN b, ALGORITHM=INSTANT}, DDL is
+ * serialised per table, and every writer waits on the same future.
+ * <p>
+ * Another instance may add the same columns at the same time, so a failed
+ * ALTER is re-checked against the live schema before it is reported.
+ * <p>
+ * A value that does not fit its column's type is not allowed to hold up the
+ * insert: writers {@link #deferValues defer} it as text into
+ * {@value #PENDING_VALUE_TABLE} and write the rest of the row, and a scheduled
+ * job widens the column, online where MySQL allows it, and copies the deferred
+ * values in.
+ */
+@Component
+public class SchemaEvolutionCoordinator {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaEvolutionCoordinator.class);
+
+	@Autowired
+	@Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	@Qualifier(DataSourceConfig.DDL_TRANSACTION_MANAGER)
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private TableSchemaCache tableSchemaCache;
+
+	@Value("${dynamic.sql.ddl.instant:true}")
+	private boolean instantDdl = true;
+
+	@Value("${dynamic.sql.unique.key.duplicate.retry.interval:PT1H}")
+	private Duration duplicateRetryInterval = Duration.ofHours(1);
+
+	/** Values waiting for their column to be widened, keyed by the row they belong to. */
+	static final String PENDING_VALUE_TABLE = "dynamic_pending_value";
+
+	private static final String KEY_COLUMN_PATTERN = "[a-z0-9_]+";
+
+	private volatile boolean pendingValueTableReady;
+
+	private final Map<String, ReentrantLock> tableLocks = new ConcurrentHashMap<>();
+	private final Map<String, PendingAlter> pending = new ConcurrentHashMap<>();
+	private final Set<String> checkedUniqueKeys = ConcurrentHashMap.newKeySet();
+	private final Set<String> checkedIndexes = ConcurrentHashMap.newKeySet();
+	private final Set<String> buildingIndexes = ConcurrentHashMap.newKeySet();
+	private final Map<String, IndexRequest> requestedIndexes = new ConcurrentHashMap<>();
+	private final Map<String, UniqueKeyRequest> requestedUniqueKeys = new ConcurrentHashMap<>();
+	private final Map<String, Instant> uniqueKeyRetryAfter = new ConcurrentHashMap<>();
+
+	private record UniqueKeyRequest(String table, String column) {
+	}
+
+	private record IndexRequest(String table, String indexName, List<String> columns) {
+	}
+
+	private static final class PendingAlter {
+		final Map<String, String> columns = new LinkedHashMap<>();
+		final CompletableFuture<TableSchema> done = new CompletableFuture<>();
+	}
+
+	/**
+	 * Makes sure {@code columnTypes} (column name to SQL type) exist on the
+	 * table, blocking until they do. Returns the schema that has them.
+	 */
+	public TableSchema ensureColumns(String tableName, Map<String, String> columnTypes) {
+		String table = tableName.toLowerCase();
+		TableSchema schema = tableSchemaCache.get(table);
+		Map<String, String> missing = missingColumns(schema, columnTypes);
+		if (missing.isEmpty()) {
+			return schema;
+		}
+
+		boolean[] leader = { false };
+		PendingAlter alter = pending.compute(table, (k, current) -> {
+			if (current == null) {
+				current = new PendingAlter();
+				leader[0] = true;
+			}
+			missing.forEach(current.columns::putIfAbsent);
+			return current;
+		});
+
+		if (leader[0]) {
+			apply(table, alter);
+		}
+		try {
+			return alter.done.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException re ? re : e;
+		}
+	}
+
+	/**
+	 * Queues adding a unique key on {@code column} for
+	 * {@link #buildRequestedIndexes}, for tables created before it was part of
+	 * the table definition. A no-op once the key is known to exist or is
+	 * already queued.
+	 */
+	public void requestUniqueKey(String tableName, String column) {
+		String table = tableName.toLowerCase();
+		String checkKey = table + "." + column;
+		if (!checkedUniqueKeys.contains(checkKey)) {
+			requestedUniqueKeys.putIfAbsent(checkKey, new UniqueKeyRequest(table, column));
+		}
+	}
+
+	/**
+	 * Makes sure {@code column} has a unique index, adding it online when it is
+	 * missing, and returns whether it is in place. The key only counts as
+	 * checked once it exists: a failed ALTER (a lock wait timeout, say) is
+	 * tried again by the next call. When the table already holds duplicates the
+	 * key cannot be added until an operator removes them, which is reported as
+	 * an error on every attempt.
+	 */
+	public boolean ensureUniqueKey(String tableName, String column) {
+		String table = tableName.toLowerCase();
+		String checkKey = table + "." + column;
+		if (checkedUniqueKeys.contains(checkKey)) {
+			return true;
+		}
+		if (!buildingIndexes.add(checkKey)) {
+			return false;
+		}
+		try {
+			if (!uniqueKeyExists(table, column)) {
+				try {
+					jdbcTemplate.execute("ALTER TABLE `" + table + "` ADD UNIQUE KEY `uk_" + column + "` (`" + column
+							+ "`), ALGORITHM=INPLACE, LOCK=NONE");
+					logger.info("Added unique key on `{}`.`{}`", table, column);
+				} catch (RuntimeException e) {
+					if (!uniqueKeyExists(table, column)) {
+						reportUniqueKeyFailure(table, column, e);
+						return false;
+					}
+				}
+			}
+			checkedUniqueKeys.add(checkKey);
+			return true;
+		} catch (RuntimeException e) {
+			logger.warn("Could not check the unique key on `{}`.`{}`; retrying later: {}", table, column,
+					e.getMessage());
+			return false;
+		} finally {
+			buildingIndexes.remove(checkKey);
+		}
+	}
+
+	private boolean uniqueKeyExists(String table, String column) {
+		Integer unique = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()"
+						+ " AND table_name = ? AND column_name = ? AND non_unique = 0",
+				Integer.class, table, column);
+		return unique != null && unique > 0;
+	}
+
+	private void reportUniqueKeyFailure(String table, String column, RuntimeException e) {
+		String duplicatesSql = "SELECT `" + column + "`, COUNT(*) FROM `" + table + "` WHERE `" + column
+				+ "` IS NOT NULL GROUP BY `" + column + "` HAVING COUNT(*) > 1";
+		Long duplicates = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (" + duplicatesSql + ") d", Long.class);
+		if (duplicates == null || duplicates == 0) {
+			logger.warn("Could not add unique key on `{}`.`{}`; retrying later: {}", table, column, e.getMessage());
+			return;
+		}
+		// Until the key exists upserts fall back to the row id, so every replay adds another duplicate
+		logger.error("OPERATOR ACTION REQUIRED: `{}` has {} `{}` value(s) held by more than one row, so its unique"
+				+ " key cannot be added and replayed records are not deduplicated. Remove the duplicate rows"
+				+ " (list them with: {}); the key is added on the next attempt.", table, duplicates, column,
+				duplicatesSql);
+		uniqueKeyRetryAfter.put(table + "." + column, Instant.now().plus(duplicateRetryInterval));
+	}
+
+	/**
+	 * Queues a build of the secondary index {@code indexName} over
+	 * {@code columns} for {@link #buildRequestedIndexes}, so the writer that
+	 * asks for it does not wait for the build. A no-op once the index is known to
+	 * exist or is already queued.
+	 */
+	public void requestIndex(String tableName, String indexName, List<String> columns) {
+		String table = tableName.toLowerCase();
+		String checkKey = table + "#" + indexName;
+		if (!checkedIndexes.contains(checkKey)) {
+			requestedIndexes.putIfAbsent(checkKey, new IndexRequest(table, indexName, List.copyOf(columns)));
+		}
+	}
+
+	/**
+	 * Adds the queued unique keys and builds the queued indexes, one at a time
+	 * on the DDL pool. One whose columns do not exist yet, or whose build
+	 * failed, stays queued for the next run; a unique key blocked by duplicate
+	 * rows is retried after {@code duplicateRetryInterval}.
+	 */
+	@Scheduled(fixedDelayString = "${dynamic.sql.index.build.interval:PT1M}",
+			initialDelayString = "${dynamic.sql.index.build.interval:PT1M}")
+	public void buildRequestedIndexes() {
+		// Unique keys first: without one, replayed records are written twice
+		requestedUniqueKeys.forEach((checkKey, request) -> {
+			Instant retryAfter = uniqueKeyRetryAfter.get(checkKey);
+			if (retryAfter != null && Instant.now().isBefore(retryAfter)) {
+				return;
+			}
+			if (ensureUniqueKey(request.table(), request.column())) {
+				requestedUniqueKeys.remove(checkKey, request);
+				uniqueKeyRetryAfter.remove(checkKey);
+			}
+		});
+		requestedIndexes.forEach((checkKey, request) -> {
+			if (ensureIndex(request.table(), request.indexName(), request.columns())) {
+				requestedIndexes.remove(checkKey, request);
+			}
+		});
+	}
+
+	/**
+	 * Makes sure the table has a secondary index named {@code indexName}, adding
+	 * it online over {@code columns} when it is missing, and blocking until it
+	 * is built; writers use {@link #requestIndex} instead. Dynamic columns only
+	 * appear with the first rows that carry them, so the check is repeated until
+	 * all of {@code columns} exist; after that it runs once per table. Returns
+	 * whether the index is in place, and false while another caller is building
+	 * it.
+	 * <p>
+	 * The table lock is not held: the build can take minutes on a large table,
+	 * and MySQL lets writes continue while it runs.
+	 */
+	public boolean ensureIndex(String tableName, String indexName, List<String> columns) {
+		String table = tableName.toLowerCase();
+		String checkKey = table + "#" + indexName;
+		if (checkedIndexes.contains(checkKey)) {
+			return true;
+		}
+		if (!tableSchemaCache.get(table).getColumns().containsAll(columns)) {
+			return false;
+		}
+		if (!buildingIndexes.add(checkKey)) {
+			return false;
+		}
+		try {
+			if (!indexExists(table, indexName)) {
+				String indexColumns = columns.stream().map(c -> "`" + c + "`").collect(Collectors.joining(", "));
+				try {
+					jdbcTemplate.execute("ALTER TABLE `" + table + "` ADD INDEX `" + indexName + "` (" + indexColumns
+							+ "), ALGORITHM=INPLACE, LOCK=NONE");
+					logger.info("Added index `{}` on `{}` ({})", indexName, table, indexColumns);
+				} catch (RuntimeException e) {
+					// Another instance may have built it meanwhile
+					if (!indexExists(table, indexName)) {
+						throw e;
+					}
+				}
+			}
+			checkedIndexes.add(checkKey);
+			return true;
+		} catch (RuntimeException e) {
+			// Reads still work without the index; the next request tries again
+			logger.warn("Could not add index `{}` on `{}`: {}", indexName, table, e.getMessage());
+			return false;
+		} finally {
+			buildingIndexes.remove(checkKey);
+		}
+	}
+
+	private boolean indexExists(String table, String indexName) {
+		Integer existing = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()"
+						+ " AND table_name = ? AND index_name = ?",
+				Integer.class, table, indexName);
+		return existing != null && existing > 0;
+	}
+
+	/**
+	 * Widens existing columns so each holds values of the requested
+	 * {@link ColumnType}, blocking until it does. The live type is re-read under
+	 * the table lock and only ever widened, so a caller that lost the race to
+	 * another one does not alter the column again. Columns of types that are not
+	 * widened are left as they are. Returns the schema after the change.
+	 * <p>
+	 * The change is made in place without blocking writes where MySQL allows it
+	 * (e.g. a longer VARCHAR of the same length-byte size); a change of type
+	 * copies the table, so this is only called off the insert path.
+	 */
+	public TableSchema widenColumns(String tableName, Map<String, ColumnType> columnTypes) {
+		String table = tableName.toLowerCase();
+		ReentrantLock lock = tableLocks.computeIfAbsent(table, k -> new ReentrantLock());
+		lock.lock();
+		try {
+			TableSchema schema = tableSchemaCache.refresh(table);
+			Map<String, String> modify = new LinkedHashMap<>();
+			columnTypes.forEach((column, needed) -> {
+				ColumnType current = schema.getSqlTypes().get(column.toLowerCase());
+				if (current != null && !current.widen(needed).equals(current)) {
+					modify.put(column.toLowerCase(), current.widen(needed).sql());
+				}
+			});
+			if (modify.isEmpty()) {
+				return schema;
+			}
+
+			String alter = "ALTER TABLE `" + table + "` " + modify.entrySet().stream()
+					.map(e -> "MODIFY COLUMN `" + e.getKey() + "` " + e.getValue() + " NULL")
+					.collect(Collectors.joining(", "));
+			try {
+				jdbcTemplate.execute(alter + ", ALGORITHM=INPLACE, LOCK=NONE");
+			} catch (RuntimeException inplaceFailed) {
+				logger.warn("Widening {} on `{}` cannot be done in place ({}); copying the table", modify.keySet(),
+						table, inplaceFailed.getMessage());
+				jdbcTemplate.execute(alter);
+			}
+			logger.info("Widened {} column(s) on `{}`: {}", modify.size(), table, modify);
+			return tableSchemaCache.refresh(table);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Holds {@code values} (column to value) of one row as text until their
+	 * columns have been widened to fit them. The row is identified by its
+	 * {@code keyColumn} value, the tracker id or the row id, and a later value
+	 * for the same row and column replaces an earlier one. The caller writes the
+	 * rest of the row without these columns.
+	 */
+	public void deferValues(String tableName, String keyColumn, String rowKey, Map<String, Object> values) {
+		if (values.isEmpty()) {
+			return;
+		}
+		if (!keyColumn.matches(KEY_COLUMN_PATTERN)) {
+			throw new IllegalArgumentException("Invalid key column `" + keyColumn + "`");
+		}
+		ensurePendingValueTable();
+		String table = tableName.toLowerCase();
+		List<Object[]> args = new ArrayList<>();
+		values.forEach((column, value) -> args.add(new Object[] { table, column.toLowerCase(), keyColumn, rowKey,
+				value == null ? null : value.toString().trim() }));
+		jdbcTemplate.batchUpdate("INSERT INTO `" + PENDING_VALUE_TABLE
+				+ "` (`table_name`, `column_name`, `key_column`, `row_key`, `value`) VALUES (?, ?, ?, ?, ?)"
+				+ " ON DUPLICATE KEY UPDATE `value` = VALUES(`value`)", args);
+		logger.info("Deferred {} value(s) of `{}` row {} until their columns are widened", values.size(), table,
+				rowKey);
+	}
+
+	/**
+	 * Widens the columns that have deferred values so each fits all of them,
+	 * then copies the values into their rows. Deferred values whose row has not
+	 * been committed yet stay for the next run, as do those of a table whose
+	 * change failed.
+	 */
+	@Scheduled(fixedDelayString = "${dynamic.sql.widen.interval:PT30S}",
+			initialDelayString = "${dynamic.sql.widen.interval:PT30S}")
+	public void applyDeferredValues() {
+		Map<String, Map<String, ColumnType>> needed = new LinkedHashMap<>();
+		Map<String, Set<String>> keyColumns = new LinkedHashMap<>();
+		try {
+			ensurePendingValueTable();
+			jdbcTemplate.query("SELECT `table_name`, `column_name`, `key_column`, `value` FROM `"
+					+ PENDING_VALUE_TABLE + "`", rs -> {
+						String table = rs.getString(1);
+						Map<String, ColumnType> columns = needed.computeIfAbsent(table, k -> new LinkedHashMap<>());
+						ColumnType type = ColumnType.infer(rs.getString(4));
+						columns.put(rs.getString(2), type == null ? columns.get(rs.getString(2))
+								: type.widen(columns.get(rs.getString(2))));
+						keyColumns.computeIfAbsent(table, k -> new LinkedHashSet<>()).add(rs.getString(3));
+					});
+		} catch (RuntimeException e) {
+			logger.warn("Could not read deferred column values: {}", e.getMessage());
+			return;
+		}
+
+		needed.forEach((table, columns) -> {
+			try {
+				Map<String, ColumnType> widen = new LinkedHashMap<>(columns);
+				widen.values().removeIf(type -> type == null);
+				TableSchema schema = widenColumns(table, widen);
+				for (String column : columns.keySet()) {
+					if (!schema.getColumns().contains(column)) {
+						continue;
+					}
+					for (String keyColumn : keyColumns.get(table)) {
+						if (keyColumn.matches(KEY_COLUMN_PATTERN) && schema.getColumns().contains(keyColumn)) {
+							copyDeferredValues(table, column, keyColumn);
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Could not apply deferred values of `{}`; retrying on the next run: {}", table,
+						e.getMessage());
+			}
+		});
+	}
+
+	private void copyDeferredValues(String table, String column, String keyColumn) {
+		String join = "`" + PENDING_VALUE_TABLE + "` p JOIN `" + table + "` d ON d.`" + keyColumn + "` = p.`row_key`";
+		String match = " WHERE p.`table_name` = ? AND p.`column_name` = ? AND p.`key_column` = ?";
+		// One transaction, so a value deferred again meanwhile is not deleted unapplied
+		Integer copied = new TransactionTemplate(transactionManager).execute(status -> {
+			int updated = jdbcTemplate.update("UPDATE " + join + " SET d.`" + column + "` = p.`value`" + match, table,
+					column, keyColumn);
+			jdbcTemplate.update("DELETE p FROM " + join + match, table, column, keyColumn);
+			return updated;
+		});
+		if (copied != null && copied > 0) {
+			logger.info("Copied {} deferred value(s) into `{}`.`{}`", copied, table, column);
+		}
+	}
+
+	private void ensurePendingValueTable() {
+		if (pendingValueTableReady) {
+			return;
+		}
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS `" + PENDING_VALUE_TABLE + "` ("
+				+ "`table_name` VARCHAR(64) NOT NULL, `column_name` VARCHAR(64) NOT NULL,"
+				+ " `key_column` VARCHAR(64) NOT NULL, `row_key` VARCHAR(191) NOT NULL, `value` TEXT NULL,"
+				+ " `created_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+				+ " PRIMARY KEY (`table_name`, `column_name`, `key_column`, `row_key`))");
+		pendingValueTableReady = true;
+	}
+
+	private void apply(String table, PendingAlter alter) {
+		ReentrantLock lock = tableLocks.computeIfAbsent(table, k -> new ReentrantLock());
+		lock.lock();
+		try {
+			// Nothing can join this ALTER once it is off the map; later writers start the next one
+			pending.remove(table, alter);
+			alter.done.complete(addColumns(table, alter.columns));
+		} catch (RuntimeException e) {
+			alter.done.completeExceptionally(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private TableSchema addColumns(String table, Map<String, String> requested) {
+		// An earlier ALTER (here or on another instance) may already have added some of them
+		TableSchema schema = tableSchemaCache.refresh(table);
+		Map<String, String> missing = missingColumns(schema, requested);
+		if (missing.isEmpty()) {
+			return schema;
+		}
+
+		String addColumns = missing.entrySet().stream()
+				.map(e -> "ADD COLUMN `" + e.getKey() + "` " + e.getValue()).collect(Collectors.joining(", "));
+		String alter = "ALTER TABLE `" + table + "` " + addColumns;
+
+		try {
+			if (instantDdl) {
+				try {
+					jdbcTemplate.execute(alter + ", ALGORITHM=INSTANT");
+				} catch (RuntimeException instantFailed) {
+					// Older servers, or a table at its instant-change limit, need the default algorithm
+					logger.warn("Instant ALTER on `{}` was rejected ({}); retrying with the default algorithm", table,
+							instantFailed.getMessage());
+					jdbcTemplate.execute(alter);
+				}
+			} else {
+				jdbcTemplate.execute(alter);
+			}
+			logger.info("Added {} column(s) to `{}`: {}", missing.size(), table, missing.keySet());
+		} catch (RuntimeException e) {
+			TableSchema current = tableSchemaCache.refresh(table);
+			if (missingColumns(current, requested).isEmpty()) {
+				logger.info("Columns {} on `{}` were added concurrently", missing.keySet(), table);
+				return current;
+			}
+			throw e;
+		}
+		return tableSchemaCache.refresh(table);
+	}
+
+	private static Map<String, String> missingColumns(TableSchema schema, Map<String, String> columnTypes) {
+		Map<String, String> missing = new LinkedHashMap<>();
+		columnTypes.forEach((column, type) -> {
+			if (!schema.getColumns().contains(column.toLowerCase())) {
+				missing.put(column, type);
+			}
+		});
+		return missing;
+	}
+}
@@ -0,0 +1,150 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+
+/**
+ * Per-table column metadata for the dynamic domain tables, so the clean-data
+ * insert path does not query information_schema or run {@code SELECT * LIMIT 1}
+ * for every record. The DDL path refreshes a table after changing it, and a
+ * periodic refresh picks up changes made outside this service.
+ * <p>
+ * Only tables that exist are kept. Lookups take table names from requests,
+ * e.g. the {@code _archive} table of any domain, and caching their misses
+ * would let callers grow the map without bound.
+ */
+@Component
+public class TableSchemaCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(TableSchemaCache.class);
+
+	@Autowired
+	@Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
+	private JdbcTemplate jdbcTemplate;
+
+	private final Map<String, TableSchema> schemas = new ConcurrentHashMap<>();
+
+	/**
+	 * Columns of one table in ordinal order, keyed by lower-case name with their
+	 * {@link java.sql.Types} code, and the {@link ColumnType} of those whose type
+	 * can be widened.
+	 */
+	@Getter
+	@RequiredArgsConstructor
+	public static final class TableSchema {
+
+		private final boolean exists;
+		private final Map<String, Integer> columnTypes;
+		private final Map<String, ColumnType> sqlTypes;
+
+		public TableSchema(boolean exists, Map<String, Integer> columnTypes) {
+			this(exists, columnTypes, Map.of());
+		}
+
+		public Set<String> getColumns() {
+			return columnTypes.keySet();
+		}
+	}
+
+	public TableSchema get(String tableName) {
+		String key = tableName.toLowerCase();
+		TableSchema cached = schemas.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		return refresh(key);
+	}
+
+	/** Reloads one table; call after DDL on it. */
+	public TableSchema refresh(String tableName) {
+		String key = tableName.toLowerCase();
+		try {
+			TableSchema schema = load(key);
+			if (schema.isExists()) {
+				schemas.put(key, schema);
+			} else {
+				schemas.remove(key);
+			}
+			return schema;
+		} catch (SQLException e) {
+			schemas.remove(key);
+			throw new IllegalStateException("Could not read the schema of table `" + key + "`", e);
+		}
+	}
+
+	/** Drops a table from the cache so its next use reloads it, e.g. after a failed insert. */
+	public void invalidate(String tableName) {
+		schemas.remove(tableName.toLowerCase());
+	}
+
+	@Scheduled(fixedDelayString = "${dynamic.sql.schema.cache.refresh.interval:PT10M}",
+			initialDelayString = "${dynamic.sql.schema.cache.refresh.interval:PT10M}")
+	public void refreshAll() {
+		for (String tableName : Set.copyOf(schemas.keySet())) {
+			try {
+				refresh(tableName);
+			} catch (Exception e) {
+				logger.warn("Could not refresh cached schema of table `{}`: {}", tableName, e.getMessage());
+			}
+		}
+	}
+
+	private TableSchema load(String tableName) throws SQLException {
+		Map<String, Integer> columnTypes = new LinkedHashMap<>();
+		Map<String, ColumnType> sqlTypes = new LinkedHashMap<>();
+		try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+			DatabaseMetaData meta = conn.getMetaData();
+			// One metadata call gives existence, names and types; '_' in the pattern is a
+			// wildcard, so rows for similarly named tables are filtered out
+			try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, tableName, null)) {
+				while (rs.next()) {
+					if (tableName.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+						String column = rs.getString("COLUMN_NAME").toLowerCase();
+						columnTypes.put(column, rs.getInt("DATA_TYPE"));
+						ColumnType sqlType = ColumnType.parse(definition(rs.getString("TYPE_NAME"),
+								rs.getInt("COLUMN_SIZE"), rs.getInt("DECIMAL_DIGITS")));
+						if (sqlType != null) {
+							sqlTypes.put(column, sqlType);
+						}
+					}
+				}
+			}
+		}
+		logger.info("Loaded schema of table `{}` with {} columns", tableName, columnTypes.size());
+		return new TableSchema(!columnTypes.isEmpty(), Collections.unmodifiableMap(columnTypes),
+				Collections.unmodifiableMap(sqlTypes));
+	}
+
+	/** Column definition in DDL form from the driver's TYPE_NAME, COLUMN_SIZE and DECIMAL_DIGITS. */
+	static String definition(String typeName, int size, int digits) {
+		if (typeName == null) {
+			return null;
+		}
+		String name = typeName.toUpperCase();
+		return switch (name) {
+		case "VARCHAR", "CHAR", "BIT" -> name + "(" + size + ")";
+		case "DECIMAL" -> name + "(" + size + "," + digits + ")";
+		case "DATETIME", "TIMESTAMP" -> digits > 0 ? name + "(" + digits + ")" : name;
+		default -> name;
+		};
+	}
+}
@@ -0,0 +1,6 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+public interface IDomainDataArchiveService {
+
+	int archiveTable(String tableName);
+}
@@ -0,0 +1,13 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+public interface IDomainDataCountService {
+
+	/** Total reported when an approximate count would cost a full count of a large table. */
+	long UNKNOWN_TOTAL = -1;
+
+	long countDomainData(String domainName, String userOrgId, String fileId, Boolean includeArchive, boolean exact);
+
+	void recordInserted(String domainName, String userOrgId, String fileId);
+
+	void recordArchived(String domainName);
+}
@@ -1,17 +1,35 @@
 package sg.edu.nus.iss.edgp.workflow.management.service;
 
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.data.domain.Pageable;
 
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataSlice;
+
 public interface IDomainDataService {
 
 	Map<Long, List<Map<String, Object>>> retrieveAllDomainDataList(String domainName, String userOrgId,
-			String fileId,  Boolean includeArchive);
+			String fileId,  Boolean includeArchive, List<String> columns, List<String> filters);
 	
+	boolean tryStartStream();
+
+	void endStream();
+
+	long streamAllDomainDataList(String domainName, String userOrgId, String fileId, Boolean includeArchive,
+			List<String> columns, List<String> filters, OutputStream out);
+
 	Map<Long, List<Map<String, Object>>> retrievePaginatedDomainDataList(String domainName, String userOrgId,
-			String fileId, Pageable pageable,  Boolean includeArchive);
+			String fileId, Pageable pageable,  Boolean includeArchive, boolean exactTotal, List<String> columns,
+			List<String> filters);
 	
+	DomainDataSlice retrieveDomainDataListAfter(String domainName, String userOrgId, String fileId,
+			DomainDataCursor cursor, int size, Boolean includeArchive, List<String> columns, List<String> filters);
+
+	/** Throws IllegalArgumentException for columns or filters the domain table cannot serve. */
+	void validateQuery(String domainName, List<String> columns, List<String> filters);
+
 	Map<String, Object> retrieveDetailDomainDataRecordById(String domainName, String id);
 }
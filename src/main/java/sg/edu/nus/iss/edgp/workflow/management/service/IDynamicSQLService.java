@@ -1,10 +1,12 @@
 package sg.edu.nus.iss.edgp.workflow.management.service;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface IDynamicSQLService {
 
-	void buildCreateTableSQL(Map<String, Object> data, String tableName);
+	/** Evolves the table for {@code data} and queues the row; the future completes when the row is committed. */
+	CompletableFuture<Void> buildCreateTableSQL(Map<String, Object> data, String tableName);
 
-	void insertData(String tableName, Map<String, Object> data);
+	CompletableFuture<Void> insertData(String tableName, Map<String, Object> data);
 }
@@ -0,0 +1,10 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import java.util.HashMap;
+
+public interface IFileFinalizationService {
+
+	void requestFinalization(String fileId);
+
+	boolean finalizeIfComplete(HashMap<String, String> fileInfo);
+}
@@ -0,0 +1,19 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import sg.edu.nus.iss.edgp.workflow.management.dto.FileProgress;
+
+public interface IFileProgressService {
+
+	void recordReceived(String fileId, String trackerId);
+
+	void recordFinalized(String fileId, String trackerId, String status, String organizationId);
+
+	void foldShards(String fileId);
+
+	Optional<String> completedFileStatus(String fileId);
+
+	List<FileProgress> retrieveFileProgress(List<String> fileIds, String userOrgId);
+}
@@ -0,0 +1,10 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import java.util.List;
+
+import sg.edu.nus.iss.edgp.workflow.management.dto.IndexProposal;
+
+public interface IIndexAdvisorService {
+
+	List<IndexProposal> reviewSlowQueries();
+}
@@ -1,13 +1,25 @@
 package sg.edu.nus.iss.edgp.workflow.management.service;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 
 import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
 
 public interface IProcessStatusObserverService {
 	
 	HashMap<String,String> fetchOldestIdByProcessStage(FileProcessStage stage);
+	List<HashMap<String,String>> fetchAllIdsByProcessStage(FileProcessStage stage);
+	boolean checkActiveStageIndex();
+	int tagUntrackedFilesByProcessStage(FileProcessStage stage);
+	void markFileActive(String fileId);
 	boolean isAllDataProcessed(String fileId);
 	String getAllStatusForFile(String fileId);
 	void updateFileStageAndStatus(String fileId, FileProcessStage stage, String status);
+	HashMap<String,String> fetchFileInfoByStage(String fileId, FileProcessStage stage);
+	boolean markFileComplete(String fileId, String status);
+	void markFileNotified(String fileId);
+	boolean acquireFileLease(String fileId, String owner, Duration ttl);
+	boolean renewFileLease(String fileId, String owner, Duration ttl);
+	void releaseFileLease(String fileId, String owner);
 }
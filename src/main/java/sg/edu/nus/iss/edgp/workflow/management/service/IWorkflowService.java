@@ -2,12 +2,13 @@ package sg.edu.nus.iss.edgp.workflow.management.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 
 public interface IWorkflowService {
 
-	void updateDataQualityWorkflowStatus(Map<String, Object> data);
+	CompletableFuture<Void> updateDataQualityWorkflowStatus(Map<String, Object> data);
 	
 	boolean isAllDataProcessed(String fileId);
  
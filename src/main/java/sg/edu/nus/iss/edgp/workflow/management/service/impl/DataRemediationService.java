@@ -1,14 +1,17 @@
 package sg.edu.nus.iss.edgp.workflow.management.service.impl;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.enums.RemediationOutcome;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
-import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.RemediationBatchWriter;
+import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataCountService;
 import sg.edu.nus.iss.edgp.workflow.management.utility.Mode;
 
 @RequiredArgsConstructor
@@ -16,12 +19,19 @@ import sg.edu.nus.iss.edgp.workflow.management.utility.Mode;
 public class DataRemediationService {
 
 	private static final Logger logger = LoggerFactory.getLogger(DataRemediationService.class);
-	private final DynamicSQLRepository dynamicSQLRepository;
+	private final RemediationBatchWriter remediationBatchWriter;
+	private final IDomainDataCountService domainDataCountService;
 
-	public void updateDataRemediationResponse(Map<String, Object> rawData) {
+	/**
+	 * Queues the remediation action in the message for the batch writer. The
+	 * returned future completes with the action's outcome once its batch has
+	 * committed (null when the message carries no action), and exceptionally
+	 * when applying it failed.
+	 */
+	public CompletableFuture<RemediationOutcome> updateDataRemediationResponse(Map<String, Object> rawData) {
 	    try {
 	        if (rawData == null || rawData.isEmpty()) {
-	            return; 
+	            return CompletableFuture.completedFuture(null);
 	        }
 
 	        // mode must be a String and equal to Mode.AUTO (case-insensitive)
@@ -33,7 +43,7 @@ public class DataRemediationService {
 	        logger.info("Data received in updateDataRemediationResponse ");
 	        Object dataObj = rawData.get("data");
 	        if (!(dataObj instanceof Map<?, ?> data)) {
-	            return;
+	            return CompletableFuture.completedFuture(null);
 	        }
 
 	        String action      = asString(data.get("action"));
@@ -42,22 +52,26 @@ public class DataRemediationService {
 	        String fromValue  = asString(data.get("from_value"));
 	        String toValue          = asString(data.get("to_value"));
 	        String fieldName          = asString(data.get("field_name"));
-	        String message          = asString(data.get("message"));
 
 	        if ("delete".equalsIgnoreCase(action)) {
 	            requireNonEmpty(id, "id");
 	            requireNonEmpty(domainName, "domain_name");
-	            dynamicSQLRepository.insertArchiveData(domainName, id, message);
-	            logger.info("Updated remediation delete data status successfully");
+	            return remediationBatchWriter.submitArchive(domainName, id).thenApply(outcome -> {
+	                if (outcome == RemediationOutcome.APPLIED) {
+	                    domainDataCountService.recordArchived(domainName);
+	                }
+	                return outcome;
+	            }).whenComplete((outcome, e) -> report("delete", domainName, id, outcome, e));
 	        } else if ("update".equalsIgnoreCase(action)) {
 	        	 requireNonEmpty(id, "id");
 		         requireNonEmpty(fromValue, "old value");
 		         requireNonEmpty(id, "id");
 		         requireNonEmpty(toValue, "updated value");
 		         requireNonEmpty(fieldName, "column value");
-		         dynamicSQLRepository.updateColumnValue(domainName, fieldName, id, fromValue, toValue);
-		         logger.info("Updated remediation update data status successfully");
+		         return remediationBatchWriter.submitUpdate(domainName, fieldName, id, fromValue, toValue)
+		                 .whenComplete((outcome, e) -> report("update", domainName, id, outcome, e));
 	        }
+	        return CompletableFuture.completedFuture(null);
 
 	    } catch (Exception ex) {
 	        logger.error("An error occurred while updating data remediation response", ex);
@@ -65,6 +79,15 @@ public class DataRemediationService {
 	    }
 	}
 
+	private static void report(String action, String domainName, String id, RemediationOutcome outcome,
+			Throwable error) {
+		if (error != null) {
+			logger.error("Remediation {} of `{}` id {} failed: {}", action, domainName, id, error.getMessage());
+		} else {
+			logger.info("Remediation {} of `{}` id {}: {}", action, domainName, id, outcome);
+		}
+	}
+
 	private static String asString(Object o) {
 	    return (o == null) ? null : String.valueOf(o);
 	}
@@ -0,0 +1,205 @@
+package sg.edu.nus.iss.edgp.workflow.management.service.impl;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.repository.ColumnType;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.PartitionManager;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataArchiveService;
+
+/**
+ * Moves archived rows out of the domain tables into their
+ * {@code <domain>_archive} tables, so the hot tables and their indexes only
+ * hold active rows. Each batch locks up to {@code batchSize} archived rows,
+ * copies them to the archive and deletes them in one transaction, and the
+ * archiver pauses between batches and stops after {@code maxBatchesPerRun}
+ * so a large backlog is worked off over several runs without crowding out
+ * ingestion.
+ * <p>
+ * The archive table starts as a copy of the domain table's definition and is
+ * brought up to its columns and column types before every run.
+ */
+@RequiredArgsConstructor
+@Service
+public class DomainDataArchiveService implements IDomainDataArchiveService {
+
+	private static final Logger logger = LoggerFactory.getLogger(DomainDataArchiveService.class);
+
+	/** InnoDB appends the primary key to secondary indexes, so this also serves ORDER BY id. */
+	static final String ARCHIVED_INDEX = "idx_archived";
+
+	private static final String DOMAIN_TABLES_SQL = "SELECT table_name FROM information_schema.columns"
+			+ " WHERE table_schema = DATABASE() AND column_name = 'is_archived' AND table_name NOT LIKE '%\\_archive'"
+			+ " AND table_name NOT REGEXP '" + PartitionManager.EXPORT_TABLE_PATTERN + "'";
+
+	private static final String COLUMN_TYPES_SQL = "SELECT COLUMN_NAME, COLUMN_TYPE FROM information_schema.columns"
+			+ " WHERE table_schema = DATABASE() AND table_name = ? ORDER BY ORDINAL_POSITION";
+
+	@Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
+	private final JdbcTemplate jdbcTemplate;
+	@Qualifier(DataSourceConfig.DDL_TRANSACTION_MANAGER)
+	private final PlatformTransactionManager transactionManager;
+	private final TableSchemaCache tableSchemaCache;
+	private final SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+	private final DynamicSQLRepository dynamicSQLRepository;
+
+	@Value("${domain.data.archive.enabled:true}")
+	private boolean enabled = true;
+
+	@Value("${domain.data.archive.batch.size:500}")
+	private int batchSize = 500;
+
+	@Value("${domain.data.archive.batch.pause:PT0.5S}")
+	private Duration batchPause = Duration.ofMillis(500);
+
+	@Value("${domain.data.archive.max.batches.per.run:100}")
+	private int maxBatchesPerRun = 100;
+
+	@Scheduled(fixedDelayString = "${domain.data.archive.interval:PT5M}",
+			initialDelayString = "${domain.data.archive.interval:PT5M}")
+	public void scheduledArchive() {
+		if (enabled) {
+			archiveAll();
+		}
+	}
+
+	public void archiveAll() {
+		for (String table : jdbcTemplate.queryForList(DOMAIN_TABLES_SQL, String.class)) {
+			try {
+				archiveTable(table);
+			} catch (Exception e) {
+				logger.warn("Could not move archived rows of `{}`: {}", table, e.getMessage());
+			}
+		}
+	}
+
+	/** Moves the archived rows of one domain table; returns how many were moved. */
+	@Override
+	public int archiveTable(String tableName) {
+		String table = tableName.toLowerCase();
+		schemaEvolutionCoordinator.ensureIndex(table, ARCHIVED_INDEX, List.of("is_archived"));
+		if (jdbcTemplate.queryForList("SELECT `id` FROM `" + table + "` WHERE `is_archived` = true LIMIT 1")
+				.isEmpty()) {
+			return 0;
+		}
+
+		List<String> columns = prepareArchiveTable(table);
+		if (columns == null) {
+			return 0;
+		}
+		String archive = table + DomainDataRepository.ARCHIVE_SUFFIX;
+		String columnList = columns.stream().map(c -> "`" + c + "`").collect(Collectors.joining(", "));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		int moved = 0;
+		for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+			Integer count = transactionTemplate.execute(status -> moveBatch(table, archive, columnList));
+			moved += count == null ? 0 : count;
+			if (count == null || count < batchSize || !pause()) {
+				break;
+			}
+		}
+		logger.info("Moved {} archived row(s) from `{}` to `{}`", moved, table, archive);
+		return moved;
+	}
+
+	private int moveBatch(String table, String archive, String columnList) {
+		// Locking the batch keeps a concurrent run on another instance off these rows
+		List<String> ids = jdbcTemplate.queryForList("SELECT `id` FROM `" + table
+				+ "` WHERE `is_archived` = true ORDER BY `id` LIMIT ? FOR UPDATE", String.class, batchSize);
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+		// REPLACE keeps a rerun after a failed delete from tripping over rows already copied
+		jdbcTemplate.update("REPLACE INTO `" + archive + "` (" + columnList + ") SELECT " + columnList + " FROM `"
+				+ table + "` WHERE `id` IN (" + placeholders + ")", ids.toArray());
+		jdbcTemplate.update("DELETE FROM `" + table + "` WHERE `id` IN (" + placeholders + ")", ids.toArray());
+		return ids.size();
+	}
+
+	/**
+	 * Creates the archive table if needed and adds or widens its columns to
+	 * match the domain table. Returns the columns to copy, or null when the
+	 * archive table still has the old standalone layout and holds rows, which
+	 * are left for an operator to migrate.
+	 */
+	private List<String> prepareArchiveTable(String table) {
+		String archive = table + DomainDataRepository.ARCHIVE_SUFFIX;
+		TableSchema archiveSchema = tableSchemaCache.refresh(archive);
+		if (archiveSchema.isExists() && !archiveSchema.getColumns().contains("is_archived")) {
+			Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `" + archive + "`", Long.class);
+			if (rows != null && rows > 0) {
+				logger.warn("`{}` has the old archive layout and holds {} row(s); not moving rows of `{}`", archive,
+						rows, table);
+				return null;
+			}
+			jdbcTemplate.execute("DROP TABLE `" + archive + "`");
+			archiveSchema = tableSchemaCache.refresh(archive);
+		}
+		if (!archiveSchema.isExists()) {
+			try {
+				dynamicSQLRepository.createArchiveTable(table, archive);
+			} catch (Exception e) {
+				throw new IllegalStateException("Could not create the archive table of `" + table + "`", e);
+			}
+			archiveSchema = tableSchemaCache.refresh(archive);
+		}
+
+		Map<String, String> columnTypes = new LinkedHashMap<>();
+		jdbcTemplate.query(COLUMN_TYPES_SQL,
+				(RowCallbackHandler) rs -> columnTypes.put(rs.getString(1).toLowerCase(), rs.getString(2)), table);
+
+		Map<String, String> missing = new LinkedHashMap<>();
+		Map<String, ColumnType> widened = new LinkedHashMap<>();
+		for (Map.Entry<String, String> column : columnTypes.entrySet()) {
+			if (!archiveSchema.getColumns().contains(column.getKey())) {
+				missing.put(column.getKey(), column.getValue());
+			} else {
+				ColumnType hot = ColumnType.parse(column.getValue());
+				ColumnType cold = archiveSchema.getSqlTypes().get(column.getKey());
+				if (hot != null && cold != null && !cold.widen(hot).equals(cold)) {
+					widened.put(column.getKey(), hot);
+				}
+			}
+		}
+		if (!missing.isEmpty()) {
+			schemaEvolutionCoordinator.ensureColumns(archive, missing);
+		}
+		if (!widened.isEmpty()) {
+			schemaEvolutionCoordinator.widenColumns(archive, widened);
+		}
+		return List.copyOf(columnTypes.keySet());
+	}
+
+	private boolean pause() {
+		try {
+			Thread.sleep(batchPause.toMillis());
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
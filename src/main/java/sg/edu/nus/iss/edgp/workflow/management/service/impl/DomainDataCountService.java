@@ -0,0 +1,133 @@
+package sg.edu.nus.iss.edgp.workflow.management.service.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataRepository;
+import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataCountService;
+import sg.edu.nus.iss.edgp.workflow.management.utility.GeneralUtility;
+
+/**
+ * Totals for domain data lists, so a page request does not have to pay for a
+ * COUNT(*) over the same filter every time. An exact count is cached per
+ * (table, organization, file, archived filter) and kept current by the insert
+ * and archive paths; it is recounted once it is older than the TTL, which also
+ * picks up writes on other instances and upserts whose batch reported no
+ * per-row count.
+ * <p>
+ * Approximate totals take a cached count up to the approximate max age.
+ * Without one, a table larger than the exact-count limit is not counted and
+ * the total is {@link IDomainDataCountService#UNKNOWN_TOTAL}: InnoDB's row
+ * estimate covers every organization and file, so it does not match the
+ * filtered list, and the client pages by cursor instead.
+ */
+@RequiredArgsConstructor
+@Service
+public class DomainDataCountService implements IDomainDataCountService {
+
+	private static final Logger logger = LoggerFactory.getLogger(DomainDataCountService.class);
+
+	private static final int MAX_CACHED_COUNTS = 10_000;
+
+	private final DomainDataRepository domainDataRepository;
+
+	@Value("${domain.data.count.ttl:PT5M}")
+	private Duration ttl = Duration.ofMinutes(5);
+
+	@Value("${domain.data.count.approximate.max.age:PT1H}")
+	private Duration approximateMaxAge = Duration.ofHours(1);
+
+	@Value("${domain.data.count.exact.max.rows:1000000}")
+	private long exactCountMaxRows = 1_000_000;
+
+	private final Map<CountKey, CachedCount> counts = new ConcurrentHashMap<>();
+
+	/** fileId is "" for counts across all files of the organization. */
+	private record CountKey(String table, String orgId, String fileId, boolean activeOnly) {
+	}
+
+	private static final class CachedCount {
+		final AtomicLong value;
+		final long countedAt;
+
+		CachedCount(long value, long countedAt) {
+			this.value = new AtomicLong(value);
+			this.countedAt = countedAt;
+		}
+	}
+
+	@Override
+	public long countDomainData(String domainName, String userOrgId, String fileId, Boolean includeArchive,
+			boolean exact) {
+		String table = domainName.toLowerCase();
+		boolean activeOnly = !Boolean.TRUE.equals(includeArchive);
+		CountKey key = new CountKey(table, userOrgId, GeneralUtility.hasText(fileId) ? fileId : "",
+				activeOnly);
+
+		CachedCount cached = counts.get(key);
+		long now = System.currentTimeMillis();
+		if (cached != null && now - cached.countedAt < (exact ? ttl : approximateMaxAge).toMillis()) {
+			return cached.value.get();
+		}
+
+		if (!exact) {
+			Long estimate = domainDataRepository.estimateTableRows(table);
+			if (estimate != null && estimate >= exactCountMaxRows) {
+				logger.debug("Total for `{}` left unknown; the table holds about {} rows", table, estimate);
+				return UNKNOWN_TOTAL;
+			}
+		}
+
+		long total = domainDataRepository.countDomainData(table, userOrgId, fileId, includeArchive);
+		if (counts.size() >= MAX_CACHED_COUNTS) {
+			counts.clear();
+		}
+		// Rows committed between the COUNT and this put are caught up at the next recount
+		counts.put(key, new CachedCount(total, now));
+		return total;
+	}
+
+	/** A clean row for the organization and file was stored. */
+	@Override
+	public void recordInserted(String domainName, String userOrgId, String fileId) {
+		if (domainName == null || userOrgId == null) {
+			return;
+		}
+		String table = domainName.toLowerCase();
+		String file = GeneralUtility.hasText(fileId) ? fileId : "";
+		for (boolean activeOnly : new boolean[] { true, false }) {
+			increment(new CountKey(table, userOrgId, "", activeOnly));
+			if (!file.isEmpty()) {
+				increment(new CountKey(table, userOrgId, file, activeOnly));
+			}
+		}
+	}
+
+	/**
+	 * A row of the table was archived. Only its id is known on that path, so
+	 * every count that excludes archived rows is dropped and recounted on demand.
+	 */
+	@Override
+	public void recordArchived(String domainName) {
+		if (domainName == null) {
+			return;
+		}
+		String table = domainName.toLowerCase();
+		counts.keySet().removeIf(key -> key.activeOnly() && key.table().equals(table));
+	}
+
+	private void increment(CountKey key) {
+		CachedCount cached = counts.get(key);
+		if (cached != null) {
+			cached.value.incrementAndGet();
+		}
+	}
+}
@@ -1,18 +1,30 @@
 package sg.edu.nus.iss.edgp.workflow.management.service.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataSlice;
 import sg.edu.nus.iss.edgp.workflow.management.exception.DomainDataServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataQuery;
 import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataCountService;
 import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataService;
 
 @Service
@@ -21,20 +33,31 @@ public class DomainDataService implements IDomainDataService {
 
 	private static final Logger logger = LoggerFactory.getLogger(DomainDataService.class);
 	private final DomainDataRepository domainDataRepository;
+	private final IDomainDataCountService domainDataCountService;
+	private final ObjectMapper objectMapper;
+	private final TableSchemaCache tableSchemaCache;
+
+	// Each stream holds a read-pool connection until its client has read the last row
+	@Value("${domain.data.stream.max.concurrent:2}")
+	private int maxConcurrentStreams = 2;
+
+	private final AtomicInteger activeStreams = new AtomicInteger();
 
 	@Override
 	public Map<Long, List<Map<String, Object>>> retrieveAllDomainDataList(String domainName, String userOrgId,
-			String fileId, Boolean includeArchive) {
+			String fileId, Boolean includeArchive, List<String> columns, List<String> filters) {
 		try {
 
 			List<Map<String, Object>> domainDataList = domainDataRepository.findAllDomainDataList(domainName, userOrgId,
-					fileId, includeArchive);
+					fileId, includeArchive, query(domainName, columns, filters));
 			long totalRecord = domainDataList.size();
 			Map<Long, List<Map<String, Object>>> result = new HashMap<>();
 			result.put(totalRecord, domainDataList);
 			logger.info("All domain data list count. {}", totalRecord);
 			return result;
 
+		} catch (IllegalArgumentException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			logger.error("Exception occurred while retrieving all data list", ex);
 			throw new DomainDataServiceException("An error occurred while retrieving all data list", ex);
@@ -42,19 +65,82 @@ public class DomainDataService implements IDomainDataService {
 		}
 	}
 
+	/**
+	 * Reserves one of the {@code maxConcurrentStreams} stream slots, so slow
+	 * exports cannot take every read connection from the paged requests.
+	 * Returns {@code false} when all are in use; a reserved slot must be given
+	 * back with {@link #endStream()}.
+	 */
+	@Override
+	public boolean tryStartStream() {
+		if (activeStreams.incrementAndGet() > maxConcurrentStreams) {
+			activeStreams.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void endStream() {
+		activeStreams.decrementAndGet();
+	}
+
+	/**
+	 * Writes every matching row to {@code out} as NDJSON, one object per line,
+	 * as it is read. Memory use does not grow with the table: at most one row
+	 * and the output buffer are held, and a slow reader blocks the writes and
+	 * so the database read behind them.
+	 */
+	@Override
+	public long streamAllDomainDataList(String domainName, String userOrgId, String fileId, Boolean includeArchive,
+			List<String> columns, List<String> filters, OutputStream out) {
+		DomainDataQuery query = query(domainName, columns, filters);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			// Each row ends with its own newline instead of Jackson's space between root values
+			generator.setRootValueSeparator(null);
+
+			long streamed = domainDataRepository.streamDomainDataList(domainName, userOrgId, fileId, includeArchive, query,
+					row -> {
+						try {
+							generator.writeObject(row);
+							generator.writeRaw('\n');
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+			generator.flush();
+			logger.info("Streamed domain data list count. {}", streamed);
+			return streamed;
+
+		} catch (IllegalArgumentException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			logger.error("Exception occurred while streaming all data list", ex);
+			throw new DomainDataServiceException("An error occurred while streaming all data list", ex);
+
+		}
+	}
+
 	@Override
 	public Map<Long, List<Map<String, Object>>> retrievePaginatedDomainDataList(String domainName, String userOrgId,
-			String fileId, Pageable pageable,  Boolean includeArchive) {
+			String fileId, Pageable pageable,  Boolean includeArchive, boolean exactTotal, List<String> columns,
+			List<String> filters) {
 		try {
 
-			Page<Map<String, Object>> domainDataList = domainDataRepository.findPaginatedDomainDataList(domainName,
-					userOrgId, fileId, pageable);
-			long totalRecord = domainDataList.getTotalElements();
+			DomainDataQuery query = query(domainName, columns, filters);
+			List<Map<String, Object>> domainDataList = domainDataRepository.findDomainDataPage(domainName, userOrgId,
+					fileId, includeArchive, query, pageable);
+			// Cached counts are per organization and file only; filtered totals are counted as asked
+			long totalRecord = query.isFiltered()
+					? domainDataRepository.countDomainData(domainName, userOrgId, fileId, includeArchive, query)
+					: domainDataCountService.countDomainData(domainName, userOrgId, fileId, includeArchive, exactTotal);
 			Map<Long, List<Map<String, Object>>> result = new HashMap<>();
-			result.put(totalRecord, domainDataList.getContent());
+			result.put(totalRecord, domainDataList);
 			logger.info("Paginated domain data list count. {}", totalRecord);
 			return result;
 
+		} catch (IllegalArgumentException ex) {
+			throw ex;
 		} catch (Exception ex) {
 			logger.error("Exception occurred while retrieving all data list", ex);
 			throw new DomainDataServiceException("An error occurred while retrieving all data list", ex);
@@ -62,6 +148,31 @@ public class DomainDataService implements IDomainDataService {
 		}
 	}
 
+	@Override
+	public DomainDataSlice retrieveDomainDataListAfter(String domainName, String userOrgId, String fileId,
+			DomainDataCursor cursor, int size, Boolean includeArchive, List<String> columns, List<String> filters) {
+		try {
+
+			// One extra row tells whether there is a next page without counting
+			List<Map<String, Object>> rows = domainDataRepository.findDomainDataListAfter(domainName, userOrgId, fileId,
+					includeArchive, query(domainName, columns, filters), cursor, size + 1);
+			String nextCursor = null;
+			if (rows.size() > size) {
+				rows = rows.subList(0, size);
+				nextCursor = DomainDataCursor.after(rows.get(size - 1)).encode();
+			}
+			logger.info("Seek domain data list size. {}", rows.size());
+			return new DomainDataSlice(rows, nextCursor);
+
+		} catch (IllegalArgumentException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			logger.error("Exception occurred while retrieving data list after cursor", ex);
+			throw new DomainDataServiceException("An error occurred while retrieving all data list", ex);
+
+		}
+	}
+
 	@Override
 	public Map<String, Object> retrieveDetailDomainDataRecordById(String domainName, String id) {
 
@@ -83,4 +194,20 @@ public class DomainDataService implements IDomainDataService {
 		}
 	}
 
+	@Override
+	public void validateQuery(String domainName, List<String> columns, List<String> filters) {
+		query(domainName, columns, filters);
+	}
+
+	/** Compiles the requested columns and filters against the cached schema; rejects unknown ones. */
+	private DomainDataQuery query(String domainName, List<String> columns, List<String> filters) {
+		if ((columns == null || columns.isEmpty()) && (filters == null || filters.isEmpty())) {
+			return DomainDataQuery.ALL;
+		}
+		if (domainName == null || domainName.isBlank()) {
+			throw new IllegalArgumentException("Table name is required");
+		}
+		return DomainDataQuery.compile(domainName, tableSchemaCache.get(domainName), columns, filters);
+	}
+
 }
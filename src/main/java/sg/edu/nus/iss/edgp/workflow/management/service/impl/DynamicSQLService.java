@@ -1,28 +1,32 @@
 package sg.edu.nus.iss.edgp.workflow.management.service.impl;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-
-import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
 import sg.edu.nus.iss.edgp.workflow.management.exception.DynamicSQLServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.repository.ColumnType;
 import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.PartitionManager;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+import sg.edu.nus.iss.edgp.workflow.management.service.IDomainDataCountService;
 import sg.edu.nus.iss.edgp.workflow.management.service.IDynamicSQLService;
 
 @RequiredArgsConstructor
@@ -31,17 +35,37 @@ public class DynamicSQLService implements IDynamicSQLService {
 
     private static final Logger logger = LoggerFactory.getLogger(DynamicSQLService.class);
 
+    /** Clean rows carry the id of the tracker item they came from; one row per tracker item. */
+    static final String TRACKER_KEY = "workflow_tracker_id";
+
+    /**
+     * Secondary indexes every domain table gets, matching how DomainDataRepository
+     * reads it: by organization, optionally by file, filtered on is_archived and
+     * ordered by updated_date.
+     */
+    static final Map<String, List<String>> DOMAIN_INDEXES = Map.of(
+            "idx_org_file_archived_updated", List.of("organization_id", "file_id", "is_archived", "updated_date"),
+            "idx_org_archived_updated", List.of("organization_id", "is_archived", "updated_date")
+    );
+
     private static final Set<String> STATIC_COLS = Set.of(
             "id", "created_date", "updated_date", "is_archived"
     );
 
     @Autowired
+    @Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
     private JdbcTemplate jdbcTemplate;
 
     private final DynamicSQLRepository dynamicSQLRepository;
+    private final TableSchemaCache tableSchemaCache;
+    private final SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+    private final IDomainDataCountService domainDataCountService;
+    private final PartitionManager partitionManager;
+
+    private final Map<String, Boolean> monthlyPartitioned = new ConcurrentHashMap<>();
 
     @Override
-    public void buildCreateTableSQL(Map<String, Object> data, String tableName) {
+    public CompletableFuture<Void> buildCreateTableSQL(Map<String, Object> data, String tableName) {
         try {
             if (tableName == null || tableName.isEmpty()) {
                 throw new DynamicSQLServiceException("Table Name is empty while creating master table");
@@ -52,16 +76,36 @@ public class DynamicSQLService implements IDynamicSQLService {
             Map<String, Object> normalized = normalizePayload(data);
 
             // 1) Ensure table exists (with only static columns the first time)
-            ensureTableExists(tableName);
+            boolean tracked = normalized.get(TRACKER_KEY) != null;
+            TableSchema schema = tableSchemaCache.get(tableName);
+            if (!schema.isExists()) {
+                ensureTableExists(tableName, tracked);
+                schema = tableSchemaCache.refresh(tableName);
+            }
 
-            // 2) Evolve schema for new dynamic columns
-            Set<String> existing = getExistingColumns(tableName);
-            addMissingColumns(tableName, existing, normalized);
+            // 2) Evolve schema for new dynamic columns; concurrent writers share one ALTER.
+            //    Values that do not fit their column's type wait for it to be widened in the background
+            Map<String, String> missing = missingColumnTypes(schema.getColumns(), normalized);
+            if (!missing.isEmpty()) {
+                schema = schemaEvolutionCoordinator.ensureColumns(tableName, missing);
+            }
+            Set<String> narrow = columnsToWiden(schema, normalized);
+            if (!narrow.isEmpty()) {
+                deferValues(tableName, normalized, narrow);
+            }
+            // Missing keys and indexes are built in the background; the insert does not wait for them
+            if (tracked && !hasMonthlyPartitions(tableName)) {
+                schemaEvolutionCoordinator.requestUniqueKey(tableName, TRACKER_KEY);
+            }
+            for (Map.Entry<String, List<String>> index : DOMAIN_INDEXES.entrySet()) {
+                schemaEvolutionCoordinator.requestIndex(tableName, index.getKey(), index.getValue());
+            }
 
-            // 3) Insert row
-            insertData(tableName, normalized);
+            // 3) Queue the row for the next batch insert
+            CompletableFuture<Void> inserted = insertData(tableName, normalized);
 
-            logger.info("Upserted schema and inserted data for table `{}`", tableName);
+            logger.info("Upserted schema and queued data for table `{}`", tableName);
+            return inserted;
         } catch (Exception e) {
             logger.error("An error occurred while creating/evolving clean data table.... {}", e.getMessage(), e);
             throw new DynamicSQLServiceException("An error occurred while creating clean data table", e);
@@ -69,25 +113,42 @@ public class DynamicSQLService implements IDynamicSQLService {
     }
 
     @Override
-    public void insertData(String tableName, Map<String, Object> data) {
+    public CompletableFuture<Void> insertData(String tableName, Map<String, Object> data) {
         try {
             tableName = tableName.toLowerCase();
-            String schema;
-            try (Connection c = jdbcTemplate.getDataSource().getConnection()) {
-                schema = c.getCatalog(); // MySQL/MariaDB; adjust if needed for other DBs
-            }
+            String table = tableName;
 
-            if (!dynamicSQLRepository.tableExists(schema, tableName)) {
+            if (!tableSchemaCache.get(tableName).isExists()) {
                 throw new IllegalStateException("No table found. Please set up the table before uploading data.");
             }
 
             // Always add an id if not present
             data.putIfAbsent("id", UUID.randomUUID().toString());
 
-            // Repository will execute a parameterized INSERT; schema already evolved above
-            dynamicSQLRepository.insertRow(tableName, data);
-            logger.info("Successfully inserted data into `{}`", tableName);
+            // Repository batches a parameterized INSERT; schema already evolved above. Rows from a
+            // tracker item are upserted on its id, so a replayed message does not add a duplicate
+            boolean upsert = data.get(TRACKER_KEY) != null;
+            CompletableFuture<Integer> queued = upsert
+                    ? dynamicSQLRepository.queueUpsertRow(tableName, data, TRACKER_KEY)
+                    : dynamicSQLRepository.queueInsertRow(tableName, data);
+            return queued.whenComplete((count, e) -> {
+                if (e == null) {
+                    // A replayed upsert reports 2 or 0 and adds no row; an unknown count is left to the recount
+                    if (!upsert || Integer.valueOf(1).equals(count)) {
+                        domainDataCountService.recordInserted(table, asString(data.get("organization_id")),
+                                asString(data.get("file_id")));
+                    }
+                    logger.info("Successfully inserted data into `{}`", table);
+                } else {
+                    tableSchemaCache.invalidate(table);
+                    logger.error("An error occurred while inserting clean data into `{}`.... {}", table, e.getMessage());
+                }
+            }).thenApply(count -> null);
         } catch (Exception e) {
+            // The table may have changed underneath the cache; reload it on the next record
+            if (tableName != null) {
+                tableSchemaCache.invalidate(tableName);
+            }
             logger.error("An error occurred while inserting clean data into the database.... {}", e.getMessage(), e);
             throw new DynamicSQLServiceException("An error occurred while inserting clean data", e);
         }
@@ -95,51 +156,129 @@ public class DynamicSQLService implements IDynamicSQLService {
 
     // ========== SCHEMA HELPERS ==========
 
-    private void ensureTableExists(String tableName) {
+    /**
+     * Creates the table, partitioned as declared. Monthly partitioning is
+     * refused for rows from tracker items: MySQL would need created_date in the
+     * tracker unique key, and a replayed row gets a new created_date, so replays
+     * could not be deduplicated. Such a table is created plain instead.
+     */
+    private void ensureTableExists(String tableName, boolean tracked) {
+        PartitionManager.Spec partitioning = partitionManager.specFor(tableName);
+        if (partitioning != null && partitioning.isMonthly() && tracked) {
+            logger.warn("Not partitioning `{}` by created_date: its rows come from tracker items, which need a unique"
+                    + " key on {} to be deduplicated. Creating it unpartitioned.", tableName, TRACKER_KEY);
+        } else if (partitioning != null) {
+            ensurePartitionedTableExists(tableName, partitioning);
+            return;
+        }
         String staticColumns = String.join(", ",
             "`id` VARCHAR(36) PRIMARY KEY",
             "`created_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP",
             "`updated_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP",
-            "`is_archived` BOOLEAN DEFAULT FALSE"
+            "`is_archived` BOOLEAN DEFAULT FALSE",
+            "`" + TRACKER_KEY + "` VARCHAR(191) NULL",
+            "UNIQUE KEY `uk_" + TRACKER_KEY + "` (`" + TRACKER_KEY + "`)"
         );
         String query = "CREATE TABLE IF NOT EXISTS `" + tableName + "` (" + staticColumns + ")";
         jdbcTemplate.execute(query);
     }
 
-    private Set<String> getExistingColumns(String tableName) throws SQLException {
-        DataSource ds = jdbcTemplate.getDataSource();
-        Objects.requireNonNull(ds, "DataSource is null");
-        Set<String> cols = new HashSet<>();
-        try (Connection conn = ds.getConnection()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            // Note: for MySQL, catalog = db name; schemaPattern can be null
-            try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, tableName, null)) {
-                while (rs.next()) {
-                    cols.add(rs.getString("COLUMN_NAME").toLowerCase());
-                }
-            }
+    /**
+     * MySQL requires the partitioning column in every unique key, so it joins
+     * the primary key and is NOT NULL. Organization-partitioned tables keep one
+     * row per tracker item per organization, which is the same thing; a table
+     * partitioned by created_date has no tracker key and only takes untracked
+     * rows.
+     */
+    private void ensurePartitionedTableExists(String tableName, PartitionManager.Spec partitioning) {
+        String key = partitioning.column();
+        List<String> definitions = new ArrayList<>(List.of(
+            "`id` VARCHAR(36) NOT NULL",
+            "`created_date` TIMESTAMP " + (partitioning.isMonthly() ? "NOT NULL " : "") + "DEFAULT CURRENT_TIMESTAMP",
+            "`updated_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP",
+            "`is_archived` BOOLEAN DEFAULT FALSE",
+            "`" + TRACKER_KEY + "` VARCHAR(191) NULL"
+        ));
+        if (!partitioning.isMonthly()) {
+            definitions.add("`" + key + "` VARCHAR(191) NOT NULL");
+        }
+        definitions.add("PRIMARY KEY (`id`, `" + key + "`)");
+        if (!partitioning.isMonthly()) {
+            definitions.add("UNIQUE KEY `uk_" + TRACKER_KEY + "` (`" + TRACKER_KEY + "`, `" + key + "`)");
+        }
+        String query = "CREATE TABLE IF NOT EXISTS `" + tableName + "` (" + String.join(", ", definitions) + ") "
+                + partitionManager.partitionClause(partitioning, YearMonth.now());
+        jdbcTemplate.execute(query);
+        logger.info("Created `{}` partitioned by {}", tableName, key);
+    }
+
+    /**
+     * Whether the table was actually created with monthly partitions, which
+     * cannot take the tracker unique key. Checked once per table, and only for
+     * tables declared monthly; such a table created before tracked rows were
+     * refused is reported, as replays into it are stored twice.
+     */
+    private boolean hasMonthlyPartitions(String tableName) {
+        PartitionManager.Spec partitioning = partitionManager.specFor(tableName);
+        if (partitioning == null || !partitioning.isMonthly()) {
+            return false;
         }
-        return cols;
+        return monthlyPartitioned.computeIfAbsent(tableName, table -> {
+            boolean partitioned = partitionManager.isPartitioned(table);
+            if (partitioned) {
+                logger.error("`{}` is partitioned by created_date and cannot have a unique key on {}; replayed"
+                        + " records are stored twice. Remove it from domain.data.partition.by.created.date and"
+                        + " rebuild it unpartitioned.", table, TRACKER_KEY);
+            }
+            return partitioned;
+        });
     }
 
-    private void addMissingColumns(String tableName, Set<String> existing, Map<String, Object> data) {
-        // Determine which dynamic columns are missing
-        List<String> alters = new ArrayList<>();
+    /**
+     * Dynamic columns the table lacks, with the narrowest type for this row's
+     * value. The type comes from the first value seen, not a sample of rows;
+     * later values widen it. A null or blank value says nothing about the
+     * type, so its column is created as the narrowest nullable VARCHAR, which
+     * every later value fits once widened.
+     */
+    private Map<String, String> missingColumnTypes(Set<String> existing, Map<String, Object> data) {
+        Map<String, String> missing = new LinkedHashMap<>();
         for (Map.Entry<String, Object> e : data.entrySet()) {
             String col = e.getKey(); // already normalized
-            if (STATIC_COLS.contains(col)) continue;      // static columns exist already
-            if (!existing.contains(col)) {
-                String sqlType = mapDataType(e.getValue());
-                alters.add("ALTER TABLE `" + tableName + "` ADD COLUMN `" + col + "` " + sqlType);
-                existing.add(col);
+            if (STATIC_COLS.contains(col) || existing.contains(col)) continue;
+            ColumnType type = ColumnType.infer(e.getValue());
+            missing.put(col, (type != null ? type : ColumnType.varchar(0)).sql());
+        }
+        return missing;
+    }
+
+    /** Existing dynamic columns whose type cannot hold this row's value. */
+    private Set<String> columnsToWiden(TableSchema schema, Map<String, Object> data) {
+        Set<String> narrow = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> e : data.entrySet()) {
+            if (STATIC_COLS.contains(e.getKey()) || TRACKER_KEY.equals(e.getKey())) continue;
+            ColumnType current = schema.getSqlTypes().get(e.getKey());
+            if (current != null && !current.holds(e.getValue())) {
+                narrow.add(e.getKey());
             }
         }
+        return narrow;
+    }
 
-        // Execute ALTERs one by one (simple and safe)
-        for (String alter : alters) {
-            jdbcTemplate.execute(alter);
-            logger.info("Added missing column via: {}", alter);
+    /**
+     * Takes the values of {@code columns} out of the row and hands them to the
+     * coordinator, which copies them in once the columns are wide enough. They
+     * are keyed by the tracker id when there is one, as an upsert keeps the
+     * existing row's id.
+     */
+    private void deferValues(String tableName, Map<String, Object> data, Set<String> columns) {
+        data.putIfAbsent("id", UUID.randomUUID().toString());
+        String keyColumn = data.get(TRACKER_KEY) != null ? TRACKER_KEY : "id";
+        Map<String, Object> deferred = new LinkedHashMap<>();
+        for (String column : columns) {
+            deferred.put(column, data.remove(column));
         }
+        schemaEvolutionCoordinator.deferValues(tableName, keyColumn, data.get(keyColumn).toString(), deferred);
     }
 
     // ========== MAPPING / NORMALIZATION ==========
@@ -155,20 +294,11 @@ public class DynamicSQLService implements IDynamicSQLService {
         return normalized;
     }
 
-    private String normalizeColumnName(String name) {
-        return name.toLowerCase().trim().replace(' ', '_');
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
     }
 
-    private String mapDataType(Object value) {
-        if (value == null) return "VARCHAR(255)";
-
-        Class<?> c = value.getClass();
-        if (c == Integer.class || c == Short.class || c == Byte.class || c == Long.class) return "BIGINT";
-        if (c == Double.class || c == Float.class || c == java.math.BigDecimal.class) return "DECIMAL(38,10)";
-        if (c == Boolean.class) return "BOOLEAN";
-        if (c == java.sql.Date.class || c == java.time.LocalDate.class) return "DATE";
-        if (c == java.sql.Timestamp.class || c == java.time.LocalDateTime.class) return "TIMESTAMP";
-        // Fallback
-        return "VARCHAR(255)";
+    private String normalizeColumnName(String name) {
+        return name.toLowerCase().trim().replace(' ', '_');
     }
 }
@@ -0,0 +1,181 @@
+package sg.edu.nus.iss.edgp.workflow.management.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.SchedulingConfig;
+import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
+import sg.edu.nus.iss.edgp.workflow.management.service.IFileFinalizationService;
+
+@RequiredArgsConstructor
+@Service
+public class FileFinalizationService implements IFileFinalizationService {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileFinalizationService.class);
+
+	private final ProcessStatusObserverService processStatusObserverService;
+	private final DataIngestionNotifierService dataIngestionNotifierService;
+	private final FileProgressService fileProgressService;
+	private final TaskExecutor fileFinalizationExecutor;
+	@Qualifier(SchedulingConfig.FILE_FINALIZATION_SCHEDULER)
+	private final TaskScheduler taskScheduler;
+
+	@Value("${workflow.finalization.file.timeout:PT2M}")
+	private Duration fileTimeout;
+
+	@Value("${workflow.finalization.lease.ttl:PT1M}")
+	private Duration leaseTtl;
+
+	@Value("${HOSTNAME:}")
+	private String hostName;
+
+	private final String instanceId = UUID.randomUUID().toString();
+
+	private final Set<String> queuedFileIds = ConcurrentHashMap.newKeySet();
+
+	@Override
+	public void requestFinalization(String fileId) {
+		if (fileId == null || fileId.isBlank()) {
+			return;
+		}
+		String id = fileId.trim();
+
+		// One queued check per file covers every record that finished before it runs
+		if (!queuedFileIds.add(id)) {
+			return;
+		}
+		try {
+			fileFinalizationExecutor.execute(() -> {
+				queuedFileIds.remove(id);
+				finalizeFile(id);
+			});
+		} catch (TaskRejectedException e) {
+			queuedFileIds.remove(id);
+			logger.warn("File finalization queue is full; file {} is left for the scheduled sweep.", id);
+		}
+	}
+
+	@Override
+	public boolean finalizeIfComplete(HashMap<String, String> fileInfo) {
+		String fileId = fileInfo.get("id").trim();
+
+		Optional<String> completedStatus = fileProgressService.completedFileStatus(fileId);
+		if (completedStatus.isEmpty()) {
+			logger.info("File {} still has records in progress.", fileId);
+			return false;
+		}
+		String fileStatus = completedStatus.get();
+
+		// Only the caller that moves the file out of PROCESSING sends the notification
+		if (!processStatusObserverService.markFileComplete(fileId, fileStatus)) {
+			logger.info("File {} was already finalized.", fileId);
+			return false;
+		}
+		fileProgressService.foldShards(fileId);
+
+		notifyFile(fileInfo);
+		logger.info("Finalized file {} with status {}", fileId, fileStatus);
+		return true;
+	}
+
+	/**
+	 * Sends the result of a completed file and only then records it as
+	 * notified. A send that fails or is interrupted leaves the file to the
+	 * sweep, which retries it.
+	 */
+	private void notifyFile(HashMap<String, String> fileInfo) {
+		dataIngestionNotifierService.sendDataIngestionResult(fileInfo);
+		processStatusObserverService.markFileNotified(fileInfo.get("id").trim());
+	}
+
+	private void finalizeFile(String fileId) {
+		// Interrupt a worker that overruns its budget so one slow export or email
+		// cannot hold a pool thread that other files are waiting for
+		Thread worker = Thread.currentThread();
+		ScheduledFuture<?> watchdog = taskScheduler.schedule(() -> {
+			logger.warn("File finalization for {} exceeded {}; interrupting it.", fileId, fileTimeout);
+			worker.interrupt();
+		}, Instant.now().plus(fileTimeout));
+
+		String owner = leaseOwner();
+		boolean leased = false;
+		ScheduledFuture<?> heartbeat = null;
+		try {
+			// Replicas split files between them: only the lease holder scans, exports and notifies
+			leased = processStatusObserverService.acquireFileLease(fileId, owner, leaseTtl);
+			if (!leased) {
+				logger.info("File {} is being finalized by another replica or is no longer processing.", fileId);
+				return;
+			}
+			Duration heartbeatInterval = leaseTtl.dividedBy(3);
+			heartbeat = taskScheduler.scheduleAtFixedRate(() -> {
+				if (!processStatusObserverService.renewFileLease(fileId, owner, leaseTtl)) {
+					logger.warn("Lost the finalization lease for file {}; interrupting it.", fileId);
+					worker.interrupt();
+				}
+			}, Instant.now().plus(heartbeatInterval), heartbeatInterval);
+
+			HashMap<String, String> fileInfo = processStatusObserverService.fetchFileInfoByStage(fileId,
+					FileProcessStage.PROCESSING);
+			if (fileInfo != null && !fileInfo.isEmpty()) {
+				finalizeIfComplete(fileInfo);
+				return;
+			}
+			// The lease is only granted to a completed file whose notification is still outstanding
+			fileInfo = processStatusObserverService.fetchFileInfoByStage(fileId, FileProcessStage.COMPLETE);
+			if (fileInfo != null && !fileInfo.isEmpty()) {
+				logger.info("Retrying the result notification of completed file {}", fileId);
+				// Folding is idempotent; this repeats a fold that failed when the file completed
+				fileProgressService.foldShards(fileId);
+				notifyFile(fileInfo);
+			}
+		} catch (Exception e) {
+			logger.error("File finalization failed for file {}", fileId, e);
+		} finally {
+			if (heartbeat != null) {
+				heartbeat.cancel(false);
+			}
+			if (watchdog != null) {
+				watchdog.cancel(false);
+			}
+			if (leased) {
+				releaseLease(fileId, owner);
+			}
+		}
+	}
+
+	private void releaseLease(String fileId, String owner) {
+		// Clear a pending interrupt so the release call itself is not aborted
+		boolean interrupted = Thread.interrupted();
+		try {
+			processStatusObserverService.releaseFileLease(fileId, owner);
+		} catch (Exception e) {
+			logger.warn("Could not release the finalization lease for file {}; it expires after {}", fileId,
+					leaseTtl);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private String leaseOwner() {
+		return (hostName == null || hostName.isBlank() ? "workflow" : hostName.trim()) + ":" + instanceId;
+	}
+}
@@ -0,0 +1,490 @@
+package sg.edu.nus.iss.edgp.workflow.management.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.FileProgress;
+import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
+import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.service.IFileProgressService;
+import sg.edu.nus.iss.edgp.workflow.management.utility.Status;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Keeps running per-file counters so progress can be read with key lookups
+ * instead of a scan of the task tracker.
+ * <p>
+ * Every record of a file would otherwise update the same header item, which
+ * caps a large file at the write rate of a single partition. Counters are
+ * therefore spread over {@code shardCount} items in the progress table, each
+ * write picking a shard at random, and summed on read. Once the file is
+ * COMPLETE the shards are folded back into the header and deleted.
+ * <p>
+ * SQS may deliver a message more than once, so each increment is written in
+ * one transaction with a marker on the record's tracker item, and a record
+ * whose tracker item already carries the marker for that stage is not
+ * counted again.
+ */
+@RequiredArgsConstructor
+@Service
+public class FileProgressService implements IFileProgressService {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileProgressService.class);
+
+	private static final int BATCH_GET_LIMIT = 100;
+	private static final int BATCH_GET_ATTEMPTS = 5;
+	private static final String FOLDED_ATTRIBUTE = "progress_folded_at";
+	/** Stages of a tracker item already counted; kept out of clean data, payloads and exports. */
+	public static final String COUNTED_ATTRIBUTE = "progress_counted";
+	private static final String RECEIVED_STAGE = "received";
+	private static final String FINALIZED_STAGE = "finalized";
+	private static final String HEADER_PROJECTION = "id, file_name, process_stage, organization_id, total_count, "
+			+ "processed_count, success_count, failed_count, first_processed_at, last_processed_at, "
+			+ FOLDED_ATTRIBUTE;
+
+	private final DynamoDbClient dynamoDbClient;
+	private final DynamicDynamoService dynamoService;
+	@Qualifier("taskScheduler")
+	private final TaskExecutor progressTableExecutor;
+
+	@Value("${aws.dynamodb.table.master.data.header}")
+	private String masterDataHeaderTableName;
+
+	@Value("${aws.dynamodb.table.master.data.task}")
+	private String masterDataTaskTrackerTableName;
+
+	@Value("${aws.dynamodb.table.master.data.progress}")
+	private String masterDataProgressTableName;
+
+	// Readers sum shards 0..shardCount-1, so the count may be raised safely but
+	// lowering it hides the upper shards of files still in progress
+	@Value("${workflow.progress.counter.shards:10}")
+	private int shardCount = 10;
+
+	@Value("${workflow.progress.table.wait:PT30S}")
+	private Duration progressTableWait = Duration.ofSeconds(30);
+
+	private final AtomicReference<CompletableFuture<Void>> progressTable = new AtomicReference<>();
+
+	@Override
+	public void recordReceived(String fileId, String trackerId) {
+		if (fileId == null || fileId.isBlank()) {
+			return;
+		}
+		Map<String, AttributeValue> values = new HashMap<>();
+		values.put(":one", number(1));
+		values.put(":file", AttributeValue.builder().s(fileId.trim()).build());
+		addToShard(fileId.trim(), trackerId, RECEIVED_STAGE, "ADD total_count :one SET file_id = :file", values);
+	}
+
+	@Override
+	public void recordFinalized(String fileId, String trackerId, String status, String organizationId) {
+		if (fileId == null || fileId.isBlank()) {
+			return;
+		}
+		boolean failed = status != null && Status.fail.toString().equals(status.toLowerCase());
+
+		Map<String, AttributeValue> values = new HashMap<>();
+		values.put(":one", number(1));
+		values.put(":now", number(System.currentTimeMillis()));
+		values.put(":file", AttributeValue.builder().s(fileId.trim()).build());
+		String update = "ADD processed_count :one, " + (failed ? "failed_count" : "success_count") + " :one"
+				+ " SET file_id = :file, first_processed_at = if_not_exists(first_processed_at, :now),"
+				+ " last_processed_at = :now";
+		if (organizationId != null && !organizationId.isBlank()) {
+			values.put(":org", AttributeValue.builder().s(organizationId).build());
+			update += ", organization_id = if_not_exists(organization_id, :org)";
+		}
+		addToShard(fileId.trim(), trackerId, FINALIZED_STAGE, update, values);
+	}
+
+	private void addToShard(String fileId, String trackerId, String stage, String update,
+			Map<String, AttributeValue> values) {
+		// Progress is advisory: a failed counter update must never fail the record itself
+		try {
+			awaitProgressTable();
+			int shard = ThreadLocalRandom.current().nextInt(shardCount);
+			Map<String, AttributeValue> key = Map.of("id",
+					AttributeValue.builder().s(shardId(fileId, shard)).build());
+			if (trackerId == null || trackerId.isBlank()) {
+				incrementShard(key, update, values);
+				return;
+			}
+			try {
+				dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder()
+						.transactItems(TransactWriteItem.builder().update(markCounted(trackerId.trim(), stage)).build(),
+								TransactWriteItem.builder().update(Update.builder()
+										.tableName(masterDataProgressTableName.trim()).key(key)
+										.updateExpression(update).expressionAttributeValues(values).build()).build())
+						.build());
+			} catch (TransactionCanceledException e) {
+				CancellationReason marker = e.hasCancellationReasons() && !e.cancellationReasons().isEmpty()
+						? e.cancellationReasons().get(0)
+						: null;
+				if (marker == null || !"ConditionalCheckFailed".equals(marker.code())) {
+					throw e;
+				}
+				if (marker.hasItem() && !marker.item().isEmpty()) {
+					logger.debug("Record {} was already counted as {} for file {}", trackerId, stage, fileId);
+					return;
+				}
+				// No tracker item to mark, so the record can only be counted without the guard
+				logger.debug("No tracker item {} for file {}; counting {} unguarded", trackerId, fileId, stage);
+				incrementShard(key, update, values);
+			}
+		} catch (Exception e) {
+			logger.warn("Could not record progress for file {}: {}", fileId, e.getMessage());
+		}
+	}
+
+	private Update markCounted(String trackerId, String stage) {
+		return Update.builder().tableName(masterDataTaskTrackerTableName.trim())
+				.key(Map.of("id", AttributeValue.builder().s(trackerId).build()))
+				.updateExpression("ADD #counted :stages")
+				.conditionExpression("attribute_exists(id) AND NOT contains(#counted, :stage)")
+				.expressionAttributeNames(Map.of("#counted", COUNTED_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":stages", AttributeValue.builder().ss(stage).build(), ":stage",
+						AttributeValue.builder().s(stage).build()))
+				.returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD).build();
+	}
+
+	private void incrementShard(Map<String, AttributeValue> key, String update, Map<String, AttributeValue> values) {
+		dynamoDbClient.updateItem(UpdateItemRequest.builder().tableName(masterDataProgressTableName.trim()).key(key)
+				.updateExpression(update).expressionAttributeValues(values).build());
+	}
+
+	@Override
+	public void foldShards(String fileId) {
+		if (fileId == null || fileId.isBlank()) {
+			return;
+		}
+		String id = fileId.trim();
+		try {
+			awaitProgressTable();
+			Map<String, Map<String, AttributeValue>> headers = new HashMap<>();
+			Map<String, List<Map<String, AttributeValue>>> shards = new HashMap<>();
+			fetchCounters(List.of(id), true, headers, shards);
+			Map<String, AttributeValue> header = headers.get(id);
+			if (header == null) {
+				logger.warn("No header found for file {}; progress not folded", id);
+				return;
+			}
+			// Readers ignore the shards of a folded file, so records still arriving would be lost
+			if (!FileProcessStage.COMPLETE.name().equals(string(header, "process_stage"))) {
+				logger.info("File {} is not complete yet; progress not folded", id);
+				return;
+			}
+
+			if (!header.containsKey(FOLDED_ATTRIBUTE)) {
+				writeTotals(id, combine(header, shards.getOrDefault(id, List.of())));
+			}
+			for (int shard = 0; shard < shardCount; shard++) {
+				dynamoDbClient.deleteItem(DeleteItemRequest.builder().tableName(masterDataProgressTableName.trim())
+						.key(Map.of("id", AttributeValue.builder().s(shardId(id, shard)).build())).build());
+			}
+			logger.info("Folded progress counters of file {} into its header", id);
+		} catch (Exception e) {
+			logger.warn("Could not fold progress counters for file {}: {}", id, e.getMessage());
+		}
+	}
+
+	private void writeTotals(String fileId, Map<String, AttributeValue> totals) {
+		Map<String, AttributeValue> values = new HashMap<>();
+		StringBuilder update = new StringBuilder("SET ").append(FOLDED_ATTRIBUTE).append(" = :folded");
+		values.put(":folded", number(System.currentTimeMillis()));
+		for (String counter : List.of("total_count", "processed_count", "success_count", "failed_count",
+				"first_processed_at", "last_processed_at", "organization_id")) {
+			AttributeValue value = totals.get(counter);
+			if (value != null) {
+				update.append(", ").append(counter).append(" = :").append(counter);
+				values.put(":" + counter, value);
+			}
+		}
+
+		// The header becomes authoritative exactly once; a repeated fold only clears leftover shards
+		try {
+			dynamoDbClient.updateItem(UpdateItemRequest.builder().tableName(masterDataHeaderTableName.trim())
+					.key(Map.of("id", AttributeValue.builder().s(fileId).build())).updateExpression(update.toString())
+					.expressionAttributeValues(values)
+					.conditionExpression("attribute_exists(id) AND attribute_not_exists(" + FOLDED_ATTRIBUTE + ")")
+					.build());
+		} catch (ConditionalCheckFailedException e) {
+			logger.info("Progress counters of file {} were already folded", fileId);
+		}
+	}
+
+	/**
+	 * Decides from the counters, without reading the task tracker, whether
+	 * every record received for the file has been finalized. Returns the
+	 * file status, fail when any record failed, or empty while records are
+	 * still pending.
+	 */
+	@Override
+	public Optional<String> completedFileStatus(String fileId) {
+		if (fileId == null || fileId.isBlank()) {
+			return Optional.empty();
+		}
+		String id = fileId.trim();
+		try {
+			awaitProgressTable();
+			Map<String, Map<String, AttributeValue>> headers = new HashMap<>();
+			Map<String, List<Map<String, AttributeValue>>> shards = new HashMap<>();
+			fetchCounters(List.of(id), true, headers, shards);
+			Map<String, AttributeValue> header = headers.get(id);
+			if (header == null) {
+				return Optional.empty();
+			}
+			Map<String, AttributeValue> item = header.containsKey(FOLDED_ATTRIBUTE) ? header
+					: combine(header, shards.getOrDefault(id, List.of()));
+
+			long total = number(item, "total_count");
+			if (total == 0 || number(item, "processed_count") < total) {
+				return Optional.empty();
+			}
+			return Optional.of(number(item, "failed_count") > 0 ? Status.fail.toString() : Status.success.toString());
+		} catch (Exception ex) {
+			logger.error("An error occurred while checking the progress of file {}.... {}", id, ex);
+			throw new WorkflowServiceException("An error occurred while checking file progress", ex);
+		}
+	}
+
+	@Override
+	public List<FileProgress> retrieveFileProgress(List<String> fileIds, String userOrgId) {
+		try {
+			awaitProgressTable();
+			Map<String, Map<String, AttributeValue>> headers = new HashMap<>();
+			Map<String, List<Map<String, AttributeValue>>> shards = new HashMap<>();
+			fetchCounters(fileIds, false, headers, shards);
+
+			List<FileProgress> result = new ArrayList<>();
+			long now = System.currentTimeMillis();
+			for (String fileId : fileIds) {
+				Map<String, AttributeValue> header = headers.get(fileId);
+				if (header == null) {
+					continue;
+				}
+				Map<String, AttributeValue> item = header.containsKey(FOLDED_ATTRIBUTE) ? header
+						: combine(header, shards.getOrDefault(fileId, List.of()));
+
+				// Only files attributed to the user's organization are visible; a file no
+				// record has been finalized for yet has no organization and is not shown
+				AttributeValue org = item.get("organization_id");
+				if (org == null || org.s() == null || !org.s().equals(userOrgId)) {
+					continue;
+				}
+				result.add(toFileProgress(item, now));
+			}
+			logger.info("Retrieved progress for {} of {} files", result.size(), fileIds.size());
+			return result;
+		} catch (Exception ex) {
+			logger.error("An error occurred while retrieving file progress.... {}", ex);
+			throw new WorkflowServiceException("An error occurred while retrieving file progress", ex);
+		}
+	}
+
+	/**
+	 * Loads the header and every counter shard of each file with BatchGetItem,
+	 * at most 100 keys per call, retrying keys DynamoDB leaves unprocessed.
+	 */
+	private void fetchCounters(List<String> fileIds, boolean consistentRead,
+			Map<String, Map<String, AttributeValue>> headers, Map<String, List<Map<String, AttributeValue>>> shards) {
+		String headerTable = masterDataHeaderTableName.trim();
+		String progressTable = masterDataProgressTableName.trim();
+
+		List<Map.Entry<String, Map<String, AttributeValue>>> keys = new ArrayList<>();
+		for (String fileId : fileIds) {
+			keys.add(Map.entry(headerTable, Map.of("id", AttributeValue.builder().s(fileId).build())));
+			for (int shard = 0; shard < shardCount; shard++) {
+				keys.add(Map.entry(progressTable,
+						Map.of("id", AttributeValue.builder().s(shardId(fileId, shard)).build())));
+			}
+		}
+
+		for (int from = 0; from < keys.size(); from += BATCH_GET_LIMIT) {
+			Map<String, List<Map<String, AttributeValue>>> byTable = new LinkedHashMap<>();
+			keys.subList(from, Math.min(from + BATCH_GET_LIMIT, keys.size()))
+					.forEach(k -> byTable.computeIfAbsent(k.getKey(), t -> new ArrayList<>()).add(k.getValue()));
+
+			Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+			byTable.forEach((table, tableKeys) -> {
+				KeysAndAttributes.Builder request = KeysAndAttributes.builder().keys(tableKeys)
+						.consistentRead(consistentRead);
+				if (table.equals(headerTable)) {
+					request.projectionExpression(HEADER_PROJECTION);
+				}
+				requestItems.put(table, request.build());
+			});
+
+			for (int attempt = 1; !requestItems.isEmpty(); attempt++) {
+				if (attempt > BATCH_GET_ATTEMPTS) {
+					throw new WorkflowServiceException("Progress counters were still throttled after "
+							+ BATCH_GET_ATTEMPTS + " attempts");
+				}
+				if (attempt > 1) {
+					backOff(attempt);
+				}
+				BatchGetItemResponse response = dynamoDbClient
+						.batchGetItem(BatchGetItemRequest.builder().requestItems(requestItems).build());
+				response.responses().getOrDefault(headerTable, List.of())
+						.forEach(item -> headers.put(item.get("id").s(), item));
+				response.responses().getOrDefault(progressTable, List.of()).forEach(item -> shards
+						.computeIfAbsent(item.get("file_id").s(), f -> new ArrayList<>()).add(item));
+				requestItems.clear();
+				requestItems.putAll(response.unprocessedKeys());
+			}
+		}
+	}
+
+	private static void backOff(int attempt) {
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(25L << attempt));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WorkflowServiceException("Interrupted while retrieving file progress");
+		}
+	}
+
+	/** Header counters plus the shard sums; the earliest and latest timestamps win. */
+	private static Map<String, AttributeValue> combine(Map<String, AttributeValue> header,
+			List<Map<String, AttributeValue>> shards) {
+		Map<String, AttributeValue> item = new HashMap<>(header);
+		for (Map<String, AttributeValue> shard : shards) {
+			for (String counter : List.of("total_count", "processed_count", "success_count", "failed_count")) {
+				item.put(counter, number(number(item, counter) + number(shard, counter)));
+			}
+			long first = number(shard, "first_processed_at");
+			if (first > 0 && (number(item, "first_processed_at") == 0 || first < number(item, "first_processed_at"))) {
+				item.put("first_processed_at", number(first));
+			}
+			if (number(shard, "last_processed_at") > number(item, "last_processed_at")) {
+				item.put("last_processed_at", shard.get("last_processed_at"));
+			}
+			if (!item.containsKey("organization_id") && shard.containsKey("organization_id")) {
+				item.put("organization_id", shard.get("organization_id"));
+			}
+		}
+		return item;
+	}
+
+	/**
+	 * Waits up to {@code progressTableWait} for the progress table, which the
+	 * first caller has created on the scheduler pool; no lock is held while
+	 * DynamoDB activates it. A failed creation is retried by the next caller.
+	 */
+	private void awaitProgressTable() {
+		CompletableFuture<Void> table = progressTable.get();
+		if (table == null || table.isCompletedExceptionally()) {
+			CompletableFuture<Void> creation = new CompletableFuture<>();
+			if (progressTable.compareAndSet(table, creation)) {
+				try {
+					progressTableExecutor.execute(() -> createProgressTable(creation));
+				} catch (RuntimeException e) {
+					creation.completeExceptionally(e);
+				}
+			}
+			table = progressTable.get();
+		}
+		try {
+			table.get(progressTableWait.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WorkflowServiceException("Interrupted while waiting for the progress table");
+		} catch (ExecutionException | TimeoutException e) {
+			throw new WorkflowServiceException("Progress table " + masterDataProgressTableName.trim()
+					+ " is not available", e);
+		}
+	}
+
+	private void createProgressTable(CompletableFuture<Void> creation) {
+		String tableName = masterDataProgressTableName.trim();
+		try {
+			if (!dynamoService.tableExists(tableName)) {
+				logger.info("Creating progress table {}", tableName);
+				dynamoService.createTable(tableName);
+			}
+			creation.complete(null);
+		} catch (Exception e) {
+			logger.warn("Could not create progress table {}: {}", tableName, e.getMessage());
+			creation.completeExceptionally(e);
+		}
+	}
+
+	private static String shardId(String fileId, int shard) {
+		return fileId + "#" + shard;
+	}
+
+	private FileProgress toFileProgress(Map<String, AttributeValue> item, long now) {
+		FileProgress progress = new FileProgress();
+		progress.setFileId(item.get("id").s());
+		progress.setFileName(string(item, "file_name"));
+		progress.setProcessStage(string(item, "process_stage"));
+		progress.setProcessedRecords(number(item, "processed_count"));
+		progress.setSuccessRecords(number(item, "success_count"));
+		progress.setFailedRecords(number(item, "failed_count"));
+		progress.setTotalRecords(Math.max(number(item, "total_count"), progress.getProcessedRecords()));
+
+		long first = number(item, "first_processed_at");
+		long last = number(item, "last_processed_at");
+		boolean finished = progress.getTotalRecords() > 0
+				&& progress.getProcessedRecords() >= progress.getTotalRecords();
+		// A running file is measured up to now so the rate decays when records stop arriving
+		long elapsedMillis = (finished ? last : now) - first;
+		if (first > 0 && elapsedMillis > 0) {
+			progress.setRecordsPerSecond(progress.getProcessedRecords() * 1000.0 / elapsedMillis);
+		}
+
+		if (finished) {
+			progress.setEtaSeconds(0L);
+		} else if (progress.getRecordsPerSecond() > 0 && progress.getTotalRecords() > 0) {
+			long remaining = progress.getTotalRecords() - progress.getProcessedRecords();
+			progress.setEtaSeconds((long) Math.ceil(remaining / progress.getRecordsPerSecond()));
+		}
+		return progress;
+	}
+
+	private static String string(Map<String, AttributeValue> item, String name) {
+		AttributeValue v = item.get(name);
+		return v != null && v.s() != null ? v.s() : "";
+	}
+
+	private static long number(Map<String, AttributeValue> item, String name) {
+		AttributeValue v = item.get(name);
+		return v != null && v.n() != null ? Long.parseLong(v.n()) : 0L;
+	}
+
+	private static AttributeValue number(long value) {
+		return AttributeValue.builder().n(Long.toString(value)).build();
+	}
+}
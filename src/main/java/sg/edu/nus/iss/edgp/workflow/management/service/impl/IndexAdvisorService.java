@@ -0,0 +1,199 @@
+package sg.edu.nus.iss.edgp.workflow.management.service.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import sg.edu.nus.iss.edgp.workflow.management.configuration.DataSourceConfig;
+import sg.edu.nus.iss.edgp.workflow.management.dto.IndexProposal;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.service.IIndexAdvisorService;
+
+/**
+ * Reviews the statement digests MySQL keeps in performance_schema for reads on
+ * domain tables that ran without a usable index, and proposes a composite index
+ * per query shape: equality filters first, then range filters, then the sort
+ * column. Proposals are logged, and created through the
+ * {@link SchemaEvolutionCoordinator} when auto-create is switched on.
+ */
+@RequiredArgsConstructor
+@Service
+public class IndexAdvisorService implements IIndexAdvisorService {
+
+	private static final Logger logger = LoggerFactory.getLogger(IndexAdvisorService.class);
+
+	private static final String DIGEST_SQL = "SELECT DIGEST_TEXT, COUNT_STAR, SUM_ROWS_EXAMINED, SUM_ROWS_SENT"
+			+ " FROM performance_schema.events_statements_summary_by_digest"
+			+ " WHERE SCHEMA_NAME = DATABASE() AND DIGEST_TEXT LIKE 'SELECT %'"
+			+ " AND (SUM_NO_INDEX_USED > 0 OR SUM_NO_GOOD_INDEX_USED > 0) AND COUNT_STAR >= ?"
+			+ " ORDER BY SUM_TIMER_WAIT DESC LIMIT 50";
+
+	private static final String INDEX_COLUMNS_SQL = "SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.statistics"
+			+ " WHERE table_schema = DATABASE() AND table_name = ? ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+
+	private static final Pattern SINGLE_TABLE = Pattern.compile("^SELECT .*? FROM `(\\w+)`(?: WHERE (.*?))?"
+			+ "(?: ORDER BY `(\\w+)`.*?)?(?: LIMIT .*)?$", Pattern.CASE_INSENSITIVE);
+	private static final Pattern EQUALITY = Pattern.compile("`(\\w+)` = ");
+	private static final Pattern RANGE = Pattern.compile("`(\\w+)` (?:<|>|<=|>=|LIKE|IN|BETWEEN) ",
+			Pattern.CASE_INSENSITIVE);
+
+	/** Longer composites cost more on every insert than they save on reads. */
+	private static final int MAX_INDEX_COLUMNS = 4;
+
+	@Qualifier(DataSourceConfig.DDL_JDBC_TEMPLATE)
+	private final JdbcTemplate jdbcTemplate;
+	private final TableSchemaCache tableSchemaCache;
+	private final SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+
+	@Value("${dynamic.sql.index.advisor.enabled:true}")
+	private boolean enabled = true;
+
+	@Value("${dynamic.sql.index.advisor.auto.create:false}")
+	private boolean autoCreate;
+
+	@Value("${dynamic.sql.index.advisor.min.executions:100}")
+	private long minExecutions = 100;
+
+	@Value("${dynamic.sql.index.advisor.min.rows.examined.per.row:10}")
+	private double minRowsExaminedPerRow = 10;
+
+	@Scheduled(fixedDelayString = "${dynamic.sql.index.advisor.interval:PT1H}",
+			initialDelayString = "${dynamic.sql.index.advisor.interval:PT1H}")
+	public void scheduledReview() {
+		if (enabled) {
+			reviewSlowQueries();
+		}
+	}
+
+	@Override
+	public List<IndexProposal> reviewSlowQueries() {
+		List<Map<String, Object>> digests;
+		try {
+			digests = jdbcTemplate.queryForList(DIGEST_SQL, minExecutions);
+		} catch (Exception e) {
+			// performance_schema may be off or not readable by this user
+			logger.warn("Index advisor could not read statement digests: {}", e.getMessage());
+			return List.of();
+		}
+
+		Map<String, IndexProposal> proposals = new LinkedHashMap<>();
+		for (Map<String, Object> digest : digests) {
+			IndexProposal proposal = propose(digest);
+			if (proposal != null) {
+				proposals.putIfAbsent(proposal.getTableName() + "#" + proposal.getIndexName(), proposal);
+			}
+		}
+
+		List<IndexProposal> result = new ArrayList<>();
+		for (IndexProposal proposal : proposals.values()) {
+			try {
+				if (isCovered(proposal.getTableName(), proposal.getColumns())) {
+					continue;
+				}
+				if (autoCreate) {
+					proposal.setCreated(schemaEvolutionCoordinator.ensureIndex(proposal.getTableName(),
+							proposal.getIndexName(), proposal.getColumns()));
+				}
+				logger.info("Index advisor: {} `{}` on `{}` {} ({} runs, {} rows examined per row returned)",
+						proposal.isCreated() ? "created" : "proposes", proposal.getIndexName(), proposal.getTableName(),
+						proposal.getColumns(), proposal.getExecutions(),
+						String.format("%.1f", proposal.getRowsExaminedPerRowSent()));
+				result.add(proposal);
+			} catch (Exception e) {
+				logger.warn("Index advisor skipped `{}`: {}", proposal.getTableName(), e.getMessage());
+			}
+		}
+		return result;
+	}
+
+	IndexProposal propose(Map<String, Object> digest) {
+		String text = String.valueOf(digest.get("DIGEST_TEXT")).replaceAll("\\s+", " ").trim();
+		long executions = toLong(digest.get("COUNT_STAR"));
+		long examined = toLong(digest.get("SUM_ROWS_EXAMINED"));
+		long sent = toLong(digest.get("SUM_ROWS_SENT"));
+		double examinedPerRow = (double) examined / Math.max(sent, 1);
+		if (executions < minExecutions || examinedPerRow < minRowsExaminedPerRow) {
+			return null;
+		}
+
+		// Only single-table reads; joins and sub-queries are left to a person
+		Matcher query = SINGLE_TABLE.matcher(text);
+		if (!query.matches() || text.toUpperCase().contains(" JOIN ")
+				|| text.toUpperCase().indexOf("SELECT", 1) >= 0) {
+			return null;
+		}
+		String table = query.group(1).toLowerCase();
+		String where = query.group(2) == null ? "" : query.group(2);
+		String orderBy = query.group(3);
+
+		Set<String> columns = new LinkedHashSet<>();
+		collect(EQUALITY, where, columns);
+		collect(RANGE, where, columns);
+		if (orderBy != null) {
+			columns.add(orderBy.toLowerCase());
+		}
+		List<String> indexColumns = columns.stream().limit(MAX_INDEX_COLUMNS).toList();
+		if (indexColumns.isEmpty()) {
+			return null;
+		}
+
+		// Digest text is only trusted as far as it names real columns of a real table
+		TableSchemaCache.TableSchema schema = tableSchemaCache.get(table);
+		if (!schema.isExists() || !schema.getColumns().containsAll(indexColumns)) {
+			return null;
+		}
+
+		IndexProposal proposal = new IndexProposal();
+		proposal.setTableName(table);
+		proposal.setIndexName(indexName(indexColumns));
+		proposal.setColumns(indexColumns);
+		proposal.setExecutions(executions);
+		proposal.setRowsExaminedPerRowSent(examinedPerRow);
+		proposal.setSampleQuery(text);
+		return proposal;
+	}
+
+	/** True when an existing index already starts with {@code columns}. */
+	private boolean isCovered(String table, List<String> columns) {
+		Map<String, List<String>> indexes = new LinkedHashMap<>();
+		for (Map<String, Object> row : jdbcTemplate.queryForList(INDEX_COLUMNS_SQL, table)) {
+			indexes.computeIfAbsent(String.valueOf(row.get("INDEX_NAME")), k -> new ArrayList<>())
+					.add(String.valueOf(row.get("COLUMN_NAME")).toLowerCase());
+		}
+		return indexes.values().stream()
+				.anyMatch(indexed -> indexed.size() >= columns.size()
+						&& indexed.subList(0, columns.size()).equals(columns));
+	}
+
+	private static void collect(Pattern pattern, String where, Set<String> columns) {
+		Matcher m = pattern.matcher(where);
+		while (m.find()) {
+			columns.add(m.group(1).toLowerCase());
+		}
+	}
+
+	private static String indexName(List<String> columns) {
+		String name = "idx_auto_" + String.join("_", columns);
+		// MySQL identifiers are limited to 64 characters
+		return name.length() <= 64 ? name : "idx_auto_" + Integer.toHexString(columns.hashCode());
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Number n ? n.longValue() : 0L;
+	}
+}
@@ -42,6 +42,7 @@ public class PayloadBuilderService {
 	    workflowStatusData.remove("policy_id");
 	    workflowStatusData.remove("uploaded_by");
 	    workflowStatusData.remove("staging_id");
+	    workflowStatusData.remove(FileProgressService.COUNTED_ATTRIBUTE);
 
 	    // Convert Map to JsonNode
 	    entry.set("data", mapper.valueToTree(workflowStatusData));
@@ -1,8 +1,16 @@
 package sg.edu.nus.iss.edgp.workflow.management.service.impl;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -13,18 +21,47 @@ import sg.edu.nus.iss.edgp.workflow.management.service.IProcessStatusObserverSer
 import sg.edu.nus.iss.edgp.workflow.management.utility.Status;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.IndexStatus;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
 @RequiredArgsConstructor
 @Service
 public class ProcessStatusObserverService implements IProcessStatusObserverService {
 
+	private static final Logger logger = LoggerFactory.getLogger(ProcessStatusObserverService.class);
+
+	// Present only while a file is in flight, so the index holds active files only.
+	// A COMPLETE file keeps it until its result notification has been sent.
+	static final String ACTIVE_STAGE_ATTRIBUTE = "active_stage";
+	/**
+	 * Provisioned with the header table, not by this service: hash key
+	 * {@code active_stage} (S), range key {@code uploaded_date} (S), projecting
+	 * {@code file_name}. Until it is ACTIVE the stage lookups fall back to scans.
+	 */
+	static final String ACTIVE_STAGE_INDEX = "active_stage-uploaded_date-index";
+	private static final int MARKED_ACTIVE_CACHE_SIZE = 10_000;
+
 	private final DynamoDbClient dynamoDbClient;
+
+	private volatile boolean activeStageIndexReady;
+
+	/** Files this instance has seen tagged or past PROCESSING; least recently used first, guarded by itself. */
+	private final Map<String, Boolean> markedActive = new LinkedHashMap<>(16, 0.75f, true);
+
+	@Value("${aws.dynamodb.header.active.stage.page.size:100}")
+	private int activeStagePageSize = 100;
 	
 	@Value("${aws.dynamodb.table.master.data.header}")
 	private String masterDataHeaderTableName;
@@ -34,10 +71,16 @@ public class ProcessStatusObserverService implements IProcessStatusObserverServi
 
 	@Override
 	public HashMap<String,String> fetchOldestIdByProcessStage(FileProcessStage stage) {
-		ScanRequest req = ScanRequest.builder().tableName(masterDataHeaderTableName.trim())
-				.filterExpression("#ps = :ps").expressionAttributeNames(Map.of("#ps", "process_stage"))
-				.expressionAttributeValues(Map.of(":ps", AttributeValue.builder().s(stage.name()).build()))
-				.projectionExpression("id, uploaded_date,file_name").build();
+		if (stage != FileProcessStage.UNPROCESSED && isActiveStageIndexReady()) {
+			QueryRequest req = activeStageQuery(stage).limit(1).build();
+			List<HashMap<String, String>> files = toFileInfoList(dynamoDbClient.query(req).items());
+			return files.isEmpty() ? new HashMap<String, String>() : files.get(0);
+		}
+		return scanOldestIdByProcessStage(stage);
+	}
+
+	private HashMap<String,String> scanOldestIdByProcessStage(FileProcessStage stage) {
+		ScanRequest req = stageScan(stage);
 		HashMap<String,String> result = new HashMap<String, String>();
 		String fileId = "";
 		String fileName ="";
@@ -66,6 +109,179 @@ public class ProcessStatusObserverService implements IProcessStatusObserverServi
 		return result;
 	}
 
+	@Override
+	public List<HashMap<String, String>> fetchAllIdsByProcessStage(FileProcessStage stage) {
+		if (stage != FileProcessStage.UNPROCESSED && isActiveStageIndexReady()) {
+			List<Map<String, AttributeValue>> items = new ArrayList<>();
+			for (QueryResponse page : dynamoDbClient.queryPaginator(activeStageQuery(stage).limit(activeStagePageSize).build())) {
+				items.addAll(page.items());
+			}
+			return toFileInfoList(items);
+		}
+		return scanAllIdsByProcessStage(stage);
+	}
+
+	private List<HashMap<String, String>> scanAllIdsByProcessStage(FileProcessStage stage) {
+		ScanRequest req = stageScan(stage);
+		List<Map<String, AttributeValue>> files = new ArrayList<>();
+
+		for (ScanResponse page : dynamoDbClient.scanPaginator(req)) {
+			for (Map<String, AttributeValue> item : page.items()) {
+				AttributeValue id = item.get("id");
+				AttributeValue created = item.get("uploaded_date");
+				if (id == null || id.s() == null || id.s().isBlank())
+					continue;
+				if (created == null || created.s() == null || created.s().isBlank())
+					continue;
+				files.add(item);
+			}
+		}
+
+		// Oldest upload first, so the longest-waiting files are queued ahead of newer ones
+		files.sort(Comparator.comparing(item -> item.get("uploaded_date").s()));
+		return toFileInfoList(files);
+	}
+
+	private ScanRequest stageScan(FileProcessStage stage) {
+		ScanRequest.Builder req = ScanRequest.builder().tableName(masterDataHeaderTableName.trim())
+				.expressionAttributeValues(Map.of(":ps", AttributeValue.builder().s(stage.name()).build()))
+				.projectionExpression("id, uploaded_date,file_name");
+		if (stage == FileProcessStage.COMPLETE) {
+			// Only completed files whose notification is still outstanding
+			return req.filterExpression("#ps = :ps AND attribute_exists(#active)")
+					.expressionAttributeNames(Map.of("#ps", "process_stage", "#active", ACTIVE_STAGE_ATTRIBUTE))
+					.build();
+		}
+		return req.filterExpression("#ps = :ps").expressionAttributeNames(Map.of("#ps", "process_stage")).build();
+	}
+
+	private List<HashMap<String, String>> toFileInfoList(List<Map<String, AttributeValue>> items) {
+		List<HashMap<String, String>> result = new ArrayList<>();
+		for (Map<String, AttributeValue> item : items) {
+			HashMap<String, String> fileInfo = new HashMap<String, String>();
+			AttributeValue name = item.get("file_name");
+			fileInfo.put("id", item.get("id").s());
+			fileInfo.put("name", name != null ? name.s() : "");
+			result.add(fileInfo);
+		}
+		return result;
+	}
+
+	private QueryRequest.Builder activeStageQuery(FileProcessStage stage) {
+		// The index is sorted by uploaded_date, so ascending order yields the oldest file first
+		return QueryRequest.builder().tableName(masterDataHeaderTableName.trim()).indexName(ACTIVE_STAGE_INDEX)
+				.keyConditionExpression("#active = :stage")
+				.expressionAttributeNames(Map.of("#active", ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":stage", AttributeValue.builder().s(stage.name()).build()))
+				.scanIndexForward(true);
+	}
+
+	@Override
+	public boolean checkActiveStageIndex() {
+		if (activeStageIndexReady) {
+			return true;
+		}
+		TableDescription table = dynamoDbClient
+				.describeTable(DescribeTableRequest.builder().tableName(masterDataHeaderTableName.trim()).build()).table();
+
+		Optional<GlobalSecondaryIndexDescription> index = table.globalSecondaryIndexes().stream()
+				.filter(i -> ACTIVE_STAGE_INDEX.equals(i.indexName())).findFirst();
+		if (index.isEmpty()) {
+			logger.error("Index {} is not provisioned on {}; file stage lookups scan the table until it is",
+					ACTIVE_STAGE_INDEX, masterDataHeaderTableName.trim());
+			return false;
+		}
+		activeStageIndexReady = index.get().indexStatus() == IndexStatus.ACTIVE;
+		return activeStageIndexReady;
+	}
+
+	private boolean isActiveStageIndexReady() {
+		try {
+			return checkActiveStageIndex();
+		} catch (Exception e) {
+			logger.warn("Index {} is unavailable; falling back to a table scan. {}", ACTIVE_STAGE_INDEX, e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public int tagUntrackedFilesByProcessStage(FileProcessStage stage) {
+		ScanRequest req = ScanRequest.builder().tableName(masterDataHeaderTableName.trim())
+				.filterExpression("#ps = :ps AND attribute_not_exists(#active)")
+				.expressionAttributeNames(Map.of("#ps", "process_stage", "#active", ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":ps", AttributeValue.builder().s(stage.name()).build()))
+				.projectionExpression("id").build();
+		int tagged = 0;
+
+		for (ScanResponse page : dynamoDbClient.scanPaginator(req)) {
+			for (Map<String, AttributeValue> item : page.items()) {
+				UpdateItemRequest tag = UpdateItemRequest.builder().tableName(masterDataHeaderTableName.trim())
+						.key(Map.of("id", item.get("id")))
+						.updateExpression("SET #active = :ps")
+						.expressionAttributeNames(Map.of("#ps", "process_stage", "#active", ACTIVE_STAGE_ATTRIBUTE))
+						.expressionAttributeValues(Map.of(":ps", AttributeValue.builder().s(stage.name()).build()))
+						.conditionExpression("#ps = :ps").build();
+				try {
+					dynamoDbClient.updateItem(tag);
+					tagged++;
+				} catch (ConditionalCheckFailedException e) {
+					// The file moved on between the scan and the update
+				}
+			}
+		}
+		return tagged;
+	}
+
+	/**
+	 * Adds a PROCESSING header written by the ingestion service to the stage
+	 * index, once per file and instance. A header that is not PROCESSING yet
+	 * is tried again for the file's next record.
+	 */
+	@Override
+	public void markFileActive(String fileId) {
+		if (fileId == null || fileId.isBlank()) {
+			return;
+		}
+		String id = fileId.trim();
+		synchronized (markedActive) {
+			if (markedActive.get(id) != null) {
+				return;
+			}
+		}
+
+		UpdateItemRequest req = UpdateItemRequest.builder().tableName(masterDataHeaderTableName.trim())
+				.key(Map.of("id", AttributeValue.builder().s(id).build()))
+				.updateExpression("SET #active = :processing")
+				.expressionAttributeNames(Map.of("#stage", "process_stage", "#active", ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":processing",
+						AttributeValue.builder().s(FileProcessStage.PROCESSING.name()).build()))
+				.conditionExpression("#stage = :processing AND attribute_not_exists(#active)")
+				.returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD).build();
+
+		boolean settled;
+		try {
+			dynamoDbClient.updateItem(req);
+			settled = true;
+		} catch (ConditionalCheckFailedException e) {
+			// Already tagged, or finished; a missing or UNPROCESSED header is left for a later record
+			Map<String, AttributeValue> header = e.hasItem() ? e.item() : Map.of();
+			AttributeValue stage = header.get("process_stage");
+			settled = header.containsKey(ACTIVE_STAGE_ATTRIBUTE)
+					|| (stage != null && FileProcessStage.COMPLETE.name().equals(stage.s()));
+		} catch (Exception e) {
+			logger.warn("Could not add file {} to the stage index: {}", id, e.getMessage());
+			settled = false;
+		}
+		if (settled) {
+			synchronized (markedActive) {
+				markedActive.put(id, Boolean.TRUE);
+				while (markedActive.size() > MARKED_ACTIVE_CACHE_SIZE) {
+					markedActive.remove(markedActive.keySet().iterator().next());
+				}
+			}
+		}
+	}
+
 	@Override
 	public boolean isAllDataProcessed(String fileId) {
 
@@ -107,14 +323,153 @@ public class ProcessStatusObserverService implements IProcessStatusObserverServi
 
 
 
+	@Override
+	public HashMap<String, String> fetchFileInfoByStage(String fileId, FileProcessStage stage) {
+		GetItemRequest req = GetItemRequest.builder().tableName(masterDataHeaderTableName.trim())
+				.key(Map.of("id", AttributeValue.builder().s(fileId).build())).consistentRead(true)
+				.projectionExpression("id, file_name, process_stage").build();
+
+		HashMap<String, String> result = new HashMap<String, String>();
+		Map<String, AttributeValue> item = dynamoDbClient.getItem(req).item();
+		if (item == null || item.isEmpty()) {
+			return result;
+		}
+
+		AttributeValue ps = item.get("process_stage");
+		AttributeValue name = item.get("file_name");
+		if (ps != null && stage.name().equals(ps.s())) {
+			result.put("id", fileId);
+			result.put("name", name != null ? name.s() : "");
+		}
+		return result;
+	}
+
+	@Override
+	public boolean markFileComplete(String fileId, String status) {
+		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
+
+		UpdateItemRequest req = UpdateItemRequest.builder()
+				.tableName(masterDataHeaderTableName.trim()).key(key)
+				.updateExpression("SET #stage = :stage, #status = :status, updated_date = :now, #active = :stage")
+				.expressionAttributeNames(Map.of("#stage", "process_stage", "#status", "file_status", "#active",
+						ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":stage", AttributeValue.builder().s(FileProcessStage.COMPLETE.name()).build(),
+						":processing", AttributeValue.builder().s(FileProcessStage.PROCESSING.name()).build(),
+						":status", AttributeValue.builder().s(status).build(), ":now",
+						AttributeValue.builder().s(java.time.Instant.now().toString()).build()))
+				.conditionExpression("#stage = :processing").build();
+
+		try {
+			dynamoDbClient.updateItem(req);
+			return true;
+		} catch (ConditionalCheckFailedException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void markFileNotified(String fileId) {
+		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
+
+		UpdateItemRequest req = UpdateItemRequest.builder()
+				.tableName(masterDataHeaderTableName.trim()).key(key)
+				.updateExpression("SET notified_date = :now REMOVE #active")
+				.expressionAttributeNames(Map.of("#stage", "process_stage", "#active", ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":complete",
+						AttributeValue.builder().s(FileProcessStage.COMPLETE.name()).build(), ":now",
+						AttributeValue.builder().s(java.time.Instant.now().toString()).build()))
+				.conditionExpression("#stage = :complete").build();
+
+		try {
+			dynamoDbClient.updateItem(req);
+		} catch (ConditionalCheckFailedException e) {
+			// The file was reset to another stage; nothing left to mark
+		}
+	}
+
+	@Override
+	public boolean acquireFileLease(String fileId, String owner, Duration ttl) {
+		long now = System.currentTimeMillis();
+		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
+
+		// Claimable when unowned, already ours, or left behind by a replica that stopped heartbeating,
+		// while the file is processing or completed with its notification still outstanding
+		UpdateItemRequest req = UpdateItemRequest.builder()
+				.tableName(masterDataHeaderTableName.trim()).key(key)
+				.updateExpression("SET #owner = :owner, #expires = :expires, #heartbeat = :heartbeat, #active = #stage")
+				.expressionAttributeNames(Map.of("#stage", "process_stage", "#owner", "lease_owner", "#expires",
+						"lease_expires_at", "#heartbeat", "lease_heartbeat_at", "#active", ACTIVE_STAGE_ATTRIBUTE))
+				.expressionAttributeValues(Map.of(":owner", AttributeValue.builder().s(owner).build(), ":expires",
+						AttributeValue.builder().n(Long.toString(now + ttl.toMillis())).build(), ":heartbeat",
+						AttributeValue.builder().s(java.time.Instant.ofEpochMilli(now).toString()).build(), ":now",
+						AttributeValue.builder().n(Long.toString(now)).build(), ":processing",
+						AttributeValue.builder().s(FileProcessStage.PROCESSING.name()).build(), ":complete",
+						AttributeValue.builder().s(FileProcessStage.COMPLETE.name()).build()))
+				.conditionExpression("(#stage = :processing OR (#stage = :complete AND attribute_exists(#active)))"
+						+ " AND (attribute_not_exists(#owner) OR #owner = :owner OR #expires < :now)")
+				.build();
+
+		try {
+			dynamoDbClient.updateItem(req);
+			return true;
+		} catch (ConditionalCheckFailedException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean renewFileLease(String fileId, String owner, Duration ttl) {
+		long now = System.currentTimeMillis();
+		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
+
+		UpdateItemRequest req = UpdateItemRequest.builder()
+				.tableName(masterDataHeaderTableName.trim()).key(key)
+				.updateExpression("SET #expires = :expires, #heartbeat = :heartbeat")
+				.expressionAttributeNames(Map.of("#owner", "lease_owner", "#expires", "lease_expires_at",
+						"#heartbeat", "lease_heartbeat_at"))
+				.expressionAttributeValues(Map.of(":owner", AttributeValue.builder().s(owner).build(), ":expires",
+						AttributeValue.builder().n(Long.toString(now + ttl.toMillis())).build(), ":heartbeat",
+						AttributeValue.builder().s(java.time.Instant.ofEpochMilli(now).toString()).build()))
+				.conditionExpression("#owner = :owner").build();
+
+		try {
+			dynamoDbClient.updateItem(req);
+			return true;
+		} catch (ConditionalCheckFailedException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void releaseFileLease(String fileId, String owner) {
+		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
+
+		UpdateItemRequest req = UpdateItemRequest.builder()
+				.tableName(masterDataHeaderTableName.trim()).key(key)
+				.updateExpression("REMOVE #owner, #expires, #heartbeat")
+				.expressionAttributeNames(Map.of("#owner", "lease_owner", "#expires", "lease_expires_at",
+						"#heartbeat", "lease_heartbeat_at"))
+				.expressionAttributeValues(Map.of(":owner", AttributeValue.builder().s(owner).build()))
+				.conditionExpression("#owner = :owner").build();
+
+		try {
+			dynamoDbClient.updateItem(req);
+		} catch (ConditionalCheckFailedException e) {
+			// The lease already expired and was taken over; nothing of ours to release
+		}
+	}
+
 	@Override
 	public void updateFileStageAndStatus(String fileId, FileProcessStage stage, String status) {
 		Map<String, AttributeValue> key = Map.of("id", AttributeValue.builder().s(fileId).build());
 
 		UpdateItemRequest req = UpdateItemRequest.builder()
 				.tableName(masterDataHeaderTableName.trim()).key(key)
-				.updateExpression("SET #stage = :stage, #status = :status, updated_date = :now")
-				.expressionAttributeNames(Map.of("#stage", "process_stage", "#status", "file_status"))
+				.updateExpression(stage == FileProcessStage.PROCESSING
+						? "SET #stage = :stage, #status = :status, updated_date = :now, #active = :stage"
+						: "SET #stage = :stage, #status = :status, updated_date = :now REMOVE #active")
+				.expressionAttributeNames(Map.of("#stage", "process_stage", "#status", "file_status", "#active",
+						ACTIVE_STAGE_ATTRIBUTE))
 				.expressionAttributeValues(Map.of(":stage", AttributeValue.builder().s(stage.name()).build(), ":status",
 						AttributeValue.builder().s(status).build(), ":now",
 						AttributeValue.builder().s(java.time.Instant.now().toString()).build()))
@@ -5,10 +5,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 
@@ -17,6 +21,8 @@ import sg.edu.nus.iss.edgp.workflow.management.aws.service.SQSDataQualityRequest
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 import sg.edu.nus.iss.edgp.workflow.management.dto.WorkflowStatus;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowStatusConflictException;
+import sg.edu.nus.iss.edgp.workflow.management.observer.FileFinalizationEvent;
 import sg.edu.nus.iss.edgp.workflow.management.service.IWorkflowService;
 import sg.edu.nus.iss.edgp.workflow.management.utility.Status;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
@@ -30,6 +36,8 @@ public class WorkflowService implements IWorkflowService {
 	private final DynamicSQLService dynamicSQLService;
 	private final SQSDataQualityRequestService sqsDataQualityRequestService;
 	private final PayloadBuilderService payloadBuilderService;
+	private final ApplicationEventPublisher applicationEventPublisher;
+	private final FileProgressService fileProgressService;
 
 	private static final Logger logger = LoggerFactory.getLogger(WorkflowService.class);
 
@@ -39,9 +47,12 @@ public class WorkflowService implements IWorkflowService {
 	@Value("${aws.dynamodb.table.master.data.header}")
 	private String masterDataHeaderTableName;
 
+	@Value("${workflow.status.update.max.attempts:5}")
+	private int maxUpdateAttempts = 5;
+
 	@SuppressWarnings("unchecked")
 	@Override
-	public void updateDataQualityWorkflowStatus(Map<String, Object> rawData) {
+	public CompletableFuture<Void> updateDataQualityWorkflowStatus(Map<String, Object> rawData) {
 
 		try {
 			String status = (String) rawData.get("status");
@@ -58,35 +69,56 @@ public class WorkflowService implements IWorkflowService {
 				dynamoService.createTable(masterDataTaskTrackerTableName.trim());
 			}
 
-			Map<String, AttributeValue> workflowStatusData = dynamoService
-					.getDataByWorkflowStatusId(masterDataTaskTrackerTableName.trim(), workflowStatusId);
-
-			if (workflowStatusData == null || workflowStatusData.isEmpty()) {
-
-				throw new WorkflowServiceException(
-						"Workflow status update aborted: existing workflow status data not found.");
-
-			} else {
-				logger.info("Successfully retrieve work flow data by workflow id");
+			List<Map<String, AttributeValue>> recorded = new ArrayList<>(1);
+			Map<String, AttributeValue> workflowStatusData = applyStageResult(workflowStatusId, current -> {
+				// A repeated data quality response for the same record is a redelivery
+				if (hasResult(current, "dataquality_status")) {
+					recorded.add(current);
+					return null;
+				}
 				WorkflowStatus workflowStatus = new WorkflowStatus();
-				
-				
+				workflowStatus.setFinalStatus(null);
 				Optional.ofNullable(status).filter(s -> !s.isBlank()).ifPresent(s -> {
-					workflowStatus.setFinalStatus(s);
 					workflowStatus.setDataQualityStatus(s);
+					// Data quality is the last stage, but it never overturns a failed rule check
+					if (!isFail(current, "rule_status")) {
+						workflowStatus.setFinalStatus(s);
+					}
 				});
-
 				Optional.ofNullable(failedValidations).filter(list -> !list.isEmpty())
 						.ifPresent(list -> workflowStatus.setFailedValidations(List.copyOf(list)));
+				return workflowStatus;
+			});
+
+			if (workflowStatusData == null) {
+				logger.info("Ignored data quality response for workflow status {}: result already recorded",
+						workflowStatusId);
+				// The first delivery may have failed before its clean row committed or before the record
+				// was counted. The insert is an upsert on the tracker id and the progress counters skip a
+				// record already counted, so both are repeated; the finalization check is idempotent too
+				Map<String, AttributeValue> current = recorded.get(recorded.size() - 1);
+				if (!isFail(current, "rule_status") && status != null && Optional
+						.ofNullable(current.get("dataquality_status")).map(AttributeValue::s).filter(status::equalsIgnoreCase)
+						.isPresent()) {
+					return insetCleanMasterData(status, (String) rawData.get("domain_name"), current)
+							.thenRun(() -> recordFinalized(current, status));
+				}
+				return CompletableFuture.completedFuture(null);
+			}
+			logger.info("Updated data quality workflow status");
 
-				workflowStatus.setId(workflowStatusId);
-				dynamoService.updateWorkflowStatus(masterDataTaskTrackerTableName.trim(), workflowStatus);
-				logger.info("Updated data quality workflow status");
-				String domainTableName = (String) rawData.get("domain_name");
-				insetCleanMasterData(status, domainTableName, workflowStatusData);
-				logger.info("Successfully inserted clean data to master data db");
-
+			if (isFail(workflowStatusData, "rule_status")) {
+				logger.info("Workflow status {} already failed its rule check; keeping that result", workflowStatusId);
+				return CompletableFuture.completedFuture(null);
 			}
+			String domainTableName = (String) rawData.get("domain_name");
+			// The record only counts as finalized once its clean row has committed
+			return insetCleanMasterData(status, domainTableName, workflowStatusData).thenRun(() -> {
+				logger.info("Successfully inserted clean data to master data db");
+				if (status != null && !status.isBlank()) {
+					recordFinalized(workflowStatusData, status);
+				}
+			});
 		} catch (Exception ex) {
 			logger.error("An error occurred while updating workflow status.... {}", ex);
 			throw new WorkflowServiceException("An error occurred while updating workflow status", ex);
@@ -113,42 +145,46 @@ public class WorkflowService implements IWorkflowService {
 				dynamoService.createTable(masterDataTaskTrackerTableName.trim());
 			}
 
-			Map<String, AttributeValue> workflowStatusData = dynamoService
-					.getDataByWorkflowStatusId(masterDataTaskTrackerTableName.trim(), workflowStatusId);
-
-			if (workflowStatusData == null || workflowStatusData.isEmpty()) {
-
-				throw new WorkflowServiceException(
-						"Workflow status update aborted: existing workflow status data not found.");
-
-			} else {
-				logger.info("Successfully retrieve work flow data by workflow id");
+			Map<String, AttributeValue> workflowStatusData = applyStageResult(workflowStatusId, current -> {
+				// A late or repeated rule response must not clobber a recorded result
+				if (hasResult(current, "rule_status")) {
+					return null;
+				}
 				WorkflowStatus workflowStatus = new WorkflowStatus();
+				if (hasResult(current, "final_status") || hasResult(current, "dataquality_status")) {
+					workflowStatus.setFinalStatus(null);
+				}
 				Optional.ofNullable(status).filter(s -> !s.isBlank()).ifPresent(s -> {
 					workflowStatus.setRuleStatus(s);
-					if (s != null && Status.fail.toString().equals(s.toLowerCase())) {
+					if (Status.fail.toString().equals(s.toLowerCase()) && !hasResult(current, "dataquality_status")) {
 						workflowStatus.setFinalStatus(s);
 					}
 				});
-
 				Optional.ofNullable(failedValidations).filter(list -> !list.isEmpty())
 						.ifPresent(list -> workflowStatus.setFailedValidations(List.copyOf(list)));
+				return workflowStatus;
+			});
 
-				workflowStatus.setId(workflowStatusId);
-				dynamoService.updateWorkflowStatus(masterDataTaskTrackerTableName.trim(), workflowStatus);
-				logger.info("Updated rule workflow status");
-				
-				if (status != null && Status.success.toString().equals(status.toLowerCase())) {
-					Map<String, Object> workflowStatusFields = dynamoItemToJavaMap(workflowStatusData);
-					Map<String, Object> dataQaulityPayLoad = payloadBuilderService.buildDataQualityPayLoad(rawData, workflowStatusFields);
-					sqsDataQualityRequestService.forwardToDataQualityRequestQueue(dataQaulityPayLoad);
-					
-					logger.info("Sent data quality request queue");
-					
-				}
-				
+			if (workflowStatusData == null) {
+				logger.info("Ignored rule response for workflow status {}: result already recorded", workflowStatusId);
+				return;
+			}
+			logger.info("Updated rule workflow status");
+
+			if (status != null && Status.success.toString().equals(status.toLowerCase())) {
+				Map<String, Object> workflowStatusFields = dynamoItemToJavaMap(workflowStatusData);
+				Map<String, Object> dataQaulityPayLoad = payloadBuilderService.buildDataQualityPayLoad(rawData, workflowStatusFields);
+				sqsDataQualityRequestService.forwardToDataQualityRequestQueue(dataQaulityPayLoad);
+
+				logger.info("Sent data quality request queue");
 
 			}
+
+			// A failed rule check is the record's final state, so the file may now be complete
+			if (status != null && Status.fail.toString().equals(status.toLowerCase())
+					&& !hasResult(workflowStatusData, "dataquality_status")) {
+				recordFinalized(workflowStatusData, status);
+			}
 		} catch (Exception ex) {
 			logger.error("An error occurred while updating workflow status.... {}", ex);
 			throw new WorkflowServiceException("An error occurred while updating workflow status", ex);
@@ -156,7 +192,96 @@ public class WorkflowService implements IWorkflowService {
 
 	}
 
-	private void insetCleanMasterData(String status, String domainTableName,
+	/**
+	 * Reads the tracker item, lets {@code stageUpdate} decide what this stage
+	 * may change, and writes it conditionally on the version that was read.
+	 * When another response for the same record wins the race the item is
+	 * re-read and the decision made again, up to {@code maxUpdateAttempts}.
+	 * Returns the item the update was based on, or {@code null} when the
+	 * stage had nothing to change.
+	 */
+	private Map<String, AttributeValue> applyStageResult(String workflowStatusId,
+			Function<Map<String, AttributeValue>, WorkflowStatus> stageUpdate) {
+		for (int attempt = 1;; attempt++) {
+			Map<String, AttributeValue> workflowStatusData = dynamoService
+					.getDataByWorkflowStatusId(masterDataTaskTrackerTableName.trim(), workflowStatusId);
+
+			if (workflowStatusData == null || workflowStatusData.isEmpty()) {
+				throw new WorkflowServiceException(
+						"Workflow status update aborted: existing workflow status data not found.");
+			}
+			logger.info("Successfully retrieve work flow data by workflow id");
+
+			WorkflowStatus workflowStatus = stageUpdate.apply(workflowStatusData);
+			if (workflowStatus == null) {
+				return null;
+			}
+			workflowStatus.setId(workflowStatusId);
+			workflowStatus.setExpectedVersion(Optional.ofNullable(workflowStatusData.get("version"))
+					.map(AttributeValue::n).map(Long::valueOf).orElse(0L));
+			try {
+				dynamoService.updateWorkflowStatus(masterDataTaskTrackerTableName.trim(), workflowStatus);
+				return workflowStatusData;
+			} catch (WorkflowStatusConflictException e) {
+				if (attempt >= maxUpdateAttempts) {
+					throw new WorkflowServiceException("Workflow status " + workflowStatusId
+							+ " kept changing concurrently; gave up after " + attempt + " attempts", e);
+				}
+				logger.info("Workflow status {} changed concurrently; retrying (attempt {})", workflowStatusId,
+						attempt + 1);
+				backOff(attempt);
+			}
+		}
+	}
+
+	private static boolean hasResult(Map<String, AttributeValue> item, String attribute) {
+		AttributeValue value = item.get(attribute);
+		if (value == null || value.s() == null) {
+			return false;
+		}
+		String s = value.s().toLowerCase();
+		return Status.success.toString().equals(s) || Status.fail.toString().equals(s);
+	}
+
+	private static boolean isFail(Map<String, AttributeValue> item, String attribute) {
+		AttributeValue value = item.get(attribute);
+		return value != null && value.s() != null && Status.fail.toString().equals(value.s().toLowerCase());
+	}
+
+	private static void backOff(int attempt) {
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(10L << Math.min(attempt, 6)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WorkflowServiceException("Interrupted while retrying a workflow status update");
+		}
+	}
+
+	private void recordFinalized(Map<String, AttributeValue> workflowStatusData, String status) {
+		String organizationId = Optional.ofNullable(workflowStatusData.get("organization_id")).map(AttributeValue::s)
+				.orElse(null);
+		String trackerId = Optional.ofNullable(workflowStatusData.get("id")).map(AttributeValue::s).orElse(null);
+		Optional.ofNullable(workflowStatusData.get("file_id")).map(AttributeValue::s).filter(id -> !id.isBlank())
+				.ifPresent(fileId -> {
+					fileProgressService.recordFinalized(fileId, trackerId, status, organizationId);
+					// Only a record that leaves nothing pending queues the file's finalization
+					if (isFileProcessed(fileId)) {
+						applicationEventPublisher.publishEvent(new FileFinalizationEvent(fileId));
+					}
+				});
+	}
+
+	private boolean isFileProcessed(String fileId) {
+		try {
+			return fileProgressService.completedFileStatus(fileId).isPresent();
+		} catch (Exception e) {
+			logger.warn("Could not check whether file {} is complete; it is left for the sweep. {}", fileId,
+					e.getMessage());
+			return false;
+		}
+	}
+
+	private CompletableFuture<Void> insetCleanMasterData(String status, String domainTableName,
 			Map<String, AttributeValue> workflowStatusData) {
 		if (status != null && Status.success.toString().equals(status.toLowerCase()) && !domainTableName.isEmpty()) {
 			Map<String, Object> workflowStatusFields = dynamoItemToJavaMap(workflowStatusData);
@@ -173,9 +298,11 @@ public class WorkflowService implements IWorkflowService {
 			Optional.ofNullable(workflowStatusFields.remove("dataquality_status"));
 //			Optional.ofNullable(workflowStatusFields.remove("domain_name"));
 			Optional.ofNullable(workflowStatusFields.remove("policy_id"));
-			dynamicSQLService.buildCreateTableSQL(workflowStatusFields, domainTableName);
-
+			Optional.ofNullable(workflowStatusFields.remove(FileProgressService.COUNTED_ATTRIBUTE));
+			Optional.ofNullable(workflowStatusFields.remove("version"));
+			return dynamicSQLService.buildCreateTableSQL(workflowStatusFields, domainTableName);
 		}
+		return CompletableFuture.completedFuture(null);
 	}
 
 	@Override
@@ -0,0 +1,354 @@
+package sg.edu.nus.iss.edgp.workflow.management.aws.local;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Value semantics for {@link AttributeValue}: document paths, comparison,
+ * arithmetic and the item-size rules DynamoDB uses for capacity accounting.
+ */
+final class AttributeValues {
+
+	private AttributeValues() {
+	}
+
+	// ========== DOCUMENT PATHS ==========
+
+	static AttributeValue get(Map<String, AttributeValue> item, List<Object> path) {
+		AttributeValue current = item.get((String) path.get(0));
+		for (int i = 1; i < path.size() && current != null; i++) {
+			Object segment = path.get(i);
+			if (segment instanceof String key) {
+				current = current.hasM() ? current.m().get(key) : null;
+			} else {
+				int index = (Integer) segment;
+				current = current.hasL() && index < current.l().size() ? current.l().get(index) : null;
+			}
+		}
+		return current;
+	}
+
+	static void set(Map<String, AttributeValue> item, List<Object> path, AttributeValue value) {
+		String head = (String) path.get(0);
+		if (path.size() == 1) {
+			item.put(head, value);
+			return;
+		}
+		AttributeValue parent = item.get(head);
+		if (parent == null) {
+			throw DynamoExpressionParser.validation("The document path provided in the update expression is invalid");
+		}
+		item.put(head, setNested(parent, path, 1, value));
+	}
+
+	private static AttributeValue setNested(AttributeValue parent, List<Object> path, int depth, AttributeValue value) {
+		Object segment = path.get(depth);
+		boolean last = depth == path.size() - 1;
+		if (segment instanceof String key && parent.hasM()) {
+			Map<String, AttributeValue> copy = new HashMap<>(parent.m());
+			AttributeValue child = copy.get(key);
+			if (!last && child == null) {
+				throw DynamoExpressionParser.validation("The document path provided in the update expression is invalid");
+			}
+			copy.put(key, last ? value : setNested(child, path, depth + 1, value));
+			return AttributeValue.builder().m(copy).build();
+		}
+		if (segment instanceof Integer index && parent.hasL()) {
+			List<AttributeValue> copy = new ArrayList<>(parent.l());
+			if (index >= copy.size()) {
+				if (!last) {
+					throw DynamoExpressionParser
+							.validation("The document path provided in the update expression is invalid");
+				}
+				copy.add(value);
+			} else {
+				copy.set(index, last ? value : setNested(copy.get(index), path, depth + 1, value));
+			}
+			return AttributeValue.builder().l(copy).build();
+		}
+		throw DynamoExpressionParser.validation("The document path provided in the update expression is invalid");
+	}
+
+	static void remove(Map<String, AttributeValue> item, List<Object> path) {
+		String head = (String) path.get(0);
+		if (path.size() == 1) {
+			item.remove(head);
+			return;
+		}
+		AttributeValue parent = item.get(head);
+		if (parent != null) {
+			item.put(head, removeNested(parent, path, 1));
+		}
+	}
+
+	private static AttributeValue removeNested(AttributeValue parent, List<Object> path, int depth) {
+		Object segment = path.get(depth);
+		boolean last = depth == path.size() - 1;
+		if (segment instanceof String key && parent.hasM() && parent.m().containsKey(key)) {
+			Map<String, AttributeValue> copy = new HashMap<>(parent.m());
+			if (last) {
+				copy.remove(key);
+			} else {
+				copy.put(key, removeNested(copy.get(key), path, depth + 1));
+			}
+			return AttributeValue.builder().m(copy).build();
+		}
+		if (segment instanceof Integer index && parent.hasL() && index < parent.l().size()) {
+			List<AttributeValue> copy = new ArrayList<>(parent.l());
+			if (last) {
+				copy.remove((int) index);
+			} else {
+				copy.set(index, removeNested(copy.get(index), path, depth + 1));
+			}
+			return AttributeValue.builder().l(copy).build();
+		}
+		return parent;
+	}
+
+	// ========== COMPARISON ==========
+
+	static boolean equal(AttributeValue a, AttributeValue b) {
+		if (a == null || b == null) {
+			return false;
+		}
+		if (a.n() != null && b.n() != null) {
+			return new BigDecimal(a.n()).compareTo(new BigDecimal(b.n())) == 0;
+		}
+		return a.equals(b);
+	}
+
+	/** Orders two scalars of the same type; returns {@code null} when they are not comparable. */
+	static Integer compare(AttributeValue a, AttributeValue b) {
+		if (a == null || b == null) {
+			return null;
+		}
+		if (a.s() != null && b.s() != null) {
+			return Integer.signum(a.s().compareTo(b.s()));
+		}
+		if (a.n() != null && b.n() != null) {
+			return new BigDecimal(a.n()).compareTo(new BigDecimal(b.n()));
+		}
+		if (a.b() != null && b.b() != null) {
+			return compareBytes(a.b().asByteArrayUnsafe(), b.b().asByteArrayUnsafe());
+		}
+		return null;
+	}
+
+	private static int compareBytes(byte[] x, byte[] y) {
+		for (int i = 0; i < Math.min(x.length, y.length); i++) {
+			int c = Integer.compare(x[i] & 0xff, y[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return Integer.compare(x.length, y.length);
+	}
+
+	static boolean contains(AttributeValue container, AttributeValue operand) {
+		if (container == null || operand == null) {
+			return false;
+		}
+		if (container.s() != null && operand.s() != null) {
+			return container.s().contains(operand.s());
+		}
+		if (container.hasSs() && operand.s() != null) {
+			return container.ss().contains(operand.s());
+		}
+		if (container.hasNs() && operand.n() != null) {
+			return container.ns().stream().anyMatch(n -> equal(AttributeValue.builder().n(n).build(), operand));
+		}
+		if (container.hasL()) {
+			return container.l().stream().anyMatch(v -> equal(v, operand));
+		}
+		return false;
+	}
+
+	static String typeCode(AttributeValue v) {
+		return switch (v.type()) {
+		case S -> "S";
+		case N -> "N";
+		case B -> "B";
+		case SS -> "SS";
+		case NS -> "NS";
+		case BS -> "BS";
+		case M -> "M";
+		case L -> "L";
+		case BOOL -> "BOOL";
+		case NUL -> "NULL";
+		default -> "";
+		};
+	}
+
+	static int size(AttributeValue v) {
+		if (v.s() != null) {
+			return v.s().length();
+		}
+		if (v.b() != null) {
+			return v.b().asByteArrayUnsafe().length;
+		}
+		if (v.hasL()) {
+			return v.l().size();
+		}
+		if (v.hasM()) {
+			return v.m().size();
+		}
+		if (v.hasSs()) {
+			return v.ss().size();
+		}
+		if (v.hasNs()) {
+			return v.ns().size();
+		}
+		if (v.hasBs()) {
+			return v.bs().size();
+		}
+		throw DynamoExpressionParser.validation("Invalid operand type for size function");
+	}
+
+	// ========== UPDATE FUNCTIONS ==========
+
+	static AttributeValue listAppend(AttributeValue first, AttributeValue second) {
+		if (first == null || second == null || !first.hasL() || !second.hasL()) {
+			throw DynamoExpressionParser.validation("Incorrect operand type for operator or function; operator or "
+					+ "function: list_append");
+		}
+		List<AttributeValue> combined = new ArrayList<>(first.l());
+		combined.addAll(second.l());
+		return AttributeValue.builder().l(combined).build();
+	}
+
+	static AttributeValue arithmetic(AttributeValue left, AttributeValue right, boolean subtract) {
+		if (left == null || right == null || left.n() == null || right.n() == null) {
+			throw DynamoExpressionParser.validation("Incorrect operand type for operator or function; operator: "
+					+ (subtract ? "-" : "+"));
+		}
+		BigDecimal l = new BigDecimal(left.n());
+		BigDecimal r = new BigDecimal(right.n());
+		return number(subtract ? l.subtract(r) : l.add(r));
+	}
+
+	static AttributeValue add(AttributeValue existing, AttributeValue delta) {
+		if (delta.n() != null) {
+			return existing == null ? delta : arithmetic(existing, delta, false);
+		}
+		if (delta.hasSs()) {
+			Set<String> union = new LinkedHashSet<>(existing == null ? List.of() : existing.ss());
+			union.addAll(delta.ss());
+			return AttributeValue.builder().ss(union).build();
+		}
+		if (delta.hasNs()) {
+			Set<String> union = new LinkedHashSet<>(existing == null ? List.of() : existing.ns());
+			union.addAll(delta.ns());
+			return AttributeValue.builder().ns(union).build();
+		}
+		throw DynamoExpressionParser.validation("Incorrect operand type for operator or function; operator: ADD");
+	}
+
+	static AttributeValue deleteFromSet(AttributeValue existing, AttributeValue delta) {
+		if (existing == null) {
+			return null;
+		}
+		if (existing.hasSs() && delta.hasSs()) {
+			Set<String> rest = new LinkedHashSet<>(existing.ss());
+			rest.removeAll(delta.ss());
+			return rest.isEmpty() ? null : AttributeValue.builder().ss(rest).build();
+		}
+		if (existing.hasNs() && delta.hasNs()) {
+			Set<String> rest = new LinkedHashSet<>(existing.ns());
+			rest.removeAll(delta.ns());
+			return rest.isEmpty() ? null : AttributeValue.builder().ns(rest).build();
+		}
+		throw DynamoExpressionParser.validation("Incorrect operand type for operator or function; operator: DELETE");
+	}
+
+	static AttributeValue number(BigDecimal value) {
+		BigDecimal stripped = value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+		return AttributeValue.builder().n(stripped.toPlainString()).build();
+	}
+
+	// ========== SIZE ACCOUNTING ==========
+
+	/** Approximates the stored size of an item in bytes, following DynamoDB's published sizing rules. */
+	static long itemSize(Map<String, AttributeValue> item) {
+		long total = 0;
+		for (Map.Entry<String, AttributeValue> e : item.entrySet()) {
+			total += utf8Length(e.getKey()) + valueSize(e.getValue());
+		}
+		return total;
+	}
+
+	private static long valueSize(AttributeValue v) {
+		if (v.s() != null) {
+			return utf8Length(v.s());
+		}
+		if (v.n() != null) {
+			return numberSize(v.n());
+		}
+		if (v.b() != null) {
+			return v.b().asByteArrayUnsafe().length;
+		}
+		if (v.bool() != null || Boolean.TRUE.equals(v.nul())) {
+			return 1;
+		}
+		if (v.hasSs()) {
+			return v.ss().stream().mapToLong(AttributeValues::utf8Length).sum();
+		}
+		if (v.hasNs()) {
+			return v.ns().stream().mapToLong(AttributeValues::numberSize).sum();
+		}
+		if (v.hasBs()) {
+			return v.bs().stream().map(SdkBytes::asByteArrayUnsafe).mapToLong(b -> b.length).sum();
+		}
+		if (v.hasL()) {
+			return 3 + v.l().stream().mapToLong(e -> 1 + valueSize(e)).sum();
+		}
+		if (v.hasM()) {
+			return 3 + v.m().entrySet().stream().mapToLong(e -> 1 + utf8Length(e.getKey()) + valueSize(e.getValue()))
+					.sum();
+		}
+		return 0;
+	}
+
+	private static long numberSize(String n) {
+		long digits = n.chars().filter(Character::isDigit).count();
+		return (digits + 1) / 2 + 1;
+	}
+
+	private static long utf8Length(String s) {
+		return s.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	// ========== KEYS ==========
+
+	/** A key attribute value ordered the way DynamoDB orders sort keys. */
+	record KeyValue(AttributeValue value) implements Comparable<KeyValue> {
+
+		@Override
+		public int compareTo(KeyValue other) {
+			int byType = Integer.compare(value.type().ordinal(), other.value.type().ordinal());
+			if (byType != 0) {
+				return byType;
+			}
+			Integer c = AttributeValues.compare(value, other.value);
+			return c == null ? 0 : c;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof KeyValue other && compareTo(other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return value.n() != null ? new BigDecimal(value.n()).stripTrailingZeros().hashCode() : value.hashCode();
+		}
+	}
+}
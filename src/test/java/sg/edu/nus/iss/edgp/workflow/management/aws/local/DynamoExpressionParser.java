@@ -0,0 +1,573 @@
+package sg.edu.nus.iss.edgp.workflow.management.aws.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+/**
+ * Parser and evaluator for the DynamoDB expression grammar used by
+ * {@link InMemoryDynamoDbClient}: condition, filter and key-condition
+ * expressions, update expressions and projection expressions.
+ */
+final class DynamoExpressionParser {
+
+	private final List<String> tokens;
+	private final Map<String, String> names;
+	private final Map<String, AttributeValue> values;
+	private int pos;
+
+	private DynamoExpressionParser(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+		this.tokens = tokenize(expression);
+		this.names = names == null ? Collections.emptyMap() : names;
+		this.values = values == null ? Collections.emptyMap() : values;
+	}
+
+	// ========== PUBLIC ENTRY POINTS ==========
+
+	static Condition parseCondition(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+		if (expression == null || expression.isBlank()) {
+			return item -> true;
+		}
+		DynamoExpressionParser parser = new DynamoExpressionParser(expression, names, values);
+		Condition condition = parser.parseOr();
+		parser.expectEnd();
+		return condition;
+	}
+
+	static Update parseUpdate(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+		DynamoExpressionParser parser = new DynamoExpressionParser(expression, names, values);
+		Update update = parser.parseUpdateClauses();
+		parser.expectEnd();
+		return update;
+	}
+
+	static List<List<Object>> parseProjection(String expression, Map<String, String> names) {
+		DynamoExpressionParser parser = new DynamoExpressionParser(expression, names, null);
+		List<List<Object>> paths = new ArrayList<>();
+		paths.add(parser.parsePath());
+		while (parser.accept(",")) {
+			paths.add(parser.parsePath());
+		}
+		parser.expectEnd();
+		return paths;
+	}
+
+	// ========== AST ==========
+
+	interface Condition {
+		boolean test(Map<String, AttributeValue> item);
+
+		/** Returns the value compared with '=' against a top-level attribute, if any. */
+		default AttributeValue equalityOn(String attributeName) {
+			return null;
+		}
+	}
+
+	interface Operand {
+		AttributeValue resolve(Map<String, AttributeValue> item);
+	}
+
+	static final class Update {
+		private final List<Action> actions = new ArrayList<>();
+
+		Map<String, AttributeValue> apply(Map<String, AttributeValue> oldItem) {
+			Map<String, AttributeValue> newItem = new HashMap<>(oldItem);
+			// Right-hand sides always see the item as it was before the update
+			List<Runnable> writes = new ArrayList<>();
+			for (Action action : actions) {
+				writes.add(action.prepare(oldItem, newItem));
+			}
+			writes.forEach(Runnable::run);
+			return newItem;
+		}
+
+		Set<String> topLevelAttributes() {
+			Set<String> attrs = new LinkedHashSet<>();
+			for (Action action : actions) {
+				attrs.add((String) action.path.get(0));
+			}
+			return attrs;
+		}
+	}
+
+	private abstract static class Action {
+		final List<Object> path;
+
+		Action(List<Object> path) {
+			this.path = path;
+		}
+
+		abstract Runnable prepare(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem);
+	}
+
+	// ========== CONDITION GRAMMAR ==========
+
+	private Condition parseOr() {
+		Condition left = parseAnd();
+		while (acceptKeyword("OR")) {
+			Condition l = left;
+			Condition r = parseAnd();
+			left = item -> l.test(item) || r.test(item);
+		}
+		return left;
+	}
+
+	private Condition parseAnd() {
+		Condition left = parseNot();
+		while (acceptKeyword("AND")) {
+			Condition l = left;
+			Condition r = parseNot();
+			left = new Condition() {
+				@Override
+				public boolean test(Map<String, AttributeValue> item) {
+					return l.test(item) && r.test(item);
+				}
+
+				@Override
+				public AttributeValue equalityOn(String attributeName) {
+					AttributeValue v = l.equalityOn(attributeName);
+					return v != null ? v : r.equalityOn(attributeName);
+				}
+			};
+		}
+		return left;
+	}
+
+	private Condition parseNot() {
+		if (acceptKeyword("NOT")) {
+			Condition inner = parseNot();
+			return item -> !inner.test(item);
+		}
+		return parsePrimary();
+	}
+
+	private Condition parsePrimary() {
+		if (accept("(")) {
+			Condition inner = parseOr();
+			expect(")");
+			return inner;
+		}
+
+		String fn = peek().toLowerCase(Locale.ROOT);
+		if ("(".equals(peekAhead(1))) {
+			switch (fn) {
+			case "attribute_exists": {
+				next();
+				expect("(");
+				List<Object> path = parsePath();
+				expect(")");
+				return item -> AttributeValues.get(item, path) != null;
+			}
+			case "attribute_not_exists": {
+				next();
+				expect("(");
+				List<Object> path = parsePath();
+				expect(")");
+				return item -> AttributeValues.get(item, path) == null;
+			}
+			case "attribute_type": {
+				next();
+				expect("(");
+				List<Object> path = parsePath();
+				expect(",");
+				Operand type = parseConditionOperand();
+				expect(")");
+				return item -> {
+					AttributeValue v = AttributeValues.get(item, path);
+					AttributeValue t = type.resolve(item);
+					return v != null && t != null && AttributeValues.typeCode(v).equals(t.s());
+				};
+			}
+			case "begins_with": {
+				next();
+				expect("(");
+				Operand target = parseConditionOperand();
+				expect(",");
+				Operand prefix = parseConditionOperand();
+				expect(")");
+				return item -> {
+					AttributeValue v = target.resolve(item);
+					AttributeValue p = prefix.resolve(item);
+					return v != null && p != null && v.s() != null && p.s() != null && v.s().startsWith(p.s());
+				};
+			}
+			case "contains": {
+				next();
+				expect("(");
+				Operand target = parseConditionOperand();
+				expect(",");
+				Operand operand = parseConditionOperand();
+				expect(")");
+				return item -> AttributeValues.contains(target.resolve(item), operand.resolve(item));
+			}
+			default:
+				break;
+			}
+		}
+
+		Operand left = parseConditionOperand();
+		if (acceptKeyword("BETWEEN")) {
+			Operand low = parseConditionOperand();
+			expectKeyword("AND");
+			Operand high = parseConditionOperand();
+			return item -> {
+				AttributeValue v = left.resolve(item);
+				Integer lo = AttributeValues.compare(v, low.resolve(item));
+				Integer hi = AttributeValues.compare(v, high.resolve(item));
+				return lo != null && hi != null && lo >= 0 && hi <= 0;
+			};
+		}
+		if (acceptKeyword("IN")) {
+			expect("(");
+			List<Operand> candidates = new ArrayList<>();
+			candidates.add(parseConditionOperand());
+			while (accept(",")) {
+				candidates.add(parseConditionOperand());
+			}
+			expect(")");
+			return item -> {
+				AttributeValue v = left.resolve(item);
+				return v != null && candidates.stream().anyMatch(c -> AttributeValues.equal(v, c.resolve(item)));
+			};
+		}
+
+		String comparator = next();
+		Operand right = parseConditionOperand();
+		return switch (comparator) {
+		case "=" -> new Condition() {
+			@Override
+			public boolean test(Map<String, AttributeValue> item) {
+				return AttributeValues.equal(left.resolve(item), right.resolve(item));
+			}
+
+			@Override
+			public AttributeValue equalityOn(String attributeName) {
+				if (left instanceof PathOperand p && p.isTopLevel(attributeName) && right instanceof ValueOperand v) {
+					return v.value;
+				}
+				return null;
+			}
+		};
+		case "<>" -> item -> {
+			AttributeValue l = left.resolve(item);
+			AttributeValue r = right.resolve(item);
+			return l != null && r != null && !AttributeValues.equal(l, r);
+		};
+		case "<" -> item -> compareWith(left, right, item, c -> c < 0);
+		case "<=" -> item -> compareWith(left, right, item, c -> c <= 0);
+		case ">" -> item -> compareWith(left, right, item, c -> c > 0);
+		case ">=" -> item -> compareWith(left, right, item, c -> c >= 0);
+		default -> throw validation("Unsupported comparator: " + comparator);
+		};
+	}
+
+	private static boolean compareWith(Operand left, Operand right, Map<String, AttributeValue> item,
+			java.util.function.IntPredicate test) {
+		Integer c = AttributeValues.compare(left.resolve(item), right.resolve(item));
+		return c != null && test.test(c);
+	}
+
+	private Operand parseConditionOperand() {
+		if (peek().startsWith(":")) {
+			return new ValueOperand(value(next()));
+		}
+		if ("size".equalsIgnoreCase(peek()) && "(".equals(peekAhead(1))) {
+			next();
+			expect("(");
+			List<Object> path = parsePath();
+			expect(")");
+			return item -> {
+				AttributeValue v = AttributeValues.get(item, path);
+				return v == null ? null : AttributeValue.builder().n(String.valueOf(AttributeValues.size(v))).build();
+			};
+		}
+		return new PathOperand(parsePath());
+	}
+
+	// ========== UPDATE GRAMMAR ==========
+
+	private Update parseUpdateClauses() {
+		Update update = new Update();
+		while (pos < tokens.size()) {
+			String clause = next().toUpperCase(Locale.ROOT);
+			switch (clause) {
+			case "SET" -> {
+				do {
+					update.actions.add(parseSetAction());
+				} while (accept(","));
+			}
+			case "REMOVE" -> {
+				do {
+					List<Object> path = parsePath();
+					update.actions.add(new Action(path) {
+						@Override
+						Runnable prepare(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+							return () -> AttributeValues.remove(newItem, path);
+						}
+					});
+				} while (accept(","));
+			}
+			case "ADD" -> {
+				do {
+					List<Object> path = parsePath();
+					Operand operand = parseUpdateOperand();
+					update.actions.add(new Action(path) {
+						@Override
+						Runnable prepare(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+							AttributeValue result = AttributeValues.add(AttributeValues.get(oldItem, path),
+									operand.resolve(oldItem));
+							return () -> AttributeValues.set(newItem, path, result);
+						}
+					});
+				} while (accept(","));
+			}
+			case "DELETE" -> {
+				do {
+					List<Object> path = parsePath();
+					Operand operand = parseUpdateOperand();
+					update.actions.add(new Action(path) {
+						@Override
+						Runnable prepare(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+							AttributeValue result = AttributeValues.deleteFromSet(AttributeValues.get(oldItem, path),
+									operand.resolve(oldItem));
+							return () -> {
+								if (result == null) {
+									AttributeValues.remove(newItem, path);
+								} else {
+									AttributeValues.set(newItem, path, result);
+								}
+							};
+						}
+					});
+				} while (accept(","));
+			}
+			default -> throw validation("Unsupported update clause: " + clause);
+			}
+		}
+		if (update.actions.isEmpty()) {
+			throw validation("Update expression is empty");
+		}
+		return update;
+	}
+
+	private Action parseSetAction() {
+		List<Object> path = parsePath();
+		expect("=");
+		Operand left = parseUpdateOperand();
+		Operand operand = left;
+		if (accept("+")) {
+			Operand right = parseUpdateOperand();
+			operand = item -> AttributeValues.arithmetic(left.resolve(item), right.resolve(item), false);
+		} else if (accept("-")) {
+			Operand right = parseUpdateOperand();
+			operand = item -> AttributeValues.arithmetic(left.resolve(item), right.resolve(item), true);
+		}
+		Operand value = operand;
+		return new Action(path) {
+			@Override
+			Runnable prepare(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+				AttributeValue result = value.resolve(oldItem);
+				if (result == null) {
+					throw validation("The provided expression refers to an attribute that does not exist in the item");
+				}
+				return () -> AttributeValues.set(newItem, path, result);
+			}
+		};
+	}
+
+	private Operand parseUpdateOperand() {
+		if (peek().startsWith(":")) {
+			return new ValueOperand(value(next()));
+		}
+		String fn = peek().toLowerCase(Locale.ROOT);
+		if ("(".equals(peekAhead(1))) {
+			if ("if_not_exists".equals(fn)) {
+				next();
+				expect("(");
+				List<Object> path = parsePath();
+				expect(",");
+				Operand fallback = parseUpdateOperand();
+				expect(")");
+				return item -> {
+					AttributeValue existing = AttributeValues.get(item, path);
+					return existing != null ? existing : fallback.resolve(item);
+				};
+			}
+			if ("list_append".equals(fn)) {
+				next();
+				expect("(");
+				Operand first = parseUpdateOperand();
+				expect(",");
+				Operand second = parseUpdateOperand();
+				expect(")");
+				return item -> AttributeValues.listAppend(first.resolve(item), second.resolve(item));
+			}
+		}
+		return new PathOperand(parsePath());
+	}
+
+	// ========== PATHS AND OPERANDS ==========
+
+	private List<Object> parsePath() {
+		List<Object> path = new ArrayList<>();
+		path.add(name(next()));
+		while (true) {
+			if (accept(".")) {
+				path.add(name(next()));
+			} else if (accept("[")) {
+				path.add(Integer.parseInt(next()));
+				expect("]");
+			} else {
+				return path;
+			}
+		}
+	}
+
+	private String name(String token) {
+		if (token.startsWith("#")) {
+			String resolved = names.get(token);
+			if (resolved == null) {
+				throw validation("An expression attribute name used in the document path is not defined: " + token);
+			}
+			return resolved;
+		}
+		if (token.isEmpty() || !Character.isLetter(token.charAt(0)) && token.charAt(0) != '_') {
+			throw validation("Invalid attribute name in expression: " + token);
+		}
+		return token;
+	}
+
+	private AttributeValue value(String token) {
+		AttributeValue v = values.get(token);
+		if (v == null) {
+			throw validation("An expression attribute value used in expression is not defined: " + token);
+		}
+		return v;
+	}
+
+	private static final class PathOperand implements Operand {
+		private final List<Object> path;
+
+		PathOperand(List<Object> path) {
+			this.path = path;
+		}
+
+		boolean isTopLevel(String attributeName) {
+			return path.size() == 1 && attributeName.equals(path.get(0));
+		}
+
+		@Override
+		public AttributeValue resolve(Map<String, AttributeValue> item) {
+			return AttributeValues.get(item, path);
+		}
+	}
+
+	private static final class ValueOperand implements Operand {
+		private final AttributeValue value;
+
+		ValueOperand(AttributeValue value) {
+			this.value = value;
+		}
+
+		@Override
+		public AttributeValue resolve(Map<String, AttributeValue> item) {
+			return value;
+		}
+	}
+
+	// ========== TOKENS ==========
+
+	private static List<String> tokenize(String expression) {
+		List<String> out = new ArrayList<>();
+		int i = 0;
+		int n = expression.length();
+		while (i < n) {
+			char c = expression.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '<' || c == '>') {
+				if (i + 1 < n && (expression.charAt(i + 1) == '=' || (c == '<' && expression.charAt(i + 1) == '>'))) {
+					out.add(expression.substring(i, i + 2));
+					i += 2;
+				} else {
+					out.add(String.valueOf(c));
+					i++;
+				}
+			} else if ("()=,.[]+-".indexOf(c) >= 0) {
+				out.add(String.valueOf(c));
+				i++;
+			} else if (Character.isLetterOrDigit(c) || c == '_' || c == '#' || c == ':') {
+				int start = i++;
+				while (i < n && (Character.isLetterOrDigit(expression.charAt(i)) || expression.charAt(i) == '_')) {
+					i++;
+				}
+				out.add(expression.substring(start, i));
+			} else {
+				throw validation("Invalid character in expression: '" + c + "'");
+			}
+		}
+		return out;
+	}
+
+	private String peek() {
+		return pos < tokens.size() ? tokens.get(pos) : "";
+	}
+
+	private String peekAhead(int offset) {
+		return pos + offset < tokens.size() ? tokens.get(pos + offset) : "";
+	}
+
+	private String next() {
+		if (pos >= tokens.size()) {
+			throw validation("Unexpected end of expression");
+		}
+		return tokens.get(pos++);
+	}
+
+	private boolean accept(String token) {
+		if (token.equals(peek())) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean acceptKeyword(String keyword) {
+		if (keyword.equalsIgnoreCase(peek())) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String token) {
+		if (!accept(token)) {
+			throw validation("Expected '" + token + "' but found '" + peek() + "'");
+		}
+	}
+
+	private void expectKeyword(String keyword) {
+		if (!acceptKeyword(keyword)) {
+			throw validation("Expected " + keyword + " but found '" + peek() + "'");
+		}
+	}
+
+	private void expectEnd() {
+		if (pos < tokens.size()) {
+			throw validation("Unexpected token '" + peek() + "' in expression");
+		}
+	}
+
+	static DynamoDbException validation(String message) {
+		return (DynamoDbException) DynamoDbException.builder().message("ValidationException: " + message)
+				.statusCode(400).build();
+	}
+}
@@ -0,0 +1,426 @@
+package sg.edu.nus.iss.edgp.workflow.management.aws.local;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
+import sg.edu.nus.iss.edgp.workflow.management.dto.WorkflowStatus;
+import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
+import sg.edu.nus.iss.edgp.workflow.management.exception.DynamicDynamoServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowStatusConflictException;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicDynamoService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.ProcessStatusObserverService;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.CreateGlobalSecondaryIndexAction;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndex;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexUpdate;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateTableRequest;
+
+class InMemoryDynamoDbClientTest {
+
+	private static final String TRACKER = "MasterDataTaskTrackerTest";
+	private static final String HEADER = "MasterDataHeaderTest";
+
+	private InMemoryDynamoDbClient client;
+	private DynamicDynamoService dynamoService;
+
+	@BeforeEach
+	void setUp() {
+		client = new InMemoryDynamoDbClient(42L);
+		dynamoService = new DynamicDynamoService(client);
+		dynamoService.createTable(TRACKER);
+		dynamoService.createTable(HEADER);
+	}
+
+	private static AttributeValue s(String v) {
+		return AttributeValue.builder().s(v).build();
+	}
+
+	private void putTracker(String id, String fileId, String orgId, String finalStatus) {
+		Map<String, AttributeValue> item = new HashMap<>();
+		item.put("id", s(id));
+		item.put("file_id", s(fileId));
+		item.put("organization_id", s(orgId));
+		if (finalStatus != null) {
+			item.put("final_status", s(finalStatus));
+		}
+		client.putItem(PutItemRequest.builder().tableName(TRACKER).item(item).build());
+	}
+
+	@Test
+	void createTable_isActiveAndDescribable() {
+		assertTrue(dynamoService.tableExists(TRACKER));
+		assertFalse(dynamoService.tableExists("missing"));
+	}
+
+	@Test
+	void updateWorkflowStatus_appendsFailedValidationsWithIfNotExists() {
+		putTracker("wf-1", "f-1", "org-1", null);
+
+		WorkflowStatus first = new WorkflowStatus();
+		first.setId("wf-1");
+		first.setRuleStatus("fail");
+		first.setFinalStatus("fail");
+		first.setFailedValidations(List.of(Map.of("rule_name", "NotNull", "column_name", "name")));
+		dynamoService.updateWorkflowStatus(TRACKER, first);
+
+		WorkflowStatus second = new WorkflowStatus();
+		second.setId("wf-1");
+		second.setDataQualityStatus("fail");
+		second.setFailedValidations(List.of(Map.of("rule_name", "Range", "column_name", "age")));
+		dynamoService.updateWorkflowStatus(TRACKER, second);
+
+		Map<String, AttributeValue> stored = dynamoService.getDataByWorkflowStatusId(TRACKER, "wf-1");
+		assertEquals("fail", stored.get("rule_status").s());
+		assertEquals("fail", stored.get("dataquality_status").s());
+		assertEquals(2, stored.get("failed_validations").l().size());
+		assertEquals("Range", stored.get("failed_validations").l().get(1).m().get("rule_name").s());
+	}
+
+	@Test
+	void updateWorkflowStatus_versionCheckRejectsStaleWriter() {
+		putTracker("wf-1", "f-1", "org-1", null);
+
+		WorkflowStatus rule = new WorkflowStatus();
+		rule.setId("wf-1");
+		rule.setRuleStatus("success");
+		rule.setExpectedVersion(0L);
+		dynamoService.updateWorkflowStatus(TRACKER, rule);
+
+		WorkflowStatus stale = new WorkflowStatus();
+		stale.setId("wf-1");
+		stale.setFinalStatus("fail");
+		stale.setExpectedVersion(0L);
+		assertThrows(WorkflowStatusConflictException.class, () -> dynamoService.updateWorkflowStatus(TRACKER, stale));
+
+		stale.setExpectedVersion(1L);
+		dynamoService.updateWorkflowStatus(TRACKER, stale);
+
+		Map<String, AttributeValue> stored = dynamoService.getDataByWorkflowStatusId(TRACKER, "wf-1");
+		assertEquals("2", stored.get("version").n());
+		assertEquals("fail", stored.get("final_status").s());
+	}
+
+	@Test
+	void retrieveDataList_followsLastEvaluatedKeyAcrossSmallPages() {
+		client.setPageSizeLimitBytes(200);
+		for (int i = 0; i < 40; i++) {
+			putTracker(String.format("wf-%03d", i), i % 2 == 0 ? "f-even" : "f-odd", "org-1",
+					i % 4 == 0 ? "fail" : "success");
+		}
+		putTracker("wf-other", "f-even", "org-2", "success");
+
+		SearchRequest search = new SearchRequest();
+		search.setPage(2);
+		search.setSize(5);
+		Map<String, Object> result = dynamoService.retrieveDataList(TRACKER, "f-even", search, "org-1");
+
+		assertEquals(20, result.get("totalCount"));
+		@SuppressWarnings("unchecked")
+		List<Map<String, AttributeValue>> items = (List<Map<String, AttributeValue>>) result.get("items");
+		assertEquals(5, items.size());
+		assertEquals("wf-010", items.get(0).get("id").s());
+		assertTrue(client.requestCount("Scan") > 1, "small pages must force multiple scan calls");
+	}
+
+	@Test
+	void fetchOldestIdByProcessStage_paginatesHeaderScan() {
+		client.setPageSizeLimitBytes(100);
+		for (int i = 0; i < 10; i++) {
+			Map<String, AttributeValue> header = new HashMap<>();
+			header.put("id", s("file-" + i));
+			header.put("file_name", s("file-" + i + ".csv"));
+			header.put("process_stage", s(i == 3 || i == 7 ? "PROCESSING" : "COMPLETE"));
+			header.put("uploaded_date", s("2025-01-0" + (9 - i)));
+			client.putItem(PutItemRequest.builder().tableName(HEADER).item(header).build());
+		}
+		ProcessStatusObserverService observer = new ProcessStatusObserverService(client);
+		ReflectionTestUtils.setField(observer, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(observer, "masterDataTaskTrackerTableName", TRACKER);
+
+		HashMap<String, String> oldest = observer.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+
+		assertEquals("file-7", oldest.get("id"));
+		assertEquals("file-7.csv", oldest.get("name"));
+	}
+
+	@Test
+	void fileLease_isExclusiveUntilReleasedOrExpired() throws Exception {
+		Map<String, AttributeValue> header = new HashMap<>();
+		header.put("id", s("file-1"));
+		header.put("process_stage", s("PROCESSING"));
+		client.putItem(PutItemRequest.builder().tableName(HEADER).item(header).build());
+		ProcessStatusObserverService observer = new ProcessStatusObserverService(client);
+		ReflectionTestUtils.setField(observer, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(observer, "masterDataTaskTrackerTableName", TRACKER);
+
+		assertTrue(observer.acquireFileLease("file-1", "pod-a", Duration.ofMinutes(1)));
+		assertFalse(observer.acquireFileLease("file-1", "pod-b", Duration.ofMinutes(1)));
+		assertTrue(observer.renewFileLease("file-1", "pod-a", Duration.ofMinutes(1)));
+		assertFalse(observer.renewFileLease("file-1", "pod-b", Duration.ofMinutes(1)));
+
+		observer.releaseFileLease("file-1", "pod-a");
+		assertTrue(observer.acquireFileLease("file-1", "pod-b", Duration.ofMillis(1)));
+		Thread.sleep(5);
+
+		// pod-b stopped heartbeating, so its lease can be taken over
+		assertTrue(observer.acquireFileLease("file-1", "pod-a", Duration.ofMinutes(1)));
+		assertFalse(observer.renewFileLease("file-1", "pod-b", Duration.ofMinutes(1)));
+
+		assertTrue(observer.markFileComplete("file-1", "success"));
+		assertFalse(observer.acquireFileLease("file-1", "pod-b", Duration.ofMinutes(1)));
+
+		// Until its notification is sent a completed file can still be leased for the retry
+		observer.releaseFileLease("file-1", "pod-a");
+		assertTrue(observer.acquireFileLease("file-1", "pod-b", Duration.ofMinutes(1)));
+		observer.markFileNotified("file-1");
+		observer.releaseFileLease("file-1", "pod-b");
+		assertFalse(observer.acquireFileLease("file-1", "pod-a", Duration.ofMinutes(1)));
+	}
+
+	@Test
+	void activeStageIndex_tracksOnlyInFlightFiles() {
+		for (int i = 0; i < 20; i++) {
+			Map<String, AttributeValue> header = new HashMap<>();
+			header.put("id", s("file-" + i));
+			header.put("file_name", s("file-" + i + ".csv"));
+			header.put("process_stage", s(i == 4 || i == 11 ? "PROCESSING" : "COMPLETE"));
+			header.put("uploaded_date", s(String.format("2025-01-%02d", 30 - i)));
+			client.putItem(PutItemRequest.builder().tableName(HEADER).item(header).build());
+		}
+		ProcessStatusObserverService observer = new ProcessStatusObserverService(client);
+		ReflectionTestUtils.setField(observer, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(observer, "masterDataTaskTrackerTableName", TRACKER);
+
+		// The index is provisioned with the table, not by the application
+		assertFalse(observer.checkActiveStageIndex());
+		client.updateTable(UpdateTableRequest.builder().tableName(HEADER)
+				.attributeDefinitions(
+						AttributeDefinition.builder().attributeName("active_stage").attributeType(ScalarAttributeType.S)
+								.build(),
+						AttributeDefinition.builder().attributeName("uploaded_date").attributeType(ScalarAttributeType.S)
+								.build())
+				.globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+						.create(CreateGlobalSecondaryIndexAction.builder().indexName("active_stage-uploaded_date-index")
+								.keySchema(
+										KeySchemaElement.builder().attributeName("active_stage").keyType(KeyType.HASH)
+												.build(),
+										KeySchemaElement.builder().attributeName("uploaded_date").keyType(KeyType.RANGE)
+												.build())
+								.projection(Projection.builder().projectionType(ProjectionType.INCLUDE)
+										.nonKeyAttributes("file_name").build())
+								.build())
+						.build())
+				.build());
+		assertTrue(observer.checkActiveStageIndex());
+
+		// An incoming record and a lease tag their file; files from before the index come from the backfill
+		observer.markFileActive("file-11");
+		assertTrue(observer.acquireFileLease("file-11", "pod-a", Duration.ofMinutes(1)));
+		observer.markFileActive("file-3");
+		assertEquals(1, observer.tagUntrackedFilesByProcessStage(FileProcessStage.PROCESSING));
+		assertEquals(0, observer.tagUntrackedFilesByProcessStage(FileProcessStage.PROCESSING));
+
+		client.resetStatistics();
+		HashMap<String, String> oldest = observer.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+		assertEquals("file-11", oldest.get("id"));
+		assertEquals("file-11.csv", oldest.get("name"));
+		assertEquals(0, client.requestCount("Scan"));
+		assertEquals(1, client.requestCount("Query"));
+
+		assertTrue(observer.markFileComplete("file-11", "success"));
+		List<HashMap<String, String>> active = observer.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING);
+		assertEquals(1, active.size());
+		assertEquals("file-4", active.get(0).get("id"));
+
+		// Completed files stay in the index only until their notification is sent
+		List<HashMap<String, String>> unnotified = observer.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE);
+		assertEquals(1, unnotified.size());
+		assertEquals("file-11", unnotified.get(0).get("id"));
+		observer.markFileNotified("file-11");
+		assertTrue(observer.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE).isEmpty());
+	}
+
+	@Test
+	void conditionExpression_rejectsWriteWhenConditionFails() {
+		putTracker("wf-1", "f-1", "org-1", "success");
+
+		UpdateItemRequest guarded = UpdateItemRequest.builder().tableName(TRACKER).key(Map.of("id", s("wf-1")))
+				.updateExpression("SET #fs = :fs").conditionExpression("attribute_not_exists(#fs) OR #fs = :pending")
+				.expressionAttributeNames(Map.of("#fs", "final_status"))
+				.expressionAttributeValues(Map.of(":fs", s("fail"), ":pending", s("pending"))).build();
+
+		assertThrows(ConditionalCheckFailedException.class, () -> client.updateItem(guarded));
+		assertEquals("success", dynamoService.getDataByWorkflowStatusId(TRACKER, "wf-1").get("final_status").s());
+	}
+
+	@Test
+	void updateExpression_supportsArithmeticAddAndRemove() {
+		putTracker("wf-1", "f-1", "org-1", "success");
+
+		client.updateItem(UpdateItemRequest.builder().tableName(TRACKER).key(Map.of("id", s("wf-1")))
+				.updateExpression("SET attempts = if_not_exists(attempts, :zero) + :one REMOVE organization_id ADD hits :one")
+				.expressionAttributeValues(Map.of(":zero", AttributeValue.builder().n("0").build(), ":one",
+						AttributeValue.builder().n("1").build()))
+				.build());
+		client.updateItem(UpdateItemRequest.builder().tableName(TRACKER).key(Map.of("id", s("wf-1")))
+				.updateExpression("SET attempts = attempts + :one ADD hits :one")
+				.expressionAttributeValues(Map.of(":one", AttributeValue.builder().n("1").build())).build());
+
+		Map<String, AttributeValue> item = client
+				.getItem(GetItemRequest.builder().tableName(TRACKER).key(Map.of("id", s("wf-1"))).build()).item();
+		assertEquals("2", item.get("attempts").n());
+		assertEquals("2", item.get("hits").n());
+		assertNull(item.get("organization_id"));
+	}
+
+	@Test
+	void query_onSparseGlobalIndex_returnsOnlyItemsCarryingTheIndexKey() {
+		client.createTable(CreateTableRequest.builder().tableName("Sparse")
+				.keySchema(KeySchemaElement.builder().attributeName("id").keyType(KeyType.HASH).build())
+				.attributeDefinitions(
+						AttributeDefinition.builder().attributeName("id").attributeType(ScalarAttributeType.S).build(),
+						AttributeDefinition.builder().attributeName("stage").attributeType(ScalarAttributeType.S)
+								.build(),
+						AttributeDefinition.builder().attributeName("uploaded_date")
+								.attributeType(ScalarAttributeType.S).build())
+				.globalSecondaryIndexes(GlobalSecondaryIndex.builder().indexName("stage-index")
+						.keySchema(KeySchemaElement.builder().attributeName("stage").keyType(KeyType.HASH).build(),
+								KeySchemaElement.builder().attributeName("uploaded_date").keyType(KeyType.RANGE)
+										.build())
+						.projection(Projection.builder().projectionType(ProjectionType.KEYS_ONLY).build()).build())
+				.build());
+		client.putItem(PutItemRequest.builder().tableName("Sparse")
+				.item(Map.of("id", s("a"), "stage", s("ACTIVE"), "uploaded_date", s("2025-03-01"))).build());
+		client.putItem(PutItemRequest.builder().tableName("Sparse")
+				.item(Map.of("id", s("b"), "stage", s("ACTIVE"), "uploaded_date", s("2025-01-01"))).build());
+		client.putItem(PutItemRequest.builder().tableName("Sparse")
+				.item(Map.of("id", s("c"), "uploaded_date", s("2024-01-01"))).build());
+
+		QueryResponse response = client.query(QueryRequest.builder().tableName("Sparse").indexName("stage-index")
+				.keyConditionExpression("#st = :st").expressionAttributeNames(Map.of("#st", "stage"))
+				.expressionAttributeValues(Map.of(":st", s("ACTIVE"))).limit(1).build());
+
+		assertEquals(1, response.count());
+		assertEquals("b", response.items().get(0).get("id").s());
+		assertTrue(response.hasLastEvaluatedKey());
+
+		client.updateItem(UpdateItemRequest.builder().tableName("Sparse").key(Map.of("id", s("b")))
+				.updateExpression("REMOVE stage").build());
+		QueryResponse after = client.query(QueryRequest.builder().tableName("Sparse").indexName("stage-index")
+				.keyConditionExpression("stage = :st").expressionAttributeValues(Map.of(":st", s("ACTIVE")))
+				.build());
+		assertEquals(List.of("a"), after.items().stream().map(i -> i.get("id").s()).toList());
+	}
+
+	@Test
+	void consumedCapacity_isReportedAndAccumulated() {
+		putTracker("wf-1", "f-1", "org-1", "success");
+
+		ScanResponse scan = client.scan(ScanRequest.builder().tableName(TRACKER)
+				.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).consistentRead(true).build());
+
+		assertEquals(1.0, scan.consumedCapacity().capacityUnits());
+		assertEquals(1.0, client.consumedWriteCapacity(TRACKER));
+		assertEquals(1.0, client.consumedReadCapacity(TRACKER));
+	}
+
+	@Test
+	void throttling_injectsProvisionedThroughputExceeded() {
+		putTracker("wf-1", "f-1", "org-1", null);
+		client.setWriteThrottleRate(1.0);
+
+		WorkflowStatus status = new WorkflowStatus();
+		status.setId("wf-1");
+		status.setFinalStatus("success");
+
+		DynamicDynamoServiceException ex = assertThrows(DynamicDynamoServiceException.class,
+				() -> dynamoService.updateWorkflowStatus(TRACKER, status));
+		assertInstanceOf(ProvisionedThroughputExceededException.class, ex.getCause());
+		assertEquals(1, client.throttledRequests());
+	}
+
+	@Test
+	void batchGetItem_readsAcrossTablesAndReturnsThrottledKeysAsUnprocessed() {
+		putTracker("wf-1", "f-1", "org-1", null);
+		client.putItem(PutItemRequest.builder().tableName(HEADER).item(Map.of("id", s("f-1"))).build());
+		Map<String, KeysAndAttributes> items = Map.of(TRACKER,
+				KeysAndAttributes.builder().keys(Map.of("id", s("wf-1")), Map.of("id", s("wf-2")))
+						.projectionExpression("file_id").build(),
+				HEADER, KeysAndAttributes.builder().keys(Map.of("id", s("f-1"))).build());
+
+		BatchGetItemResponse response = client
+				.batchGetItem(BatchGetItemRequest.builder().requestItems(items).build());
+		assertEquals(List.of(Map.of("file_id", s("f-1"))), response.responses().get(TRACKER));
+		assertEquals(1, response.responses().get(HEADER).size());
+		assertTrue(response.unprocessedKeys().isEmpty());
+
+		client.setReadThrottleRate(1.0);
+		response = client.batchGetItem(BatchGetItemRequest.builder().requestItems(items).build());
+		assertEquals(2, response.unprocessedKeys().get(TRACKER).keys().size());
+		assertEquals("file_id", response.unprocessedKeys().get(TRACKER).projectionExpression());
+
+		Map<String, KeysAndAttributes> duplicates = Map.of(TRACKER,
+				KeysAndAttributes.builder().keys(Map.of("id", s("wf-1")), Map.of("id", s("wf-1"))).build());
+		assertThrows(DynamoDbException.class,
+				() -> client.batchGetItem(BatchGetItemRequest.builder().requestItems(duplicates).build()));
+	}
+
+	@Test
+	void concurrentListAppends_areNotLost() throws Exception {
+		putTracker("wf-1", "f-1", "org-1", null);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int n = i;
+			futures.add(pool.submit(() -> {
+				WorkflowStatus status = new WorkflowStatus();
+				status.setId("wf-1");
+				status.setFailedValidations(List.of(Map.of("rule_name", "r" + n)));
+				dynamoService.updateWorkflowStatus(TRACKER, status);
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+		Map<String, AttributeValue> stored = dynamoService.getDataByWorkflowStatusId(TRACKER, "wf-1");
+		assertEquals(200, stored.get("failed_validations").l().size());
+	}
+}
@@ -0,0 +1,229 @@
+package sg.edu.nus.iss.edgp.workflow.management.aws.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+import sg.edu.nus.iss.edgp.workflow.management.aws.local.AttributeValues.KeyValue;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndex;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+
+/**
+ * One in-memory DynamoDB table. Items live in a primary index and in one
+ * sparse copy per global secondary index; writes to the same item are
+ * serialised through striped locks so conditional updates are atomic.
+ */
+final class InMemoryTable {
+
+	private static final int LOCK_STRIPES = 64;
+
+	final String name;
+	final List<KeySchemaElement> keySchema;
+	final List<AttributeDefinition> attributeDefinitions = new ArrayList<>();
+	final Index primary;
+	final Map<String, Index> globalIndexes = new ConcurrentHashMap<>();
+
+	final DoubleAdder readUnits = new DoubleAdder();
+	final DoubleAdder writeUnits = new DoubleAdder();
+	final LongAdder itemCount = new LongAdder();
+
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+	InMemoryTable(String name, List<KeySchemaElement> keySchema, List<AttributeDefinition> attributeDefinitions) {
+		this.name = name;
+		this.keySchema = List.copyOf(keySchema);
+		this.attributeDefinitions.addAll(attributeDefinitions);
+		this.primary = new Index(null, keySchema, null, null);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	void addGlobalIndex(GlobalSecondaryIndex gsi, List<AttributeDefinition> definitions) {
+		for (AttributeDefinition d : definitions) {
+			if (attributeDefinitions.stream().noneMatch(a -> a.attributeName().equals(d.attributeName()))) {
+				attributeDefinitions.add(d);
+			}
+		}
+		Index index = new Index(gsi.indexName(), gsi.keySchema(), gsi.projection(), primary);
+		// Backfill from the current table contents, as DynamoDB does when an index is created online
+		for (Map<String, AttributeValue> item : primary.all()) {
+			if (index.covers(item)) {
+				index.put(item);
+			}
+		}
+		globalIndexes.put(gsi.indexName(), index);
+	}
+
+	Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+		return primary.get(key);
+	}
+
+	/**
+	 * Applies {@code mutation} to the current item (or {@code null}) under the
+	 * item's lock. A {@code null} result deletes the item. Returns the item
+	 * before the change and the number of secondary indexes that were written.
+	 */
+	WriteResult write(Map<String, AttributeValue> key, UnaryOperator<Map<String, AttributeValue>> mutation) {
+		Map<String, AttributeValue> primaryKey = primary.keyOf(key);
+		ReentrantLock lock = locks[Math.floorMod(primaryKey.hashCode(), LOCK_STRIPES)];
+		lock.lock();
+		try {
+			Map<String, AttributeValue> before = primary.get(primaryKey);
+			Map<String, AttributeValue> after = mutation.apply(before);
+			int indexWrites = 0;
+			if (after == null) {
+				if (before != null) {
+					primary.remove(before);
+					itemCount.decrement();
+				}
+			} else {
+				primary.put(after);
+				if (before == null) {
+					itemCount.increment();
+				}
+			}
+			for (Index index : globalIndexes.values()) {
+				boolean had = before != null && index.covers(before);
+				boolean has = after != null && index.covers(after);
+				if (had) {
+					index.remove(before);
+				}
+				if (has) {
+					index.put(after);
+				}
+				if (had || has) {
+					indexWrites++;
+				}
+			}
+			return new WriteResult(before, after, indexWrites);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	record WriteResult(Map<String, AttributeValue> before, Map<String, AttributeValue> after, int indexWrites) {
+	}
+
+	// ========== INDEX ==========
+
+	/** Sort position of an item inside one partition. */
+	record SortKey(KeyValue range, KeyValue tableHash, KeyValue tableRange) implements Comparable<SortKey> {
+
+		private static final Comparator<KeyValue> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+		private static final Comparator<SortKey> ORDER = Comparator.comparing(SortKey::range, NULLS_FIRST)
+				.thenComparing(SortKey::tableHash, NULLS_FIRST).thenComparing(SortKey::tableRange, NULLS_FIRST);
+
+		@Override
+		public int compareTo(SortKey other) {
+			return ORDER.compare(this, other);
+		}
+	}
+
+	static final class Index {
+		final String name;
+		final String hashAttribute;
+		final String rangeAttribute;
+		final List<KeySchemaElement> keySchema;
+		private final Projection projection;
+		private final Index table;
+		final ConcurrentSkipListMap<KeyValue, ConcurrentSkipListMap<SortKey, Map<String, AttributeValue>>> partitions = new ConcurrentSkipListMap<>();
+
+		Index(String name, List<KeySchemaElement> keySchema, Projection projection, Index table) {
+			this.name = name;
+			this.keySchema = List.copyOf(keySchema);
+			this.hashAttribute = attribute(keySchema, KeyType.HASH);
+			this.rangeAttribute = attribute(keySchema, KeyType.RANGE);
+			this.projection = projection;
+			this.table = table;
+		}
+
+		private static String attribute(List<KeySchemaElement> keySchema, KeyType type) {
+			return keySchema.stream().filter(k -> k.keyType() == type).map(KeySchemaElement::attributeName)
+					.findFirst().orElse(null);
+		}
+
+		boolean covers(Map<String, AttributeValue> item) {
+			return item.get(hashAttribute) != null && (rangeAttribute == null || item.get(rangeAttribute) != null);
+		}
+
+		Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+			Map<String, AttributeValue> key = new LinkedHashMap<>();
+			key.put(hashAttribute, item.get(hashAttribute));
+			if (rangeAttribute != null) {
+				key.put(rangeAttribute, item.get(rangeAttribute));
+			}
+			if (table != null) {
+				key.putAll(table.keyOf(item));
+			}
+			return key;
+		}
+
+		SortKey sortKeyOf(Map<String, AttributeValue> item) {
+			KeyValue range = rangeAttribute == null ? null : new KeyValue(item.get(rangeAttribute));
+			if (table == null) {
+				return new SortKey(range, null, null);
+			}
+			return new SortKey(range, new KeyValue(item.get(table.hashAttribute)),
+					table.rangeAttribute == null ? null : new KeyValue(item.get(table.rangeAttribute)));
+		}
+
+		Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+			ConcurrentSkipListMap<SortKey, Map<String, AttributeValue>> partition = partitions
+					.get(new KeyValue(key.get(hashAttribute)));
+			return partition == null ? null : partition.get(sortKeyOf(key));
+		}
+
+		void put(Map<String, AttributeValue> item) {
+			Map<String, AttributeValue> stored = Map.copyOf(project(item));
+			partitions.computeIfAbsent(new KeyValue(item.get(hashAttribute)), k -> new ConcurrentSkipListMap<>())
+					.put(sortKeyOf(item), stored);
+		}
+
+		void remove(Map<String, AttributeValue> item) {
+			ConcurrentSkipListMap<SortKey, Map<String, AttributeValue>> partition = partitions
+					.get(new KeyValue(item.get(hashAttribute)));
+			if (partition != null) {
+				partition.remove(sortKeyOf(item));
+			}
+		}
+
+		Collection<Map<String, AttributeValue>> all() {
+			List<Map<String, AttributeValue>> items = new ArrayList<>();
+			partitions.values().forEach(p -> items.addAll(p.values()));
+			return items;
+		}
+
+		private Map<String, AttributeValue> project(Map<String, AttributeValue> item) {
+			if (projection == null || projection.projectionType() == ProjectionType.ALL) {
+				return item;
+			}
+			Map<String, AttributeValue> projected = new HashMap<>(keyOf(item));
+			if (projection.projectionType() == ProjectionType.INCLUDE) {
+				Set<String> include = Set.copyOf(projection.nonKeyAttributes());
+				item.forEach((k, v) -> {
+					if (include.contains(k)) {
+						projected.put(k, v);
+					}
+				});
+			}
+			return projected;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.Mockito.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -70,6 +71,24 @@ class SQSDataQualityResponseListenerServiceTest {
         org.junit.jupiter.api.Assertions.assertTrue(metrics.containsKey("coverage"));
     }
 
+    @Test
+    void handleRuleServiceSqsMessage_returnsServiceFutureSoAckWaitsForCommit() {
+        CompletableFuture<Void> batch = new CompletableFuture<>();
+        when(workflowService.updateDataQualityWorkflowStatus(anyMap())).thenReturn(batch);
+
+        CompletableFuture<Void> ack = listener.handleRuleServiceSqsMessage(validJson);
+
+        org.junit.jupiter.api.Assertions.assertSame(batch, ack);
+    }
+
+    @Test
+    void handleRuleServiceSqsMessage_invalidJson_acksWithoutCallingService() {
+        CompletableFuture<Void> ack = listener.handleRuleServiceSqsMessage(invalidJson);
+
+        org.junit.jupiter.api.Assertions.assertTrue(ack.isDone());
+        verify(workflowService, never()).updateDataQualityWorkflowStatus(anyMap());
+    }
+
     @Test
     void handleRuleServiceSqsMessage_invalidJson_doesNotCallService() {
         assertDoesNotThrow(() -> listener.handleRuleServiceSqsMessage(invalidJson));
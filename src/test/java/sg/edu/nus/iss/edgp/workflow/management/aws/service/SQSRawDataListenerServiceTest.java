@@ -13,6 +13,9 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Map;
 
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.ProcessStatusObserverService;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
@@ -22,13 +25,19 @@ class SQSRawDataListenerServiceTest {
     private SQSRuleRequestListenerService requestListenerService;
     private ObjectMapper objectMapper;
     private SQSRawDataListenerService service;
+    private FileProgressService fileProgressService;
+    private ProcessStatusObserverService processStatusObserverService;
 
     @BeforeEach
     void setUp() {
         requestListenerService = mock(SQSRuleRequestListenerService.class);
         objectMapper = mock(ObjectMapper.class);
 
-        service = new SQSRawDataListenerService(requestListenerService, objectMapper);
+        fileProgressService = mock(FileProgressService.class);
+        processStatusObserverService = mock(ProcessStatusObserverService.class);
+
+        service = new SQSRawDataListenerService(requestListenerService, objectMapper, fileProgressService,
+                processStatusObserverService);
         ReflectionTestUtils.setField(service, "requestListenerService", requestListenerService);
         ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
     }
@@ -53,6 +62,28 @@ class SQSRawDataListenerServiceTest {
         verify(objectMapper, times(1)).readValue(eq(json), any(TypeReference.class));
     }
 
+    @Test
+    void handleRawDataMessage_countsRecordTowardsItsFile() throws Exception {
+        String json = "{\"data_entry\":{\"id\":\"t-1\",\"file_id\":\"file-1\"}}";
+        Map<String, Object> parsed = Map.of("data_entry", Map.of("id", "t-1", "file_id", "file-1"));
+        when(objectMapper.readValue(eq(json), any(TypeReference.class))).thenReturn(parsed);
+
+        service.handleRawDataMessage(json);
+
+        verify(fileProgressService).recordReceived("file-1", "t-1");
+        verify(processStatusObserverService).markFileActive("file-1");
+    }
+
+    @Test
+    void handleRawDataMessage_withoutDataEntry_isNotCounted() throws Exception {
+        String json = "{\"file_id\":\"file-1\"}";
+        when(objectMapper.readValue(eq(json), any(TypeReference.class))).thenReturn(Map.of("file_id", "file-1"));
+
+        service.handleRawDataMessage(json);
+
+        verify(fileProgressService).recordReceived(null, null);
+    }
+
     @Test
     void handleRawDataMessage_doesNotForwardOnInvalidJson() throws Exception {
        
@@ -63,6 +94,6 @@ class SQSRawDataListenerServiceTest {
         service.handleRawDataMessage(badJson);
 
         verify(objectMapper, times(1)).readValue(eq(badJson), any(TypeReference.class));
-        verifyNoInteractions(requestListenerService);
+        verifyNoInteractions(requestListenerService, fileProgressService, processStatusObserverService);
     }
 }
@@ -0,0 +1,34 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+class ConnectionPoolMonitorTest {
+
+	@Test
+	void logPoolStatistics_readsStartedPoolsOnly() {
+		HikariDataSource started = mock(HikariDataSource.class);
+		HikariPoolMXBean stats = mock(HikariPoolMXBean.class);
+		when(started.getHikariPoolMXBean()).thenReturn(stats);
+		when(started.getPoolName()).thenReturn("read");
+		when(stats.getThreadsAwaitingConnection()).thenReturn(2);
+		HikariDataSource idle = mock(HikariDataSource.class);
+
+		ConnectionPoolMonitor monitor = new ConnectionPoolMonitor();
+		ReflectionTestUtils.setField(monitor, "pools", List.of(started, idle));
+		monitor.logPoolStatistics();
+
+		verify(stats).getActiveConnections();
+		verify(stats).getIdleConnections();
+		verify(stats).getTotalConnections();
+		verify(idle).getHikariPoolMXBean();
+		verifyNoMoreInteractions(idle);
+	}
+}
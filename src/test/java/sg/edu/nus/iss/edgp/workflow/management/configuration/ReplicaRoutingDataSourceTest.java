@@ -0,0 +1,139 @@
+package sg.edu.nus.iss.edgp.workflow.management.configuration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+	@Mock
+	private DataSource writer;
+	@Mock
+	private DataSource replicaOne;
+	@Mock
+	private DataSource replicaTwo;
+	@Mock
+	private Connection writerConnection;
+
+	private ReplicaRoutingDataSource routing;
+
+	@BeforeEach
+	void setUp() {
+		Map<String, DataSource> replicas = new LinkedHashMap<>();
+		replicas.put("replica-1", replicaOne);
+		replicas.put("replica-2", replicaTwo);
+		routing = new ReplicaRoutingDataSource(writer, replicas, Duration.ofSeconds(5));
+	}
+
+	/** Lag check on {@code replica} answers {@code secondsBehind}; null means replication is stopped. */
+	private Connection stubLag(DataSource replica, Long secondsBehind) throws SQLException {
+		Connection connection = mock(Connection.class);
+		Statement statement = mock(Statement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(replica.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery("SHOW REPLICA STATUS")).thenReturn(rs);
+		when(rs.next()).thenReturn(true);
+		when(rs.getLong("Seconds_Behind_Source")).thenReturn(secondsBehind == null ? 0L : secondsBehind);
+		when(rs.wasNull()).thenReturn(secondsBehind == null);
+		return connection;
+	}
+
+	private Connection readConnection() {
+		return ReplicaRoutingDataSource.onReplica(() -> {
+			try {
+				return routing.getConnection();
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	@Test
+	void getConnection_outsideReadScope_usesWriter() throws SQLException {
+		when(writer.getConnection()).thenReturn(writerConnection);
+		stubLag(replicaOne, 0L);
+		stubLag(replicaTwo, 0L);
+		routing.checkReplicaLag();
+
+		assertSame(writerConnection, routing.getConnection());
+	}
+
+	@Test
+	void getConnection_beforeFirstLagCheck_readsFromWriter() throws SQLException {
+		when(writer.getConnection()).thenReturn(writerConnection);
+
+		assertSame(writerConnection, readConnection());
+		verifyNoInteractions(replicaOne, replicaTwo);
+	}
+
+	@Test
+	void getConnection_healthyReplicas_areUsedInTurn() throws SQLException {
+		Connection one = stubLag(replicaOne, 1L);
+		Connection two = stubLag(replicaTwo, 0L);
+		routing.checkReplicaLag();
+
+		assertSame(one, readConnection());
+		assertSame(two, readConnection());
+		assertSame(one, readConnection());
+		verifyNoInteractions(writer);
+	}
+
+	@Test
+	void checkReplicaLag_laggingOrStoppedReplica_leavesRotation() throws SQLException {
+		stubLag(replicaOne, 30L);
+		stubLag(replicaTwo, null);
+		when(writer.getConnection()).thenReturn(writerConnection);
+
+		routing.checkReplicaLag();
+
+		assertFalse(routing.isHealthy("replica-1"));
+		assertFalse(routing.isHealthy("replica-2"));
+		assertSame(writerConnection, readConnection());
+	}
+
+	@Test
+	void getConnection_replicaRefusesConnection_failsOverAndLeavesRotation() throws SQLException {
+		stubLag(replicaOne, 0L);
+		when(replicaTwo.getConnection()).thenThrow(new SQLException("down"));
+		routing.checkReplicaLag();
+		assertTrue(routing.isHealthy("replica-1"));
+		assertFalse(routing.isHealthy("replica-2"));
+
+		when(replicaOne.getConnection()).thenThrow(new SQLException("connection refused"));
+		when(writer.getConnection()).thenReturn(writerConnection);
+
+		assertSame(writerConnection, readConnection());
+		assertFalse(routing.isHealthy("replica-1"));
+	}
+
+	@Test
+	void replicaLag_noReplicationStatus_countsAsCurrent() throws SQLException {
+		DataSource aurora = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		Statement statement = mock(Statement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(aurora.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery("SHOW REPLICA STATUS")).thenReturn(rs);
+		when(rs.next()).thenReturn(false);
+
+		assertEquals(Duration.ZERO, ReplicaRoutingDataSource.replicaLag(aurora));
+	}
+}
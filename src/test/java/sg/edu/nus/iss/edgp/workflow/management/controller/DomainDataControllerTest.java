@@ -12,14 +12,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.mock.web.MockAsyncContext;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -27,6 +39,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import sg.edu.nus.iss.edgp.workflow.management.dto.ValidationResult;
 import sg.edu.nus.iss.edgp.workflow.management.dto.AuditDTO;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataSlice;
 import sg.edu.nus.iss.edgp.workflow.management.jwt.JWTService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.AuditService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DomainDataService;
@@ -87,7 +101,8 @@ public class DomainDataControllerTest {
 
 		Map<Long, List<Map<String, Object>>> svcResult = new LinkedHashMap<>();
 		svcResult.put(10L, rows);
-		when(domainDataService.retrieveAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), anyBoolean()))
+		when(domainDataService.retrieveAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), anyBoolean(),
+				isNull(), isNull()))
 				.thenReturn(svcResult);
 
 		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
@@ -114,7 +129,7 @@ public class DomainDataControllerTest {
 		svcResult.put(42L, rows);
 
 		when(domainDataService.retrievePaginatedDomainDataList(eq("retail"), eq("org-1"), eq(FILE_ID),
-				any(Pageable.class), anyBoolean())).thenReturn(svcResult);
+				any(Pageable.class), anyBoolean(), eq(true), isNull(), isNull())).thenReturn(svcResult);
 
 		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
 				.param("domainName", "retail").param("page", "2").param("size", "5").param("includeArchived", "false")).andExpect(status().isOk())
@@ -123,12 +138,25 @@ public class DomainDataControllerTest {
 				.andExpect(content().string(Matchers.containsString("\"totalRecord\":42"))).andDo(print());
 	}
 
+	@Test
+	void retrieveDomainDataList_paginatedApproximateTotal_passesFlag() throws Exception {
+		Map<Long, List<Map<String, Object>>> svcResult = new LinkedHashMap<>();
+		svcResult.put(1_000L, List.of(Map.of("id", "a")));
+		when(domainDataService.retrievePaginatedDomainDataList(eq("retail"), eq("org-1"), eq(FILE_ID),
+				any(Pageable.class), isNull(), eq(false), isNull(), isNull())).thenReturn(svcResult);
+
+		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
+				.param("domainName", "retail").param("page", "1").param("size", "5").param("exactTotal", "false"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.totalRecord").value(1000));
+	}
+
 	@Test
 	void retrieveDomainDataList_empty() throws Exception {
 		Map<Long, List<Map<String, Object>>> svcResult = new LinkedHashMap<>();
 		svcResult.put(0L, Collections.emptyList());
 
-		when(domainDataService.retrieveAllDomainDataList(eq("legal"), eq("org-1"), eq(FILE_ID), anyBoolean())).thenReturn(svcResult);
+		when(domainDataService.retrieveAllDomainDataList(eq("legal"), eq("org-1"), eq(FILE_ID), anyBoolean(),
+				isNull(), isNull())).thenReturn(svcResult);
 
 		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
 				.param("domainName", "legal").param("size", "10").param("includeArchived", "false")).andExpect(status().isOk())
@@ -156,7 +184,8 @@ public class DomainDataControllerTest {
 
 	@Test
 	void retrieveDomainDataList_serviceException() throws Exception {
-		when(domainDataService.retrieveAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), anyBoolean()))
+		when(domainDataService.retrieveAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), anyBoolean(),
+				isNull(), isNull()))
 				.thenThrow(new DomainDataServiceException("Domain retrieval failed"));
 
 		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
@@ -166,6 +195,151 @@ public class DomainDataControllerTest {
 		verify(auditService).logAudit(any(AuditDTO.class), eq(500), eq("Domain retrieval failed"), eq(AUTH));
 	}
 
+	@Test
+	void retrieveDomainDataList_seek_returnsNextCursor() throws Exception {
+		DomainDataCursor after = new DomainDataCursor(LocalDateTime.of(2025, 8, 1, 9, 0), "r-1");
+		List<Map<String, Object>> rows = List.of(Map.of("id", "r-2"));
+		when(domainDataService.retrieveDomainDataListAfter(eq("retail"), eq("org-1"), eq(FILE_ID),
+				argThat(c -> c != null && "r-1".equals(c.getId())), eq(5), eq(Boolean.FALSE), isNull(), isNull()))
+				.thenReturn(new DomainDataSlice(rows, "next-token"));
+
+		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
+				.param("domainName", "retail").param("size", "5").param("includeArchived", "false")
+				.param("cursor", after.encode())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.data[0].id").value("r-2")).andExpect(jsonPath("$.nextCursor").value("next-token"))
+				.andDo(print());
+
+		verify(domainDataService, never()).retrievePaginatedDomainDataList(any(), any(), any(), any(), any(),
+				anyBoolean(), any(), any());
+	}
+
+	@Test
+	void retrieveDomainDataList_seekFirstPage_lastPageOmitsCursor() throws Exception {
+		when(domainDataService.retrieveDomainDataListAfter(eq("retail"), eq("org-1"), eq(FILE_ID), isNull(), eq(50),
+				isNull(), isNull(), isNull())).thenReturn(new DomainDataSlice(List.of(Map.of("id", "r-1")), null));
+
+		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
+				.param("domainName", "retail").param("cursor", "")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.totalRecord").value(1)).andExpect(jsonPath("$.nextCursor").doesNotExist());
+	}
+
+	@Test
+	void retrieveDomainDataList_seekInvalidCursor_isBadRequest() throws Exception {
+		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
+				.param("domainName", "retail").param("cursor", "bogus")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.message").value("Invalid cursor."));
+
+		verify(auditService).logAudit(any(AuditDTO.class), eq(400), eq("Invalid cursor."), eq(AUTH));
+		verifyNoInteractions(domainDataService);
+	}
+
+	@Test
+	void streamDomainDataList_writesNdjsonBody() throws Exception {
+		when(domainDataService.tryStartStream()).thenReturn(true);
+		doAnswer(inv -> {
+			OutputStream out = inv.getArgument(6);
+			out.write("{\"id\":\"a\"}\n".getBytes(StandardCharsets.UTF_8));
+			return 1L;
+		}).when(domainDataService).streamAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), eq(Boolean.TRUE),
+				isNull(), isNull(), any(OutputStream.class));
+
+		MvcResult started = mockMvc.perform(get(ENDPOINT + "/stream").header("Authorization", AUTH)
+				.header("X-FileId", FILE_ID).param("domainName", "finance").param("includeArchived", "true"))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+				.andExpect(content().contentType("application/x-ndjson"))
+				.andExpect(content().string("{\"id\":\"a\"}\n"));
+		verify(auditService).logAudit(any(AuditDTO.class), eq(200), eq("Successfully streamed all domain data list."),
+				eq(AUTH));
+		verify(domainDataService).endStream();
+	}
+
+	@Test
+	void streamDomainDataList_allSlotsInUse_isTooManyRequests() throws Exception {
+		when(domainDataService.tryStartStream()).thenReturn(false);
+
+		MvcResult started = mockMvc.perform(get(ENDPOINT + "/stream").header("Authorization", AUTH)
+				.header("X-FileId", FILE_ID).param("domainName", "finance")).andReturn();
+
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isTooManyRequests())
+				.andExpect(jsonPath("$.message").value("Too many domain data streams in progress. Please try again later."));
+		verify(auditService).logAudit(any(AuditDTO.class), eq(429), anyString(), eq(AUTH));
+		verify(domainDataService, never()).streamAllDomainDataList(any(), any(), any(), any(), any(), any(), any());
+		verify(domainDataService, never()).endStream();
+	}
+
+	@Test
+	void streamDomainDataList_failedStream_releasesItsSlot() throws Exception {
+		when(domainDataService.tryStartStream()).thenReturn(true);
+		when(domainDataService.streamAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), isNull(), isNull(),
+				isNull(), any(OutputStream.class))).thenThrow(new DomainDataServiceException("down"));
+
+		MvcResult started = mockMvc.perform(get(ENDPOINT + "/stream").header("Authorization", AUTH)
+				.header("X-FileId", FILE_ID).param("domainName", "finance")).andReturn();
+
+		try {
+			mockMvc.perform(asyncDispatch(started));
+		} catch (Exception expected) {
+			// The body fails after the response started, so the error reaches the container
+		}
+		verify(auditService).logAudit(any(AuditDTO.class), eq(500), eq("Domain data stream ended early."), eq(AUTH));
+		verify(domainDataService).endStream();
+	}
+
+	@Test
+	void streamDomainDataList_asyncTimeoutBeforeBodyEnds_releasesSlotOnce() throws Exception {
+		when(domainDataService.tryStartStream()).thenReturn(true);
+		CountDownLatch timedOut = new CountDownLatch(1);
+		when(domainDataService.streamAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), isNull(), isNull(),
+				isNull(), any(OutputStream.class))).thenAnswer(inv -> {
+					timedOut.await(5, TimeUnit.SECONDS);
+					return 0L;
+				});
+
+		MvcResult started = mockMvc.perform(get(ENDPOINT + "/stream").header("Authorization", AUTH)
+				.header("X-FileId", FILE_ID).param("domainName", "finance"))
+				.andExpect(request().asyncStarted()).andReturn();
+		MockAsyncContext context = (MockAsyncContext) started.getRequest().getAsyncContext();
+		for (AsyncListener listener : context.getListeners()) {
+			listener.onTimeout(new AsyncEvent(context));
+		}
+
+		// The slot is back while the body is still blocked, and the body does not release it again
+		verify(domainDataService).endStream();
+		timedOut.countDown();
+		verify(domainDataService, after(300).times(1)).endStream();
+	}
+
+	@Test
+	void streamDomainDataList_validationFailure_isJsonError() throws Exception {
+		ValidationResult invalid = mock(ValidationResult.class);
+		when(invalid.isValid()).thenReturn(false);
+		when(invalid.getStatus()).thenReturn(HttpStatus.FORBIDDEN);
+		when(invalid.getMessage()).thenReturn("No access to domain");
+		when(validationStrategy.validateDomainAndOrgAccess(eq("finance"), eq("org-1"), eq(AUTH))).thenReturn(invalid);
+
+		MvcResult started = mockMvc.perform(get(ENDPOINT + "/stream").header("Authorization", AUTH)
+				.header("X-FileId", FILE_ID).param("domainName", "finance")).andReturn();
+
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.message").value("No access to domain"));
+		verifyNoInteractions(domainDataService);
+	}
+
+	@Test
+	void retrieveDomainDataList_invalidFilter_isBadRequest() throws Exception {
+		when(domainDataService.retrieveAllDomainDataList(eq("finance"), eq("org-1"), eq(FILE_ID), isNull(),
+				eq(List.of("id", "region")), eq(List.of("ghost:eq:1"))))
+				.thenThrow(new IllegalArgumentException("Unknown column: ghost"));
+
+		mockMvc.perform(get(ENDPOINT).header("Authorization", AUTH).header("X-FileId", FILE_ID)
+				.param("domainName", "finance").param("columns", "id,region").param("filters", "ghost:eq:1"))
+				.andExpect(status().isBadRequest()).andExpect(jsonPath("$.message").value("Unknown column: ghost"));
+
+		verify(auditService).logAudit(any(AuditDTO.class), eq(400), eq("Unknown column: ghost"), eq(AUTH));
+	}
+
 	@Test
 	void getDomainDataById_success() throws Exception {
 		Map<String, Object> record = new HashMap<>();
@@ -24,9 +24,11 @@ import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.
 
 import sg.edu.nus.iss.edgp.workflow.management.dto.ValidationResult;
 import sg.edu.nus.iss.edgp.workflow.management.dto.AuditDTO;
+import sg.edu.nus.iss.edgp.workflow.management.dto.FileProgress;
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 import sg.edu.nus.iss.edgp.workflow.management.jwt.JWTService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.AuditService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.WorkflowService;
 import sg.edu.nus.iss.edgp.workflow.management.strategy.impl.ValidationStrategy;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
@@ -51,6 +53,8 @@ class WorkflowControllerMockBeanTest {
 	private ValidationStrategy validationStrategy;
 	@MockitoBean
 	private WorkflowService workflowService;
+	@MockitoBean
+	private FileProgressService fileProgressService;
 
 	@BeforeEach
 	void boot() {
@@ -198,4 +202,47 @@ class WorkflowControllerMockBeanTest {
 
 		verify(auditService).logAudit(any(AuditDTO.class), eq(500), eq("Workflow retrieval failed"), eq(AUTH));
 	}
-}
\ No newline at end of file
+
+	@Test
+	void progress_success() throws Exception {
+		FileProgress progress = new FileProgress();
+		progress.setFileId("file-1");
+		progress.setTotalRecords(100);
+		progress.setProcessedRecords(40);
+		progress.setSuccessRecords(35);
+		progress.setFailedRecords(5);
+		progress.setRecordsPerSecond(4.0);
+		progress.setEtaSeconds(15L);
+		when(fileProgressService.retrieveFileProgress(List.of("file-1", "file-2"), "org-1")).thenReturn(List.of(progress));
+
+		mockMvc.perform(get(ENDPOINT + "/progress").header("Authorization", AUTH).header("X-FileId", "file-1, file-2,file-1"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.message").value("Successfully retrieved file progress."))
+				.andExpect(jsonPath("$.totalRecord").value(1))
+				.andExpect(jsonPath("$.data[0].fileId").value("file-1"))
+				.andExpect(jsonPath("$.data[0].processedRecords").value(40))
+				.andExpect(jsonPath("$.data[0].etaSeconds").value(15));
+
+		verify(auditService).logAudit(any(AuditDTO.class), eq(200), anyString(), eq(AUTH));
+	}
+
+	@Test
+	void progress_tooManyFileIds() throws Exception {
+		String ids = String.join(",", java.util.stream.IntStream.range(0, 26).mapToObj(i -> "file-" + i).toList());
+
+		mockMvc.perform(get(ENDPOINT + "/progress").header("Authorization", AUTH).header("X-FileId", ids))
+				.andExpect(status().isBadRequest());
+
+		verify(auditService).logAudit(any(AuditDTO.class), eq(400), anyString(), eq(AUTH));
+		verifyNoInteractions(fileProgressService);
+	}
+
+	@Test
+	void progress_serviceThrows() throws Exception {
+		when(fileProgressService.retrieveFileProgress(anyList(), eq("org-1")))
+				.thenThrow(new WorkflowServiceException("An error occurred while retrieving file progress"));
+
+		mockMvc.perform(get(ENDPOINT + "/progress").header("Authorization", AUTH).header("X-FileId", "file-1"))
+				.andExpect(status().isInternalServerError())
+				.andExpect(jsonPath("$.message").value("An error occurred while retrieving file progress"));
+	}
+}
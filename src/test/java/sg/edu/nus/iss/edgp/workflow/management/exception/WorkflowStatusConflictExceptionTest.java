@@ -0,0 +1,26 @@
+package sg.edu.nus.iss.edgp.workflow.management.exception;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowStatusConflictExceptionTest {
+
+	@Test
+	void constructor_withMessage_shouldSetMessage() {
+		WorkflowStatusConflictException ex = new WorkflowStatusConflictException("Version changed");
+
+		assertEquals("Version changed", ex.getMessage());
+		assertNull(ex.getCause());
+	}
+
+	@Test
+	void constructor_withMessageAndCause_isADynamoServiceException() {
+		Throwable cause = new RuntimeException("The conditional request failed");
+
+		WorkflowStatusConflictException ex = new WorkflowStatusConflictException("Version changed", cause);
+
+		assertSame(cause, ex.getCause());
+		assertInstanceOf(DynamicDynamoServiceException.class, ex);
+	}
+}
@@ -3,15 +3,26 @@ package sg.edu.nus.iss.edgp.workflow.management.jwt;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
 import java.util.Date;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.security.SignatureException;
 import org.json.simple.JSONObject;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import sg.edu.nus.iss.edgp.workflow.management.configuration.JWTConfig;
 import sg.edu.nus.iss.edgp.workflow.management.enums.AuditLogInvalidUser;
 import sg.edu.nus.iss.edgp.workflow.management.pojo.User;
@@ -33,6 +44,118 @@ class JWTServiceTest {
         claims = mock(Claims.class);
     }
 
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private KeyPair signWithNewKey() throws Exception {
+        KeyPair keyPair = newKeyPair();
+        when(jwtConfig.loadPublicKey()).thenReturn((RSAPublicKey) keyPair.getPublic());
+        return keyPair;
+    }
+
+    private static String token(KeyPair keyPair, String subject, long expiresInMillis) {
+        return Jwts.builder().subject(subject).claim(JWTService.ORG_ID, "org-1")
+                .expiration(new Date(System.currentTimeMillis() + expiresInMillis))
+                .signWith(keyPair.getPrivate()).compact();
+    }
+
+    @Test
+    void extractAllClaims_verifiesTokenOnce_andBuildsParserOnce() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        String token = token(keyPair, "user-1", 60_000);
+
+        Claims first = service.extractAllClaims(token);
+        Claims second = service.extractAllClaims(token);
+
+        assertEquals("user-1", first.getSubject());
+        assertSame(first, second);
+        assertEquals("org-1", service.extractOrgIdFromToken(token));
+        verify(jwtConfig, times(1)).loadPublicKey();
+    }
+
+    @Test
+    void extractAllClaims_evictsLeastRecentlyUsed_pastCacheSize() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        ReflectionTestUtils.setField(service, "verifiedCacheSize", 1);
+        String first = token(keyPair, "user-1", 60_000);
+        String second = token(keyPair, "user-2", 60_000);
+
+        Claims verified = service.extractAllClaims(first);
+        service.extractAllClaims(second);
+
+        assertNotSame(verified, service.extractAllClaims(first));
+    }
+
+    @Test
+    void extractAllClaims_sharesClaimsWithinRequest_withoutCache() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        ReflectionTestUtils.setField(service, "verifiedCacheSize", 0);
+        String token = token(keyPair, "user-1", 60_000);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        Claims claims = service.extractAllClaims(token);
+
+        assertSame(claims, service.extractAllClaims(token));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertNotSame(claims, service.extractAllClaims(token));
+    }
+
+    @Test
+    void extractAllClaims_cachedTokenFailsOnceExpired() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        String token = token(keyPair, "user-1", 1_000);
+
+        assertEquals("user-1", service.extractAllClaims(token).getSubject());
+        Thread.sleep(2_000);
+
+        assertThrows(ExpiredJwtException.class, () -> service.extractAllClaims(token));
+        assertEquals("user-1", service.extractUserIdAllowExpiredToken(token));
+    }
+
+    @Test
+    void extractAllClaims_cachedTokenHonoursClockSkew() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        ReflectionTestUtils.setField(service, "clockSkewSeconds", 60L);
+        String token = token(keyPair, "user-1", 1_000);
+
+        Claims claims = service.extractAllClaims(token);
+        Thread.sleep(2_000);
+
+        assertSame(claims, service.extractAllClaims(token));
+    }
+
+    @Test
+    void extractAllClaims_tokenNotYetValid_isRejectedUntilNotBefore() throws Exception {
+        KeyPair keyPair = signWithNewKey();
+        String token = Jwts.builder().subject("user-1")
+                .notBefore(new Date(System.currentTimeMillis() + 1_000))
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(keyPair.getPrivate()).compact();
+
+        assertThrows(PrematureJwtException.class, () -> service.extractAllClaims(token));
+        assertThrows(PrematureJwtException.class, () -> service.extractAllClaims(token));
+        Thread.sleep(2_000);
+
+        assertEquals("user-1", service.extractAllClaims(token).getSubject());
+    }
+
+    @Test
+    void extractAllClaims_rejectsTokenSignedWithOtherKey() throws Exception {
+        signWithNewKey();
+        KeyPair other = newKeyPair();
+
+        assertThrows(SignatureException.class,
+                () -> service.extractAllClaims(token(other, "user-1", 60_000)));
+    }
+
 
     @Test
     void extractSubject_returnsSubject() throws Exception {
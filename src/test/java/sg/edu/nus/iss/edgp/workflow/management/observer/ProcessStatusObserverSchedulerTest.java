@@ -4,30 +4,28 @@ package sg.edu.nus.iss.edgp.workflow.management.observer;
 import static org.mockito.Mockito.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
-import sg.edu.nus.iss.edgp.workflow.management.service.impl.DataIngestionNotifierService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicDynamoService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileFinalizationService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.ProcessStatusObserverService;
-import sg.edu.nus.iss.edgp.workflow.management.service.impl.WorkflowService;
 
 @ExtendWith(MockitoExtension.class)
 class ProcessStatusObserverSchedulerTest {
 
-    @Mock private WorkflowService workflowService;
     @Mock private ProcessStatusObserverService processStatusObserverService;
     @Mock private DynamicDynamoService dynamoService;
-    @Mock private DataIngestionNotifierService workflowNotificationService;
+    @Mock private FileFinalizationService fileFinalizationService;
 
     @InjectMocks
     private ProcessStatusObserverScheduler scheduler;
@@ -49,103 +47,116 @@ class ProcessStatusObserverSchedulerTest {
         scheduler.checkWorkflowStatus();
 
         verify(dynamoService).tableExists(HEADER_TABLE);
-        verifyNoInteractions(processStatusObserverService, workflowService, workflowNotificationService);
+        verifyNoInteractions(processStatusObserverService, fileFinalizationService);
     }
 
     @Test
     void whenNoProcessingFiles_null_returns() {
         bothTablesExist();
 
-        when(processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING))
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING))
+                .thenReturn(null);
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE))
                 .thenReturn(null);
 
         scheduler.checkWorkflowStatus();
 
-        verify(processStatusObserverService).fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+        verify(processStatusObserverService).fetchAllIdsByProcessStage(FileProcessStage.PROCESSING);
+        verify(processStatusObserverService).fetchAllIdsByProcessStage(FileProcessStage.COMPLETE);
         verifyNoMoreInteractions(processStatusObserverService);
-        verifyNoInteractions(workflowService, workflowNotificationService);
+        verifyNoInteractions(fileFinalizationService);
     }
 
     @Test
     void whenNoProcessingFiles_emptyMap_returns() {
         bothTablesExist();
 
-        when(processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING))
-                .thenReturn(new HashMap<>());
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING))
+                .thenReturn(List.of());
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE))
+                .thenReturn(List.of());
 
         scheduler.checkWorkflowStatus();
 
-        verify(processStatusObserverService).fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+        verify(processStatusObserverService).fetchAllIdsByProcessStage(FileProcessStage.PROCESSING);
+        verify(processStatusObserverService).fetchAllIdsByProcessStage(FileProcessStage.COMPLETE);
         verifyNoMoreInteractions(processStatusObserverService);
-        verifyNoInteractions(workflowService, workflowNotificationService);
+        verifyNoInteractions(fileFinalizationService);
     }
 
     @Test
-    void whenFileNotFullyProcessed_doesNotUpdateOrEmail() {
+    void whenProcessingFilesFound_queuesEveryFile() {
         bothTablesExist();
 
-        HashMap<String, String> fileInfo = new HashMap<>();
-        fileInfo.put("id", "  file-123  "); // verify .trim() handling
-        when(processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING))
-                .thenReturn(new HashMap<>(fileInfo));
-
-        when(workflowService.isAllDataProcessed("file-123")).thenReturn(false);
+        HashMap<String, String> first = new HashMap<>(Map.of("id", "file-1"));
+        HashMap<String, String> second = new HashMap<>(Map.of("id", "file-2"));
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING))
+                .thenReturn(List.of(first, second));
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE))
+                .thenReturn(List.of());
 
         scheduler.checkWorkflowStatus();
 
-        verify(processStatusObserverService).fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
-        verify(workflowService).isAllDataProcessed("file-123");
-        verify(processStatusObserverService, never()).updateFileStageAndStatus(anyString(), any(), anyString());
-       
-
+        verify(fileFinalizationService).requestFinalization("file-1");
+        verify(fileFinalizationService).requestFinalization("file-2");
+        verifyNoMoreInteractions(fileFinalizationService);
     }
 
     @Test
-    void whenFileProcessed_updatesStageThenSendsEmail() {
+    void whenCompletedFilesWereNotNotified_queuesThemForRetry() {
         bothTablesExist();
 
-        HashMap<String, String> fileInfo = new HashMap<>();
-        fileInfo.put("id", " file-999 ");
-        when(processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING))
-                .thenReturn(new HashMap<>(fileInfo));
-
-        when(workflowService.isAllDataProcessed("file-999")).thenReturn(true);
-        when(processStatusObserverService.getAllStatusForFile("file-999")).thenReturn("OK");
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING))
+                .thenReturn(List.of());
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.COMPLETE))
+                .thenReturn(List.of(new HashMap<>(Map.of("id", "file-3"))));
 
         scheduler.checkWorkflowStatus();
 
-        InOrder inOrder = inOrder(processStatusObserverService, workflowNotificationService);
-        verify(processStatusObserverService).fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
-        verify(workflowService).isAllDataProcessed("file-999");
-        verify(processStatusObserverService).getAllStatusForFile("file-999");
-
-        inOrder.verify(processStatusObserverService)
-               .updateFileStageAndStatus("file-999", FileProcessStage.COMPLETE, "OK");
-        inOrder.verify(workflowNotificationService).sendDataIngestionResult(fileInfo);
-
-        verifyNoMoreInteractions(processStatusObserverService, workflowNotificationService);
+        verify(fileFinalizationService).requestFinalization("file-3");
+        verifyNoMoreInteractions(fileFinalizationService);
     }
 
     @Test
     void whenDownstreamThrows_schedulerDoesNotCrash() {
         bothTablesExist();
 
-        Map<String, String> fileInfo = Map.of("id", "file-ex");
-        when(processStatusObserverService.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING))
-                .thenReturn(new HashMap<>(fileInfo));
-
-        when(workflowService.isAllDataProcessed("file-ex"))
+        when(processStatusObserverService.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING))
                 .thenThrow(new RuntimeException("boom"));
 
        
         scheduler.checkWorkflowStatus();
 
-        verify(processStatusObserverService, never()).getAllStatusForFile(anyString());
-        verify(processStatusObserverService, never())
-                .updateFileStageAndStatus(anyString(), any(), anyString());
-        verifyNoInteractions(workflowNotificationService);
+        verifyNoInteractions(fileFinalizationService);
+    }
+
+
+    @Test
+    void backfillActiveStageIndex_disabledByDefault() {
+        scheduler.backfillActiveStageIndex();
+
+        verifyNoInteractions(dynamoService, processStatusObserverService);
+    }
+
+    @Test
+    void backfillActiveStageIndex_tagsProcessingFilesWhenEnabled() {
+        ReflectionTestUtils.setField(scheduler, "activeStageBackfill", true);
+        when(dynamoService.tableExists(HEADER_TABLE)).thenReturn(true);
+
+        scheduler.backfillActiveStageIndex();
+
+        verify(processStatusObserverService).tagUntrackedFilesByProcessStage(FileProcessStage.PROCESSING);
     }
 
+    @Test
+    void backfillActiveStageIndex_skipsWhenHeaderTableMissing() {
+        ReflectionTestUtils.setField(scheduler, "activeStageBackfill", true);
+        when(dynamoService.tableExists(HEADER_TABLE)).thenReturn(false);
+
+        scheduler.backfillActiveStageIndex();
+
+        verifyNoInteractions(processStatusObserverService);
+    }
 
     private void bothTablesExist() {
         when(dynamoService.tableExists(HEADER_TABLE)).thenReturn(true);
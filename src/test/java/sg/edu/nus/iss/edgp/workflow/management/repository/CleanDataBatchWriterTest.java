@@ -0,0 +1,135 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@ExtendWith(MockitoExtension.class)
+class CleanDataBatchWriterTest {
+
+	private static final String SQL_A = "INSERT INTO `customer` (`id`, `name`) VALUES (?, ?)";
+	private static final String SQL_B = "INSERT INTO `customer` (`id`, `email`) VALUES (?, ?)";
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Mock
+	private TaskScheduler taskScheduler;
+
+	@InjectMocks
+	private CleanDataBatchWriter writer;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(writer, "batchSize", 3);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> capturedBatch(String sql) {
+		ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(eq(sql), rows.capture());
+		return rows.getValue();
+	}
+
+	@Test
+	void submit_belowBatchSize_waitsForScheduledFlush() {
+		CompletableFuture<Integer> first = writer.submit(SQL_A, new Object[] { "1", "a" });
+		CompletableFuture<Integer> second = writer.submit(SQL_A, new Object[] { "2", "b" });
+
+		ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler, times(1)).schedule(flush.capture(), any(Instant.class));
+		verifyNoInteractions(jdbcTemplate);
+		assertFalse(first.isDone());
+
+		flush.getValue().run();
+
+		assertEquals(2, capturedBatch(SQL_A).size());
+		verify(transactionManager).commit(any());
+		assertTrue(first.isDone() && !first.isCompletedExceptionally());
+		assertTrue(second.isDone() && !second.isCompletedExceptionally());
+	}
+
+	@Test
+	void submit_reachingBatchSize_flushesImmediately() {
+		writer.submit(SQL_A, new Object[] { "1", "a" });
+		writer.submit(SQL_A, new Object[] { "2", "b" });
+		CompletableFuture<Integer> third = writer.submit(SQL_A, new Object[] { "3", "c" });
+
+		assertTrue(third.isDone());
+		assertEquals(3, capturedBatch(SQL_A).size());
+
+		// The scheduled flush for the drained batch finds nothing left to write
+		ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler).schedule(flush.capture(), any(Instant.class));
+		flush.getValue().run();
+		verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+	}
+
+	@Test
+	void flush_completesEachRowWithItsUpdateCount() {
+		when(jdbcTemplate.batchUpdate(eq(SQL_A), anyList())).thenReturn(new int[] { 1, 0 });
+
+		CompletableFuture<Integer> inserted = writer.submit(SQL_A, new Object[] { "1", "a" });
+		CompletableFuture<Integer> replayed = writer.submit(SQL_A, new Object[] { "2", "b" });
+		writer.flush(SQL_A);
+
+		assertEquals(1, inserted.join());
+		assertEquals(0, replayed.join());
+	}
+
+	@Test
+	void submit_groupsRowsByStatement() {
+		writer.submit(SQL_A, new Object[] { "1", "a" });
+		writer.submit(SQL_B, new Object[] { "2", "b@x" });
+
+		writer.flushAll();
+
+		assertEquals(1, capturedBatch(SQL_A).size());
+		assertEquals(1, capturedBatch(SQL_B).size());
+		verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+	}
+
+	@Test
+	void flush_batchFailure_retriesRowsIndividually() {
+		when(jdbcTemplate.batchUpdate(eq(SQL_A), anyList())).thenThrow(new DataIntegrityViolationException("dup"));
+		Object[] good = { "1", "a" };
+		Object[] bad = { "2", "b" };
+		lenient().when(jdbcTemplate.update(eq(SQL_A), eq("2"), eq("b"))).thenThrow(new DataIntegrityViolationException("dup"));
+
+		CompletableFuture<Integer> goodRow = writer.submit(SQL_A, good);
+		CompletableFuture<Integer> badRow = writer.submit(SQL_A, bad);
+		writer.flush(SQL_A);
+
+		verify(transactionManager).rollback(any());
+		verify(jdbcTemplate).update(SQL_A, good);
+		assertTrue(goodRow.isDone() && !goodRow.isCompletedExceptionally());
+		assertTrue(badRow.isCompletedExceptionally());
+	}
+
+	@Test
+	void flush_nothingPending_isNoOp() {
+		writer.flush(SQL_A);
+
+		verifyNoInteractions(jdbcTemplate, transactionManager);
+	}
+}
@@ -0,0 +1,99 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class ColumnTypeTest {
+
+	private static String inferred(Object value) {
+		ColumnType type = ColumnType.infer(value);
+		return type == null ? null : type.sql();
+	}
+
+	@Test
+	void infer_stringsAreTypedByContent() {
+		assertEquals("INT", inferred("-42"));
+		assertEquals("BIGINT", inferred("2147483648"));
+		assertEquals("DECIMAL(20,0)", inferred("12345678901234567890"));
+		assertEquals("DECIMAL(5,3)", inferred("12.500"));
+		assertEquals("DECIMAL(2,1)", inferred("0.5"));
+		assertEquals("DATE", inferred("2025-02-28"));
+		assertEquals("DATETIME", inferred("2025-02-28 23:59:59"));
+		assertEquals("DATETIME(6)", inferred("2025-02-28T23:59:59.125"));
+		assertEquals("BOOLEAN", inferred("True"));
+		assertEquals("VARCHAR(16)", inferred("hello"));
+		assertEquals("VARCHAR(128)", inferred("x".repeat(100)));
+		assertEquals("TEXT", inferred("x".repeat(2000)));
+	}
+
+	@Test
+	void infer_valuesThatOnlyLookNumericOrDatedStayText() {
+		assertEquals("VARCHAR(16)", inferred("007"));
+		assertEquals("VARCHAR(16)", inferred("+5"));
+		assertEquals("VARCHAR(16)", inferred("1e5"));
+		assertEquals("VARCHAR(16)", inferred("2025-02-30"));
+		assertEquals("VARCHAR(16)", inferred("1,000"));
+	}
+
+	@Test
+	void infer_typedValuesAndBlanks() {
+		assertNull(ColumnType.infer(null));
+		assertNull(ColumnType.infer("  "));
+		assertEquals("INT", inferred(5L));
+		assertEquals("BIGINT", inferred(Long.MAX_VALUE));
+		assertEquals("DECIMAL(3,2)", inferred(1.23d));
+		assertEquals("DECIMAL(4,2)", inferred(new BigDecimal("12.34")));
+		assertEquals("DATETIME", inferred(LocalDateTime.of(2025, 1, 2, 3, 4, 5)));
+		assertEquals("BOOLEAN", inferred(Boolean.TRUE));
+	}
+
+	@Test
+	void widen_picksNarrowestTypeHoldingBoth() {
+		assertEquals(ColumnType.BIGINT, ColumnType.INT.widen(ColumnType.BIGINT));
+		assertEquals("DECIMAL(12,2)", ColumnType.INT.widen(ColumnType.decimal(1, 2)).sql());
+		assertEquals("DECIMAL(8,3)", ColumnType.decimal(5, 1).widen(ColumnType.decimal(2, 3)).sql());
+		assertEquals("DATETIME", ColumnType.DATE.widen(ColumnType.datetime(0)).sql());
+		assertEquals("VARCHAR(16)", ColumnType.INT.widen(ColumnType.varchar(3)).sql());
+		assertEquals("VARCHAR(32)", ColumnType.BIGINT.widen(ColumnType.BOOLEAN).sql());
+		assertEquals(ColumnType.TEXT, ColumnType.TEXT.widen(ColumnType.INT));
+		assertEquals("VARCHAR(128)", ColumnType.decimal(60, 5).widen(ColumnType.decimal(1, 10)).sql());
+	}
+
+	@Test
+	void holds_existingWideColumnsAreNeverChanged() {
+		ColumnType legacy = ColumnType.parse("VARCHAR(255)");
+
+		assertTrue(legacy.holds("123"));
+		assertTrue(legacy.holds("2025-01-01"));
+		assertFalse(legacy.holds("x".repeat(300)));
+		assertTrue(ColumnType.parse("DECIMAL(38,10)").holds("1.5"));
+		assertFalse(ColumnType.INT.holds("abc"));
+		assertTrue(ColumnType.INT.holds(""));
+	}
+
+	@Test
+	void parse_knownAndUnmanagedDefinitions() {
+		assertEquals(ColumnType.BOOLEAN, ColumnType.parse("BIT(1)"));
+		assertEquals(ColumnType.INT, ColumnType.parse("int"));
+		assertEquals("DECIMAL(10,2)", ColumnType.parse("DECIMAL(10,2)").sql());
+		assertEquals("DATETIME(6)", ColumnType.parse("DATETIME(6)").sql());
+		assertEquals(ColumnType.TEXT, ColumnType.parse("LONGTEXT"));
+		assertNull(ColumnType.parse("TIMESTAMP"));
+		assertNull(ColumnType.parse("DOUBLE"));
+		assertNull(ColumnType.parse(null));
+	}
+
+	@Test
+	void parse_definitionsBuiltFromDriverMetadata() {
+		assertEquals("VARCHAR(64)", ColumnType.parse(TableSchemaCache.definition("varchar", 64, 0)).sql());
+		assertEquals("DECIMAL(10,2)", ColumnType.parse(TableSchemaCache.definition("DECIMAL", 10, 2)).sql());
+		assertEquals(ColumnType.BOOLEAN, ColumnType.parse(TableSchemaCache.definition("BIT", 1, 0)));
+		assertEquals("DATETIME(6)", ColumnType.parse(TableSchemaCache.definition("DATETIME", 26, 6)).sql());
+		assertEquals(ColumnType.INT, ColumnType.parse(TableSchemaCache.definition("INT", 10, 0)));
+		assertNull(TableSchemaCache.definition(null, 0, 0));
+	}
+}
@@ -0,0 +1,86 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+class DomainDataQueryTest {
+
+	private static TableSchema schema() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", Types.VARCHAR);
+		types.put("updated_date", Types.TIMESTAMP);
+		types.put("region", Types.VARCHAR);
+		types.put("qty", Types.INTEGER);
+		types.put("price", Types.DECIMAL);
+		types.put("notes", Types.LONGVARCHAR);
+		return new TableSchema(true, types);
+	}
+
+	@Test
+	void compile_nothingRequested_isSelectAll() {
+		assertSame(DomainDataQuery.ALL, DomainDataQuery.compile("orders", schema(), null, List.of()));
+		assertSame(DomainDataQuery.ALL, DomainDataQuery.compile("orders", new TableSchema(false, Map.of()), List.of(" "),
+				null));
+	}
+
+	@Test
+	void compile_projection_alwaysKeepsIdAndUpdatedDate() {
+		DomainDataQuery query = DomainDataQuery.compile("orders", schema(), List.of(" Region", "qty", "id"), null);
+
+		assertEquals("`id`, `updated_date`, `region`, `qty`", query.getSelectList());
+		assertEquals("", query.getPredicateSql());
+		assertFalse(query.isFiltered());
+	}
+
+	@Test
+	void compile_filters_bindValuesAsColumnType() {
+		DomainDataQuery query = DomainDataQuery.compile("orders", schema(), null,
+				List.of("region:eq:APAC", "qty:gte:10", "price:lt:9.50", "qty:in:1|2|3"));
+
+		assertEquals("*", query.getSelectList());
+		assertEquals(" AND `region` = ? AND `qty` >= ? AND `price` < ? AND `qty` IN (?, ?, ?)",
+				query.getPredicateSql());
+		assertEquals(List.of("APAC", 10, new BigDecimal("9.50"), 1, 2, 3), query.getPredicateArgs());
+		assertTrue(query.isFiltered());
+	}
+
+	@Test
+	void compile_prefix_escapesLikeWildcards() {
+		DomainDataQuery query = DomainDataQuery.compile("orders", schema(), null, List.of("region:prefix:50%_off!"));
+
+		assertEquals(" AND `region` LIKE ? ESCAPE '!'", query.getPredicateSql());
+		assertEquals(List.of("50!%!_off!!%"), query.getPredicateArgs());
+	}
+
+	@Test
+	void compile_valueMayContainColons() {
+		DomainDataQuery query = DomainDataQuery.compile("orders", schema(), null, List.of("region:eq:a:b"));
+
+		assertEquals(List.of("a:b"), query.getPredicateArgs());
+	}
+
+	@Test
+	void compile_rejectsUnknownColumnsOperatorsAndMissingValues() {
+		IllegalArgumentException unknownColumn = assertThrows(IllegalArgumentException.class,
+				() -> DomainDataQuery.compile("orders", schema(), List.of("ghost"), null));
+		assertEquals("Unknown column: ghost", unknownColumn.getMessage());
+
+		assertThrows(IllegalArgumentException.class,
+				() -> DomainDataQuery.compile("orders", schema(), null, List.of("region:like:%x%")));
+		assertThrows(IllegalArgumentException.class,
+				() -> DomainDataQuery.compile("orders", schema(), null, List.of("region")));
+		assertThrows(IllegalArgumentException.class,
+				() -> DomainDataQuery.compile("orders", schema(), null, List.of("qty:eq: ")));
+		assertThrows(IllegalArgumentException.class,
+				() -> DomainDataQuery.compile("missing", new TableSchema(false, Map.of()), List.of("id"), null));
+	}
+}
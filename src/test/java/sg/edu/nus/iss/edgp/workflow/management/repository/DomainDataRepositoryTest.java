@@ -5,14 +5,28 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.AdditionalMatchers.aryEq;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.sql.Types;
 import java.util.*;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.domain.*;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
 
 @ExtendWith(MockitoExtension.class)
 class DomainDataRepositoryTest {
@@ -20,6 +34,9 @@ class DomainDataRepositoryTest {
 	@Mock
 	private JdbcTemplate jdbcTemplate;
 
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+
 	@InjectMocks
 	private DomainDataRepository repo;
 
@@ -36,6 +53,7 @@ class DomainDataRepositoryTest {
 	    String expectedSql = "SELECT * FROM `mytable` WHERE `organization_id` = ?";
 
 	    List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
+	    when(tableSchemaCache.get("mytable_archive")).thenReturn(new TableSchema(false, Map.of()));
 	    when(jdbcTemplate.queryForList(eq(expectedSql), aryEq(new Object[] { "ORG-9" }))).thenReturn(rows);
 
 	    // Use TRUE (or null) instead of anyBoolean()
@@ -51,6 +69,7 @@ class DomainDataRepositoryTest {
 		String expectedSql = "SELECT * FROM `data_tbl` WHERE `organization_id` = ? AND `file_id` = ?";
 
 		List<Map<String, Object>> rows = List.of(Map.of("id", "22"));
+		when(tableSchemaCache.get("data_tbl_archive")).thenReturn(new TableSchema(false, Map.of()));
 		when(jdbcTemplate.queryForList(eq(expectedSql), aryEq(new Object[] { "ORG-X", "F-77"}))).thenReturn(rows);
 
 		List<Map<String, Object>> out = repo.findAllDomainDataList(table, "ORG-X", "F-77", Boolean.TRUE);
@@ -64,8 +83,9 @@ class DomainDataRepositoryTest {
 		String table = "Domain_A";
 		Pageable pageable = PageRequest.of(2, 25); // page 2 -> offset 50
 
-		String expectedSelect = "SELECT * FROM `domain_a` WHERE `organization_id` = ? ORDER BY `id` LIMIT ? OFFSET ?";
-		String expectedCount = "SELECT COUNT(*) FROM `domain_a` WHERE `organization_id` = ?";
+		String expectedSelect = "SELECT * FROM `domain_a` WHERE `organization_id` = ? AND `is_archived` = false"
+				+ " ORDER BY `id` LIMIT ? OFFSET ?";
+		String expectedCount = "SELECT COUNT(*) FROM `domain_a` WHERE `organization_id` = ? AND `is_archived` = false";
 
 		List<Map<String, Object>> rows = List.of(Map.of("id", "a1"), Map.of("id", "a2"));
 		when(jdbcTemplate.queryForList(eq(expectedSelect), aryEq(new Object[] { "ORG-1", 25, 50L }))).thenReturn(rows);
@@ -91,8 +111,9 @@ class DomainDataRepositoryTest {
 		Pageable pageable = PageRequest.of(0, 10, sort);
 
 		String expectedSelect = "SELECT * FROM `orders` WHERE `organization_id` = ? AND `file_id` = ? "
-				+ "ORDER BY `created_date` DESC, `updated_date` ASC LIMIT ? OFFSET ?";
-		String expectedCount = "SELECT COUNT(*) FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?";
+				+ "AND `is_archived` = false ORDER BY `created_date` DESC, `updated_date` ASC LIMIT ? OFFSET ?";
+		String expectedCount = "SELECT COUNT(*) FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?"
+				+ " AND `is_archived` = false";
 
 		List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
 		when(jdbcTemplate.queryForList(eq(expectedSelect), aryEq(new Object[] { "ORG-5", "FILE-9", 10, 0L })))
@@ -106,6 +127,127 @@ class DomainDataRepositoryTest {
 		assertEquals(rows, page.getContent());
 	}
 
+	@Test
+	void findDomainDataListAfter_firstPage_ordersBySeekKeyWithoutCount() {
+		String expectedSql = "SELECT * FROM `orders` WHERE `organization_id` = ? AND `is_archived` = false"
+				+ " ORDER BY `updated_date` ASC, `id` ASC LIMIT ?";
+		List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
+		when(jdbcTemplate.queryForList(eq(expectedSql), aryEq(new Object[] { "ORG-1", 11 }))).thenReturn(rows);
+
+		List<Map<String, Object>> out = repo.findDomainDataListAfter("Orders", "ORG-1", null, Boolean.FALSE,
+				DomainDataQuery.ALL, null, 11);
+
+		assertEquals(rows, out);
+		verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class), any(Object[].class));
+	}
+
+	@Test
+	void findDomainDataListAfter_withCursor_seeksPastLastRow() {
+		LocalDateTime updated = LocalDateTime.of(2025, 8, 1, 10, 15, 30, 123_000_000);
+		Timestamp ts = Timestamp.valueOf(updated);
+		String expectedSql = "SELECT * FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?"
+				+ " AND `is_archived` = false AND (`updated_date` > ? OR (`updated_date` = ? AND `id` > ?))"
+				+ " ORDER BY `updated_date` ASC, `id` ASC LIMIT ?";
+		List<Map<String, Object>> rows = List.of(Map.of("id", "r-9"));
+		when(jdbcTemplate.queryForList(eq(expectedSql), aryEq(new Object[] { "ORG-1", "F-1", ts, ts, "r-8", 6 })))
+				.thenReturn(rows);
+
+		List<Map<String, Object>> out = repo.findDomainDataListAfter("orders", "ORG-1", "F-1", null, null,
+				new DomainDataCursor(updated, "r-8"), 6);
+
+		assertEquals(rows, out);
+	}
+
+	@Test
+	void findDomainDataPage_excludingArchived_runsNoCount() {
+		String expectedSelect = "SELECT * FROM `orders` WHERE `organization_id` = ? AND `is_archived` = false"
+				+ " ORDER BY `id` LIMIT ? OFFSET ?";
+		List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
+		when(jdbcTemplate.queryForList(eq(expectedSelect), aryEq(new Object[] { "ORG-1", 10, 10L }))).thenReturn(rows);
+
+		assertEquals(rows, repo.findDomainDataPage("orders", "ORG-1", null, Boolean.FALSE,
+				DomainDataQuery.ALL, PageRequest.of(1, 10)));
+		verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class), any(Object[].class));
+	}
+
+	@Test
+	void countDomainData_appliesSameFilters() {
+		String expectedCount = "SELECT COUNT(*) FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?"
+				+ " AND `is_archived` = false";
+		when(jdbcTemplate.queryForObject(eq(expectedCount), eq(Long.class), aryEq(new Object[] { "ORG-1", "F-1" })))
+				.thenReturn(12L);
+
+		assertEquals(12L, repo.countDomainData("Orders", "ORG-1", "F-1", Boolean.FALSE));
+	}
+
+	@Test
+	void estimateTableRows_readsTableStatistics() {
+		when(jdbcTemplate.queryForList(contains("information_schema.tables"), eq(Long.class), eq("orders")))
+				.thenReturn(List.of(1_500_000L));
+
+		assertEquals(1_500_000L, repo.estimateTableRows("Orders"));
+	}
+
+	@Test
+	void streamDomainDataList_usesForwardOnlyStreamingStatement() throws Exception {
+		String expectedSql = "SELECT * FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?"
+				+ " AND `is_archived` = false";
+		Connection con = mock(Connection.class);
+		PreparedStatement ps = mock(PreparedStatement.class);
+		when(con.prepareStatement(expectedSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(ps);
+
+		ResultSetMetaData meta = mock(ResultSetMetaData.class);
+		when(meta.getColumnCount()).thenReturn(1);
+		when(meta.getColumnLabel(1)).thenReturn("id");
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getMetaData()).thenReturn(meta);
+		when(rs.getObject(1)).thenReturn("r-1", "r-2");
+
+		doAnswer(inv -> {
+			PreparedStatementCreator creator = inv.getArgument(0);
+			assertSame(ps, creator.createPreparedStatement(con));
+			RowCallbackHandler handler = inv.getArgument(1);
+			handler.processRow(rs);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+		List<Object> ids = new ArrayList<>();
+		long streamed = repo.streamDomainDataList("Orders", "ORG-1", "F-1", null, DomainDataQuery.ALL,
+				row -> ids.add(row.get("id")));
+
+		assertEquals(2, streamed);
+		assertEquals(List.of("r-1", "r-2"), ids);
+		verify(ps).setFetchSize(Integer.MIN_VALUE);
+		verify(ps).setObject(1, "ORG-1");
+		verify(ps).setObject(2, "F-1");
+		verify(jdbcTemplate, never()).queryForList(anyString(), any(Object[].class));
+	}
+
+	@Test
+	void findDomainDataPage_withProjectionAndFilters_compilesAfterBaseFilters() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", Types.VARCHAR);
+		types.put("updated_date", Types.TIMESTAMP);
+		types.put("region", Types.VARCHAR);
+		types.put("qty", Types.INTEGER);
+		DomainDataQuery query = DomainDataQuery.compile("orders", new TableSchema(true, types), List.of("region"),
+				List.of("qty:gt:5"));
+
+		String expectedSelect = "SELECT `id`, `updated_date`, `region` FROM `orders` WHERE `organization_id` = ?"
+				+ " AND `file_id` = ? AND `is_archived` = false AND `qty` > ? ORDER BY `id` LIMIT ? OFFSET ?";
+		List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
+		when(jdbcTemplate.queryForList(eq(expectedSelect), aryEq(new Object[] { "ORG-1", "F-1", 5, 20, 0L })))
+				.thenReturn(rows);
+		String expectedCount = "SELECT COUNT(*) FROM `orders` WHERE `organization_id` = ? AND `file_id` = ?"
+				+ " AND `is_archived` = false AND `qty` > ?";
+		when(jdbcTemplate.queryForObject(eq(expectedCount), eq(Long.class), aryEq(new Object[] { "ORG-1", "F-1", 5 })))
+				.thenReturn(1L);
+
+		assertEquals(rows, repo.findDomainDataPage("orders", "ORG-1", "F-1", null, query, PageRequest.of(0, 20)));
+		assertEquals(1L, repo.countDomainData("orders", "ORG-1", "F-1", null, query));
+	}
+
 	@Test
 	void retrieveDetailDomainDataRecordById_generatesSqlAndBindsId() {
 		String expectedSql = "SELECT * FROM `customer_info` WHERE `id` = ? LIMIT 1";
@@ -118,4 +260,47 @@ class DomainDataRepositoryTest {
 
 		verify(jdbcTemplate).queryForMap(eq(expectedSql), eq("42"));
 	}
+
+	@Test
+	void findDomainDataPage_includingArchived_readsDomainTableAndArchiveAsOne() {
+		Map<String, Integer> hot = new LinkedHashMap<>();
+		hot.put("id", Types.VARCHAR);
+		hot.put("region", Types.VARCHAR);
+		when(tableSchemaCache.get("orders")).thenReturn(new TableSchema(true, hot));
+		when(tableSchemaCache.get("orders_archive"))
+				.thenReturn(new TableSchema(true, Map.of("id", Types.VARCHAR, "is_archived", Types.BIT)));
+
+		String expectedSelect = "SELECT * FROM (SELECT `id`, `region` FROM `orders` WHERE `organization_id` = ?"
+				+ " UNION ALL SELECT `id`, NULL AS `region` FROM `orders_archive` WHERE `organization_id` = ?) AS `d`"
+				+ " ORDER BY `id` LIMIT ? OFFSET ?";
+		List<Map<String, Object>> rows = List.of(Map.of("id", "1"));
+		when(jdbcTemplate.queryForList(eq(expectedSelect), aryEq(new Object[] { "ORG-1", "ORG-1", 10, 0L })))
+				.thenReturn(rows);
+
+		assertEquals(rows, repo.findDomainDataPage("Orders", "ORG-1", null, Boolean.TRUE, DomainDataQuery.ALL,
+				PageRequest.of(0, 10)));
+	}
+
+	@Test
+	void countDomainData_includingArchived_ignoresArchiveOfOldLayout() {
+		when(tableSchemaCache.get("orders_archive"))
+				.thenReturn(new TableSchema(true, Map.of("id", Types.VARCHAR, "orders_id", Types.VARCHAR)));
+		when(jdbcTemplate.queryForObject(eq("SELECT COUNT(*) FROM `orders` WHERE `organization_id` = ?"),
+				eq(Long.class), aryEq(new Object[] { "ORG-1" }))).thenReturn(3L);
+
+		assertEquals(3L, repo.countDomainData("orders", "ORG-1", null, Boolean.TRUE));
+		verify(tableSchemaCache, never()).get("orders");
+	}
+
+	@Test
+	void retrieveDetailDomainDataRecordById_fallsBackToArchive() {
+		when(jdbcTemplate.queryForMap("SELECT * FROM `orders` WHERE `id` = ? LIMIT 1", "42"))
+				.thenThrow(new EmptyResultDataAccessException(1));
+		when(tableSchemaCache.get("orders_archive"))
+				.thenReturn(new TableSchema(true, Map.of("id", Types.VARCHAR, "is_archived", Types.BIT)));
+		Map<String, Object> row = Map.of("id", "42");
+		when(jdbcTemplate.queryForMap("SELECT * FROM `orders_archive` WHERE `id` = ? LIMIT 1", "42")).thenReturn(row);
+
+		assertEquals(row, repo.retrieveDetailDomainDataRecordById("Orders", "42"));
+	}
 }
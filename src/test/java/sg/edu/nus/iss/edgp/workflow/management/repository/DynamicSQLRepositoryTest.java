@@ -8,7 +8,6 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
@@ -21,7 +20,6 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ResultSetExtractor;
 
 @ExtendWith(MockitoExtension.class)
 class DynamicSQLRepositoryTest {
@@ -29,6 +27,12 @@ class DynamicSQLRepositoryTest {
 	@Mock
 	private JdbcTemplate jdbcTemplate;
 
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+
+	@Mock
+	private CleanDataBatchWriter cleanDataBatchWriter;
+
 	@Spy
 	@InjectMocks
 	private DynamicSQLRepository repo;
@@ -69,10 +73,11 @@ class DynamicSQLRepositoryTest {
 		raw.put("age", " 23 ");
 		raw.put("is_active", true);
 
-		doNothing().when(repo).validateInsertColumns(eq("users"), anySet(), eq(jdbcTemplate));
-
-		Map<String, Integer> types = Map.of("name", Types.VARCHAR, "age", Types.INTEGER, "is_active", Types.TINYINT);
-		doReturn(types).when(repo).getColumnTypes("users");
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("name", Types.VARCHAR);
+		types.put("age", Types.INTEGER);
+		types.put("is_active", Types.TINYINT);
+		when(tableSchemaCache.get("users")).thenReturn(new TableSchemaCache.TableSchema(true, types));
 
 		ArgumentCaptor<String> sqlCap = ArgumentCaptor.forClass(String.class);
 		ArgumentCaptor<Object[]> argsCap = ArgumentCaptor.forClass(Object[].class);
@@ -88,22 +93,104 @@ class DynamicSQLRepositoryTest {
 		assertArrayEquals(new Object[] { "Alice", 23, 1 }, args);
 	}
 
+	@Test
+	void queueInsertRow_submitsNormalizedRowToBatchWriter() throws Exception {
+		Map<String, Object> raw = new LinkedHashMap<>();
+		raw.put("name", " Bob ");
+		raw.put("age", "31");
+
+		stubCachedTypes("users", Map.of("name", Types.VARCHAR, "age", Types.INTEGER));
+		java.util.concurrent.CompletableFuture<Integer> batch = new java.util.concurrent.CompletableFuture<>();
+		when(cleanDataBatchWriter.submit(anyString(), any(Object[].class))).thenReturn(batch);
+
+		assertSame(batch, repo.queueInsertRow("users", raw));
+
+		ArgumentCaptor<Object[]> argsCap = ArgumentCaptor.forClass(Object[].class);
+		verify(cleanDataBatchWriter).submit(eq("INSERT INTO `users` (`name`, `age`) VALUES (?, ?)"), argsCap.capture());
+		assertArrayEquals(new Object[] { "Bob", 31 }, argsCap.getValue());
+		verifyNoInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void queueUpsertRow_submitsUpsertOnTheKeyColumn() throws Exception {
+		stubCachedTypes("users", Map.of("id", Types.VARCHAR, "workflow_tracker_id", Types.VARCHAR, "name", Types.VARCHAR));
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("id", "u-1");
+		row.put("workflow_tracker_id", "wf-1");
+		row.put("name", "Bob");
+		when(cleanDataBatchWriter.submit(anyString(), any(Object[].class)))
+				.thenReturn(java.util.concurrent.CompletableFuture.completedFuture(null));
+
+		repo.queueUpsertRow("users", row, "workflow_tracker_id");
+
+		verify(cleanDataBatchWriter).submit(
+				eq("INSERT INTO `users` (`id`, `workflow_tracker_id`, `name`) VALUES (?, ?, ?)"
+						+ " ON DUPLICATE KEY UPDATE `name` = VALUES(`name`)"),
+				eq(new Object[] { "u-1", "wf-1", "Bob" }));
+	}
+
+	@Test
+	void queueInsertRow_throwsOnEmptyRow() {
+		assertThrows(IllegalArgumentException.class, () -> repo.queueInsertRow("users", Map.of()));
+		verifyNoInteractions(cleanDataBatchWriter);
+	}
+
+	@Test
+	void queueInsertRow_reusesPlanForSameKeysUntilSchemaChanges() throws Exception {
+		TableSchemaCache.TableSchema v1 = new TableSchemaCache.TableSchema(true, Map.of("name", Types.VARCHAR));
+		TableSchemaCache.TableSchema v2 = new TableSchemaCache.TableSchema(true,
+				Map.of("name", Types.VARCHAR, "age", Types.INTEGER));
+		when(tableSchemaCache.get("users")).thenReturn(v1, v1, v2);
+
+		InsertPlan first = repo.insertPlan("users", Map.of("name", "a"));
+		assertSame(first, repo.insertPlan("users", Map.of("name", "b")));
+
+		InsertPlan recompiled = repo.insertPlan("users", Map.of("name", "c"));
+		assertNotSame(first, recompiled);
+		assertSame(v2, recompiled.getSchema());
+	}
+
+	@Test
+	void queueInsertRow_differentKeyOrder_getsItsOwnPlan() throws Exception {
+		stubCachedTypes("users", Map.of("name", Types.VARCHAR, "age", Types.INTEGER));
+		Map<String, Object> nameFirst = new LinkedHashMap<>();
+		nameFirst.put("name", "a");
+		nameFirst.put("age", "1");
+		Map<String, Object> ageFirst = new LinkedHashMap<>();
+		ageFirst.put("age", "2");
+		ageFirst.put("name", "b");
+
+		assertEquals("INSERT INTO `users` (`name`, `age`) VALUES (?, ?)", repo.insertPlan("users", nameFirst).getSql());
+		assertEquals("INSERT INTO `users` (`age`, `name`) VALUES (?, ?)", repo.insertPlan("users", ageFirst).getSql());
+	}
+
+	@Test
+	void queueInsertRow_unknownColumn_rejectedBeforeQueueing() {
+		stubCachedTypes("users", Map.of("name", Types.VARCHAR, "created_date", Types.TIMESTAMP));
+
+		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+				() -> repo.queueInsertRow("users", Map.of("name", "a", "created_date", "2025-01-01 00:00:00")));
+		assertTrue(ex.getMessage().contains("created_date"));
+		verifyNoInteractions(cleanDataBatchWriter);
+	}
+
 	@Test
 	void validateInsertColumns_allowsValidTrimmedAndIgnoresExcluded() {
 
-		mockJdbcQueryMetaColumnsReturn(Set.of("id", "name", "created_date"));
+		stubCachedColumns("customers", "id", "name", "created_date");
 
 		Set<String> insertCols = Set.of("  NAME  ");
-		assertDoesNotThrow(() -> repo.validateInsertColumns("customers", insertCols, jdbcTemplate));
+		assertDoesNotThrow(() -> repo.validateInsertColumns("customers", insertCols));
+		verifyNoInteractions(jdbcTemplate);
 	}
 
 	@Test
 	void validateInsertColumns_throwsOnMissingColumns() {
-		mockJdbcQueryMetaColumnsReturn(Set.of("id", "name", "email"));
+		stubCachedColumns("customers", "id", "name", "email");
 
 		Set<String> insertCols = Set.of("name", "ghost_field");
 		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
-				() -> repo.validateInsertColumns("customers", insertCols, jdbcTemplate));
+				() -> repo.validateInsertColumns("customers", insertCols));
 		assertTrue(ex.getMessage().contains("ghost_field"));
 	}
 
@@ -157,54 +244,26 @@ class DynamicSQLRepositoryTest {
 	}
 
 	@Test
-	void getColumnTypes_readsFromMetadata() throws Exception {
-		DataSource ds = mock(DataSource.class);
-		Connection conn = mock(Connection.class);
-		PreparedStatement ps = mock(PreparedStatement.class);
-		ResultSet rs = mock(ResultSet.class);
-		ResultSetMetaData meta = mock(ResultSetMetaData.class);
-
-		when(jdbcTemplate.getDataSource()).thenReturn(ds);
-		when(ds.getConnection()).thenReturn(conn);
-		when(conn.prepareStatement("SELECT * FROM `products` LIMIT 1")).thenReturn(ps);
-		when(ps.executeQuery()).thenReturn(rs);
-		when(rs.getMetaData()).thenReturn(meta);
-
-		when(meta.getColumnCount()).thenReturn(3);
-		when(meta.getColumnName(1)).thenReturn("ID");
-		when(meta.getColumnType(1)).thenReturn(Types.INTEGER);
-		when(meta.getColumnName(2)).thenReturn("NAME");
-		when(meta.getColumnType(2)).thenReturn(Types.VARCHAR);
-		when(meta.getColumnName(3)).thenReturn("PRICE");
-		when(meta.getColumnType(3)).thenReturn(Types.DECIMAL);
+	void getColumnTypes_comesFromSchemaCache() throws Exception {
+		Map<String, Integer> types = Map.of("id", Types.INTEGER, "name", Types.VARCHAR, "price", Types.DECIMAL);
+		when(tableSchemaCache.get("products")).thenReturn(new TableSchemaCache.TableSchema(true, types));
 
 		Map<String, Integer> colTypes = repo.getColumnTypes("products");
 		assertEquals(3, colTypes.size());
-		assertEquals(Types.INTEGER, colTypes.get("id"));
-		assertEquals(Types.VARCHAR, colTypes.get("name"));
 		assertEquals(Types.DECIMAL, colTypes.get("price"));
+		verifyNoInteractions(jdbcTemplate);
+	}
 
-		verify(ps).executeQuery();
-		verify(conn).prepareStatement("SELECT * FROM `products` LIMIT 1");
+	private void stubCachedTypes(String tableName, Map<String, Integer> types) {
+		when(tableSchemaCache.get(tableName)).thenReturn(new TableSchemaCache.TableSchema(true, types));
 	}
 
-	@SuppressWarnings("unchecked")
-	private void mockJdbcQueryMetaColumnsReturn(Set<String> columnsLowercase) {
-		when(jdbcTemplate.query(startsWith("SELECT * FROM `"), any(ResultSetExtractor.class))).thenAnswer(inv -> {
-			ResultSetExtractor<Set<String>> extractor = inv.getArgument(1);
-			ResultSet rs = mock(ResultSet.class);
-			ResultSetMetaData meta = mock(ResultSetMetaData.class);
-
-			List<String> cols = new ArrayList<>(columnsLowercase).stream().map(String::toUpperCase)
-					.collect(Collectors.toList());
-			when(rs.getMetaData()).thenReturn(meta);
-			when(meta.getColumnCount()).thenReturn(cols.size());
-			for (int i = 0; i < cols.size(); i++) {
-				when(meta.getColumnName(i + 1)).thenReturn(cols.get(i));
-			}
-
-			return extractor.extractData(rs);
-		});
+	private void stubCachedColumns(String tableName, String... columns) {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : columns) {
+			types.put(column, Types.VARCHAR);
+		}
+		when(tableSchemaCache.get(tableName)).thenReturn(new TableSchemaCache.TableSchema(true, types));
 	}
 	
 	@Test
@@ -223,13 +282,7 @@ class DynamicSQLRepositoryTest {
 
         repo.createArchiveTable("customer", "customer_archive");
 
-        String sql = sqlCap.getValue();
-        // Basic shape checks
-        assertTrue(sql.startsWith("CREATE TABLE IF NOT EXISTS `customer_archive` ("));
-        assertTrue(sql.contains("`id` VARCHAR(36) PRIMARY KEY"));
-        assertTrue(sql.contains("`customer_id` VARCHAR(191) NOT NULL"));
-        assertTrue(sql.contains("`message` TEXT"));
-        assertTrue(sql.contains("`archived_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"));
+        assertEquals("CREATE TABLE IF NOT EXISTS `customer_archive` LIKE `customer`", sqlCap.getValue());
     }
  
 
@@ -0,0 +1,153 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+class InsertPlanTest {
+
+	private static TableSchema schema() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", Types.VARCHAR);
+		types.put("qty", Types.INTEGER);
+		types.put("price", Types.DECIMAL);
+		types.put("shipped_on", Types.DATE);
+		types.put("active", Types.TINYINT);
+		types.put("code", Types.BIGINT);
+		types.put("created_date", Types.TIMESTAMP);
+		return new TableSchema(true, types);
+	}
+
+	@Test
+	void compile_buildsSqlInRowKeyOrderWithTrimmedColumns() {
+		InsertPlan plan = InsertPlan.compile("orders", Arrays.asList(" qty ", "id", "", null), schema());
+
+		assertEquals("INSERT INTO `orders` (`qty`, `id`) VALUES (?, ?)", plan.getSql());
+		assertEquals(List.of("qty", "id"), plan.getColumns());
+	}
+
+	@Test
+	void compile_rejectsUnknownAndBackendManagedColumns() {
+		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+				() -> InsertPlan.compile("orders", List.of("id", "ghost", "created_date"), schema()));
+
+		assertTrue(ex.getMessage().contains("ghost"));
+		assertTrue(ex.getMessage().contains("created_date"));
+	}
+
+	@Test
+	void bind_convertsEachValueByColumnType() {
+		List<String> keys = List.of("id", "qty", "price", "shipped_on", "active", "code");
+		InsertPlan plan = InsertPlan.compile("orders", keys, schema());
+
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("id", " o-1 ");
+		row.put("qty", " 3 ");
+		row.put("price", "9.90");
+		row.put("shipped_on", "2025-08-01");
+		row.put("active", true);
+		row.put("code", 12L);
+
+		assertArrayEquals(new Object[] { "o-1", 3, new BigDecimal("9.90"), Date.valueOf("2025-08-01"), 1, 12L },
+				plan.bind(row));
+	}
+
+	@Test
+	void bind_blankNumericIsNullAndUnparsableFallsBackToText() {
+		InsertPlan plan = InsertPlan.compile("orders", List.of("qty", "price", "id"), schema());
+
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("qty", "  ");
+		row.put("price", "n/a");
+		row.put("id", null);
+
+		assertArrayEquals(new Object[] { null, "n/a", "" }, plan.bind(row));
+	}
+
+	@Test
+	void bind_duplicateTrimmedKeyTakesTheLaterValue() {
+		InsertPlan plan = InsertPlan.compile("orders", List.of("qty", " qty"), schema());
+
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("qty", "1");
+		row.put(" qty", "2");
+
+		assertEquals("INSERT INTO `orders` (`qty`) VALUES (?)", plan.getSql());
+		assertArrayEquals(new Object[] { 2 }, plan.bind(row));
+	}
+
+	@Test
+	void converterFor_unknownColumnTypeKeepsText() {
+		assertEquals("", InsertPlan.converterFor(null).apply(null));
+		assertEquals("x", InsertPlan.converterFor(null).apply(" x "));
+	}
+
+	@Test
+	void compile_withUpsertKey_updatesEverythingButIdAndKey() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", Types.VARCHAR);
+		types.put("workflow_tracker_id", Types.VARCHAR);
+		types.put("name", Types.VARCHAR);
+		types.put("qty", Types.INTEGER);
+
+		InsertPlan plan = InsertPlan.compile("orders", List.of("workflow_tracker_id", "name", "qty", "id"),
+				new TableSchema(true, types), "workflow_tracker_id");
+
+		assertEquals("INSERT INTO `orders` (`workflow_tracker_id`, `name`, `qty`, `id`) VALUES (?, ?, ?, ?)"
+				+ " ON DUPLICATE KEY UPDATE `name` = VALUES(`name`), `qty` = VALUES(`qty`)", plan.getSql());
+	}
+
+	@Test
+	void compile_upsertKeyNotInRow_isPlainInsert() {
+		InsertPlan plan = InsertPlan.compile("orders", List.of("id", "qty"), schema(), "workflow_tracker_id");
+
+		assertEquals("INSERT INTO `orders` (`id`, `qty`) VALUES (?, ?)", plan.getSql());
+	}
+	@Test
+	void converterFor_booleanTextBecomesBit() {
+		assertEquals(1, InsertPlan.converterFor(Types.BIT).apply("TRUE"));
+		assertEquals(0, InsertPlan.converterFor(Types.TINYINT).apply(" false "));
+		assertEquals("yes", InsertPlan.converterFor(Types.BIT).apply("yes"));
+	}
+
+	@Test
+	void bind_blankValueIsNullForEveryInferredNonTextType() {
+		// JDBC types MySQL reports for the columns ColumnType creates
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("flag", Types.BIT);
+		types.put("bool", Types.BOOLEAN);
+		types.put("small", Types.SMALLINT);
+		types.put("tiny", Types.TINYINT);
+		types.put("qty", Types.INTEGER);
+		types.put("code", Types.BIGINT);
+		types.put("price", Types.DECIMAL);
+		types.put("shipped_on", Types.DATE);
+		types.put("shipped_at", Types.TIMESTAMP);
+		types.put("name", Types.VARCHAR);
+		types.put("notes", Types.LONGVARCHAR);
+		InsertPlan plan = InsertPlan.compile("orders", List.copyOf(types.keySet()), new TableSchema(true, types));
+
+		Map<String, Object> row = new LinkedHashMap<>();
+		types.keySet().forEach(col -> row.put(col, " "));
+
+		assertArrayEquals(new Object[] { null, null, null, null, null, null, null, null, null, "", "" },
+				plan.bind(row));
+	}
+
+	@Test
+	void converterFor_bigintParsesLongs() {
+		assertEquals(9_000_000_000L, InsertPlan.converterFor(Types.BIGINT).apply(" 9000000000 "));
+		assertEquals(1, InsertPlan.converterFor(Types.BIGINT).apply("true"));
+	}
+
+}
@@ -0,0 +1,118 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.PartitionManager.Spec;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionManagerTest {
+
+	private static final YearMonth OCTOBER = YearMonth.of(2026, 10);
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@InjectMocks
+	private PartitionManager partitionManager;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(partitionManager, "byOrganization", List.of("Customer:8", "vendor"));
+		ReflectionTestUtils.setField(partitionManager, "byCreatedDate", List.of("orders:12", " invoices "));
+		ReflectionTestUtils.setField(partitionManager, "monthsAhead", 1);
+	}
+
+	@Test
+	void specFor_readsDeclaredDomains() {
+		assertEquals(new Spec("organization_id", 8, 0), partitionManager.specFor("customer"));
+		assertEquals(new Spec("organization_id", 16, 0), partitionManager.specFor("vendor"));
+		assertEquals(new Spec("created_date", 0, 12), partitionManager.specFor("Orders"));
+		assertEquals(new Spec("created_date", 0, 0), partitionManager.specFor("invoices"));
+		assertNull(partitionManager.specFor("products"));
+	}
+
+	@Test
+	void partitionClause_hashesByOrganization() {
+		assertEquals("PARTITION BY KEY (`organization_id`) PARTITIONS 8",
+				partitionManager.partitionClause(partitionManager.specFor("customer"), OCTOBER));
+	}
+
+	@Test
+	void partitionClause_createsMonthsAheadAndCatchAll() {
+		assertEquals("PARTITION BY RANGE (UNIX_TIMESTAMP(`created_date`)) ("
+				+ "PARTITION `p202610` VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')), "
+				+ "PARTITION `p202611` VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')), "
+				+ "PARTITION `p_future` VALUES LESS THAN MAXVALUE)",
+				partitionManager.partitionClause(partitionManager.specFor("orders"), OCTOBER));
+	}
+
+	@Test
+	void maintain_splitsCatchAllForComingMonths() {
+		when(jdbcTemplate.queryForList(contains("information_schema.partitions"), eq(String.class), eq("orders")))
+				.thenReturn(List.of("p202609", "p202610", "p_future"));
+
+		partitionManager.maintain("orders", partitionManager.specFor("orders"), OCTOBER);
+
+		verify(jdbcTemplate).execute("ALTER TABLE `orders` REORGANIZE PARTITION `p_future` INTO ("
+				+ "PARTITION `p202611` VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')), "
+				+ "PARTITION `p_future` VALUES LESS THAN MAXVALUE)");
+		verifyNoMoreInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void maintain_exchangesExpiredMonthOutBeforeDroppingIt() {
+		when(jdbcTemplate.queryForList(contains("information_schema.partitions"), eq(String.class), eq("orders")))
+				.thenReturn(List.of("p202509", "p202510", "p202611", "p_future"));
+
+		partitionManager.maintain("orders", partitionManager.specFor("orders"), OCTOBER);
+
+		InOrder order = inOrder(jdbcTemplate);
+		order.verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS `orders_p202509` LIKE `orders`");
+		order.verify(jdbcTemplate).execute("ALTER TABLE `orders_p202509` REMOVE PARTITIONING");
+		order.verify(jdbcTemplate).execute("ALTER TABLE `orders` EXCHANGE PARTITION `p202509` WITH TABLE `orders_p202509`");
+		order.verify(jdbcTemplate).execute("ALTER TABLE `orders` DROP PARTITION `p202509`");
+		verify(jdbcTemplate, never()).execute(contains("p202510`"));
+		verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE `orders` REORGANIZE"));
+	}
+
+	@Test
+	void maintain_dropsExpiredMonthWhenNotExporting() {
+		ReflectionTestUtils.setField(partitionManager, "exportExpired", false);
+		when(jdbcTemplate.queryForList(contains("information_schema.partitions"), eq(String.class), eq("orders")))
+				.thenReturn(List.of("p202509", "p202611", "p_future"));
+
+		partitionManager.maintain("orders", partitionManager.specFor("orders"), OCTOBER);
+
+		verify(jdbcTemplate).execute("ALTER TABLE `orders` DROP PARTITION `p202509`");
+		verify(jdbcTemplate, never()).execute(contains("EXCHANGE"));
+	}
+
+	@Test
+	void maintainAll_skipsTablesThatAreNotPartitioned() {
+		when(jdbcTemplate.queryForList(contains("information_schema.partitions"), eq(String.class), anyString()))
+				.thenReturn(List.of());
+
+		partitionManager.maintainAll();
+
+		verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq("orders"));
+		verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq("orders_archive"));
+		verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq("invoices"));
+		verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq("invoices_archive"));
+		verify(jdbcTemplate, never()).execute(anyString());
+	}
+}
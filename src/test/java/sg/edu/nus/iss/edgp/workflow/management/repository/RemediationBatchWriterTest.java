@@ -0,0 +1,135 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import sg.edu.nus.iss.edgp.workflow.management.enums.RemediationOutcome;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+@ExtendWith(MockitoExtension.class)
+class RemediationBatchWriterTest {
+
+	private static final String UPDATE_QTY = "UPDATE `orders` SET `qty` = ? WHERE `id` = ? AND `qty` = ?";
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	@Mock
+	private TaskScheduler taskScheduler;
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+	@Mock
+	private DynamicSQLRepository dynamicSQLRepository;
+
+	@InjectMocks
+	private RemediationBatchWriter writer;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(writer, "batchSize", 3);
+	}
+
+	private void stubOrders() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", Types.VARCHAR);
+		types.put("qty", Types.INTEGER);
+		when(tableSchemaCache.get("orders")).thenReturn(new TableSchema(true, types));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object[]> capturedUpdates() {
+		ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(eq(UPDATE_QTY), rows.capture());
+		return rows.getValue();
+	}
+
+	@Test
+	void submitUpdate_batchesOneColumnAndReportsEachRow() {
+		stubOrders();
+		when(jdbcTemplate.batchUpdate(eq(UPDATE_QTY), anyList()))
+				.thenReturn(new int[] { 1, 0, Statement.SUCCESS_NO_INFO });
+
+		CompletableFuture<RemediationOutcome> first = writer.submitUpdate("Orders", "QTY", "o-1", "1", "2");
+		CompletableFuture<RemediationOutcome> second = writer.submitUpdate("orders", "qty", "o-2", "5", "6");
+		verify(taskScheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+		assertFalse(first.isDone());
+		CompletableFuture<RemediationOutcome> third = writer.submitUpdate("orders", "qty", "o-3", " 7 ", "8");
+
+		List<Object[]> rows = capturedUpdates();
+		assertArrayEquals(new Object[] { 2, "o-1", 1 }, rows.get(0));
+		assertArrayEquals(new Object[] { 8, "o-3", 7 }, rows.get(2));
+		verify(transactionManager).commit(any());
+		assertEquals(RemediationOutcome.APPLIED, first.join());
+		assertEquals(RemediationOutcome.NOT_MATCHED, second.join());
+		assertEquals(RemediationOutcome.APPLIED, third.join());
+	}
+
+	@Test
+	void submitUpdate_unknownColumn_failsWithoutQueueing() {
+		stubOrders();
+
+		CompletableFuture<RemediationOutcome> outcome = writer.submitUpdate("orders", "ghost", "o-1", "a", "b");
+
+		assertTrue(outcome.isCompletedExceptionally());
+		verifyNoInteractions(taskScheduler, jdbcTemplate);
+	}
+
+	@Test
+	void submitArchive_archivesActiveIdsInOneStatement() throws Exception {
+		when(jdbcTemplate.queryForList(startsWith("SELECT `id` FROM `customer` WHERE `id` IN (?, ?)"),
+				eq(String.class), any(Object[].class))).thenReturn(List.of("c-1"));
+
+		CompletableFuture<RemediationOutcome> first = writer.submitArchive("Customer", "c-1");
+		CompletableFuture<RemediationOutcome> second = writer.submitArchive("customer", "c-2");
+		ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskScheduler).schedule(flush.capture(), any(Instant.class));
+		flush.getValue().run();
+
+		verify(dynamicSQLRepository).createArchiveTable("customer", "customer_archive");
+		verify(jdbcTemplate).update("UPDATE `customer` SET `is_archived` = true WHERE `id` IN (?)", "c-1");
+		assertEquals(RemediationOutcome.APPLIED, first.join());
+		assertEquals(RemediationOutcome.NOT_MATCHED, second.join());
+	}
+
+	@Test
+	void flush_failedBatch_retriesEachActionAlone() {
+		stubOrders();
+		when(jdbcTemplate.batchUpdate(eq(UPDATE_QTY), anyList()))
+				.thenThrow(new DataIntegrityViolationException("bad row"))
+				.thenReturn(new int[] { 1 })
+				.thenThrow(new DataIntegrityViolationException("bad row"))
+				.thenReturn(new int[] { 0 });
+
+		CompletableFuture<RemediationOutcome> good = writer.submitUpdate("orders", "qty", "o-1", "1", "2");
+		CompletableFuture<RemediationOutcome> bad = writer.submitUpdate("orders", "qty", "o-2", "1", "x");
+		CompletableFuture<RemediationOutcome> stale = writer.submitUpdate("orders", "qty", "o-3", "1", "2");
+
+		assertEquals(RemediationOutcome.APPLIED, good.join());
+		assertTrue(bad.isCompletedExceptionally());
+		assertEquals(RemediationOutcome.NOT_MATCHED, stale.join());
+		verify(transactionManager).rollback(any());
+	}
+}
@@ -0,0 +1,473 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+@ExtendWith(MockitoExtension.class)
+class SchemaEvolutionCoordinatorTest {
+
+	private static final Pattern ADDED_COLUMN = Pattern.compile("ADD COLUMN `([^`]+)`");
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@InjectMocks
+	private SchemaEvolutionCoordinator coordinator;
+
+	private static TableSchema schema(String... columns) {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : columns) {
+			types.put(column, Types.VARCHAR);
+		}
+		return new TableSchema(columns.length > 0, types);
+	}
+
+	private static Map<String, String> columns(String... nameTypePairs) {
+		Map<String, String> columns = new LinkedHashMap<>();
+		for (int i = 0; i < nameTypePairs.length; i += 2) {
+			columns.put(nameTypePairs[i], nameTypePairs[i + 1]);
+		}
+		return columns;
+	}
+
+	private static BadSqlGrammarException sqlError(String message) {
+		return new BadSqlGrammarException("ALTER", "ALTER", new java.sql.SQLException(message));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void awaitPendingColumns(String table, Set<String> expected) throws InterruptedException {
+		Map<String, Object> pending = (Map<String, Object>) ReflectionTestUtils.getField(coordinator, "pending");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			// Read the queued columns under the map's lock, as writers merge into them there
+			Set<String> queued = ConcurrentHashMap.newKeySet();
+			pending.computeIfPresent(table, (k, alter) -> {
+				queued.addAll(((Map<String, String>) ReflectionTestUtils.getField(alter, "columns")).keySet());
+				return alter;
+			});
+			if (queued.equals(expected)) {
+				return;
+			}
+			Thread.sleep(10);
+		}
+		fail("Columns " + expected + " were never queued for " + table);
+	}
+
+	@Test
+	void ensureColumns_allPresent_issuesNoDdl() {
+		TableSchema current = schema("id", "name");
+		when(tableSchemaCache.get("customer")).thenReturn(current);
+
+		assertSame(current, coordinator.ensureColumns("Customer", columns("name", "VARCHAR(255)")));
+
+		verifyNoInteractions(jdbcTemplate);
+		verify(tableSchemaCache, never()).refresh(anyString());
+	}
+
+	@Test
+	void ensureColumns_missing_addsThemInOneInstantAlter() {
+		TableSchema after = schema("id", "name", "age", "email");
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id", "name"));
+		when(tableSchemaCache.refresh("customer")).thenReturn(schema("id", "name"), after);
+
+		TableSchema result = coordinator.ensureColumns("customer",
+				columns("name", "VARCHAR(255)", "age", "BIGINT", "email", "VARCHAR(255)"));
+
+		assertSame(after, result);
+		verify(jdbcTemplate).execute(
+				"ALTER TABLE `customer` ADD COLUMN `age` BIGINT, ADD COLUMN `email` VARCHAR(255), ALGORITHM=INSTANT");
+		verifyNoMoreInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void ensureColumns_instantRejected_retriesWithDefaultAlgorithm() {
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id"));
+		when(tableSchemaCache.refresh("customer")).thenReturn(schema("id"), schema("id", "age"));
+		doThrow(sqlError("ALGORITHM=INSTANT is not supported")).when(jdbcTemplate)
+				.execute("ALTER TABLE `customer` ADD COLUMN `age` BIGINT, ALGORITHM=INSTANT");
+
+		coordinator.ensureColumns("customer", columns("age", "BIGINT"));
+
+		verify(jdbcTemplate).execute("ALTER TABLE `customer` ADD COLUMN `age` BIGINT");
+	}
+
+	@Test
+	void ensureColumns_instantDisabled_usesDefaultAlgorithm() {
+		ReflectionTestUtils.setField(coordinator, "instantDdl", false);
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id"));
+		when(tableSchemaCache.refresh("customer")).thenReturn(schema("id"), schema("id", "age"));
+
+		coordinator.ensureColumns("customer", columns("age", "BIGINT"));
+
+		verify(jdbcTemplate).execute("ALTER TABLE `customer` ADD COLUMN `age` BIGINT");
+		verifyNoMoreInteractions(jdbcTemplate);
+	}
+
+	@Test
+	void ensureColumns_alterFailsButColumnsAddedElsewhere_succeeds() {
+		TableSchema added = schema("id", "age");
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id"));
+		when(tableSchemaCache.refresh("customer")).thenReturn(schema("id"), added);
+		doThrow(sqlError("Duplicate column name 'age'")).when(jdbcTemplate).execute(anyString());
+
+		assertSame(added, coordinator.ensureColumns("customer", columns("age", "BIGINT")));
+	}
+
+	@Test
+	void ensureColumns_alterFailsAndColumnsStillMissing_throws() {
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id"));
+		when(tableSchemaCache.refresh("customer")).thenReturn(schema("id"));
+		doThrow(sqlError("Lock wait timeout exceeded")).when(jdbcTemplate).execute(anyString());
+
+		assertThrows(BadSqlGrammarException.class,
+				() -> coordinator.ensureColumns("customer", columns("age", "BIGINT")));
+	}
+
+	@Test
+	void ensureColumns_concurrentWriters_shareOneAlter() throws Exception {
+		// Live table backed by a set the fake DDL writes into
+		Set<String> live = ConcurrentHashMap.newKeySet();
+		live.add("id");
+		when(tableSchemaCache.get("customer")).thenAnswer(inv -> schema(live.toArray(String[]::new)));
+		when(tableSchemaCache.refresh("customer")).thenAnswer(inv -> schema(live.toArray(String[]::new)));
+
+		List<String> alters = new CopyOnWriteArrayList<>();
+		CountDownLatch firstAlterStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirstAlter = new CountDownLatch(1);
+		doAnswer(inv -> {
+			String sql = inv.getArgument(0);
+			alters.add(sql);
+			if (alters.size() == 1) {
+				firstAlterStarted.countDown();
+				releaseFirstAlter.await(5, TimeUnit.SECONDS);
+			}
+			Matcher m = ADDED_COLUMN.matcher(sql);
+			while (m.find()) {
+				live.add(m.group(1));
+			}
+			return null;
+		}).when(jdbcTemplate).execute(anyString());
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			Future<TableSchema> first = pool.submit(() -> coordinator.ensureColumns("customer", columns("a", "BIGINT")));
+			assertTrue(firstAlterStarted.await(5, TimeUnit.SECONDS));
+
+			// While the first ALTER runs, three writers need other columns on the same table
+			List<Future<TableSchema>> waiting = List.of(
+					pool.submit(() -> coordinator.ensureColumns("customer", columns("b", "BIGINT"))),
+					pool.submit(() -> coordinator.ensureColumns("customer", columns("c", "BIGINT", "b", "BIGINT"))),
+					pool.submit(() -> coordinator.ensureColumns("customer", columns("d", "DATE"))));
+			awaitPendingColumns("customer", Set.of("b", "c", "d"));
+			releaseFirstAlter.countDown();
+
+			assertTrue(first.get(5, TimeUnit.SECONDS).getColumns().contains("a"));
+			for (Future<TableSchema> f : waiting) {
+				assertTrue(f.get(5, TimeUnit.SECONDS).getColumns().containsAll(Set.of("b", "c", "d")));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertEquals(2, alters.size(), () -> "Expected the waiting writers to share one ALTER: " + alters);
+		assertTrue(alters.get(1).contains("`b`") && alters.get(1).contains("`c`") && alters.get(1).contains("`d`"));
+	}
+
+	@Test
+	void ensureUniqueKey_missing_addsItOnceOnline() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("workflow_tracker_id")))
+				.thenReturn(0);
+
+		coordinator.ensureUniqueKey("Customer", "workflow_tracker_id");
+		coordinator.ensureUniqueKey("customer", "workflow_tracker_id");
+
+		verify(jdbcTemplate, times(1)).execute("ALTER TABLE `customer` ADD UNIQUE KEY `uk_workflow_tracker_id`"
+				+ " (`workflow_tracker_id`), ALGORITHM=INPLACE, LOCK=NONE");
+		verify(jdbcTemplate, times(1)).queryForObject(anyString(), eq(Integer.class), any(), any());
+	}
+
+	@Test
+	void ensureUniqueKey_present_issuesNoDdl() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("workflow_tracker_id")))
+				.thenReturn(1);
+
+		coordinator.ensureUniqueKey("customer", "workflow_tracker_id");
+
+		verify(jdbcTemplate, never()).execute(anyString());
+	}
+
+	@Test
+	void ensureUniqueKey_existingDuplicates_reportsAndRetriesAfterInterval() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("workflow_tracker_id")))
+				.thenReturn(0);
+		when(jdbcTemplate.queryForObject(contains("HAVING COUNT(*) > 1"), eq(Long.class))).thenReturn(3L);
+		doThrow(sqlError("Duplicate entry 'wf-1' for key 'uk_workflow_tracker_id'")).when(jdbcTemplate)
+				.execute(anyString());
+
+		coordinator.requestUniqueKey("customer", "workflow_tracker_id");
+		coordinator.buildRequestedIndexes();
+		coordinator.buildRequestedIndexes();
+		verify(jdbcTemplate, times(1)).execute(anyString());
+
+		// Not marked as checked: once the interval has passed the key is tried again
+		((Map<?, ?>) ReflectionTestUtils.getField(coordinator, "uniqueKeyRetryAfter")).clear();
+		coordinator.buildRequestedIndexes();
+		verify(jdbcTemplate, times(2)).execute(anyString());
+	}
+
+	@Test
+	void ensureUniqueKey_transientFailure_isNotMarkedChecked() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("workflow_tracker_id")))
+				.thenReturn(0);
+		when(jdbcTemplate.queryForObject(contains("HAVING COUNT(*) > 1"), eq(Long.class))).thenReturn(0L);
+		doThrow(sqlError("Lock wait timeout exceeded")).doNothing().when(jdbcTemplate).execute(anyString());
+
+		assertFalse(coordinator.ensureUniqueKey("customer", "workflow_tracker_id"));
+		assertTrue(coordinator.ensureUniqueKey("customer", "workflow_tracker_id"));
+		assertTrue(coordinator.ensureUniqueKey("customer", "workflow_tracker_id"));
+
+		verify(jdbcTemplate, times(2)).execute(anyString());
+	}
+
+	@Test
+	void requestUniqueKey_addsItFromTheBackgroundJob() {
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("workflow_tracker_id")))
+				.thenReturn(0);
+
+		coordinator.requestUniqueKey("Customer", "workflow_tracker_id");
+		verifyNoInteractions(jdbcTemplate);
+
+		coordinator.buildRequestedIndexes();
+		coordinator.buildRequestedIndexes();
+
+		verify(jdbcTemplate, times(1)).execute(startsWith("ALTER TABLE `customer` ADD UNIQUE KEY"));
+	}
+
+	private static final List<String> ORG_INDEX = List.of("organization_id", "is_archived", "updated_date");
+
+	@Test
+	void ensureIndex_missing_addsItOnlineOnce() {
+		when(tableSchemaCache.get("customer"))
+				.thenReturn(schema("id", "organization_id", "is_archived", "updated_date"));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("idx_org")))
+				.thenReturn(0);
+
+		assertTrue(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+		assertTrue(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+
+		verify(jdbcTemplate, times(1)).execute("ALTER TABLE `customer` ADD INDEX `idx_org`"
+				+ " (`organization_id`, `is_archived`, `updated_date`), ALGORITHM=INPLACE, LOCK=NONE");
+	}
+
+	@Test
+	void ensureIndex_columnsNotYetAdded_waitsForThem() {
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id", "is_archived", "updated_date"),
+				schema("id", "organization_id", "is_archived", "updated_date"));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("idx_org")))
+				.thenReturn(1);
+
+		assertFalse(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+		verifyNoInteractions(jdbcTemplate);
+
+		assertTrue(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+		verify(jdbcTemplate, never()).execute(anyString());
+	}
+
+	@Test
+	void ensureIndex_ddlFails_retriesOnNextCall() {
+		when(tableSchemaCache.get("customer"))
+				.thenReturn(schema("id", "organization_id", "is_archived", "updated_date"));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("idx_org")))
+				.thenReturn(0);
+		doThrow(sqlError("Lock wait timeout exceeded")).doNothing().when(jdbcTemplate).execute(anyString());
+
+		assertFalse(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+		assertTrue(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+
+		verify(jdbcTemplate, times(2)).execute(anyString());
+	}
+	@Test
+	void ensureIndex_builtConcurrentlyElsewhere_countsAsInPlace() {
+		when(tableSchemaCache.get("customer"))
+				.thenReturn(schema("id", "organization_id", "is_archived", "updated_date"));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("idx_org")))
+				.thenReturn(0, 1);
+		doThrow(sqlError("Duplicate key name 'idx_org'")).when(jdbcTemplate).execute(anyString());
+
+		assertTrue(coordinator.ensureIndex("customer", "idx_org", ORG_INDEX));
+	}
+
+	@Test
+	void requestIndex_buildsInBackgroundOnceColumnsExist() {
+		when(tableSchemaCache.get("customer")).thenReturn(schema("id", "is_archived", "updated_date"),
+				schema("id", "organization_id", "is_archived", "updated_date"));
+		when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("customer"), eq("idx_org")))
+				.thenReturn(0);
+
+		coordinator.requestIndex("Customer", "idx_org", ORG_INDEX);
+		coordinator.requestIndex("customer", "idx_org", ORG_INDEX);
+		verifyNoInteractions(jdbcTemplate, tableSchemaCache);
+
+		coordinator.buildRequestedIndexes();
+		verify(jdbcTemplate, never()).execute(anyString());
+
+		coordinator.buildRequestedIndexes();
+		coordinator.buildRequestedIndexes();
+		verify(jdbcTemplate, times(1)).execute(startsWith("ALTER TABLE `customer` ADD INDEX `idx_org`"));
+
+		coordinator.requestIndex("customer", "idx_org", ORG_INDEX);
+		coordinator.buildRequestedIndexes();
+		verify(tableSchemaCache, times(2)).get("customer");
+	}
+
+	@Test
+	void widenColumns_modifiesOnlyColumnsThatDoNotHoldTheRequestedType() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("qty", Types.INTEGER);
+		types.put("note", Types.VARCHAR);
+		types.put("code", Types.VARCHAR);
+		Map<String, ColumnType> sqlTypes = new LinkedHashMap<>();
+		sqlTypes.put("qty", ColumnType.INT);
+		sqlTypes.put("note", ColumnType.varchar(255));
+		sqlTypes.put("code", ColumnType.varchar(16));
+		TableSchema before = new TableSchema(true, types, sqlTypes);
+		TableSchema after = schema("qty", "note", "code");
+		when(tableSchemaCache.refresh("orders")).thenReturn(before, after);
+
+		Map<String, ColumnType> requested = new LinkedHashMap<>();
+		requested.put("qty", ColumnType.decimal(1, 2));
+		requested.put("note", ColumnType.varchar(40));
+		requested.put("code", ColumnType.BIGINT);
+
+		assertSame(after, coordinator.widenColumns("Orders", requested));
+
+		verify(jdbcTemplate).execute("ALTER TABLE `orders` MODIFY COLUMN `qty` DECIMAL(12,2) NULL,"
+				+ " MODIFY COLUMN `code` VARCHAR(32) NULL, ALGORITHM=INPLACE, LOCK=NONE");
+	}
+
+	@Test
+	void widenColumns_typeChangeNotInPlace_fallsBackToCopy() {
+		TableSchema before = new TableSchema(true, Map.of("qty", Types.INTEGER), Map.of("qty", ColumnType.INT));
+		when(tableSchemaCache.refresh("orders")).thenReturn(before, schema("qty"));
+		doThrow(sqlError("ALGORITHM=INPLACE is not supported. Reason: Cannot change column type INPLACE"))
+				.doNothing().when(jdbcTemplate).execute(anyString());
+
+		coordinator.widenColumns("orders", Map.of("qty", ColumnType.BIGINT));
+
+		verify(jdbcTemplate).execute("ALTER TABLE `orders` MODIFY COLUMN `qty` BIGINT NULL");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void deferValues_upsertsTextPerRowAndColumn() {
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put("Zip", " 012345 ");
+
+		coordinator.deferValues("Orders", "workflow_tracker_id", "t-1", values);
+
+		verify(jdbcTemplate).execute(contains("CREATE TABLE IF NOT EXISTS `dynamic_pending_value`"));
+		ArgumentCaptor<List<Object[]>> args = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(contains("ON DUPLICATE KEY UPDATE `value` = VALUES(`value`)"),
+				args.capture());
+		assertArrayEquals(new Object[] { "orders", "zip", "workflow_tracker_id", "t-1", "012345" },
+				args.getValue().get(0));
+	}
+
+	@Test
+	void applyDeferredValues_widensToFitEveryValueThenCopiesThemIn() throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.getString(1)).thenReturn("orders", "orders");
+		when(rs.getString(2)).thenReturn("zip", "zip");
+		when(rs.getString(3)).thenReturn("workflow_tracker_id", "workflow_tracker_id");
+		when(rs.getString(4)).thenReturn("012345", "1.5");
+		doAnswer(inv -> {
+			RowCallbackHandler handler = inv.getArgument(1);
+			handler.processRow(rs);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query(contains("FROM `dynamic_pending_value`"), any(RowCallbackHandler.class));
+		TableSchema before = new TableSchema(true, Map.of("zip", Types.INTEGER, "workflow_tracker_id", Types.VARCHAR),
+				Map.of("zip", ColumnType.INT));
+		when(tableSchemaCache.refresh("orders")).thenReturn(before, schema("zip", "workflow_tracker_id"));
+		when(jdbcTemplate.update(startsWith("UPDATE"), any(Object[].class))).thenReturn(1);
+
+		coordinator.applyDeferredValues();
+
+		verify(jdbcTemplate).execute(
+				"ALTER TABLE `orders` MODIFY COLUMN `zip` VARCHAR(16) NULL, ALGORITHM=INPLACE, LOCK=NONE");
+		verify(jdbcTemplate).update("UPDATE `dynamic_pending_value` p JOIN `orders` d"
+				+ " ON d.`workflow_tracker_id` = p.`row_key` SET d.`zip` = p.`value` WHERE p.`table_name` = ?"
+				+ " AND p.`column_name` = ? AND p.`key_column` = ?", "orders", "zip", "workflow_tracker_id");
+		verify(jdbcTemplate).update(startsWith("DELETE p FROM `dynamic_pending_value` p JOIN `orders` d"),
+				eq("orders"), eq("zip"), eq("workflow_tracker_id"));
+	}
+
+	@Test
+	void applyDeferredValues_widenFails_keepsValuesForNextRun() {
+		doAnswer(inv -> {
+			ResultSet rs = mock(ResultSet.class);
+			when(rs.getString(1)).thenReturn("orders");
+			when(rs.getString(2)).thenReturn("zip");
+			when(rs.getString(3)).thenReturn("id");
+			when(rs.getString(4)).thenReturn("012345");
+			((RowCallbackHandler) inv.getArgument(1)).processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+		when(tableSchemaCache.refresh("orders"))
+				.thenReturn(new TableSchema(true, Map.of("zip", Types.INTEGER), Map.of("zip", ColumnType.INT)));
+		doNothing().doThrow(sqlError("Lock wait timeout exceeded")).when(jdbcTemplate).execute(anyString());
+
+		assertDoesNotThrow(() -> coordinator.applyDeferredValues());
+
+		verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+	}
+
+	@Test
+	void widenColumns_alreadyWidened_doesNothing() {
+		Map<String, ColumnType> sqlTypes = Map.of("qty", ColumnType.BIGINT);
+		TableSchema current = new TableSchema(true, Map.of("qty", Types.BIGINT), sqlTypes);
+		when(tableSchemaCache.refresh("orders")).thenReturn(current);
+
+		assertSame(current, coordinator.widenColumns("orders", Map.of("qty", ColumnType.INT)));
+
+		verify(jdbcTemplate, never()).execute(anyString());
+	}
+
+}
@@ -0,0 +1,127 @@
+package sg.edu.nus.iss.edgp.workflow.management.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+
+@ExtendWith(MockitoExtension.class)
+class TableSchemaCacheTest {
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+	@Mock
+	private DataSource dataSource;
+	@Mock
+	private Connection connection;
+	@Mock
+	private DatabaseMetaData metaData;
+
+	@InjectMocks
+	private TableSchemaCache cache;
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.getCatalog()).thenReturn("masterdata");
+	}
+
+	/** Columns as {table, column, type} rows, the shape DatabaseMetaData.getColumns returns. */
+	private void stubColumns(String table, Object[]... rows) throws SQLException {
+		ResultSet rs = mock(ResultSet.class);
+		int[] cursor = { -1 };
+		lenient().when(rs.next()).thenAnswer(inv -> ++cursor[0] < rows.length);
+		lenient().when(rs.getString("TABLE_NAME")).thenAnswer(inv -> rows[cursor[0]][0]);
+		lenient().when(rs.getString("COLUMN_NAME")).thenAnswer(inv -> rows[cursor[0]][1]);
+		lenient().when(rs.getInt("DATA_TYPE")).thenAnswer(inv -> rows[cursor[0]][2]);
+		when(metaData.getColumns("masterdata", null, table, null)).thenReturn(rs);
+	}
+
+	@Test
+	void get_loadsColumnsOnceAndServesFromCache() throws SQLException {
+		stubColumns("orders", new Object[] { "orders", "ID", Types.VARCHAR },
+				new Object[] { "orders", "Amount", Types.DECIMAL });
+
+		TableSchema first = cache.get("ORDERS");
+		TableSchema second = cache.get("orders");
+
+		assertTrue(first.isExists());
+		assertEquals(List.of("id", "amount"), List.copyOf(first.getColumns()));
+		assertEquals(Types.DECIMAL, first.getColumnTypes().get("amount"));
+		assertSame(first, second);
+		verify(metaData, times(1)).getColumns(any(), any(), anyString(), any());
+	}
+
+	@Test
+	void get_ignoresTablesMatchedByTheUnderscoreWildcard() throws SQLException {
+		stubColumns("my_table", new Object[] { "myxtable", "other", Types.VARCHAR },
+				new Object[] { "my_table", "id", Types.VARCHAR });
+
+		assertEquals(List.of("id"), List.copyOf(cache.get("my_table").getColumns()));
+	}
+
+	@Test
+	void get_missingTable_isReportedButNotCached() throws SQLException {
+		stubColumns("ghost");
+
+		assertFalse(cache.get("ghost").isExists());
+		assertFalse(cache.get("ghost").isExists());
+		verify(metaData, times(2)).getColumns(any(), any(), anyString(), any());
+	}
+
+	@Test
+	void refresh_droppedTable_leavesTheCache() throws SQLException {
+		stubColumns("orders", new Object[] { "orders", "id", Types.VARCHAR });
+		cache.get("orders");
+		stubColumns("orders");
+
+		assertFalse(cache.refresh("orders").isExists());
+		cache.refreshAll();
+		verify(metaData, times(2)).getColumns(any(), any(), anyString(), any());
+	}
+
+	@Test
+	void refreshAndInvalidate_reloadTheTable() throws SQLException {
+		stubColumns("orders", new Object[] { "orders", "id", Types.VARCHAR });
+		cache.get("orders");
+
+		stubColumns("orders", new Object[] { "orders", "id", Types.VARCHAR },
+				new Object[] { "orders", "note", Types.VARCHAR });
+		assertTrue(cache.refresh("orders").getColumns().contains("note"));
+
+		cache.invalidate("orders");
+		stubColumns("orders", new Object[] { "orders", "id", Types.VARCHAR });
+		cache.get("orders");
+		stubColumns("orders", new Object[] { "orders", "id", Types.VARCHAR });
+		cache.refreshAll();
+		verify(metaData, times(4)).getColumns(any(), any(), anyString(), any());
+	}
+
+	@Test
+	void refresh_failure_dropsEntryAndThrows() throws SQLException {
+		when(metaData.getColumns(any(), any(), anyString(), any())).thenThrow(new SQLException("down"));
+
+		assertThrows(IllegalStateException.class, () -> cache.get("orders"));
+		assertDoesNotThrow(() -> cache.refreshAll());
+	}
+}
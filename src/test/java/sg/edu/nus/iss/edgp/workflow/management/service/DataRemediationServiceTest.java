@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,15 +14,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import sg.edu.nus.iss.edgp.workflow.management.enums.RemediationOutcome;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
-import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.RemediationBatchWriter;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DataRemediationService;
 
 @ExtendWith(MockitoExtension.class)
 class DataRemediationServiceTest {
 
     @Mock
-    private DynamicSQLRepository dynamicSQLRepository;
+    private RemediationBatchWriter remediationBatchWriter;
+
+    @Mock
+    private IDomainDataCountService domainDataCountService;
 
     @InjectMocks
     private DataRemediationService service;
@@ -30,14 +35,14 @@ class DataRemediationServiceTest {
     @DisplayName("Null payload -> no-op")
     void updateDataRemediationResponse_null_noop() {
         assertDoesNotThrow(() -> service.updateDataRemediationResponse(null));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     @Test
     @DisplayName("Empty payload -> no-op")
     void updateDataRemediationResponse_empty_noop() {
         assertDoesNotThrow(() -> service.updateDataRemediationResponse(Map.of()));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     @Test
@@ -47,7 +52,7 @@ class DataRemediationServiceTest {
         raw.put("mode", "MANUAL"); // ignored by implementation
         // no "data"
         assertDoesNotThrow(() -> service.updateDataRemediationResponse(raw));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     @Test
@@ -57,13 +62,13 @@ class DataRemediationServiceTest {
         raw.put("mode", "AUTO"); // ignored by implementation
         raw.put("data", "string-instead-of-map");
         assertDoesNotThrow(() -> service.updateDataRemediationResponse(raw));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     // ----------- delete action -----------
 
     @Test
-    @DisplayName("delete: happy path -> calls insertArchiveData")
+    @DisplayName("delete: happy path -> queues archive and counts it once applied")
     void updateDataRemediationResponse_delete_happy() throws SQLException {
         Map<String, Object> data = new HashMap<>();
         data.put("action", "delete");
@@ -75,11 +80,13 @@ class DataRemediationServiceTest {
         raw.put("mode", "ANYTHING"); // ignored
         raw.put("data", data);
 
-        assertDoesNotThrow(() -> service.updateDataRemediationResponse(raw));
+        when(remediationBatchWriter.submitArchive("customer", "ID-001"))
+                .thenReturn(CompletableFuture.completedFuture(RemediationOutcome.APPLIED));
 
-        verify(dynamicSQLRepository, times(1))
-                .insertArchiveData("customer", "ID-001", "archived by remediation");
-        verifyNoMoreInteractions(dynamicSQLRepository);
+        assertEquals(RemediationOutcome.APPLIED, service.updateDataRemediationResponse(raw).join());
+
+        verify(domainDataCountService).recordArchived("customer");
+        verifyNoMoreInteractions(remediationBatchWriter);
     }
 
     @Test
@@ -99,13 +106,13 @@ class DataRemediationServiceTest {
                 () -> service.updateDataRemediationResponse(raw)
         );
         assertTrue(ex.getMessage().contains("An error occurred while updating data remediation response"));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     // ----------- update action -----------
 
     @Test
-    @DisplayName("update: happy path -> calls updateColumnValue")
+    @DisplayName("update: happy path -> queues update")
     void updateDataRemediationResponse_update_happy() throws SQLException {
         Map<String, Object> data = new HashMap<>();
         data.put("action", "update");
@@ -120,11 +127,13 @@ class DataRemediationServiceTest {
         raw.put("mode", "auto"); // ignored
         raw.put("data", data);
 
-        assertDoesNotThrow(() -> service.updateDataRemediationResponse(raw));
+        when(remediationBatchWriter.submitUpdate("orders", "status", "OID-9", "PENDING", "APPROVED"))
+                .thenReturn(CompletableFuture.completedFuture(RemediationOutcome.NOT_MATCHED));
 
-        verify(dynamicSQLRepository, times(1))
-                .updateColumnValue("orders", "status", "OID-9", "PENDING", "APPROVED");
-        verifyNoMoreInteractions(dynamicSQLRepository);
+        assertEquals(RemediationOutcome.NOT_MATCHED, service.updateDataRemediationResponse(raw).join());
+
+        verifyNoMoreInteractions(remediationBatchWriter);
+        verifyNoInteractions(domainDataCountService);
     }
 
     @Test
@@ -147,11 +156,11 @@ class DataRemediationServiceTest {
                 () -> service.updateDataRemediationResponse(raw)
         );
         assertTrue(ex.getMessage().contains("An error occurred while updating data remediation response"));
-        verifyNoInteractions(dynamicSQLRepository);
+        verifyNoInteractions(remediationBatchWriter);
     }
 
     @Test
-    @DisplayName("Repository throws -> wrapped as WorkflowServiceException")
+    @DisplayName("Batch writer throws -> wrapped as WorkflowServiceException")
     void updateDataRemediationResponse_repoThrows_wraps() throws SQLException {
         Map<String, Object> data = new HashMap<>();
         data.put("action", "delete");
@@ -163,9 +172,7 @@ class DataRemediationServiceTest {
         raw.put("mode", "AUTO"); // ignored
         raw.put("data", data);
 
-        doThrow(new RuntimeException("DB down"))
-                .when(dynamicSQLRepository)
-                .insertArchiveData("customer", "ID-001", "archive");
+        when(remediationBatchWriter.submitArchive("customer", "ID-001")).thenThrow(new RuntimeException("DB down"));
 
         WorkflowServiceException ex = assertThrows(
                 WorkflowServiceException.class,
@@ -173,4 +180,22 @@ class DataRemediationServiceTest {
         );
         assertTrue(ex.getMessage().contains("An error occurred while updating data remediation response"));
     }
+
+    @Test
+    @DisplayName("delete: archive fails in its batch -> future fails, nothing counted")
+    void updateDataRemediationResponse_delete_batchFails() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("action", "delete");
+        data.put("domain_name", "customer");
+        data.put("id", "ID-001");
+
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("data", data);
+
+        when(remediationBatchWriter.submitArchive("customer", "ID-001"))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("lock wait timeout")));
+
+        assertTrue(service.updateDataRemediationResponse(raw).isCompletedExceptionally());
+        verifyNoInteractions(domainDataCountService);
+    }
 }
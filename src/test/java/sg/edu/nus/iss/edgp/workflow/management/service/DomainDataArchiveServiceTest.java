@@ -0,0 +1,162 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.ColumnType;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.DomainDataArchiveService;
+
+@ExtendWith(MockitoExtension.class)
+class DomainDataArchiveServiceTest {
+
+	private static final String HAS_ARCHIVED = "SELECT `id` FROM `orders` WHERE `is_archived` = true LIMIT 1";
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+	@Mock
+	private SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+	@Mock
+	private DynamicSQLRepository dynamicSQLRepository;
+
+	private DomainDataArchiveService archiver;
+
+	@BeforeEach
+	void setUp() {
+		archiver = new DomainDataArchiveService(jdbcTemplate, transactionManager, tableSchemaCache,
+				schemaEvolutionCoordinator, dynamicSQLRepository);
+		ReflectionTestUtils.setField(archiver, "batchSize", 2);
+		ReflectionTestUtils.setField(archiver, "batchPause", Duration.ZERO);
+	}
+
+	private void stubDomainColumns(String... namesAndTypes) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		doAnswer(inv -> {
+			RowCallbackHandler handler = inv.getArgument(1);
+			for (int i = 0; i < namesAndTypes.length; i += 2) {
+				when(rs.getString(1)).thenReturn(namesAndTypes[i]);
+				when(rs.getString(2)).thenReturn(namesAndTypes[i + 1]);
+				handler.processRow(rs);
+			}
+			return null;
+		}).when(jdbcTemplate).query(contains("COLUMN_TYPE"), any(RowCallbackHandler.class), eq("orders"));
+	}
+
+	private static TableSchema archiveSchema(Map<String, ColumnType> sqlTypes, String... columns) {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : columns) {
+			types.put(column, Types.VARCHAR);
+		}
+		return new TableSchema(true, types, sqlTypes);
+	}
+
+	@Test
+	void archiveTable_movesBoundedBatchesUntilOneComesBackShort() throws Exception {
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of(Map.of("id", "a")));
+		when(tableSchemaCache.refresh("orders_archive")).thenReturn(
+				archiveSchema(Map.of("region", ColumnType.varchar(16)), "id", "is_archived", "region"));
+		stubDomainColumns("id", "varchar(36)", "is_archived", "tinyint(1)", "region", "varchar(64)", "notes", "text");
+		when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(String.class), eq(2)))
+				.thenReturn(List.of("a", "b"), List.of("c"));
+
+		assertEquals(3, archiver.archiveTable("Orders"));
+
+		verify(schemaEvolutionCoordinator).ensureIndex("orders", "idx_archived", List.of("is_archived"));
+		verify(schemaEvolutionCoordinator).ensureColumns("orders_archive", Map.of("notes", "text"));
+		verify(schemaEvolutionCoordinator).widenColumns("orders_archive", Map.of("region", ColumnType.varchar(64)));
+		String columns = "`id`, `is_archived`, `region`, `notes`";
+		verify(jdbcTemplate).update("REPLACE INTO `orders_archive` (" + columns + ") SELECT " + columns
+				+ " FROM `orders` WHERE `id` IN (?, ?)", "a", "b");
+		verify(jdbcTemplate).update("DELETE FROM `orders` WHERE `id` IN (?, ?)", "a", "b");
+		verify(jdbcTemplate).update("DELETE FROM `orders` WHERE `id` IN (?)", "c");
+		verify(transactionManager, times(2)).commit(any());
+		verify(dynamicSQLRepository, never()).createArchiveTable(anyString(), anyString());
+	}
+
+	@Test
+	void archiveTable_stopsAfterMaxBatchesPerRun() throws Exception {
+		ReflectionTestUtils.setField(archiver, "maxBatchesPerRun", 1);
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of(Map.of("id", "a")));
+		when(tableSchemaCache.refresh("orders_archive")).thenReturn(archiveSchema(Map.of(), "id", "is_archived"));
+		stubDomainColumns("id", "varchar(36)", "is_archived", "tinyint(1)");
+		when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(String.class), eq(2))).thenReturn(List.of("a", "b"));
+
+		assertEquals(2, archiver.archiveTable("orders"));
+		verify(jdbcTemplate, times(1)).queryForList(contains("FOR UPDATE"), eq(String.class), eq(2));
+	}
+
+	@Test
+	void archiveTable_withoutArchivedRows_leavesArchiveAlone() {
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of());
+
+		assertEquals(0, archiver.archiveTable("orders"));
+		verifyNoInteractions(tableSchemaCache, dynamicSQLRepository);
+	}
+
+	@Test
+	void archiveTable_replacesEmptyArchiveOfOldLayout() throws Exception {
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of(Map.of("id", "a")));
+		when(tableSchemaCache.refresh("orders_archive")).thenReturn(
+				archiveSchema(Map.of(), "id", "orders_id", "message", "archived_at"),
+				new TableSchema(false, Map.of()), archiveSchema(Map.of(), "id", "is_archived"));
+		when(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `orders_archive`", Long.class)).thenReturn(0L);
+		stubDomainColumns("id", "varchar(36)", "is_archived", "tinyint(1)");
+		when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(String.class), eq(2))).thenReturn(List.of("a"));
+
+		assertEquals(1, archiver.archiveTable("orders"));
+
+		verify(jdbcTemplate).execute("DROP TABLE `orders_archive`");
+		verify(dynamicSQLRepository).createArchiveTable("orders", "orders_archive");
+	}
+
+	@Test
+	void archiveTable_keepsArchiveOfOldLayoutThatHoldsRows() {
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of(Map.of("id", "a")));
+		when(tableSchemaCache.refresh("orders_archive"))
+				.thenReturn(archiveSchema(Map.of(), "id", "orders_id", "message", "archived_at"));
+		when(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `orders_archive`", Long.class)).thenReturn(4L);
+
+		assertEquals(0, archiver.archiveTable("orders"));
+
+		verify(jdbcTemplate, never()).execute(anyString());
+		verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+	}
+
+	@Test
+	void archiveAll_carriesOnPastAFailingTable() {
+		when(jdbcTemplate.queryForList(contains("information_schema.columns"), eq(String.class)))
+				.thenReturn(List.of("broken", "orders"));
+		when(jdbcTemplate.queryForList("SELECT `id` FROM `broken` WHERE `is_archived` = true LIMIT 1"))
+				.thenThrow(new IllegalStateException("boom"));
+		when(jdbcTemplate.queryForList(HAS_ARCHIVED)).thenReturn(List.of());
+
+		archiver.archiveAll();
+
+		verify(jdbcTemplate).queryForList(HAS_ARCHIVED);
+	}
+}
@@ -0,0 +1,107 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataRepository;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.DomainDataCountService;
+
+@ExtendWith(MockitoExtension.class)
+class DomainDataCountServiceTest {
+
+	@Mock
+	private DomainDataRepository domainDataRepository;
+
+	private DomainDataCountService countService;
+
+	@BeforeEach
+	void setUp() {
+		countService = new DomainDataCountService(domainDataRepository);
+	}
+
+	@Test
+	void exactCount_isCachedAndKeptCurrentByInserts() {
+		when(domainDataRepository.countDomainData("orders", "org-1", "f-1", null)).thenReturn(10L);
+
+		assertEquals(10, countService.countDomainData("Orders", "org-1", "f-1", null, true));
+		countService.recordInserted("orders", "org-1", "f-1");
+		countService.recordInserted("orders", "org-1", "f-2");
+		countService.recordInserted("orders", "org-2", "f-1");
+
+		assertEquals(11, countService.countDomainData("orders", "org-1", "f-1", null, true));
+		verify(domainDataRepository, times(1)).countDomainData(anyString(), anyString(), anyString(), any());
+	}
+
+	@Test
+	void insertWithFile_alsoCountsTowardsOrganizationTotal() {
+		when(domainDataRepository.countDomainData("orders", "org-1", null, Boolean.FALSE)).thenReturn(3L);
+		countService.countDomainData("orders", "org-1", null, Boolean.FALSE, true);
+
+		countService.recordInserted("orders", "org-1", "f-9");
+
+		assertEquals(4, countService.countDomainData("orders", "org-1", null, Boolean.FALSE, true));
+	}
+
+	@Test
+	void exactCount_olderThanTtl_isRecounted() {
+		ReflectionTestUtils.setField(countService, "ttl", Duration.ZERO);
+		when(domainDataRepository.countDomainData("orders", "org-1", null, null)).thenReturn(5L, 7L);
+
+		assertEquals(5, countService.countDomainData("orders", "org-1", null, null, true));
+		assertEquals(7, countService.countDomainData("orders", "org-1", null, null, true));
+		// Approximate totals accept the stale count
+		assertEquals(7, countService.countDomainData("orders", "org-1", null, null, false));
+	}
+
+	@Test
+	void approximateCount_largeTableWithoutCache_isUnknown() {
+		when(domainDataRepository.estimateTableRows("orders")).thenReturn(5_000_000L);
+
+		// The table estimate covers every organization, so it is not reported for one
+		assertEquals(IDomainDataCountService.UNKNOWN_TOTAL,
+				countService.countDomainData("orders", "org-1", null, null, false));
+		verify(domainDataRepository, never()).countDomainData(any(), any(), any(), any());
+	}
+
+	@Test
+	void approximateCount_cachedCountOlderThanMaxAge_isNotUsed() {
+		ReflectionTestUtils.setField(countService, "approximateMaxAge", Duration.ZERO);
+		when(domainDataRepository.countDomainData("orders", "org-1", null, null)).thenReturn(5L, 7L);
+		when(domainDataRepository.estimateTableRows("orders")).thenReturn(200L);
+
+		assertEquals(5, countService.countDomainData("orders", "org-1", null, null, true));
+		assertEquals(7, countService.countDomainData("orders", "org-1", null, null, false));
+	}
+
+	@Test
+	void approximateCount_smallTable_countsExactly() {
+		when(domainDataRepository.estimateTableRows("orders")).thenReturn(200L);
+		when(domainDataRepository.countDomainData("orders", "org-1", null, null)).thenReturn(42L);
+
+		assertEquals(42, countService.countDomainData("orders", "org-1", null, null, false));
+	}
+
+	@Test
+	void archive_dropsOnlyCountsThatExcludeArchivedRows() {
+		when(domainDataRepository.countDomainData("orders", "org-1", null, Boolean.FALSE)).thenReturn(10L, 9L);
+		when(domainDataRepository.countDomainData("orders", "org-1", null, Boolean.TRUE)).thenReturn(10L);
+		countService.countDomainData("orders", "org-1", null, Boolean.FALSE, true);
+		countService.countDomainData("orders", "org-1", null, Boolean.TRUE, true);
+
+		countService.recordArchived("Orders");
+
+		assertEquals(9, countService.countDomainData("orders", "org-1", null, Boolean.FALSE, true));
+		assertEquals(10, countService.countDomainData("orders", "org-1", null, Boolean.TRUE, true));
+		verify(domainDataRepository, times(1)).countDomainData("orders", "org-1", null, Boolean.TRUE);
+	}
+}
@@ -6,19 +6,33 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.data.domain.PageRequest;
 
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataCursor;
+import sg.edu.nus.iss.edgp.workflow.management.dto.DomainDataSlice;
 import sg.edu.nus.iss.edgp.workflow.management.exception.DomainDataServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataQuery;
 import sg.edu.nus.iss.edgp.workflow.management.repository.DomainDataRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DomainDataService;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +41,15 @@ public class DomainDataServiceTest {
 	@Mock
 	private DomainDataRepository domainDataRepository;
 
+	@Mock
+	private IDomainDataCountService domainDataCountService;
+
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+
 	@InjectMocks
 	private DomainDataService service;
 
@@ -46,12 +69,14 @@ public class DomainDataServiceTest {
 		repoData.add(row1);
 		repoData.add(row2);
 
-		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.TRUE)).thenReturn(repoData);
+		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.TRUE, DomainDataQuery.ALL))
+				.thenReturn(repoData);
 
-		Map<Long, List<Map<String, Object>>> result = service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.TRUE);
+		Map<Long, List<Map<String, Object>>> result = service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.TRUE,
+				null, null);
 
 		// verify repository called with exact args
-		verify(domainDataRepository).findAllDomainDataList(domain, orgId, fileId, Boolean.TRUE);
+		verify(domainDataRepository).findAllDomainDataList(domain, orgId, fileId, Boolean.TRUE, DomainDataQuery.ALL);
 
 		// assert result has exactly one entry keyed by total count
 		assertEquals(1, result.size(), "result should contain exactly one entry");
@@ -69,9 +94,11 @@ public class DomainDataServiceTest {
 		String orgId = "org-xyz";
 		String fileId = "file-empty";
 
-		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.FALSE)).thenReturn(Collections.emptyList());
+		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.FALSE, DomainDataQuery.ALL))
+				.thenReturn(Collections.emptyList());
 
-		Map<Long, List<Map<String, Object>>> result = service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.FALSE);
+		Map<Long, List<Map<String, Object>>> result = service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.FALSE,
+				null, null);
 
 		assertEquals(1, result.size());
 		assertTrue(result.containsKey(0L));
@@ -86,10 +113,11 @@ public class DomainDataServiceTest {
 		String fileId = "file-err";
 
 		RuntimeException root = new RuntimeException("db down");
-		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.FALSE)).thenThrow(root);
+		when(domainDataRepository.findAllDomainDataList(domain, orgId, fileId, Boolean.FALSE, DomainDataQuery.ALL))
+				.thenThrow(root);
 
 		DomainDataServiceException ex = assertThrows(DomainDataServiceException.class,
-				() -> service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.FALSE));
+				() -> service.retrieveAllDomainDataList(domain, orgId, fileId, Boolean.FALSE, null, null));
 
 		assertEquals("An error occurred while retrieving all data list", ex.getMessage());
 		assertSame(root, ex.getCause());
@@ -114,15 +142,15 @@ public class DomainDataServiceTest {
 		content.add(r1);
 		content.add(r2);
 
-		Page<Map<String, Object>> page = new PageImpl<>(content, pageable, 5);
-
-		when(domainDataRepository.findPaginatedDomainDataList(domain, orgId, fileId, pageable)).thenReturn(page);
+		when(domainDataRepository.findDomainDataPage(domain, orgId, fileId, Boolean.TRUE, DomainDataQuery.ALL, pageable))
+				.thenReturn(content);
+		when(domainDataCountService.countDomainData(domain, orgId, fileId, Boolean.TRUE, true)).thenReturn(5L);
 
 		Map<Long, List<Map<String, Object>>> result = service.retrievePaginatedDomainDataList(domain, orgId, fileId,
-				pageable, Boolean.TRUE);
+				pageable, Boolean.TRUE, true, null, null);
 
 		// repository called with exact args
-		verify(domainDataRepository).findPaginatedDomainDataList(domain, orgId, fileId, pageable);
+		verify(domainDataRepository).findDomainDataPage(domain, orgId, fileId, Boolean.TRUE, DomainDataQuery.ALL, pageable);
 
 		// one entry keyed by total elements (5), value is page.getContent()
 		assertEquals(1, result.size());
@@ -137,12 +165,12 @@ public class DomainDataServiceTest {
 		String fileId = "file-empty";
 		Pageable pageable = PageRequest.of(0, 10);
 
-		Page<Map<String, Object>> emptyPage = new PageImpl<>(Collections.emptyList(), pageable, 0);
-
-		when(domainDataRepository.findPaginatedDomainDataList(domain, orgId, fileId, pageable)).thenReturn(emptyPage);
+		when(domainDataRepository.findDomainDataPage(domain, orgId, fileId, Boolean.FALSE, DomainDataQuery.ALL, pageable))
+				.thenReturn(Collections.emptyList());
+		when(domainDataCountService.countDomainData(domain, orgId, fileId, Boolean.FALSE, false)).thenReturn(0L);
 
 		Map<Long, List<Map<String, Object>>> result = service.retrievePaginatedDomainDataList(domain, orgId, fileId,
-				pageable, Boolean.TRUE);
+				pageable, Boolean.FALSE, false, null, null);
 
 		assertEquals(1, result.size());
 		assertTrue(result.containsKey(0L));
@@ -158,16 +186,151 @@ public class DomainDataServiceTest {
 		Pageable pageable = PageRequest.of(0, 5);
 
 		RuntimeException root = new RuntimeException("db down");
-		when(domainDataRepository.findPaginatedDomainDataList(domain, orgId, fileId, pageable)).thenThrow(root);
+		when(domainDataRepository.findDomainDataPage(domain, orgId, fileId, Boolean.TRUE, DomainDataQuery.ALL, pageable))
+				.thenThrow(root);
 
 		DomainDataServiceException ex = assertThrows(DomainDataServiceException.class,
-				() -> service.retrievePaginatedDomainDataList(domain, orgId, fileId, pageable, Boolean.TRUE));
+				() -> service.retrievePaginatedDomainDataList(domain, orgId, fileId, pageable, Boolean.TRUE, true,
+						null, null));
 
 		assertEquals("An error occurred while retrieving all data list", ex.getMessage());
 		assertSame(root, ex.getCause());
 
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	void streamAllDomainDataList_writesOneJsonObjectPerLine() {
+		when(domainDataRepository.streamDomainDataList(eq("customer"), eq("org-1"), isNull(), eq(Boolean.FALSE),
+				eq(DomainDataQuery.ALL), any(Consumer.class))).thenAnswer(inv -> {
+					Consumer<Map<String, Object>> consumer = inv.getArgument(5);
+					consumer.accept(new LinkedHashMap<>(Map.of("id", "a")));
+					consumer.accept(new LinkedHashMap<>(Map.of("id", "b")));
+					return 2L;
+				});
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long streamed = service.streamAllDomainDataList("customer", "org-1", null, Boolean.FALSE, null, null, out);
+
+		assertEquals(2, streamed);
+		assertEquals("{\"id\":\"a\"}\n{\"id\":\"b\"}\n", out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void streamAllDomainDataList_clientGone_stopsWithServiceException() {
+		when(domainDataRepository.streamDomainDataList(eq("customer"), eq("org-1"), isNull(), isNull(),
+				eq(DomainDataQuery.ALL), any(Consumer.class))).thenAnswer(inv -> {
+					Consumer<Map<String, Object>> consumer = inv.getArgument(5);
+					for (int i = 0; i < 10_000; i++) {
+						consumer.accept(Map.of("id", "row-" + i));
+					}
+					return 10_000L;
+				});
+		OutputStream broken = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+
+		assertThrows(DomainDataServiceException.class,
+				() -> service.streamAllDomainDataList("customer", "org-1", null, null, null, null, broken));
+	}
+
+	@Test
+	void tryStartStream_refusesBeyondTheLimitUntilASlotIsReturned() {
+		ReflectionTestUtils.setField(service, "maxConcurrentStreams", 2);
+
+		assertTrue(service.tryStartStream());
+		assertTrue(service.tryStartStream());
+		assertFalse(service.tryStartStream());
+
+		service.endStream();
+		assertTrue(service.tryStartStream());
+		assertFalse(service.tryStartStream());
+	}
+
+	private static Map<String, Object> seekRow(String id, LocalDateTime updated) {
+		Map<String, Object> row = new HashMap<>();
+		row.put("id", id);
+		row.put("updated_date", Timestamp.valueOf(updated));
+		return row;
+	}
+
+	@Test
+	void retrieveDomainDataListAfter_fullPage_returnsCursorAfterLastRow() {
+		LocalDateTime t = LocalDateTime.of(2025, 8, 1, 9, 0);
+		List<Map<String, Object>> rows = List.of(seekRow("a", t), seekRow("b", t), seekRow("c", t.plusSeconds(1)));
+		when(domainDataRepository.findDomainDataListAfter("customer", "org-1", null, Boolean.FALSE, DomainDataQuery.ALL,
+				null, 3))
+				.thenReturn(rows);
+
+		DomainDataSlice slice = service.retrieveDomainDataListAfter("customer", "org-1", null, null, 2, Boolean.FALSE, null,
+				null);
+
+		assertEquals(2, slice.getRows().size());
+		DomainDataCursor next = DomainDataCursor.decode(slice.getNextCursor());
+		assertEquals(t, next.getUpdatedDate());
+		assertEquals("b", next.getId());
+	}
+
+	@Test
+	void retrieveDomainDataListAfter_lastPage_hasNoCursor() {
+		DomainDataCursor cursor = new DomainDataCursor(LocalDateTime.of(2025, 8, 1, 9, 0), "b");
+		when(domainDataRepository.findDomainDataListAfter("customer", "org-1", "f-1", null, DomainDataQuery.ALL, cursor, 3))
+				.thenReturn(List.of(seekRow("c", LocalDateTime.of(2025, 8, 1, 9, 1))));
+
+		DomainDataSlice slice = service.retrieveDomainDataListAfter("customer", "org-1", "f-1", cursor, 2, null, null,
+				null);
+
+		assertEquals(1, slice.getRows().size());
+		assertNull(slice.getNextCursor());
+	}
+
+	@Test
+	void domainDataCursor_roundTripsAndRejectsTampering() {
+		DomainDataCursor cursor = new DomainDataCursor(LocalDateTime.of(2025, 8, 1, 9, 0, 0, 5_000), "id|with|bars");
+
+		DomainDataCursor decoded = DomainDataCursor.decode(cursor.encode());
+
+		assertEquals(cursor.getUpdatedDate(), decoded.getUpdatedDate());
+		assertEquals("id|with|bars", decoded.getId());
+		assertThrows(IllegalArgumentException.class, () -> DomainDataCursor.decode("not-a-cursor"));
+		assertThrows(IllegalArgumentException.class, () -> DomainDataCursor.decode("%%%"));
+	}
+
+	@Test
+	void retrievePaginatedDomainDataList_filtered_countsWithSameFilters() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		types.put("id", java.sql.Types.VARCHAR);
+		types.put("region", java.sql.Types.VARCHAR);
+		when(tableSchemaCache.get("orders")).thenReturn(new TableSchemaCache.TableSchema(true, types));
+		Pageable pageable = PageRequest.of(0, 10);
+		when(domainDataRepository.findDomainDataPage(eq("orders"), eq("org-1"), isNull(), isNull(),
+				argThat(q -> q.isFiltered()), eq(pageable))).thenReturn(List.of(Map.of("id", "1")));
+		when(domainDataRepository.countDomainData(eq("orders"), eq("org-1"), isNull(), isNull(),
+				argThat(q -> q.isFiltered()))).thenReturn(1L);
+
+		Map<Long, List<Map<String, Object>>> result = service.retrievePaginatedDomainDataList("orders", "org-1", null,
+				pageable, null, false, null, List.of("region:eq:APAC"));
+
+		assertTrue(result.containsKey(1L));
+		verifyNoInteractions(domainDataCountService);
+	}
+
+	@Test
+	void retrieveAllDomainDataList_unknownColumn_isRejectedAsBadInput() {
+		when(tableSchemaCache.get("orders"))
+				.thenReturn(new TableSchemaCache.TableSchema(true, Map.of("id", java.sql.Types.VARCHAR)));
+
+		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+				() -> service.retrieveAllDomainDataList("orders", "org-1", null, null, List.of("ghost"), null));
+
+		assertEquals("Unknown column: ghost", ex.getMessage());
+		verifyNoInteractions(domainDataRepository);
+	}
+
 	@Test
 	void retrieveDetail_success() {
 		String domain = "customer";
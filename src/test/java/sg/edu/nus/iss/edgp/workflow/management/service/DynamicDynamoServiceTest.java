@@ -214,6 +214,7 @@ public class DynamicDynamoServiceTest {
         when(ws.getRuleStatus()).thenReturn(ruleStatus);
         when(ws.getFinalStatus()).thenReturn(finalStatus);
         when(ws.getFailedValidations()).thenReturn(failedValidations);
+        when(ws.getExpectedVersion()).thenReturn(null);
         return ws;
     }
 
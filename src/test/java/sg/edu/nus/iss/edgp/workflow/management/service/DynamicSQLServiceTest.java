@@ -9,19 +9,24 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import sg.edu.nus.iss.edgp.workflow.management.exception.DynamicSQLServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.repository.ColumnType;
 import sg.edu.nus.iss.edgp.workflow.management.repository.DynamicSQLRepository;
+import sg.edu.nus.iss.edgp.workflow.management.repository.PartitionManager;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicSQLService;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,26 +35,35 @@ class DynamicSQLServiceTest {
 	@Mock
 	private JdbcTemplate jdbcTemplate;
 	@Mock
-	private DataSource dataSource;
+	private DynamicSQLRepository dynamicSQLRepository;
 	@Mock
-	private Connection connection;
+	private TableSchemaCache tableSchemaCache;
 	@Mock
-	private DynamicSQLRepository dynamicSQLRepository;
+	private SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+	@Mock
+	private IDomainDataCountService domainDataCountService;
+	@Mock
+	private PartitionManager partitionManager;
 
 	private DynamicSQLService service;
 
 	@BeforeEach
 	void setUp() {
-		service = new DynamicSQLService(dynamicSQLRepository);
+		service = new DynamicSQLService(dynamicSQLRepository, tableSchemaCache, schemaEvolutionCoordinator,
+				domainDataCountService, partitionManager);
 		ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
 	}
 
-	private void stubSchemaCatalog(String catalog) throws SQLException {
-		when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
-		when(dataSource.getConnection()).thenReturn(connection);
-		when(connection.getCatalog()).thenReturn(catalog);
+	private static TableSchema schema(String... columns) {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : columns) {
+			types.put(column, Types.VARCHAR);
+		}
+		return new TableSchema(columns.length > 0, types);
 	}
 
+	private static final TableSchema STATIC_ONLY = schema("id", "created_date", "updated_date", "is_archived");
+
 
 	@Test
 	void buildCreateTableSQL_emptyTable_throwsServiceException() {
@@ -72,6 +86,7 @@ class DynamicSQLServiceTest {
 	void buildCreateTableSQL_executeFails_wrapsInServiceException() {
 
 		Map<String, Object> data = Map.of("x", 1);
+		when(tableSchemaCache.get("tbl")).thenReturn(schema());
 		doThrow(new RuntimeException("DDL fail")).when(jdbcTemplate).execute(anyString());
 
 		DynamicSQLServiceException ex = assertThrows(DynamicSQLServiceException.class,
@@ -86,17 +101,21 @@ class DynamicSQLServiceTest {
 	void insertData_happyPath_addsIdAndCallsInsertRow() throws SQLException {
 		Map<String, Object> data = new HashMap<>();
 		data.put("col1", "v1");
+		data.put("organization_id", "org-1");
+		data.put("file_id", "file-1");
 
-		stubSchemaCatalog("test_schema");
-		when(dynamicSQLRepository.tableExists("test_schema", "orders")).thenReturn(true);
+		when(tableSchemaCache.get("orders")).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(eq("orders"), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
 
-		service.insertData("Orders", data);
+		assertTrue(service.insertData("Orders", data).isDone());
+		verify(domainDataCountService).recordInserted("orders", "org-1", "file-1");
 
-		verify(dynamicSQLRepository).tableExists("test_schema", "orders");
+		verify(dynamicSQLRepository, never()).tableExists(anyString(), anyString());
 
 		@SuppressWarnings("unchecked")
 		ArgumentCaptor<Map<String, Object>> mapCap = ArgumentCaptor.forClass(Map.class);
-		verify(dynamicSQLRepository).insertRow(eq("orders"), mapCap.capture());
+		verify(dynamicSQLRepository).queueInsertRow(eq("orders"), mapCap.capture());
 
 		Map<String, Object> saved = mapCap.getValue();
 		assertEquals("v1", saved.get("col1"));
@@ -104,36 +123,87 @@ class DynamicSQLServiceTest {
 		assertTrue(saved.get("id") instanceof String);
 	}
 
+	@Test
+	void insertData_rowFromTrackerItem_isUpsertedOnTrackerId() throws SQLException {
+		Map<String, Object> data = new HashMap<>();
+		data.put("workflow_tracker_id", "wf-1");
+		data.put("col1", "v1");
+
+		when(tableSchemaCache.get("orders")).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueUpsertRow(eq("orders"), anyMap(), eq("workflow_tracker_id")))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.insertData("orders", data);
+
+		verify(dynamicSQLRepository, never()).queueInsertRow(anyString(), anyMap());
+	}
+
+	@Test
+	void insertData_replayedUpsert_isNotCountedAgain() throws SQLException {
+		Map<String, Object> first = new HashMap<>(Map.of("workflow_tracker_id", "wf-1", "col1", "v1",
+				"organization_id", "org-1", "file_id", "file-1"));
+		Map<String, Object> replay = new HashMap<>(first);
+		Map<String, Object> changedReplay = new HashMap<>(first);
+		changedReplay.put("col1", "v2");
+
+		when(tableSchemaCache.get("orders")).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueUpsertRow(eq("orders"), anyMap(), eq("workflow_tracker_id")))
+				.thenReturn(CompletableFuture.completedFuture(1), CompletableFuture.completedFuture(0),
+						CompletableFuture.completedFuture(2));
+
+		assertTrue(service.insertData("orders", first).isDone());
+		assertTrue(service.insertData("orders", replay).isDone());
+		assertTrue(service.insertData("orders", changedReplay).isDone());
+
+		verify(domainDataCountService, times(1)).recordInserted("orders", "org-1", "file-1");
+	}
+
 	@Test
 	void insertData_tableNotExists_throwsServiceException() throws SQLException {
 		Map<String, Object> data = new HashMap<>();
 
-		stubSchemaCatalog("test_schema");
-		when(dynamicSQLRepository.tableExists("test_schema", "clean_table")).thenReturn(false);
+		when(tableSchemaCache.get("clean_table")).thenReturn(schema());
 
 		DynamicSQLServiceException ex = assertThrows(DynamicSQLServiceException.class,
 				() -> service.insertData("CLEAN_TABLE", data));
 
 		assertTrue(ex.getMessage().contains("inserting clean data"));
-		verify(dynamicSQLRepository).tableExists("test_schema", "clean_table");
-		verify(dynamicSQLRepository, never()).insertRow(anyString(), anyMap());
+		verify(dynamicSQLRepository, never()).queueInsertRow(anyString(), anyMap());
 	}
 
 	@Test
 	void insertData_repositoryThrows_wrapsInServiceException() throws SQLException {
 		Map<String, Object> data = new HashMap<>();
 
-		stubSchemaCatalog("test_schema");
-		when(dynamicSQLRepository.tableExists("test_schema", "t1")).thenReturn(true);
-		doThrow(new RuntimeException("DB down")).when(dynamicSQLRepository).insertRow(anyString(), anyMap());
+		when(tableSchemaCache.get("t1")).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(anyString(), anyMap())).thenThrow(new RuntimeException("DB down"));
 
 		DynamicSQLServiceException ex = assertThrows(DynamicSQLServiceException.class,
 				() -> service.insertData("T1", data));
 
 		assertTrue(ex.getMessage().contains("inserting clean data"));
-		verify(dynamicSQLRepository).insertRow(eq("t1"), anyMap());
+		verify(dynamicSQLRepository).queueInsertRow(eq("t1"), anyMap());
+		verify(tableSchemaCache).invalidate("t1");
 	}
 	
+	@Test
+	void insertData_batchFails_completesExceptionallyAndInvalidatesSchema() throws SQLException {
+		Map<String, Object> data = new HashMap<>();
+		CompletableFuture<Integer> batch = new CompletableFuture<>();
+
+		when(tableSchemaCache.get("t1")).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(eq("t1"), anyMap())).thenReturn(batch);
+
+		CompletableFuture<Void> inserted = service.insertData("T1", data);
+		verify(tableSchemaCache, never()).invalidate(anyString());
+
+		batch.completeExceptionally(new RuntimeException("Unknown column"));
+
+		assertTrue(inserted.isCompletedExceptionally());
+		verify(tableSchemaCache).invalidate("t1");
+		verifyNoInteractions(domainDataCountService);
+	}
+
 	@Test
 	void buildCreateTableSQL_happyPath_createsAltersAndInserts() throws Exception {
 	   
@@ -148,24 +218,12 @@ class DynamicSQLServiceTest {
 	    ArgumentCaptor<String> sqlExecCaptor = ArgumentCaptor.forClass(String.class);
 	    doNothing().when(jdbcTemplate).execute(sqlExecCaptor.capture());
  
-	    when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
-	    when(dataSource.getConnection()).thenReturn(connection);
-	    when(connection.getCatalog()).thenReturn("db1");
+	    // First record of a new table: missing, created with static columns, then evolved
+	    when(tableSchemaCache.get("customer_events")).thenReturn(schema(), STATIC_ONLY);
+	    when(tableSchemaCache.refresh("customer_events")).thenReturn(STATIC_ONLY);
+	    when(schemaEvolutionCoordinator.ensureColumns(eq("customer_events"), anyMap())).thenReturn(STATIC_ONLY);
 
-	    DatabaseMetaData meta = mock(DatabaseMetaData.class);
-	    when(connection.getMetaData()).thenReturn(meta);
-
-	    ResultSet rs = mock(ResultSet.class);
-	    when(meta.getColumns(eq("db1"), isNull(), eq(table.toLowerCase()), isNull())).thenReturn(rs);
-
-	     
-	    when(rs.next()).thenReturn(true, true, true, true, false);
-	    when(rs.getString("COLUMN_NAME"))
-	            .thenReturn("id", "created_date", "updated_date", "is_archived");
-
-	    
-	    when(dynamicSQLRepository.tableExists("db1", table.toLowerCase())).thenReturn(true);
-	    doNothing().when(dynamicSQLRepository).insertRow(anyString(), anyMap());
+	    when(dynamicSQLRepository.queueInsertRow(anyString(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
 	  
 	    service.buildCreateTableSQL(data, table);
@@ -182,44 +240,119 @@ class DynamicSQLServiceTest {
 	                            && sql.contains("`created_date` TIMESTAMP")
 	                            && sql.contains("`updated_date` TIMESTAMP")
 	                            && sql.contains("`is_archived` BOOLEAN")
+	                            && sql.contains("`workflow_tracker_id` VARCHAR(191) NULL")
+	                            && sql.contains("UNIQUE KEY `uk_workflow_tracker_id` (`workflow_tracker_id`)")
 	            ),
 	            "Should create table with static columns"
 	    );
 
 	 
-	    assertTrue(
-	            executedSqls.stream().anyMatch(sql ->
-	                    sql.equals("ALTER TABLE `customer_events` ADD COLUMN `customer_id` BIGINT")),
-	            "Missing ALTER for customer_id BIGINT"
-	    );
-	    assertTrue(
-	            executedSqls.stream().anyMatch(sql ->
-	                    sql.equals("ALTER TABLE `customer_events` ADD COLUMN `amount` DECIMAL(38,10)")),
-	            "Missing ALTER for amount DECIMAL(38,10)"
-	    );
-	    assertTrue(
-	            executedSqls.stream().anyMatch(sql ->
-	                    sql.equals("ALTER TABLE `customer_events` ADD COLUMN `active` BOOLEAN")),
-	            "Missing ALTER for active BOOLEAN"
-	    );
-	    assertTrue(
-	            executedSqls.stream().anyMatch(sql ->
-	                    sql.equals("ALTER TABLE `customer_events` ADD COLUMN `note` VARCHAR(255)")),
-	            "Missing ALTER for note VARCHAR(255)"
-	    );
+	    // All new columns go to the coordinator in one call, which issues a single ALTER
+	    assertTrue(executedSqls.stream().noneMatch(sql -> sql.startsWith("ALTER TABLE")));
+	    ArgumentCaptor<Map<String, String>> columnsCaptor = ArgumentCaptor.forClass(Map.class);
+	    verify(schemaEvolutionCoordinator).ensureColumns(eq("customer_events"), columnsCaptor.capture());
+	    assertEquals(Map.of("customer_id", "INT", "amount", "DECIMAL(4,2)", "active", "BOOLEAN",
+	            "note", "VARCHAR(16)"), columnsCaptor.getValue());
 
 	    
 	    ArgumentCaptor<Map<String, Object>> rowCaptor = ArgumentCaptor.forClass(Map.class);
-	    verify(dynamicSQLRepository).insertRow(eq("customer_events"), rowCaptor.capture());
+	    verify(dynamicSQLRepository).queueInsertRow(eq("customer_events"), rowCaptor.capture());
 	    Map<String, Object> inserted = rowCaptor.getValue();
 	    
 	    assertTrue(inserted.containsKey("id"));
+	    verify(tableSchemaCache, times(1)).refresh("customer_events");
 	    assertEquals(123L, inserted.get("customer_id"));
 	    assertEquals(new java.math.BigDecimal("12.34"), inserted.get("amount"));
 	    assertEquals(true, inserted.get("active"));
 	    assertEquals("hello", inserted.get("note"));
 	}
 
+	@Test
+	void buildCreateTableSQL_partitionedDomain_keysRowsByPartitioningColumn() throws Exception {
+		PartitionManager.Spec byOrganization = new PartitionManager.Spec(PartitionManager.ORGANIZATION_ID, 8, 0);
+		when(partitionManager.specFor("orders")).thenReturn(byOrganization);
+		when(partitionManager.partitionClause(eq(byOrganization), any()))
+				.thenReturn("PARTITION BY KEY (`organization_id`) PARTITIONS 8");
+		when(tableSchemaCache.get("orders")).thenReturn(schema(), STATIC_ONLY);
+		when(tableSchemaCache.refresh("orders")).thenReturn(STATIC_ONLY);
+		when(schemaEvolutionCoordinator.ensureColumns(eq("orders"), anyMap())).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(anyString(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(new HashMap<>(Map.of("organization_id", "org-1")), "Orders");
+
+		verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS `orders` (`id` VARCHAR(36) NOT NULL,"
+				+ " `created_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP,"
+				+ " `updated_date` TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,"
+				+ " `is_archived` BOOLEAN DEFAULT FALSE, `workflow_tracker_id` VARCHAR(191) NULL,"
+				+ " `organization_id` VARCHAR(191) NOT NULL, PRIMARY KEY (`id`, `organization_id`),"
+				+ " UNIQUE KEY `uk_workflow_tracker_id` (`workflow_tracker_id`, `organization_id`))"
+				+ " PARTITION BY KEY (`organization_id`) PARTITIONS 8");
+	}
+
+	@Test
+	void buildCreateTableSQL_monthlyPartitionedDomain_untrackedRowsArePartitioned() throws Exception {
+		PartitionManager.Spec monthly = new PartitionManager.Spec(PartitionManager.CREATED_DATE, 0, 12);
+		when(partitionManager.specFor("orders")).thenReturn(monthly);
+		when(partitionManager.partitionClause(eq(monthly), any())).thenReturn("PARTITION BY RANGE (...)");
+		TableSchema withOrg = schema("id", "created_date", "updated_date", "is_archived", "organization_id");
+		when(tableSchemaCache.get("orders")).thenReturn(schema(), withOrg);
+		when(tableSchemaCache.refresh("orders")).thenReturn(withOrg);
+		when(dynamicSQLRepository.queueInsertRow(anyString(), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(new HashMap<>(Map.of("organization_id", "org-1")), "orders");
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		verify(jdbcTemplate).execute(sql.capture());
+		assertTrue(sql.getValue().contains("`created_date` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"));
+		assertTrue(sql.getValue().contains("PRIMARY KEY (`id`, `created_date`)"));
+		assertFalse(sql.getValue().contains("UNIQUE KEY"));
+		verify(schemaEvolutionCoordinator, never()).requestUniqueKey(anyString(), anyString());
+	}
+
+	@Test
+	void buildCreateTableSQL_monthlyPartitionedDomain_trackedRowsGetPlainTableWithTrackerKey() throws Exception {
+		PartitionManager.Spec monthly = new PartitionManager.Spec(PartitionManager.CREATED_DATE, 0, 12);
+		when(partitionManager.specFor("orders")).thenReturn(monthly);
+		TableSchema withOrg = schema("id", "created_date", "updated_date", "is_archived", "organization_id",
+				"workflow_tracker_id");
+		when(tableSchemaCache.get("orders")).thenReturn(schema(), withOrg);
+		when(tableSchemaCache.refresh("orders")).thenReturn(withOrg);
+		when(dynamicSQLRepository.queueUpsertRow(anyString(), anyMap(), eq("workflow_tracker_id")))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(new HashMap<>(Map.of("organization_id", "org-1", "workflow_tracker_id", "t-1")),
+				"orders");
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		verify(jdbcTemplate).execute(sql.capture());
+		assertFalse(sql.getValue().contains("PARTITION BY"));
+		assertTrue(sql.getValue().contains("UNIQUE KEY `uk_workflow_tracker_id` (`workflow_tracker_id`)"));
+		verify(partitionManager, never()).partitionClause(any(), any());
+		verify(schemaEvolutionCoordinator).requestUniqueKey("orders", "workflow_tracker_id");
+	}
+
+	@Test
+	void buildCreateTableSQL_existingMonthlyPartitionedTable_checkedOnceAndSkipsTrackerKey() throws Exception {
+		PartitionManager.Spec monthly = new PartitionManager.Spec(PartitionManager.CREATED_DATE, 0, 12);
+		when(partitionManager.specFor("orders")).thenReturn(monthly);
+		when(partitionManager.isPartitioned("orders")).thenReturn(true);
+		TableSchema withOrg = schema("id", "created_date", "updated_date", "is_archived", "organization_id",
+				"workflow_tracker_id");
+		when(tableSchemaCache.get("orders")).thenReturn(withOrg);
+		when(dynamicSQLRepository.queueUpsertRow(anyString(), anyMap(), eq("workflow_tracker_id")))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		for (String tracker : List.of("t-1", "t-2")) {
+			service.buildCreateTableSQL(
+					new HashMap<>(Map.of("organization_id", "org-1", "workflow_tracker_id", tracker)), "orders");
+		}
+
+		verify(partitionManager, times(1)).isPartitioned("orders");
+		verify(schemaEvolutionCoordinator, never()).requestUniqueKey(anyString(), anyString());
+		verify(jdbcTemplate, never()).execute(anyString());
+	}
+
 	@Test
 	void buildCreateTableSQL_typeMappingAndNormalization_variants() throws Exception {
 	   
@@ -239,49 +372,160 @@ class DynamicSQLServiceTest {
 	    data.put("Mixed Name", "x");
 
 	    
-	    ArgumentCaptor<String> sqlExecCaptor = ArgumentCaptor.forClass(String.class);
-	    doNothing().when(jdbcTemplate).execute(sqlExecCaptor.capture());
-
 	   
-	    when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
-	    when(dataSource.getConnection()).thenReturn(connection);
-	    when(connection.getCatalog()).thenReturn("dbx");
-
-	    DatabaseMetaData meta = mock(DatabaseMetaData.class);
-	    when(connection.getMetaData()).thenReturn(meta);
-	    ResultSet rs = mock(ResultSet.class);
-	    when(meta.getColumns(eq("dbx"), isNull(), eq("events"), isNull())).thenReturn(rs);
-	    when(rs.next()).thenReturn(true, true, true, true, false);
-	    when(rs.getString("COLUMN_NAME"))
-	            .thenReturn("id", "created_date", "updated_date", "is_archived");
+	    when(tableSchemaCache.get("events")).thenReturn(STATIC_ONLY);
+	    when(schemaEvolutionCoordinator.ensureColumns(eq("events"), anyMap())).thenReturn(STATIC_ONLY);
 
-	    when(dynamicSQLRepository.tableExists("dbx", "events")).thenReturn(true);
-	    doNothing().when(dynamicSQLRepository).insertRow(anyString(), anyMap());
+	    when(dynamicSQLRepository.queueInsertRow(anyString(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
 	    // Act
 	    service.buildCreateTableSQL(data, "EVENTS");
  
-	    var sqls = sqlExecCaptor.getAllValues();
- 
-	    java.util.function.BiConsumer<String, String> assertAlter = (col, type) -> assertTrue(
-	            sqls.stream().anyMatch(s -> s.equals("ALTER TABLE `events` ADD COLUMN `" + col + "` " + type)),
-	            () -> "Missing ALTER for `" + col + "` " + type + " in\n" + String.join("\n", sqls)
-	    );
+	    ArgumentCaptor<Map<String, String>> columnsCaptor = ArgumentCaptor.forClass(Map.class);
+	    verify(schemaEvolutionCoordinator).ensureColumns(eq("events"), columnsCaptor.capture());
+	    Map<String, String> columns = columnsCaptor.getValue();
+
+	    java.util.function.BiConsumer<String, String> assertAlter = (col, type) -> assertEquals(type,
+	            columns.get(col), () -> "Missing column `" + col + "` " + type + " in " + columns);
 
-	    assertAlter.accept("int_col", "BIGINT");
-	    assertAlter.accept("double_col", "DECIMAL(38,10)");
-	    assertAlter.accept("float_col", "DECIMAL(38,10)");
-	    assertAlter.accept("dec_col", "DECIMAL(38,10)");
+	    assertAlter.accept("int_col", "INT");
+	    assertAlter.accept("double_col", "DECIMAL(3,2)");
+	    assertAlter.accept("float_col", "DECIMAL(3,2)");
+	    assertAlter.accept("dec_col", "DECIMAL(3,2)");
 	    assertAlter.accept("bool_col", "BOOLEAN");
 	    assertAlter.accept("date_col", "DATE");
 	    assertAlter.accept("ldate_col", "DATE");
-	    assertAlter.accept("ts_col", "TIMESTAMP");
-	    assertAlter.accept("ldt_col", "TIMESTAMP");
-	    assertAlter.accept("str_col", "VARCHAR(255)");
-	    assertAlter.accept("null_col", "VARCHAR(255)");
-	    assertAlter.accept("mixed_name", "VARCHAR(255)");
- 
-	    verify(dynamicSQLRepository).insertRow(eq("events"), anyMap());
+	    assertAlter.accept("ts_col", "DATETIME");
+	    assertAlter.accept("ldt_col", "DATETIME");
+	    assertAlter.accept("str_col", "VARCHAR(16)");
+	    assertAlter.accept("mixed_name", "VARCHAR(16)");
+	    assertAlter.accept("null_col", "VARCHAR(16)");
+
+	    assertEquals(12, columns.size());
+	    ArgumentCaptor<Map<String, Object>> rowCaptor = ArgumentCaptor.forClass(Map.class);
+	    verify(dynamicSQLRepository).queueInsertRow(eq("events"), rowCaptor.capture());
+	    assertTrue(rowCaptor.getValue().containsKey("null_col"));
+	    verify(jdbcTemplate, never()).execute(anyString());
+	}
+
+	@Test
+	void buildCreateTableSQL_knownSchema_onlyInserts() throws Exception {
+		Map<String, Object> data = new HashMap<>();
+		data.put("note", "hello");
+		when(tableSchemaCache.get("events")).thenReturn(
+				schema("id", "created_date", "updated_date", "is_archived", "note"));
+		when(dynamicSQLRepository.queueInsertRow(eq("events"), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		assertTrue(service.buildCreateTableSQL(data, "events").isDone());
+
+		verify(jdbcTemplate, never()).execute(anyString());
+		verify(tableSchemaCache, never()).refresh(anyString());
+		verify(schemaEvolutionCoordinator, never()).ensureColumns(anyString(), anyMap());
+		verify(schemaEvolutionCoordinator).requestIndex("events", "idx_org_file_archived_updated",
+				java.util.List.of("organization_id", "file_id", "is_archived", "updated_date"));
+		verify(schemaEvolutionCoordinator).requestIndex("events", "idx_org_archived_updated",
+				java.util.List.of("organization_id", "is_archived", "updated_date"));
+		verify(dynamicSQLRepository).queueInsertRow(eq("events"), anyMap());
+	}
+
+	@Test
+	void buildCreateTableSQL_stringValues_areTypedByContent() throws Exception {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("qty", "42");
+		data.put("big", "9000000000");
+		data.put("price", "19.95");
+		data.put("zip", "007");
+		data.put("shipped_on", "2025-03-01");
+		data.put("paid_at", "2025-03-01T10:15:30");
+		data.put("gift", "FALSE");
+		data.put("blank", " ");
+		when(tableSchemaCache.get("orders")).thenReturn(STATIC_ONLY);
+		when(schemaEvolutionCoordinator.ensureColumns(eq("orders"), anyMap())).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(eq("orders"), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(data, "orders");
+
+		ArgumentCaptor<Map<String, String>> columnsCaptor = ArgumentCaptor.forClass(Map.class);
+		verify(schemaEvolutionCoordinator).ensureColumns(eq("orders"), columnsCaptor.capture());
+		assertEquals(Map.of("qty", "INT", "big", "BIGINT", "price", "DECIMAL(4,2)", "zip", "VARCHAR(16)",
+				"shipped_on", "DATE", "paid_at", "DATETIME", "gift", "BOOLEAN", "blank", "VARCHAR(16)"),
+				columnsCaptor.getValue());
+	}
+
+	@Test
+	void buildCreateTableSQL_nullFirstValue_createsNullableVarcharAndKeepsTheColumn() throws Exception {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("qty", "42");
+		data.put("note", null);
+		when(tableSchemaCache.get("orders")).thenReturn(STATIC_ONLY);
+		when(schemaEvolutionCoordinator.ensureColumns(eq("orders"), anyMap())).thenReturn(STATIC_ONLY);
+		when(dynamicSQLRepository.queueInsertRow(eq("orders"), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(data, "orders");
+
+		ArgumentCaptor<Map<String, String>> columnsCaptor = ArgumentCaptor.forClass(Map.class);
+		verify(schemaEvolutionCoordinator).ensureColumns(eq("orders"), columnsCaptor.capture());
+		assertEquals(Map.of("qty", "INT", "note", "VARCHAR(16)"), columnsCaptor.getValue());
+		ArgumentCaptor<Map<String, Object>> rowCaptor = ArgumentCaptor.forClass(Map.class);
+		verify(dynamicSQLRepository).queueInsertRow(eq("orders"), rowCaptor.capture());
+		assertTrue(rowCaptor.getValue().containsKey("note"));
+		assertEquals("42", rowCaptor.getValue().get("qty"));
+	}
+
+	@Test
+	void buildCreateTableSQL_valueOutgrowsColumn_defersItAndWritesTheRest() throws Exception {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		Map<String, ColumnType> sqlTypes = new LinkedHashMap<>();
+		for (String column : List.of("id", "created_date", "updated_date", "is_archived", "qty", "note",
+				"workflow_tracker_id")) {
+			types.put(column, Types.VARCHAR);
+		}
+		sqlTypes.put("qty", ColumnType.INT);
+		sqlTypes.put("note", ColumnType.varchar(16));
+		TableSchema orders = new TableSchema(true, types, sqlTypes);
+
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("qty", "2.5");
+		data.put("note", "short");
+		data.put("workflow_tracker_id", "t-1");
+		when(tableSchemaCache.get("orders")).thenReturn(orders);
+		when(dynamicSQLRepository.queueUpsertRow(eq("orders"), anyMap(), eq("workflow_tracker_id")))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(data, "orders");
+
+		verify(schemaEvolutionCoordinator, never()).ensureColumns(anyString(), anyMap());
+		verify(schemaEvolutionCoordinator, never()).widenColumns(anyString(), anyMap());
+		verify(schemaEvolutionCoordinator).deferValues("orders", "workflow_tracker_id", "t-1", Map.of("qty", "2.5"));
+		ArgumentCaptor<Map<String, Object>> row = ArgumentCaptor.forClass(Map.class);
+		verify(dynamicSQLRepository).queueUpsertRow(eq("orders"), row.capture(), eq("workflow_tracker_id"));
+		assertFalse(row.getValue().containsKey("qty"));
+		assertEquals("short", row.getValue().get("note"));
+	}
+
+	@Test
+	void buildCreateTableSQL_untrackedRowOutgrowsColumn_defersByRowId() throws Exception {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : List.of("id", "created_date", "updated_date", "is_archived", "zip")) {
+			types.put(column, Types.VARCHAR);
+		}
+		TableSchema orders = new TableSchema(true, types, Map.of("zip", ColumnType.INT));
+
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("zip", "012345");
+		when(tableSchemaCache.get("orders")).thenReturn(orders);
+		when(dynamicSQLRepository.queueInsertRow(eq("orders"), anyMap()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.buildCreateTableSQL(data, "orders");
+
+		ArgumentCaptor<Map<String, Object>> row = ArgumentCaptor.forClass(Map.class);
+		verify(dynamicSQLRepository).queueInsertRow(eq("orders"), row.capture());
+		verify(schemaEvolutionCoordinator).deferValues("orders", "id", (String) row.getValue().get("id"),
+				Map.of("zip", "012345"));
 	}
 
 }
@@ -0,0 +1,266 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.enums.FileProcessStage;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.DataIngestionNotifierService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileFinalizationService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.ProcessStatusObserverService;
+
+@ExtendWith(MockitoExtension.class)
+class FileFinalizationServiceTest {
+
+	@Mock
+	private ProcessStatusObserverService processStatusObserverService;
+
+	@Mock
+	private DataIngestionNotifierService dataIngestionNotifierService;
+
+	@Mock
+	private FileProgressService fileProgressService;
+
+	@Mock
+	private TaskScheduler taskScheduler;
+
+	private final List<Runnable> queued = new ArrayList<>();
+
+	private FileFinalizationService service;
+
+	@BeforeEach
+	void setUp() {
+		TaskExecutor executor = queued::add;
+		service = new FileFinalizationService(processStatusObserverService, dataIngestionNotifierService,
+				fileProgressService, executor, taskScheduler);
+		ReflectionTestUtils.setField(service, "fileTimeout", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(service, "leaseTtl", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(service, "hostName", "pod-a");
+	}
+
+	@Test
+	void finalizeIfComplete_pendingRecords_doesNothing() {
+		when(fileProgressService.completedFileStatus("f1")).thenReturn(Optional.empty());
+
+		assertFalse(service.finalizeIfComplete(fileInfo(" f1 ")));
+
+		verify(processStatusObserverService, never()).markFileComplete(anyString(), anyString());
+		verifyNoInteractions(dataIngestionNotifierService);
+	}
+
+	@Test
+	void finalizeIfComplete_marksFileThenSendsNotification() {
+		HashMap<String, String> fileInfo = fileInfo("f1");
+		when(fileProgressService.completedFileStatus("f1")).thenReturn(Optional.of("SUCCESS"));
+		when(processStatusObserverService.markFileComplete("f1", "SUCCESS")).thenReturn(true);
+
+		assertTrue(service.finalizeIfComplete(fileInfo));
+
+		verify(fileProgressService).foldShards("f1");
+		var order = inOrder(dataIngestionNotifierService, processStatusObserverService);
+		order.verify(dataIngestionNotifierService).sendDataIngestionResult(fileInfo);
+		order.verify(processStatusObserverService).markFileNotified("f1");
+	}
+
+	@Test
+	void finalizeIfComplete_sendFails_leavesFileUnnotifiedForSweep() {
+		HashMap<String, String> fileInfo = fileInfo("f1");
+		when(fileProgressService.completedFileStatus("f1")).thenReturn(Optional.of("SUCCESS"));
+		when(processStatusObserverService.markFileComplete("f1", "SUCCESS")).thenReturn(true);
+		doThrow(new RuntimeException("smtp down")).when(dataIngestionNotifierService).sendDataIngestionResult(fileInfo);
+
+		assertThrows(RuntimeException.class, () -> service.finalizeIfComplete(fileInfo));
+
+		verify(processStatusObserverService, never()).markFileNotified(anyString());
+	}
+
+	@Test
+	void requestFinalization_completedButUnnotifiedFile_retriesNotification() {
+		HashMap<String, String> fileInfo = fileInfo("f1");
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenReturn(new HashMap<>());
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.COMPLETE)).thenReturn(fileInfo);
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		verify(processStatusObserverService, never()).markFileComplete(anyString(), anyString());
+		verify(fileProgressService).foldShards("f1");
+		verify(dataIngestionNotifierService).sendDataIngestionResult(fileInfo);
+		verify(processStatusObserverService).markFileNotified("f1");
+	}
+
+	@Test
+	void finalizeIfComplete_alreadyFinalized_doesNotNotifyTwice() {
+		when(fileProgressService.completedFileStatus("f1")).thenReturn(Optional.of("FAIL"));
+		when(processStatusObserverService.markFileComplete("f1", "FAIL")).thenReturn(false);
+
+		assertFalse(service.finalizeIfComplete(fileInfo("f1")));
+
+		verifyNoInteractions(dataIngestionNotifierService);
+		verify(fileProgressService, never()).foldShards(anyString());
+	}
+
+	@Test
+	void requestFinalization_coalescesEventsForSameFile() {
+		service.requestFinalization("f1");
+		service.requestFinalization("f1");
+		service.requestFinalization("f2");
+
+		assertEquals(2, queued.size());
+	}
+
+	@Test
+	void requestFinalization_runsCheckOnlyWhileFileIsProcessing() {
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenReturn(new HashMap<>());
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		verify(fileProgressService, never()).completedFileStatus(anyString());
+
+		// Once the queued check has started, a new event queues another check
+		service.requestFinalization("f1");
+		assertEquals(2, queued.size());
+	}
+
+	@Test
+	void requestFinalization_failureIsContained() {
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenThrow(new RuntimeException("boom"));
+
+		service.requestFinalization("f1");
+
+		assertDoesNotThrow(() -> queued.get(0).run());
+	}
+
+	@Test
+	void requestFinalization_overrunningFileIsInterrupted() {
+		ArgumentCaptor<Runnable> watchdog = ArgumentCaptor.forClass(Runnable.class);
+		ScheduledFuture<?> handle = mock(ScheduledFuture.class);
+		doReturn(handle).when(taskScheduler).schedule(watchdog.capture(), any(Instant.class));
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenAnswer(invocation -> {
+					// The deadline passes while this file is still being finalized
+					watchdog.getValue().run();
+					assertTrue(Thread.currentThread().isInterrupted());
+					return new HashMap<>();
+				});
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		assertTrue(Thread.interrupted());
+		verify(handle).cancel(false);
+		verify(processStatusObserverService).releaseFileLease(eq("f1"), startsWith("pod-a:"));
+	}
+
+	@Test
+	void requestFinalization_fileLeasedByAnotherReplica_isSkipped() {
+		when(processStatusObserverService.acquireFileLease(eq("f1"), anyString(), any(Duration.class)))
+				.thenReturn(false);
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		verify(processStatusObserverService, never()).fetchFileInfoByStage(anyString(), any());
+		verify(processStatusObserverService, never()).releaseFileLease(anyString(), anyString());
+		verifyNoInteractions(dataIngestionNotifierService);
+	}
+
+	@Test
+	void requestFinalization_heartbeatRenewsLeaseAndInterruptsWhenLost() {
+		ArgumentCaptor<Runnable> heartbeat = ArgumentCaptor.forClass(Runnable.class);
+		ScheduledFuture<?> handle = mock(ScheduledFuture.class);
+		doReturn(handle).when(taskScheduler).scheduleAtFixedRate(heartbeat.capture(), any(Instant.class),
+				eq(Duration.ofSeconds(10)));
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		when(processStatusObserverService.renewFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true, false);
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenAnswer(invocation -> {
+					heartbeat.getValue().run();
+					assertFalse(Thread.currentThread().isInterrupted());
+					heartbeat.getValue().run();
+					assertTrue(Thread.currentThread().isInterrupted());
+					return new HashMap<>();
+				});
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		assertTrue(Thread.interrupted());
+		verify(handle).cancel(false);
+	}
+
+	@Test
+	void requestFinalization_watchdogCancelledWhenFileFinishesInTime() {
+		when(processStatusObserverService.acquireFileLease(eq("f1"), startsWith("pod-a:"), any(Duration.class)))
+				.thenReturn(true);
+		ScheduledFuture<?> handle = mock(ScheduledFuture.class);
+		doReturn(handle).when(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+		when(processStatusObserverService.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING))
+				.thenReturn(new HashMap<>());
+
+		service.requestFinalization("f1");
+		queued.get(0).run();
+
+		verify(handle).cancel(false);
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	void requestFinalization_rejectedTaskIsLeftForSweep() {
+		service = new FileFinalizationService(processStatusObserverService, dataIngestionNotifierService,
+				fileProgressService, task -> {
+			throw new TaskRejectedException("full");
+		}, taskScheduler);
+
+		assertDoesNotThrow(() -> service.requestFinalization("f1"));
+		verifyNoInteractions(processStatusObserverService);
+	}
+
+	@Test
+	void requestFinalization_blankId_ignored() {
+		service.requestFinalization(" ");
+		service.requestFinalization(null);
+
+		assertTrue(queued.isEmpty());
+	}
+
+	private static HashMap<String, String> fileInfo(String id) {
+		HashMap<String, String> fileInfo = new HashMap<>();
+		fileInfo.put("id", id);
+		fileInfo.put("name", "data.csv");
+		return fileInfo;
+	}
+}
@@ -0,0 +1,373 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.aws.local.InMemoryDynamoDbClient;
+import sg.edu.nus.iss.edgp.workflow.management.dto.FileProgress;
+import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicDynamoService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+class FileProgressServiceTest {
+
+	private static final String HEADER = "header_tbl";
+	private static final String PROGRESS = "progress_tbl";
+	private static final String TRACKER = "tracker_tbl";
+
+	private InMemoryDynamoDbClient client;
+	private FileProgressService service;
+
+	@BeforeEach
+	void setUp() {
+		client = new InMemoryDynamoDbClient();
+		new DynamicDynamoService(client).createTable(HEADER);
+		new DynamicDynamoService(client).createTable(TRACKER);
+		service = new FileProgressService(client, new DynamicDynamoService(client), new SyncTaskExecutor());
+		ReflectionTestUtils.setField(service, "masterDataHeaderTableName", " " + HEADER + " ");
+		ReflectionTestUtils.setField(service, "masterDataProgressTableName", PROGRESS);
+		ReflectionTestUtils.setField(service, "masterDataTaskTrackerTableName", TRACKER);
+	}
+
+	private void putHeader(String id, String name) {
+		Map<String, AttributeValue> item = new HashMap<>();
+		item.put("id", AttributeValue.builder().s(id).build());
+		item.put("file_name", AttributeValue.builder().s(name).build());
+		item.put("process_stage", AttributeValue.builder().s("PROCESSING").build());
+		item.put("organization_id", AttributeValue.builder().s("org-1").build());
+		client.putItem(PutItemRequest.builder().tableName(HEADER).item(item).build());
+	}
+
+	private void putTracker(String id) {
+		client.putItem(PutItemRequest.builder().tableName(TRACKER)
+				.item(Map.of("id", AttributeValue.builder().s(id).build())).build());
+	}
+
+	private Map<String, AttributeValue> tracker(String id) {
+		return client.getItem(GetItemRequest.builder().tableName(TRACKER)
+				.key(Map.of("id", AttributeValue.builder().s(id).build())).build()).item();
+	}
+
+	private void setNumber(String id, String attribute, long value) {
+		client.updateItem(UpdateItemRequest.builder().tableName(HEADER)
+				.key(Map.of("id", AttributeValue.builder().s(id).build())).updateExpression("SET #a = :v")
+				.expressionAttributeNames(Map.of("#a", attribute))
+				.expressionAttributeValues(Map.of(":v", AttributeValue.builder().n(Long.toString(value)).build()))
+				.build());
+	}
+
+	private void setStage(String id, String stage) {
+		client.updateItem(UpdateItemRequest.builder().tableName(HEADER)
+				.key(Map.of("id", AttributeValue.builder().s(id).build())).updateExpression("SET process_stage = :s")
+				.expressionAttributeValues(Map.of(":s", AttributeValue.builder().s(stage).build())).build());
+	}
+
+	private Map<String, AttributeValue> header(String id) {
+		return client.getItem(GetItemRequest.builder().tableName(HEADER)
+				.key(Map.of("id", AttributeValue.builder().s(id).build())).build()).item();
+	}
+
+	private int shardItems() {
+		return client.scan(ScanRequest.builder().tableName(PROGRESS).build()).count();
+	}
+
+	@Test
+	void recordReceivedAndFinalized_accumulateInShardsAndSumOnRead() {
+		putHeader("f1", "a.csv");
+
+		for (int i = 0; i < 4; i++) {
+			putTracker("t" + i);
+			service.recordReceived("f1", "t" + i);
+		}
+		service.recordFinalized("f1", "t0", "SUCCESS", "org-1");
+		service.recordFinalized("f1", "t1", "fail", "org-1");
+		service.recordFinalized("f1", "t2", "success", "org-1");
+
+		assertFalse(header("f1").containsKey("processed_count"));
+		FileProgress progress = service.retrieveFileProgress(List.of("f1"), "org-1").get(0);
+		assertEquals(4, progress.getTotalRecords());
+		assertEquals(3, progress.getProcessedRecords());
+		assertEquals(2, progress.getSuccessRecords());
+		assertEquals(1, progress.getFailedRecords());
+	}
+
+	@Test
+	void completedFileStatus_onlyOnceEveryReceivedRecordIsFinalized() {
+		putHeader("f1", "a.csv");
+		putTracker("t1");
+		putTracker("t2");
+
+		assertTrue(service.completedFileStatus("f1").isEmpty());
+		service.recordReceived("f1", "t1");
+		service.recordReceived("f1", "t2");
+		service.recordFinalized("f1", "t1", "success", "org-1");
+		assertTrue(service.completedFileStatus("f1").isEmpty());
+
+		service.recordFinalized("f1", "t2", "FAIL", "org-1");
+		assertEquals(Optional.of("fail"), service.completedFileStatus("f1"));
+		assertEquals(0, client.requestCount("Scan"));
+
+		// Folded totals in the header answer the same way
+		setStage("f1", "COMPLETE");
+		service.foldShards("f1");
+		assertEquals(Optional.of("fail"), service.completedFileStatus("f1"));
+	}
+
+	@Test
+	void completedFileStatus_unknownFile_isPending() {
+		assertTrue(service.completedFileStatus("missing").isEmpty());
+		assertTrue(service.completedFileStatus(" ").isEmpty());
+	}
+
+	@Test
+	void redeliveredRecord_isCountedOnce() {
+		putHeader("f1", "a.csv");
+		putTracker("t1");
+
+		service.recordReceived("f1", "t1");
+		service.recordReceived("f1", "t1");
+		service.recordFinalized("f1", "t1", "success", "org-1");
+		service.recordFinalized("f1", "t1", "success", "org-1");
+
+		FileProgress progress = service.retrieveFileProgress(List.of("f1"), "org-1").get(0);
+		assertEquals(1, progress.getTotalRecords());
+		assertEquals(1, progress.getProcessedRecords());
+		assertEquals(1, progress.getSuccessRecords());
+		assertEquals(List.of("received", "finalized"), tracker("t1").get("progress_counted").ss());
+		assertEquals(4, client.requestCount("TransactWriteItems"));
+	}
+
+	@Test
+	void recordWithoutTrackerItem_isCountedUnguarded() {
+		putHeader("f1", "a.csv");
+
+		service.recordReceived("f1", "missing");
+		service.recordFinalized("f1", "missing", "success", "org-1");
+		service.recordFinalized("f1", null, "success", "org-1");
+
+		assertEquals(2, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+		assertEquals(2, client.requestCount("TransactWriteItems"));
+		assertTrue(tracker("missing").isEmpty());
+	}
+
+	@Test
+	void recordFinalized_spreadsWritesAcrossShards() {
+		putHeader("f1", "a.csv");
+		client.resetStatistics();
+
+		for (int i = 0; i < 200; i++) {
+			service.recordFinalized("f1", null, "success", "org-1");
+		}
+
+		assertEquals(0, client.consumedWriteCapacity(HEADER));
+		assertTrue(shardItems() > 1);
+		assertTrue(shardItems() <= 10);
+		assertEquals(200, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+	}
+
+	@Test
+	void recordFinalized_missingHeader_isIgnored() {
+		assertDoesNotThrow(() -> service.recordFinalized("missing", null, "success", "org-1"));
+		assertDoesNotThrow(() -> service.recordReceived("missing", null));
+		assertTrue(header("missing").isEmpty());
+		assertTrue(service.retrieveFileProgress(List.of("missing"), "org-1").isEmpty());
+	}
+
+	@Test
+	void foldShards_movesTotalsToHeaderOnce() {
+		putHeader("f1", "a.csv");
+		setNumber("f1", "processed_count", 5);
+		for (int i = 0; i < 3; i++) {
+			putTracker("t" + i);
+			service.recordReceived("f1", "t" + i);
+			service.recordFinalized("f1", "t" + i, i == 0 ? "fail" : "success", "org-1");
+		}
+		setStage("f1", "COMPLETE");
+
+		service.foldShards("f1");
+		service.foldShards("f1");
+
+		Map<String, AttributeValue> header = header("f1");
+		assertEquals("3", header.get("total_count").n());
+		assertEquals("8", header.get("processed_count").n());
+		assertEquals("2", header.get("success_count").n());
+		assertEquals("1", header.get("failed_count").n());
+		assertEquals("org-1", header.get("organization_id").s());
+		assertNotNull(header.get("progress_folded_at"));
+		assertEquals(0, shardItems());
+		assertEquals(8, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+	}
+
+	@Test
+	void foldShards_fileNotComplete_keepsShards() {
+		putHeader("f1", "a.csv");
+		service.recordFinalized("f1", null, "success", "org-1");
+
+		service.foldShards("f1");
+
+		assertFalse(header("f1").containsKey("progress_folded_at"));
+		assertEquals(1, shardItems());
+		service.recordFinalized("f1", null, "success", "org-1");
+		assertEquals(2, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+	}
+
+	@Test
+	void progressTable_failedCreation_isRetriedByNextCaller() {
+		DynamicDynamoService tables = mock(DynamicDynamoService.class);
+		when(tables.tableExists(PROGRESS)).thenThrow(new RuntimeException("unavailable")).thenReturn(false);
+		doAnswer(inv -> {
+			new DynamicDynamoService(client).createTable(PROGRESS);
+			return null;
+		}).when(tables).createTable(PROGRESS);
+		service = new FileProgressService(client, tables, new SyncTaskExecutor());
+		ReflectionTestUtils.setField(service, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(service, "masterDataProgressTableName", PROGRESS);
+		putHeader("f1", "a.csv");
+
+		service.recordFinalized("f1", null, "success", "org-1");
+		service.recordFinalized("f1", null, "success", "org-1");
+		service.recordFinalized("f1", null, "success", "org-1");
+
+		assertEquals(2, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+		verify(tables, times(2)).tableExists(PROGRESS);
+		verify(tables).createTable(PROGRESS);
+	}
+
+	@Test
+	void progressTable_notReadyInTime_failsTheCallWithoutBlocking() {
+		List<Runnable> pending = new ArrayList<>();
+		service = new FileProgressService(client, new DynamicDynamoService(client), pending::add);
+		ReflectionTestUtils.setField(service, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(service, "masterDataProgressTableName", PROGRESS);
+		ReflectionTestUtils.setField(service, "progressTableWait", Duration.ofMillis(10));
+		putHeader("f1", "a.csv");
+
+		assertDoesNotThrow(() -> service.recordFinalized("f1", null, "success", "org-1"));
+		assertThrows(WorkflowServiceException.class, () -> service.retrieveFileProgress(List.of("f1"), "org-1"));
+		assertEquals(1, pending.size());
+
+		pending.get(0).run();
+		service.recordFinalized("f1", null, "success", "org-1");
+		assertEquals(1, service.retrieveFileProgress(List.of("f1"), "org-1").get(0).getProcessedRecords());
+	}
+
+	@Test
+	void foldShards_missingHeader_keepsShards() {
+		service.recordFinalized("missing", null, "success", "org-1");
+
+		assertDoesNotThrow(() -> service.foldShards("missing"));
+		assertEquals(1, shardItems());
+	}
+
+	@Test
+	void retrieveFileProgress_batchesKeysAndRetriesUnprocessed() {
+		client = new InMemoryDynamoDbClient(7L);
+		new DynamicDynamoService(client).createTable(HEADER);
+		service = new FileProgressService(client, new DynamicDynamoService(client), new SyncTaskExecutor());
+		ReflectionTestUtils.setField(service, "masterDataHeaderTableName", HEADER);
+		ReflectionTestUtils.setField(service, "masterDataProgressTableName", PROGRESS);
+		ReflectionTestUtils.setField(service, "masterDataTaskTrackerTableName", TRACKER);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			putHeader("f" + i, "file" + i + ".csv");
+			service.recordFinalized("f" + i, null, "success", null);
+			ids.add("f" + i);
+		}
+		client.setReadThrottleRate(0.2);
+		client.resetStatistics();
+
+		List<FileProgress> result = service.retrieveFileProgress(ids, "org-1");
+
+		assertEquals(25, result.size());
+		assertTrue(result.stream().allMatch(p -> p.getProcessedRecords() == 1));
+		assertTrue(client.throttledRequests() > 0);
+		assertTrue(client.requestCount("BatchGetItem") > 3);
+		assertEquals(0, client.requestCount("GetItem"));
+	}
+
+	@Test
+	void retrieveFileProgress_computesRateAndEta() {
+		putHeader("f1", "a.csv");
+		long now = System.currentTimeMillis();
+		setNumber("f1", "total_count", 100);
+		setNumber("f1", "processed_count", 40);
+		setNumber("f1", "success_count", 30);
+		setNumber("f1", "failed_count", 10);
+		setNumber("f1", "first_processed_at", now - 20_000);
+		setNumber("f1", "last_processed_at", now);
+
+		FileProgress progress = service.retrieveFileProgress(List.of("f1"), "org-1").get(0);
+
+		assertEquals("a.csv", progress.getFileName());
+		assertEquals(100, progress.getTotalRecords());
+		assertEquals(40, progress.getProcessedRecords());
+		assertEquals(30, progress.getSuccessRecords());
+		assertEquals(10, progress.getFailedRecords());
+		assertEquals(2.0, progress.getRecordsPerSecond(), 0.1);
+		assertEquals(30L, progress.getEtaSeconds(), 2L);
+	}
+
+	@Test
+	void retrieveFileProgress_finishedFile_hasZeroEta() {
+		putHeader("f1", "a.csv");
+		setNumber("f1", "total_count", 10);
+		setNumber("f1", "processed_count", 10);
+		setNumber("f1", "first_processed_at", 1_000);
+		setNumber("f1", "last_processed_at", 6_000);
+
+		FileProgress progress = service.retrieveFileProgress(List.of("f1"), "org-1").get(0);
+
+		assertEquals(0L, progress.getEtaSeconds());
+		assertEquals(2.0, progress.getRecordsPerSecond(), 0.0001);
+	}
+
+	@Test
+	void retrieveFileProgress_notStarted_hasNoEta() {
+		putHeader("f1", "a.csv");
+
+		FileProgress progress = service.retrieveFileProgress(List.of("f1"), "org-1").get(0);
+
+		assertEquals(0, progress.getProcessedRecords());
+		assertNull(progress.getEtaSeconds());
+	}
+
+	@Test
+	void retrieveFileProgress_skipsUnknownOtherOrganizationAndUnattributedFiles() {
+		putHeader("f1", "a.csv");
+		client.putItem(PutItemRequest.builder().tableName(HEADER)
+				.item(Map.of("id", AttributeValue.builder().s("f2").build())).build());
+		service.recordFinalized("f2", null, "success", "org-2");
+		client.putItem(PutItemRequest.builder().tableName(HEADER)
+				.item(Map.of("id", AttributeValue.builder().s("f3").build())).build());
+		service.recordReceived("f3", null);
+
+		List<FileProgress> result = service.retrieveFileProgress(List.of("f1", "f2", "f3", "missing"), "org-1");
+
+		assertEquals(1, result.size());
+		assertEquals("f1", result.get(0).getFileId());
+	}
+
+	@Test
+	void retrieveFileProgress_wrapsExceptions() {
+		ReflectionTestUtils.setField(service, "masterDataHeaderTableName", "missing_tbl");
+
+		assertThrows(WorkflowServiceException.class, () -> service.retrieveFileProgress(List.of("f1"), null));
+	}
+}
@@ -0,0 +1,155 @@
+package sg.edu.nus.iss.edgp.workflow.management.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import sg.edu.nus.iss.edgp.workflow.management.dto.IndexProposal;
+import sg.edu.nus.iss.edgp.workflow.management.repository.SchemaEvolutionCoordinator;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache;
+import sg.edu.nus.iss.edgp.workflow.management.repository.TableSchemaCache.TableSchema;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.IndexAdvisorService;
+
+@ExtendWith(MockitoExtension.class)
+class IndexAdvisorServiceTest {
+
+	private static final String SLOW_QUERY = "SELECT * FROM `customer` WHERE `organization_id` = ? AND `region` = ?"
+			+ " AND `created_date` > ? ORDER BY `updated_date` DESC LIMIT ?, ?";
+
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+	@Mock
+	private TableSchemaCache tableSchemaCache;
+	@Mock
+	private SchemaEvolutionCoordinator schemaEvolutionCoordinator;
+
+	private IndexAdvisorService advisor;
+
+	@BeforeEach
+	void setUp() {
+		advisor = new IndexAdvisorService(jdbcTemplate, tableSchemaCache, schemaEvolutionCoordinator);
+	}
+
+	private static Map<String, Object> digest(String text, long executions, long examined, long sent) {
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("DIGEST_TEXT", text);
+		row.put("COUNT_STAR", executions);
+		row.put("SUM_ROWS_EXAMINED", examined);
+		row.put("SUM_ROWS_SENT", sent);
+		return row;
+	}
+
+	private void stubCustomerTable() {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (String column : List.of("id", "organization_id", "region", "created_date", "updated_date")) {
+			types.put(column, Types.VARCHAR);
+		}
+		when(tableSchemaCache.get("customer")).thenReturn(new TableSchema(true, types));
+	}
+
+	@SafeVarargs
+	private void stubDigests(Map<String, Object>... rows) {
+		when(jdbcTemplate.queryForList(contains("events_statements_summary_by_digest"), eq(100L)))
+				.thenReturn(List.of(rows));
+	}
+
+	@SafeVarargs
+	private void stubExistingIndexes(Map<String, Object>... rows) {
+		when(jdbcTemplate.queryForList(contains("information_schema.statistics"), eq("customer")))
+				.thenReturn(List.of(rows));
+	}
+
+	@Test
+	void reviewSlowQueries_proposesEqualityThenRangeThenSortColumns() {
+		stubCustomerTable();
+		stubDigests(digest(SLOW_QUERY, 500, 5_000_000, 10_000));
+		stubExistingIndexes(Map.of("INDEX_NAME", "PRIMARY", "COLUMN_NAME", "id"));
+
+		List<IndexProposal> proposals = advisor.reviewSlowQueries();
+
+		assertEquals(1, proposals.size());
+		IndexProposal proposal = proposals.get(0);
+		assertEquals("customer", proposal.getTableName());
+		assertEquals(List.of("organization_id", "region", "created_date", "updated_date"), proposal.getColumns());
+		assertEquals("idx_auto_organization_id_region_created_date_updated_date", proposal.getIndexName());
+		assertEquals(500.0, proposal.getRowsExaminedPerRowSent());
+		assertFalse(proposal.isCreated());
+		verifyNoInteractions(schemaEvolutionCoordinator);
+	}
+
+	@Test
+	void reviewSlowQueries_autoCreate_addsIndexThroughCoordinator() {
+		ReflectionTestUtils.setField(advisor, "autoCreate", true);
+		stubCustomerTable();
+		stubDigests(digest(SLOW_QUERY, 500, 5_000_000, 10_000));
+		stubExistingIndexes();
+		when(schemaEvolutionCoordinator.ensureIndex(eq("customer"), anyString(), anyList())).thenReturn(true);
+
+		List<IndexProposal> proposals = advisor.reviewSlowQueries();
+
+		assertTrue(proposals.get(0).isCreated());
+		verify(schemaEvolutionCoordinator).ensureIndex("customer",
+				"idx_auto_organization_id_region_created_date_updated_date",
+				List.of("organization_id", "region", "created_date", "updated_date"));
+	}
+
+	@Test
+	void reviewSlowQueries_existingIndexWithSamePrefix_isSkipped() {
+		stubCustomerTable();
+		stubDigests(digest(SLOW_QUERY, 500, 5_000_000, 10_000));
+		stubExistingIndexes(Map.of("INDEX_NAME", "idx_x", "COLUMN_NAME", "organization_id"),
+				Map.of("INDEX_NAME", "idx_x", "COLUMN_NAME", "region"),
+				Map.of("INDEX_NAME", "idx_x", "COLUMN_NAME", "created_date"),
+				Map.of("INDEX_NAME", "idx_x", "COLUMN_NAME", "updated_date"),
+				Map.of("INDEX_NAME", "idx_x", "COLUMN_NAME", "id"));
+
+		assertTrue(advisor.reviewSlowQueries().isEmpty());
+	}
+
+	@Test
+	void reviewSlowQueries_selectiveJoinedOrUnknownQueries_areIgnored() {
+		stubDigests(
+				// Examines about as many rows as it returns
+				digest("SELECT * FROM `customer` WHERE `region` = ?", 500, 1_000, 900),
+				// Joins are out of scope
+				digest("SELECT * FROM `customer` JOIN `orders` ON `customer`.`id` = `orders`.`cid` WHERE `region` = ?",
+						500, 5_000_000, 10),
+				// Not a column of the table
+				digest("SELECT * FROM `customer` WHERE `ghost` = ?", 500, 5_000_000, 10));
+		stubCustomerTable();
+
+		assertTrue(advisor.reviewSlowQueries().isEmpty());
+		verify(jdbcTemplate, never()).queryForList(contains("information_schema.statistics"), eq("customer"));
+	}
+
+	@Test
+	void reviewSlowQueries_performanceSchemaUnavailable_returnsEmpty() {
+		when(jdbcTemplate.queryForList(anyString(), eq(100L)))
+				.thenThrow(new BadSqlGrammarException("digest", "SELECT", new java.sql.SQLException("denied")));
+
+		assertTrue(advisor.reviewSlowQueries().isEmpty());
+	}
+
+	@Test
+	void scheduledReview_disabled_doesNothing() {
+		ReflectionTestUtils.setField(advisor, "enabled", false);
+
+		advisor.scheduledReview();
+
+		verifyNoInteractions(jdbcTemplate);
+	}
+}
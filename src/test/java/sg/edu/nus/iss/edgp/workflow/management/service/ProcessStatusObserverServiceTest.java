@@ -69,6 +69,29 @@ class ProcessStatusObserverServiceTest {
 		assertNotNull(cap.getValue().expressionAttributeValues().get(":ps"));
 	}
 
+	@Test
+	void fetchAllIdsByProcessStage_returnsEveryFileOldestFirst() {
+		Map<String, AttributeValue> invalidNoDate = Map.of("id", AttributeValue.builder().s("id-skip").build());
+		Map<String, AttributeValue> newer = Map.of("id", AttributeValue.builder().s("id-newer").build(), "file_name",
+				AttributeValue.builder().s("C.csv").build(), "uploaded_date",
+				AttributeValue.builder().s("2025-09-09T10:00:00Z").build());
+		Map<String, AttributeValue> oldest = Map.of("id", AttributeValue.builder().s("id-oldest").build(), "file_name",
+				AttributeValue.builder().s("D.csv").build(), "uploaded_date",
+				AttributeValue.builder().s("2025-09-01T00:00:00Z").build());
+
+		ScanIterable paginator = mock(ScanIterable.class);
+		when(paginator.iterator()).thenReturn(List.of(ScanResponse.builder().items(newer, invalidNoDate).build(),
+				ScanResponse.builder().items(oldest).build()).iterator());
+		when(dynamoDbClient.scanPaginator(any(ScanRequest.class))).thenReturn(paginator);
+
+		List<HashMap<String, String>> result = service.fetchAllIdsByProcessStage(FileProcessStage.PROCESSING);
+
+		assertEquals(2, result.size());
+		assertEquals("id-oldest", result.get(0).get("id"));
+		assertEquals("D.csv", result.get(0).get("name"));
+		assertEquals("id-newer", result.get(1).get("id"));
+	}
+
 	@Test
 	void fetchOldestIdByProcessStage_emptyPages_returnsEmptyMap() {
 		ScanResponse emptyPage = ScanResponse.builder().items(Collections.emptyList()).build();
@@ -177,4 +200,257 @@ class ProcessStatusObserverServiceTest {
 		static org.mockito.ArgumentCaptor<UpdateItemRequest> UpdateItemRequest = org.mockito.ArgumentCaptor
 				.forClass(UpdateItemRequest.class);
 	}
+
+	@Test
+	void fetchFileInfoByStage_returnsInfoWhenStageMatches() {
+		Map<String, AttributeValue> item = Map.of("id", AttributeValue.builder().s("f1").build(), "file_name",
+				AttributeValue.builder().s("a.csv").build(), "process_stage",
+				AttributeValue.builder().s(FileProcessStage.PROCESSING.name()).build());
+		when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(item).build());
+
+		HashMap<String, String> result = service.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING);
+
+		assertEquals("f1", result.get("id"));
+		assertEquals("a.csv", result.get("name"));
+
+		org.mockito.ArgumentCaptor<GetItemRequest> captor = ArgumentCaptor.forClass(GetItemRequest.class);
+		verify(dynamoDbClient).getItem(captor.capture());
+		assertEquals("header_tbl", captor.getValue().tableName());
+		assertTrue(captor.getValue().consistentRead());
+	}
+
+	@Test
+	void fetchFileInfoByStage_emptyWhenStageDiffersOrMissing() {
+		Map<String, AttributeValue> item = Map.of("id", AttributeValue.builder().s("f1").build(), "process_stage",
+				AttributeValue.builder().s(FileProcessStage.COMPLETE.name()).build());
+		when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().item(item).build(),
+				GetItemResponse.builder().build());
+
+		assertTrue(service.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING).isEmpty());
+		assertTrue(service.fetchFileInfoByStage("f1", FileProcessStage.PROCESSING).isEmpty());
+	}
+
+	@Test
+	void markFileComplete_conditionalOnProcessingStage() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+		assertTrue(service.markFileComplete("f1", Status.success.toString()));
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		UpdateItemRequest req = captor.getValue();
+		assertEquals("#stage = :processing", req.conditionExpression());
+		assertEquals(FileProcessStage.COMPLETE.name(), req.expressionAttributeValues().get(":stage").s());
+		assertEquals(FileProcessStage.PROCESSING.name(), req.expressionAttributeValues().get(":processing").s());
+	}
+
+	@Test
+	void markFileComplete_falseWhenAlreadyFinalized() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+				.thenThrow(ConditionalCheckFailedException.builder().message("stage changed").build());
+
+		assertFalse(service.markFileComplete("f1", Status.fail.toString()));
+	}
+
+	@Test
+	void acquireFileLease_conditionalOnProcessingAndFreeOrExpiredLease() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+		assertTrue(service.acquireFileLease("f1", "pod-a", java.time.Duration.ofMinutes(1)));
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		UpdateItemRequest req = captor.getValue();
+		assertEquals("header_tbl", req.tableName());
+		assertEquals("(#stage = :processing OR (#stage = :complete AND attribute_exists(#active)))"
+				+ " AND (attribute_not_exists(#owner) OR #owner = :owner OR #expires < :now)",
+				req.conditionExpression());
+		assertEquals("pod-a", req.expressionAttributeValues().get(":owner").s());
+		long expires = Long.parseLong(req.expressionAttributeValues().get(":expires").n());
+		long now = Long.parseLong(req.expressionAttributeValues().get(":now").n());
+		assertEquals(60_000L, expires - now);
+	}
+
+	@Test
+	void acquireFileLease_falseWhenHeldByAnotherOwner() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+				.thenThrow(ConditionalCheckFailedException.builder().message("leased").build());
+
+		assertFalse(service.acquireFileLease("f1", "pod-b", java.time.Duration.ofMinutes(1)));
+	}
+
+	@Test
+	void renewFileLease_onlyForCurrentOwner() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build())
+				.thenThrow(ConditionalCheckFailedException.builder().message("taken over").build());
+
+		assertTrue(service.renewFileLease("f1", "pod-a", java.time.Duration.ofMinutes(1)));
+		assertFalse(service.renewFileLease("f1", "pod-a", java.time.Duration.ofMinutes(1)));
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient, times(2)).updateItem(captor.capture());
+		assertEquals("#owner = :owner", captor.getValue().conditionExpression());
+	}
+
+	@Test
+	void releaseFileLease_ignoresLeaseTakenOver() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+				.thenThrow(ConditionalCheckFailedException.builder().message("taken over").build());
+
+		assertDoesNotThrow(() -> service.releaseFileLease("f1", "pod-a"));
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		assertEquals("REMOVE #owner, #expires, #heartbeat", captor.getValue().updateExpression());
+	}
+
+	@Test
+	void fetchOldestIdByProcessStage_queriesActiveStageIndexWhenReady() {
+		when(dynamoDbClient.describeTable(any(DescribeTableRequest.class))).thenReturn(headerWithIndex(IndexStatus.ACTIVE));
+		Map<String, AttributeValue> oldest = Map.of("id", AttributeValue.builder().s("id-oldest").build(), "file_name",
+				AttributeValue.builder().s("D.csv").build());
+		when(dynamoDbClient.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder().items(oldest).build());
+
+		HashMap<String, String> result = service.fetchOldestIdByProcessStage(FileProcessStage.PROCESSING);
+
+		assertEquals("id-oldest", result.get("id"));
+		assertEquals("D.csv", result.get("name"));
+		org.mockito.ArgumentCaptor<QueryRequest> captor = org.mockito.ArgumentCaptor.forClass(QueryRequest.class);
+		verify(dynamoDbClient).query(captor.capture());
+		QueryRequest req = captor.getValue();
+		assertEquals("active_stage-uploaded_date-index", req.indexName());
+		assertEquals(1, req.limit());
+		assertTrue(req.scanIndexForward());
+		assertEquals("PROCESSING", req.expressionAttributeValues().get(":stage").s());
+		verify(dynamoDbClient, never()).scanPaginator(any(ScanRequest.class));
+	}
+
+	@Test
+	void checkActiveStageIndex_missingIndexReportsNotReadyWithoutCreatingIt() {
+		when(dynamoDbClient.describeTable(any(DescribeTableRequest.class))).thenReturn(
+				DescribeTableResponse.builder().table(TableDescription.builder().tableName("header_tbl").build()).build());
+
+		assertFalse(service.checkActiveStageIndex());
+
+		verify(dynamoDbClient, never()).updateTable(any(UpdateTableRequest.class));
+	}
+
+	@Test
+	void checkActiveStageIndex_cachesReadiness() {
+		when(dynamoDbClient.describeTable(any(DescribeTableRequest.class))).thenReturn(headerWithIndex(IndexStatus.CREATING),
+				headerWithIndex(IndexStatus.ACTIVE));
+
+		assertFalse(service.checkActiveStageIndex());
+		assertTrue(service.checkActiveStageIndex());
+		assertTrue(service.checkActiveStageIndex());
+
+		verify(dynamoDbClient, times(2)).describeTable(any(DescribeTableRequest.class));
+		verify(dynamoDbClient, never()).updateTable(any(UpdateTableRequest.class));
+	}
+
+	@Test
+	void markFileActive_tagsProcessingHeaderOnce() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+		service.markFileActive(" f1 ");
+		service.markFileActive("f1");
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		UpdateItemRequest req = captor.getValue();
+		assertEquals("f1", req.key().get("id").s());
+		assertEquals("SET #active = :processing", req.updateExpression());
+		assertEquals("#stage = :processing AND attribute_not_exists(#active)", req.conditionExpression());
+	}
+
+	@Test
+	void markFileActive_alreadyTaggedOrCompleteFilesAreNotRetried() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+				.thenThrow(conditionFailed(Map.of("process_stage", "PROCESSING", "active_stage", "PROCESSING")),
+						conditionFailed(Map.of("process_stage", "COMPLETE")));
+
+		service.markFileActive("f1");
+		service.markFileActive("f2");
+		service.markFileActive("f1");
+		service.markFileActive("f2");
+
+		verify(dynamoDbClient, times(2)).updateItem(any(UpdateItemRequest.class));
+	}
+
+	@Test
+	void markFileActive_unprocessedHeaderIsRetriedOnNextRecord() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class)))
+				.thenThrow(conditionFailed(Map.of("process_stage", "UNPROCESSED")))
+				.thenReturn(UpdateItemResponse.builder().build());
+
+		service.markFileActive("f1");
+		service.markFileActive("f1");
+		service.markFileActive("f1");
+
+		verify(dynamoDbClient, times(2)).updateItem(any(UpdateItemRequest.class));
+	}
+
+	@Test
+	void markFileActive_ignoresRecordsWithoutFile() {
+		service.markFileActive(null);
+		service.markFileActive(" ");
+
+		verifyNoInteractions(dynamoDbClient);
+	}
+
+	@Test
+	void tagUntrackedFilesByProcessStage_tagsOnlyFilesStillInStage() {
+		ScanIterable paginator = mock(ScanIterable.class);
+		when(paginator.iterator()).thenReturn(List.of(ScanResponse.builder()
+				.items(Map.of("id", AttributeValue.builder().s("f1").build()),
+						Map.of("id", AttributeValue.builder().s("f2").build()))
+				.build()).iterator());
+		when(dynamoDbClient.scanPaginator(any(ScanRequest.class))).thenReturn(paginator);
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build())
+				.thenThrow(ConditionalCheckFailedException.builder().message("moved on").build());
+
+		assertEquals(1, service.tagUntrackedFilesByProcessStage(FileProcessStage.PROCESSING));
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient, times(2)).updateItem(captor.capture());
+		assertEquals("SET #active = :ps", captor.getValue().updateExpression());
+		assertEquals("#ps = :ps", captor.getValue().conditionExpression());
+	}
+
+	@Test
+	void markFileComplete_keepsFileActiveUntilNotified() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+		service.markFileComplete("f1", Status.success.toString());
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		assertTrue(captor.getValue().updateExpression().endsWith("#active = :stage"));
+		assertEquals("active_stage", captor.getValue().expressionAttributeNames().get("#active"));
+	}
+
+	@Test
+	void markFileNotified_removesActiveStage() {
+		when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+		service.markFileNotified("f1");
+
+		org.mockito.ArgumentCaptor<UpdateItemRequest> captor = org.mockito.ArgumentCaptor.forClass(UpdateItemRequest.class);
+		verify(dynamoDbClient).updateItem(captor.capture());
+		assertTrue(captor.getValue().updateExpression().endsWith("REMOVE #active"));
+		assertEquals("#stage = :complete", captor.getValue().conditionExpression());
+	}
+
+	private static ConditionalCheckFailedException conditionFailed(Map<String, String> header) {
+		Map<String, AttributeValue> item = new HashMap<>();
+		header.forEach((k, v) -> item.put(k, AttributeValue.builder().s(v).build()));
+		return ConditionalCheckFailedException.builder().message("condition failed").item(item).build();
+	}
+
+	private static DescribeTableResponse headerWithIndex(IndexStatus status) {
+		return DescribeTableResponse.builder().table(TableDescription.builder().tableName("header_tbl")
+				.globalSecondaryIndexes(GlobalSecondaryIndexDescription.builder()
+						.indexName("active_stage-uploaded_date-index").indexStatus(status).build())
+				.build()).build();
+	}
 }
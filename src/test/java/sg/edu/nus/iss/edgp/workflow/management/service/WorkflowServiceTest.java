@@ -5,6 +5,7 @@ import static org.mockito.Mockito.*;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -12,13 +13,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import sg.edu.nus.iss.edgp.workflow.management.aws.service.SQSDataQualityRequestService;
 import sg.edu.nus.iss.edgp.workflow.management.dto.SearchRequest;
 import sg.edu.nus.iss.edgp.workflow.management.dto.WorkflowStatus;
 import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowServiceException;
+import sg.edu.nus.iss.edgp.workflow.management.exception.WorkflowStatusConflictException;
+import sg.edu.nus.iss.edgp.workflow.management.observer.FileFinalizationEvent;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicDynamoService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.DynamicSQLService;
+import sg.edu.nus.iss.edgp.workflow.management.service.impl.FileProgressService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.PayloadBuilderService;
 import sg.edu.nus.iss.edgp.workflow.management.service.impl.WorkflowService;
 import software.amazon.awssdk.core.SdkBytes;
@@ -44,6 +49,8 @@ class WorkflowServiceTest {
 	
 	@Mock private PayloadBuilderService payloadBuilderService;
     @Mock private SQSDataQualityRequestService sqsDataQualityRequestService;
+    @Mock private ApplicationEventPublisher applicationEventPublisher;
+    @Mock private FileProgressService fileProgressService;
 
 
 	@BeforeEach
@@ -88,6 +95,8 @@ class WorkflowServiceTest {
 		converted.put("business_key", "BK-9");
 		converted.put("amount", 42);
 		doReturn(converted).when(service).dynamoItemToJavaMap(stored);
+		when(dynamicSQLService.buildCreateTableSQL(anyMap(), anyString()))
+				.thenReturn(CompletableFuture.completedFuture(null));
 
 		ArgumentCaptor<WorkflowStatus> wsCaptor = ArgumentCaptor.forClass(WorkflowStatus.class);
 		ArgumentCaptor<Map<String, Object>> cleanMapCaptor = ArgumentCaptor.forClass(Map.class);
@@ -134,6 +143,8 @@ class WorkflowServiceTest {
 
 		// conversion stub to keep insetCleanMasterData happy
 		doReturn(new HashMap<>(Map.of("business_key", "BK-1"))).when(service).dynamoItemToJavaMap(anyMap());
+		when(dynamicSQLService.buildCreateTableSQL(anyMap(), anyString()))
+				.thenReturn(CompletableFuture.completedFuture(null));
 
 		// Act
 		service.updateDataQualityWorkflowStatus(raw);
@@ -410,6 +421,136 @@ class WorkflowServiceTest {
         verify(sqsDataQualityRequestService, times(1)).forwardToDataQualityRequestQueue(payloadOut);
     }
 
+    @Test
+    @DisplayName("Rule flow: FAIL -> publishes a finalization event for the record's file")
+    void updateRuleWorkflowStatus_fail_publishesFileFinalizationEvent() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-9"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-9"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-9").build(),
+                        "file_id", AttributeValue.builder().s("file-1").build(),
+                        "organization_id", AttributeValue.builder().s("org-1").build()));
+
+        when(fileProgressService.completedFileStatus("file-1")).thenReturn(Optional.of("fail"));
+        service.updateRuleWorkflowStatus(raw);
+
+        verify(fileProgressService).recordFinalized("file-1", "wf-9", "FAIL", "org-1");
+        ArgumentCaptor<FileFinalizationEvent> eventCaptor = ArgumentCaptor.forClass(FileFinalizationEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals("file-1", eventCaptor.getValue().getFileId());
+    }
+
+    @Test
+    @DisplayName("Rule flow: FAIL with other records of the file pending -> no finalization event")
+    void updateRuleWorkflowStatus_fileStillPending_doesNotPublishEvent() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-9"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-9"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-9").build(),
+                        "file_id", AttributeValue.builder().s("file-1").build()));
+        when(fileProgressService.completedFileStatus("file-1")).thenReturn(Optional.empty());
+
+        service.updateRuleWorkflowStatus(raw);
+
+        verify(fileProgressService).recordFinalized("file-1", "wf-9", "FAIL", null);
+        verifyNoInteractions(applicationEventPublisher);
+    }
+
+    @Test
+    @DisplayName("Rule flow: SUCCESS -> record is not final yet, so no finalization event")
+    void updateRuleWorkflowStatus_success_doesNotPublishEvent() throws Exception {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-9"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-9"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-9").build(),
+                        "file_id", AttributeValue.builder().s("file-1").build()));
+        when(payloadBuilderService.buildDataQualityPayLoad(anyMap(), anyMap())).thenReturn(Map.of());
+
+        service.updateRuleWorkflowStatus(raw);
+
+        verifyNoInteractions(applicationEventPublisher, fileProgressService);
+    }
+
+    @Test
+    @DisplayName("Data quality flow: final status -> publishes a finalization event")
+    void updateDataQualityWorkflowStatus_publishesFileFinalizationEvent() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-7"));
+        raw.put("domain_name", "");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-7"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-7").build(),
+                        "file_id", AttributeValue.builder().s("file-2").build()));
+
+        when(fileProgressService.completedFileStatus("file-2")).thenReturn(Optional.of("fail"));
+        service.updateDataQualityWorkflowStatus(raw);
+
+        verify(fileProgressService).recordFinalized("file-2", "wf-7", "FAIL", null);
+        ArgumentCaptor<FileFinalizationEvent> eventCaptor = ArgumentCaptor.forClass(FileFinalizationEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals("file-2", eventCaptor.getValue().getFileId());
+    }
+
+    @Test
+    @DisplayName("Data quality flow: SUCCESS -> record is finalized only after its clean row commits")
+    void updateDataQualityWorkflowStatus_success_finalizesAfterInsertCommits() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-8"));
+        raw.put("domain_name", "customer");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-8"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-8").build(),
+                        "file_id", AttributeValue.builder().s("file-3").build()));
+        CompletableFuture<Void> batch = new CompletableFuture<>();
+        when(dynamicSQLService.buildCreateTableSQL(anyMap(), eq("customer"))).thenReturn(batch);
+
+        when(fileProgressService.completedFileStatus("file-3")).thenReturn(Optional.of("success"));
+        CompletableFuture<Void> done = service.updateDataQualityWorkflowStatus(raw);
+
+        assertFalse(done.isDone());
+        verifyNoInteractions(fileProgressService, applicationEventPublisher);
+
+        batch.complete(null);
+
+        assertTrue(done.isDone());
+        verify(fileProgressService).recordFinalized("file-3", "wf-8", "SUCCESS", null);
+        verify(applicationEventPublisher).publishEvent(any(FileFinalizationEvent.class));
+    }
+
+    @Test
+    @DisplayName("Data quality flow: failed insert -> future fails and the record is not finalized")
+    void updateDataQualityWorkflowStatus_insertFails_doesNotFinalize() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-8"));
+        raw.put("domain_name", "customer");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-8"))
+                .thenReturn(Map.of("id", AttributeValue.builder().s("wf-8").build(),
+                        "file_id", AttributeValue.builder().s("file-3").build()));
+        when(dynamicSQLService.buildCreateTableSQL(anyMap(), eq("customer")))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("batch failed")));
+
+        CompletableFuture<Void> done = service.updateDataQualityWorkflowStatus(raw);
+
+        assertTrue(done.isCompletedExceptionally());
+        verifyNoInteractions(fileProgressService, applicationEventPublisher);
+    }
+
     @Test
     @DisplayName("Rule flow: FAIL -> sets finalStatus=FAIL and does not send SQS")
     void updateRuleWorkflowStatus_fail_setsFinalStatus_noSqs() {
@@ -624,4 +765,194 @@ class WorkflowServiceTest {
         List<Object> level2List = (List<Object>) level2.get("level2_list");
         assertEquals(Arrays.asList("99", true), level2List);
     }
+
+    private static Map<String, AttributeValue> tracker(String id, String... attributes) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.builder().s(id).build());
+        item.put("file_id", AttributeValue.builder().s("file-1").build());
+        for (int i = 0; i < attributes.length; i += 2) {
+            AttributeValue value = attributes[i].equals("version")
+                    ? AttributeValue.builder().n(attributes[i + 1]).build()
+                    : AttributeValue.builder().s(attributes[i + 1]).build();
+            item.put(attributes[i], value);
+        }
+        return item;
+    }
+
+    @Test
+    @DisplayName("Version conflict: re-reads the record and retries with the new version")
+    void updateRuleWorkflowStatus_conflict_retriesWithFreshVersion() throws Exception {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-1"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "version", "3"), tracker("wf-1", "version", "4"));
+        List<Long> versions = new ArrayList<>();
+        doAnswer(inv -> {
+            WorkflowStatus ws = inv.getArgument(1);
+            versions.add(ws.getExpectedVersion());
+            if (versions.size() == 1) {
+                throw new WorkflowStatusConflictException("changed");
+            }
+            return null;
+        }).when(dynamoService).updateWorkflowStatus(eq(TABLE), any(WorkflowStatus.class));
+
+        service.updateRuleWorkflowStatus(raw);
+
+        assertEquals(List.of(3L, 4L), versions);
+        verify(fileProgressService, times(1)).recordFinalized("file-1", "wf-1", "FAIL", null);
+    }
+
+    @Test
+    @DisplayName("Version conflict: gives up after the configured attempts")
+    void updateDataQualityWorkflowStatus_persistentConflict_throws() throws Exception {
+        setPrivateField(service, "maxUpdateAttempts", 2);
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-1"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1")).thenReturn(tracker("wf-1"));
+        doThrow(new WorkflowStatusConflictException("changed")).when(dynamoService)
+                .updateWorkflowStatus(eq(TABLE), any(WorkflowStatus.class));
+
+        WorkflowServiceException ex = assertThrows(WorkflowServiceException.class,
+                () -> service.updateDataQualityWorkflowStatus(raw));
+
+        assertInstanceOf(WorkflowServiceException.class, ex.getCause());
+        verify(dynamoService, times(2)).updateWorkflowStatus(eq(TABLE), any(WorkflowStatus.class));
+        verifyNoInteractions(dynamicSQLService, fileProgressService);
+    }
+
+    @Test
+    @DisplayName("Precedence: a redelivered rule response is ignored")
+    void updateRuleWorkflowStatus_resultAlreadyRecorded_isIgnored() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-1"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "rule_status", "success", "final_status", "success",
+                        "dataquality_status", "success"));
+
+        service.updateRuleWorkflowStatus(raw);
+
+        verify(dynamoService, never()).updateWorkflowStatus(anyString(), any());
+        verifyNoInteractions(payloadBuilderService, sqsDataQualityRequestService, fileProgressService);
+    }
+
+    @Test
+    @DisplayName("Precedence: a late rule failure keeps the data quality final status")
+    void updateRuleWorkflowStatus_afterDataQuality_doesNotOverwriteFinalStatus() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-1"));
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "final_status", "success", "dataquality_status", "success"));
+        ArgumentCaptor<WorkflowStatus> wsCaptor = ArgumentCaptor.forClass(WorkflowStatus.class);
+
+        service.updateRuleWorkflowStatus(raw);
+
+        verify(dynamoService).updateWorkflowStatus(eq(TABLE), wsCaptor.capture());
+        assertEquals("FAIL", wsCaptor.getValue().getRuleStatus());
+        assertNull(wsCaptor.getValue().getFinalStatus());
+        verifyNoInteractions(fileProgressService, applicationEventPublisher);
+    }
+
+    @Test
+    @DisplayName("Precedence: data quality never overturns a failed rule check")
+    void updateDataQualityWorkflowStatus_afterRuleFailure_keepsFinalStatus() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-1"));
+        raw.put("domain_name", "my_domain_tbl");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "rule_status", "fail", "final_status", "fail"));
+        ArgumentCaptor<WorkflowStatus> wsCaptor = ArgumentCaptor.forClass(WorkflowStatus.class);
+
+        service.updateDataQualityWorkflowStatus(raw);
+
+        verify(dynamoService).updateWorkflowStatus(eq(TABLE), wsCaptor.capture());
+        assertEquals("SUCCESS", wsCaptor.getValue().getDataQualityStatus());
+        assertNull(wsCaptor.getValue().getFinalStatus());
+        verifyNoInteractions(dynamicSQLService, fileProgressService, applicationEventPublisher);
+    }
+
+    @Test
+    @DisplayName("Redelivery: a repeated data quality SUCCESS re-applies the clean upsert and the finalization")
+    void updateDataQualityWorkflowStatus_redeliveredSuccess_reappliesCleanUpsertAndFinalization() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-1"));
+        raw.put("domain_name", "customer");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "rule_status", "success", "final_status", "success",
+                        "dataquality_status", "success", "version", "3"));
+        when(dynamicSQLService.buildCreateTableSQL(anyMap(), eq("customer")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> rowCaptor = ArgumentCaptor.forClass(Map.class);
+
+        when(fileProgressService.completedFileStatus("file-1")).thenReturn(Optional.of("success"));
+        assertTrue(service.updateDataQualityWorkflowStatus(raw).isDone());
+
+        verify(dynamoService, never()).updateWorkflowStatus(anyString(), any());
+        verify(dynamicSQLService).buildCreateTableSQL(rowCaptor.capture(), eq("customer"));
+        assertEquals("wf-1", rowCaptor.getValue().get("workflow_tracker_id"));
+        assertFalse(rowCaptor.getValue().containsKey("version"));
+        verify(fileProgressService).recordFinalized("file-1", "wf-1", "SUCCESS", null);
+        ArgumentCaptor<FileFinalizationEvent> eventCaptor = ArgumentCaptor.forClass(FileFinalizationEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals("file-1", eventCaptor.getValue().getFileId());
+    }
+
+    @Test
+    @DisplayName("Redelivery: a repeated data quality FAIL writes no clean row but re-applies the finalization")
+    void updateDataQualityWorkflowStatus_redeliveredFail_reappliesFinalizationOnly() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "FAIL");
+        raw.put("data", Map.of("id", "wf-1"));
+        raw.put("domain_name", "customer");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "rule_status", "success", "final_status", "fail",
+                        "dataquality_status", "fail"));
+
+        when(fileProgressService.completedFileStatus("file-1")).thenReturn(Optional.of("fail"));
+        assertTrue(service.updateDataQualityWorkflowStatus(raw).isDone());
+
+        verify(dynamoService, never()).updateWorkflowStatus(anyString(), any());
+        verifyNoInteractions(dynamicSQLService);
+        verify(fileProgressService).recordFinalized("file-1", "wf-1", "FAIL", null);
+        verify(applicationEventPublisher).publishEvent(any(FileFinalizationEvent.class));
+    }
+
+    @Test
+    @DisplayName("Redelivery: a repeated data quality response after a failed rule check writes nothing")
+    void updateDataQualityWorkflowStatus_redeliveredAfterRuleFailure_isIgnored() {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("status", "SUCCESS");
+        raw.put("data", Map.of("id", "wf-1"));
+        raw.put("domain_name", "customer");
+
+        when(dynamoService.tableExists(TABLE)).thenReturn(true);
+        when(dynamoService.getDataByWorkflowStatusId(TABLE, "wf-1"))
+                .thenReturn(tracker("wf-1", "rule_status", "fail", "final_status", "fail",
+                        "dataquality_status", "success"));
+
+        assertTrue(service.updateDataQualityWorkflowStatus(raw).isDone());
+
+        verify(dynamoService, never()).updateWorkflowStatus(anyString(), any());
+        verifyNoInteractions(dynamicSQLService, fileProgressService, applicationEventPublisher);
+    }
 }